@@ -0,0 +1,231 @@
+package htsjdk.samtools;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import htsjdk.samtools.util.BinaryCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * A compact encoding of headerless SAMRecords for Kryo, used to shuffle reads in Spark tools.
+ *
+ * Compared with {@link SAMRecordSparkCodec}, which writes the fixed-width fields of a BAM record, numbers are varints
+ * (with the mate start relative to the start), the mate reference name is omitted when it is the same as the reference
+ * name, bases are packed in 2 bits when they are all A, C, G or T, and base qualities are run-length encoded when that
+ * is shorter, which it is for binned qualities. Bases and qualities fall back to 4 bits and to raw bytes respectively,
+ * so that every record round-trips exactly. Attributes use the BAM binary tag encoding. Records are self-contained, since
+ * Spark may read the records of a stream with a different Kryo instance from the one that wrote them.
+ *
+ * It lives in this package to access the binary attributes of SAMRecords.
+ */
+public final class CompactSAMRecordSparkCodec {
+    private static final byte BASES_2_BIT = 0;
+    private static final byte BASES_4_BIT = 1;
+    private static final byte BASES_RAW = 2;
+
+    private static final byte QUALITIES_RUN_LENGTH = 0;
+    private static final byte QUALITIES_RAW = 1;
+
+    private static final byte[] TWO_BIT_BASES = {'A', 'C', 'G', 'T'};
+    private static final byte[] FOUR_BIT_BASES = {'=', 'A', 'C', 'M', 'G', 'R', 'S', 'V', 'T', 'W', 'Y', 'H', 'K', 'D', 'B', 'N'};
+    private static final byte[] TWO_BIT_CODES = codes(TWO_BIT_BASES);
+    private static final byte[] FOUR_BIT_CODES = codes(FOUR_BIT_BASES);
+
+    private final ByteArrayOutputStream attributeBytes = new ByteArrayOutputStream();
+    private final BinaryCodec attributeCodec = new BinaryCodec(attributeBytes);
+    private final BinaryTagCodec binaryTagCodec = new BinaryTagCodec(attributeCodec);
+
+    /**
+     * Write a record, ignoring its header and reference indices
+     */
+    public void encode(final SAMRecord record, final Output output) {
+        output.writeString(record.getReadName());
+        output.writeVarInt(record.getFlags(), true);
+        output.writeString(record.getReferenceName());
+        output.writeVarInt(record.getAlignmentStart(), true);
+        output.writeByte(record.getMappingQuality());
+
+        final int[] binaryCigar = BinaryCigarCodec.encode(record.getCigar());
+        output.writeVarInt(binaryCigar.length, true);
+        for (final int cigarElement : binaryCigar) {
+            output.writeVarInt(cigarElement, true);
+        }
+
+        final String mateReferenceName = record.getMateReferenceName();
+        final boolean mateOnSameReference = mateReferenceName != null && mateReferenceName.equals(record.getReferenceName());
+        output.writeBoolean(mateOnSameReference);
+        if (!mateOnSameReference) {
+            output.writeString(mateReferenceName);
+        }
+        output.writeVarInt(record.getMateAlignmentStart() - record.getAlignmentStart(), false);
+        output.writeVarInt(record.getInferredInsertSize(), false);
+
+        writeBases(record.getReadBases(), output);
+        writeQualities(record.getBaseQualities(), output);
+        writeAttributes(record.getBinaryAttributes(), output);
+    }
+
+    /**
+     * Read a record written by {@link #encode}. The record has no header.
+     */
+    public SAMRecord decode(final Input input) {
+        final SAMRecord record = new SAMRecord(null);
+        record.setReadName(input.readString());
+        record.setFlags(input.readVarInt(true));
+        final String referenceName = input.readString();
+        record.setReferenceName(referenceName);
+        final int alignmentStart = input.readVarInt(true);
+        record.setAlignmentStart(alignmentStart);
+        record.setMappingQuality(input.readByteUnsigned());
+
+        final int[] binaryCigar = new int[input.readVarInt(true)];
+        for (int n = 0; n < binaryCigar.length; n++) {
+            binaryCigar[n] = input.readVarInt(true);
+        }
+        record.setCigar(BinaryCigarCodec.decode(binaryCigar));
+
+        record.setMateReferenceName(input.readBoolean() ? referenceName : input.readString());
+        record.setMateAlignmentStart(alignmentStart + input.readVarInt(false));
+        record.setInferredInsertSize(input.readVarInt(false));
+
+        record.setReadBases(readBases(input));
+        record.setBaseQualities(readQualities(input));
+        record.setAttributes(readAttributes(input));
+        return record;
+    }
+
+    private static void writeBases(final byte[] bases, final Output output) {
+        output.writeVarInt(bases.length, true);
+        if (bases.length == 0) {
+            return;
+        }
+        if (allEncodable(bases, TWO_BIT_CODES)) {
+            output.writeByte(BASES_2_BIT);
+            output.writeBytes(pack(bases, TWO_BIT_CODES, 2));
+        } else if (allEncodable(bases, FOUR_BIT_CODES)) {
+            output.writeByte(BASES_4_BIT);
+            output.writeBytes(pack(bases, FOUR_BIT_CODES, 4));
+        } else {
+            output.writeByte(BASES_RAW);
+            output.writeBytes(bases);
+        }
+    }
+
+    private static byte[] readBases(final Input input) {
+        final int length = input.readVarInt(true);
+        if (length == 0) {
+            return SAMRecord.NULL_SEQUENCE;
+        }
+        final byte mode = input.readByte();
+        switch (mode) {
+            case BASES_2_BIT: return unpack(input, length, TWO_BIT_BASES, 2);
+            case BASES_4_BIT: return unpack(input, length, FOUR_BIT_BASES, 4);
+            case BASES_RAW: return input.readBytes(length);
+            default: throw new SAMFormatException("Invalid encoding of bases: " + mode);
+        }
+    }
+
+    // codes is indexed by base and is negative for bases outside the alphabet
+    private static boolean allEncodable(final byte[] bases, final byte[] codes) {
+        for (final byte base : bases) {
+            if (base < 0 || codes[base] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] pack(final byte[] bases, final byte[] codes, final int bitsPerBase) {
+        final int basesPerByte = 8 / bitsPerBase;
+        final byte[] packed = new byte[(bases.length + basesPerByte - 1) / basesPerByte];
+        for (int n = 0; n < bases.length; n++) {
+            packed[n / basesPerByte] |= codes[bases[n]] << (bitsPerBase * (n % basesPerByte));
+        }
+        return packed;
+    }
+
+    private static byte[] unpack(final Input input, final int length, final byte[] alphabet, final int bitsPerBase) {
+        final int basesPerByte = 8 / bitsPerBase;
+        final int mask = (1 << bitsPerBase) - 1;
+        final byte[] packed = input.readBytes((length + basesPerByte - 1) / basesPerByte);
+        final byte[] bases = new byte[length];
+        for (int n = 0; n < length; n++) {
+            bases[n] = alphabet[(packed[n / basesPerByte] >> (bitsPerBase * (n % basesPerByte))) & mask];
+        }
+        return bases;
+    }
+
+    private static void writeQualities(final byte[] qualities, final Output output) {
+        output.writeVarInt(qualities.length, true);
+        if (qualities.length == 0) {
+            return;
+        }
+        int runs = 1;
+        for (int n = 1; n < qualities.length; n++) {
+            if (qualities[n] != qualities[n - 1]) {
+                runs++;
+            }
+        }
+        // a run takes at least two bytes
+        if (2 * runs < qualities.length) {
+            output.writeByte(QUALITIES_RUN_LENGTH);
+            int runStart = 0;
+            for (int n = 1; n <= qualities.length; n++) {
+                if (n == qualities.length || qualities[n] != qualities[runStart]) {
+                    output.writeByte(qualities[runStart]);
+                    output.writeVarInt(n - runStart, true);
+                    runStart = n;
+                }
+            }
+        } else {
+            output.writeByte(QUALITIES_RAW);
+            output.writeBytes(qualities);
+        }
+    }
+
+    private static byte[] readQualities(final Input input) {
+        final int length = input.readVarInt(true);
+        if (length == 0) {
+            return SAMRecord.NULL_QUALS;
+        }
+        final byte mode = input.readByte();
+        switch (mode) {
+            case QUALITIES_RUN_LENGTH:
+                final byte[] qualities = new byte[length];
+                for (int n = 0; n < length; ) {
+                    final byte quality = input.readByte();
+                    final int runLength = input.readVarInt(true);
+                    for (int end = n + runLength; n < end; n++) {
+                        qualities[n] = quality;
+                    }
+                }
+                return qualities;
+            case QUALITIES_RAW: return input.readBytes(length);
+            default: throw new SAMFormatException("Invalid encoding of base qualities: " + mode);
+        }
+    }
+
+    private void writeAttributes(final SAMBinaryTagAndValue attributes, final Output output) {
+        attributeBytes.reset();
+        for (SAMBinaryTagAndValue attribute = attributes; attribute != null; attribute = attribute.getNext()) {
+            binaryTagCodec.writeTag(attribute.tag, attribute.value, attribute.isUnsignedArray());
+        }
+        output.writeVarInt(attributeBytes.size(), true);
+        output.writeBytes(attributeBytes.toByteArray());
+    }
+
+    private static SAMBinaryTagAndValue readAttributes(final Input input) {
+        final int length = input.readVarInt(true);
+        return length == 0 ? null : BinaryTagCodec.readTags(input.readBytes(length), 0, length, ValidationStringency.STRICT);
+    }
+
+    private static byte[] codes(final byte[] alphabet) {
+        final byte[] codes = new byte[128];
+        Arrays.fill(codes, (byte) -1);
+        for (int n = 0; n < alphabet.length; n++) {
+            codes[alphabet[n]] = (byte) n;
+        }
+        return codes;
+    }
+}
@@ -7,6 +7,7 @@ import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.Utils;
 
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Predicate;
 import java.util.stream.IntStream;
 
@@ -30,8 +31,8 @@ public class CountingReadFilter extends ReadFilter {
     @VisibleForTesting
     protected final ReadFilter delegateFilter;
 
-    // Number of reads filtered by this filter
-    protected long filteredCount = 0;
+    // Number of reads filtered by this filter, which may be counted from several threads
+    protected final LongAdder filteredCount = new LongAdder();
 
     public CountingReadFilter(final ReadFilter readFilter) {
         Utils.nonNull(readFilter);
@@ -68,11 +69,11 @@ public class CountingReadFilter extends ReadFilter {
 
     // Return the number of reads filtered by this filter
     public long getFilteredCount() {
-        return filteredCount;
+        return filteredCount.sum();
     }
 
     public void resetFilteredCount() {
-        filteredCount = 0;
+        filteredCount.reset();
     }
 
     public String getName() {return delegateFilter.getClass().getSimpleName();}
@@ -81,11 +82,11 @@ public class CountingReadFilter extends ReadFilter {
     public String getSummaryLine() {return getSummaryLineForLevel(0);}
 
     protected String getSummaryLineForLevel(final int indentLevel) {
-        if (0 == filteredCount) {
+        if (0 == getFilteredCount()) {
             return "No reads filtered by: " + getName();
         }
         else {
-            return getIndentString(indentLevel) + Long.toString(filteredCount) + " read(s) filtered by: " + getName() + " \n";
+            return getIndentString(indentLevel) + Long.toString(getFilteredCount()) + " read(s) filtered by: " + getName() + " \n";
         }
     }
 
@@ -125,7 +126,7 @@ public class CountingReadFilter extends ReadFilter {
     public boolean test(final GATKRead read) {
         final boolean accept = delegateFilter.test(read);
         if (!accept) {
-            filteredCount++;
+            filteredCount.increment();
         }
         return accept;
     }
@@ -143,7 +144,7 @@ public class CountingReadFilter extends ReadFilter {
         public boolean test(GATKRead read) {
             final boolean accept = !delegateCountingFilter.test(read);
             if (!accept) {
-                filteredCount++;
+                filteredCount.increment();
             }
             return accept;
         }
@@ -177,11 +178,11 @@ public class CountingReadFilter extends ReadFilter {
         @Override
         protected String getSummaryLineForLevel(final int indentLevel) {
             final String indent = getIndentString(indentLevel);
-            if (0 == filteredCount) {
+            if (0 == getFilteredCount()) {
                 return "No reads filtered by: " + getName();
             }
             else {
-                return indent + Long.toString(filteredCount) + " read(s) filtered by: " + getName() + "\n"
+                return indent + Long.toString(getFilteredCount()) + " read(s) filtered by: " + getName() + "\n"
                         + (lhs.getFilteredCount() > 0 ? indent + lhs.getSummaryLineForLevel(indentLevel + 1) : "")
                         + (rhs.getFilteredCount() > 0 ? indent + rhs.getSummaryLineForLevel(indentLevel + 1) : "");
             }
@@ -214,7 +215,7 @@ public class CountingReadFilter extends ReadFilter {
         public boolean test(final GATKRead read) {
             final boolean accept = lhs.test(read) && rhs.test(read);
             if (!accept) {
-                filteredCount++;
+                filteredCount.increment();
             }
             return accept;
         }
@@ -240,7 +241,7 @@ public class CountingReadFilter extends ReadFilter {
         public boolean test(final GATKRead read) {
             final  boolean accept = lhs.test(read) || rhs.test(read);
             if (!accept) {
-                filteredCount++;
+                filteredCount.increment();
             }
             return accept;
         }
@@ -1,5 +1,6 @@
 package org.broadinstitute.hellbender.engine.spark;
 
+import com.google.common.collect.Iterators;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMSequenceDictionary;
 import org.apache.spark.api.java.JavaRDD;
@@ -153,11 +154,11 @@ public abstract class AssemblyRegionWalkerSpark extends GATKSparkTool {
         JavaRDD<Shard<GATKRead>> shardedReads = SparkSharder.shard(ctx, getReads(), GATKRead.class, sequenceDictionary, intervalShards, readShardSize, shuffle);
         Broadcast<ReferenceMultiSparkSource> bReferenceSource = hasReference() ? ctx.broadcast(getReference()) : null;
         Broadcast<FeatureManager> bFeatureManager = features == null ? null : ctx.broadcast(features);
-        return shardedReads.flatMap(getAssemblyRegionsFunction(bReferenceSource, bFeatureManager, sequenceDictionary, getHeaderForReads(),
+        return shardedReads.mapPartitions(getAssemblyRegionsFunction(bReferenceSource, bFeatureManager, sequenceDictionary, getHeaderForReads(),
                 assemblyRegionEvaluator(), minAssemblyRegionSize, maxAssemblyRegionSize, assemblyRegionPadding, activeProbThreshold, maxProbPropagationDistance, includeReadsWithDeletionsInIsActivePileups()));
     }
 
-    private static FlatMapFunction<Shard<GATKRead>, AssemblyRegionWalkerContext> getAssemblyRegionsFunction(
+    private static FlatMapFunction<Iterator<Shard<GATKRead>>, AssemblyRegionWalkerContext> getAssemblyRegionsFunction(
             final Broadcast<ReferenceMultiSparkSource> bReferenceSource,
             final Broadcast<FeatureManager> bFeatureManager,
             final SAMSequenceDictionary sequenceDictionary,
@@ -169,24 +170,29 @@ public abstract class AssemblyRegionWalkerSpark extends GATKSparkTool {
             final double activeProbThreshold,
             final int maxProbPropagationDistance,
             final boolean includeReadsWithDeletionsInIsActivePileups) {
-        return (FlatMapFunction<Shard<GATKRead>, AssemblyRegionWalkerContext>) shardedRead -> {
-            final SimpleInterval paddedInterval = shardedRead.getPaddedInterval();
-            final SimpleInterval assemblyRegionPaddedInterval = paddedInterval.expandWithinContig(assemblyRegionPadding, sequenceDictionary);
-
-            final ReferenceDataSource reference = bReferenceSource == null ? null :
-                    new ReferenceMemorySource(bReferenceSource.getValue().getReferenceBases(assemblyRegionPaddedInterval), sequenceDictionary);
+        return (FlatMapFunction<Iterator<Shard<GATKRead>>, AssemblyRegionWalkerContext>) shardedReads -> {
+            // the shards of a partition are in order, so their reference bases are read in spans shared by many shards
+            final PartitionReferenceCache referenceCache = bReferenceSource == null ? null :
+                    new PartitionReferenceCache(bReferenceSource.getValue(), sequenceDictionary);
             final FeatureManager features = bFeatureManager == null ? null : bFeatureManager.getValue();
 
-            final Iterator<AssemblyRegion> assemblyRegionIter = new AssemblyRegionIterator(
-                    new ShardToMultiIntervalShardAdapter<>(shardedRead),
-                    header, reference, features, evaluator,
-                    minAssemblyRegionSize, maxAssemblyRegionSize, assemblyRegionPadding, activeProbThreshold,
-                    maxProbPropagationDistance, includeReadsWithDeletionsInIsActivePileups);
-            final Iterable<AssemblyRegion> assemblyRegions = () -> assemblyRegionIter;
-            return Utils.stream(assemblyRegions).map(assemblyRegion ->
-                    new AssemblyRegionWalkerContext(assemblyRegion,
-                        new ReferenceContext(reference, assemblyRegion.getExtendedSpan()),
-                        new FeatureContext(features, assemblyRegion.getExtendedSpan()))).iterator();
+            return Iterators.concat(Iterators.transform(shardedReads, shardedRead -> {
+                final SimpleInterval paddedInterval = shardedRead.getPaddedInterval();
+                final SimpleInterval assemblyRegionPaddedInterval = paddedInterval.expandWithinContig(assemblyRegionPadding, sequenceDictionary);
+
+                final ReferenceDataSource reference = referenceCache == null ? null : referenceCache.getReference(assemblyRegionPaddedInterval);
+
+                final Iterator<AssemblyRegion> assemblyRegionIter = new AssemblyRegionIterator(
+                        new ShardToMultiIntervalShardAdapter<>(shardedRead),
+                        header, reference, features, evaluator,
+                        minAssemblyRegionSize, maxAssemblyRegionSize, assemblyRegionPadding, activeProbThreshold,
+                        maxProbPropagationDistance, includeReadsWithDeletionsInIsActivePileups);
+                final Iterable<AssemblyRegion> assemblyRegions = () -> assemblyRegionIter;
+                return Utils.stream(assemblyRegions).map(assemblyRegion ->
+                        new AssemblyRegionWalkerContext(assemblyRegion,
+                            new ReferenceContext(reference, assemblyRegion.getExtendedSpan()),
+                            new FeatureContext(features, assemblyRegion.getExtendedSpan()))).iterator();
+            }));
         };
     }
 
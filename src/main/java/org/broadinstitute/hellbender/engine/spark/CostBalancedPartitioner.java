@@ -0,0 +1,118 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.spark.Partitioner;
+import org.apache.spark.api.java.JavaRDD;
+import org.broadinstitute.hellbender.utils.SerializableFunction;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.LongStream;
+
+/**
+ * A {@link Partitioner} for the items of an ordered RDD, keyed by their index in the RDD, that assigns contiguous ranges
+ * of items to partitions so that the partitions have about the same total cost.
+ *
+ * This is for work whose cost varies a lot from item to item, such as calling variants in assembly regions, where a
+ * partition with a high-depth region would otherwise hold up the whole job. An item goes in the partition that contains
+ * the middle of its cost in the cumulative cost of the items, so an item that costs more than a partition's share of the
+ * total ends up in a partition on its own, next to empty partitions.
+ */
+public final class CostBalancedPartitioner extends Partitioner {
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger logger = LogManager.getLogger(CostBalancedPartitioner.class);
+
+    // the index after the last item of each partition
+    private final long[] partitionEnds;
+
+    /**
+     * @param costs the cost of each item, in order
+     * @param numPartitions the number of partitions to divide the items into
+     */
+    public CostBalancedPartitioner(final long[] costs, final int numPartitions) {
+        Utils.nonNull(costs);
+        Utils.validateArg(numPartitions > 0, "numPartitions must be positive");
+        partitionEnds = new long[numPartitions];
+        final double totalCost = LongStream.of(costs).sum();
+        long cumulativeCost = 0;
+        int partition = 0;
+        for (int i = 0; i < costs.length; i++) {
+            Utils.validateArg(costs[i] >= 0, "costs must not be negative");
+            final double middle = totalCost == 0 ? (i + 0.5) / costs.length : (cumulativeCost + costs[i] / 2.0) / totalCost;
+            final int itemPartition = (int) Math.min(numPartitions - 1, (long) (middle * numPartitions));
+            while (partition < itemPartition) {
+                partitionEnds[partition++] = i;
+            }
+            cumulativeCost += costs[i];
+        }
+        while (partition < numPartitions) {
+            partitionEnds[partition++] = costs.length;
+        }
+    }
+
+    @Override
+    public int numPartitions() {
+        return partitionEnds.length;
+    }
+
+    @Override
+    public int getPartition(final Object key) {
+        final long index = (Long) key;
+        // the first partition that ends after the item
+        int low = 0;
+        int high = partitionEnds.length - 1;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (partitionEnds[middle] > index) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Move the items of an RDD between its partitions so that the partitions have about the same total cost, keeping the
+     * items in order. This runs the RDD more than once, so it should be persisted.
+     *
+     * @param items the items to repartition
+     * @param cost the estimated cost of processing an item
+     * @return the items in the same number of partitions, balanced by cost
+     */
+    public static <T> JavaRDD<T> repartitionByCost(final JavaRDD<T> items, final SerializableFunction<T, Long> cost) {
+        final int numPartitions = items.getNumPartitions();
+        final List<long[]> costsByPartition = items.mapPartitions(partitionItems ->
+                Collections.singletonList(Utils.stream(partitionItems).mapToLong(cost::apply).toArray()).iterator()).collect();
+        final long[] costs = costsByPartition.stream().flatMapToLong(LongStream::of).toArray();
+        final CostBalancedPartitioner partitioner = new CostBalancedPartitioner(costs, numPartitions);
+
+        final long[] partitionCostsBefore = costsByPartition.stream().mapToLong(partitionCosts -> LongStream.of(partitionCosts).sum()).toArray();
+        final long[] partitionCostsAfter = new long[numPartitions];
+        for (int i = 0; i < costs.length; i++) {
+            partitionCostsAfter[partitioner.getPartition((long) i)] += costs[i];
+        }
+        logger.info("Partition cost skew before balancing: " + describeSkew(partitionCostsBefore));
+        logger.info("Partition cost skew after balancing: " + describeSkew(partitionCostsAfter));
+
+        return items.zipWithIndex()
+                .mapToPair(itemAndIndex -> itemAndIndex.swap())
+                .repartitionAndSortWithinPartitions(partitioner)
+                .values();
+    }
+
+    /**
+     * @return a summary of how unevenly the cost is spread over the partitions
+     */
+    static String describeSkew(final long[] partitionCosts) {
+        final long max = LongStream.of(partitionCosts).max().orElse(0);
+        final double mean = LongStream.of(partitionCosts).average().orElse(0);
+        final long[] sorted = LongStream.of(partitionCosts).sorted().toArray();
+        final long median = sorted.length == 0 ? 0 : sorted[sorted.length / 2];
+        return String.format("%d partitions, max cost %d, median cost %d, mean cost %.1f, max/mean %.2f",
+                partitionCosts.length, max, median, mean, mean == 0 ? 0 : max / mean);
+    }
+}
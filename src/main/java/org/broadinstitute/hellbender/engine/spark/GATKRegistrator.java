@@ -89,6 +89,7 @@ public class GATKRegistrator implements KryoRegistrator {
         kryo.register(Fragment.class, new FieldSerializer(kryo, Fragment.class));
         kryo.register(Pair.class, new Pair.Serializer());
         kryo.register(Passthrough.class, new FieldSerializer(kryo, Passthrough.class));
+        kryo.register(ReadSummary.class, new ReadSummary.Serializer());
         kryo.register(MarkDuplicatesSparkUtils.IndexPair.class, new FieldSerializer(kryo, MarkDuplicatesSparkUtils.IndexPair.class));
         kryo.register(ReadsKey.class, new FieldSerializer(kryo, ReadsKey.class));
         kryo.register(ReadsKey.KeyForFragment.class, new FieldSerializer(kryo, ReadsKey.KeyForFragment.class));
@@ -20,6 +20,7 @@ import org.broadinstitute.hellbender.engine.spark.datasources.ReferenceMultiSpar
 import org.broadinstitute.hellbender.engine.spark.datasources.ReferenceWindowFunctions;
 import org.broadinstitute.hellbender.engine.filters.ReadFilter;
 import org.broadinstitute.hellbender.engine.filters.WellformedReadFilter;
+import org.broadinstitute.hellbender.engine.spark.datasources.ReadsParquetFormat;
 import org.broadinstitute.hellbender.engine.spark.datasources.ReadsSparkSink;
 import org.broadinstitute.hellbender.engine.spark.datasources.ReadsSparkSource;
 import org.broadinstitute.hellbender.exceptions.UserException;
@@ -69,6 +70,7 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
     private static final long serialVersionUID = 1L;
 
     public static final String BAM_PARTITION_SIZE_LONG_NAME = "bam-partition-size";
+    public static final String NUM_READ_PARTITIONS_LONG_NAME = "num-read-partitions";
     public static final String NUM_REDUCERS_LONG_NAME = "num-reducers";
     public static final String SHARDED_OUTPUT_LONG_NAME = "sharded-output";
     public static final String OUTPUT_SHARD_DIR_LONG_NAME = "output-shard-tmp-dir";
@@ -86,9 +88,18 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
             "Setting this higher will result in fewer partitions. Note that this will not be equal to the size of the partition in memory. " +
             "Defaults to 0, which uses the default split size (determined by the Hadoop input format, typically the size of one HDFS block).",
             fullName = BAM_PARTITION_SIZE_LONG_NAME,
-            optional = true)
+            optional = true,
+            mutex = {NUM_READ_PARTITIONS_LONG_NAME})
     protected long bamPartitionSplitSize = 0;
 
+    @Argument(doc = "target number of partitions to load the reads into. The split size is chosen to give about this many partitions from the bytes of the input " +
+            "that will be read, which for an indexed BAM with intervals are only the parts of the file overlapping the intervals. " +
+            "Defaults to 0, which uses the split size given by " + BAM_PARTITION_SIZE_LONG_NAME + ".",
+            fullName = NUM_READ_PARTITIONS_LONG_NAME,
+            optional = true,
+            mutex = {BAM_PARTITION_SIZE_LONG_NAME})
+    protected int numReadPartitions = 0;
+
 
     @ArgumentCollection
     protected SequenceDictionaryValidationArgumentCollection sequenceDictionaryValidationArguments = getSequenceDictionaryValidationArgumentCollection();
@@ -113,6 +124,12 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
             optional = true)
     protected int numReducers = 0;
 
+    @Argument(fullName=StandardArgumentDefinitions.CREATE_OUTPUT_BAM_INDEX_LONG_NAME,
+            shortName=StandardArgumentDefinitions.CREATE_OUTPUT_BAM_INDEX_SHORT_NAME,
+            doc = "If true, create a BAM index when writing a coordinate-sorted BAM as a single file. The index and the splitting index are both built alongside the shards of the BAM.",
+            optional=true, common = true)
+    public boolean createOutputBamIndex = false;
+
     private ReadsSparkSource readsSource;
     private SAMFileHeader readsHeader;
     private String readInput;
@@ -246,7 +263,23 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
      */
     public JavaRDD<GATKRead> getReads() {
         final ReadFilter filter = makeReadFilter();
-        return getUnfilteredReads().filter(read -> filter.test(read));
+        // the read filters see the same reads as the tool, so the columns they look at are loaded too
+        final Set<ReadsParquetFormat.ReadColumn> columns = EnumSet.noneOf(ReadsParquetFormat.ReadColumn.class);
+        columns.addAll(getReadColumns());
+        getCommandLineParser().getPluginDescriptor(GATKReadFilterPluginDescriptor.class).getResolvedInstances()
+                .forEach(readFilter -> columns.addAll(ReadsParquetFormat.getReadColumns(readFilter)));
+        return getUnfilteredReads(columns).filter(read -> filter.test(read));
+    }
+
+    /**
+     * Returns the fields of the reads that this tool looks at, which along with the fields that the read filters in
+     * effect look at are the only columns that are loaded from Parquet reads input by {@link #getReads}. The other
+     * fields of the reads have their default values.
+     * The default implementation returns all the columns. Tools that only look at a few fields, such as the flags,
+     * can override this to load less data.
+     */
+    public Set<ReadsParquetFormat.ReadColumn> getReadColumns() {
+        return EnumSet.allOf(ReadsParquetFormat.ReadColumn.class);
     }
 
     /**
@@ -258,6 +291,10 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
      * @return all reads from our reads input(s) as a {@link JavaRDD}, bounded by intervals if specified, and unfiltered.
      */
     public JavaRDD<GATKRead> getUnfilteredReads() {
+        return getUnfilteredReads(getReadColumns());
+    }
+
+    private JavaRDD<GATKRead> getUnfilteredReads(final Set<ReadsParquetFormat.ReadColumn> columns) {
         TraversalParameters traversalParameters;
         if ( intervalArgumentCollection.intervalsSpecified() ) {
             traversalParameters = intervalArgumentCollection.getTraversalParameters(getHeaderForReads().getSequenceDictionary());
@@ -275,19 +312,21 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
                 throw new UserException("Failed to read ADAM file " + readInput, e);
             }
 
+        } else if (ReadsParquetFormat.isParquet(readInput)) {
+            return readsSource.getParquetReads(readInput, traversalParameters, columns);
         } else {
             if (hasCramInput() && !hasReference()){
                 throw new UserException.MissingReference("A reference file is required when using CRAM files.");
             }
             final String refPath = hasReference() ?  referenceArguments.getReferenceFileName() : null;
-            return readsSource.getParallelReads(readInput, refPath, traversalParameters, bamPartitionSplitSize);
+            return readsSource.getParallelReads(readInput, refPath, traversalParameters, bamPartitionSplitSize, numReadPartitions);
         }
     }
 
     /**
      * Writes the reads from a {@link JavaRDD} to an output file.
      * @param ctx the JavaSparkContext to write.
-     * @param outputFile path to the output bam/cram.
+     * @param outputFile path to the output bam/cram, or a directory ending in .parquet to write the reads as Parquet.
      * @param reads reads to write.
      */
     public void writeReads(final JavaSparkContext ctx, final String outputFile, JavaRDD<GATKRead> reads) {
@@ -297,7 +336,7 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
     /**
      * Writes the reads from a {@link JavaRDD} to an output file.
      * @param ctx the JavaSparkContext to write.
-     * @param outputFile path to the output bam/cram.
+     * @param outputFile path to the output bam/cram, or a directory ending in .parquet to write the reads as Parquet.
      * @param reads reads to write.
      * @param header the header to write.
      */
@@ -305,13 +344,20 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
         try {
             ReadsSparkSink.writeReads(ctx, outputFile,
                     hasReference() ? referenceArguments.getReferencePath().toAbsolutePath().toUri().toString() : null,
-                    reads, header, shardedOutput ? ReadsWriteFormat.SHARDED : ReadsWriteFormat.SINGLE,
-                    getRecommendedNumReducers(), shardedPartsDir);
+                    reads, header, getReadsWriteFormat(outputFile),
+                    getRecommendedNumReducers(), shardedPartsDir, createOutputBamIndex);
         } catch (IOException e) {
             throw new UserException.CouldNotCreateOutputFile(outputFile,"writing failed", e);
         }
     }
 
+    private ReadsWriteFormat getReadsWriteFormat(final String outputFile) {
+        if (ReadsParquetFormat.isParquet(outputFile)) {
+            return ReadsWriteFormat.PARQUET;
+        }
+        return shardedOutput ? ReadsWriteFormat.SHARDED : ReadsWriteFormat.SINGLE;
+    }
+
     /**
      * Return the recommended number of reducers for a pipeline processing the reads. The number is
      * calculated by finding the total size (in bytes) of all the files in the input path, then
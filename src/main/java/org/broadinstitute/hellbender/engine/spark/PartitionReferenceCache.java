@@ -0,0 +1,61 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import org.broadinstitute.hellbender.engine.ReferenceDataSource;
+import org.broadinstitute.hellbender.engine.ReferenceMemorySource;
+import org.broadinstitute.hellbender.engine.spark.datasources.ReferenceMultiSparkSource;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.reference.ReferenceBases;
+
+import java.io.IOException;
+
+/**
+ * Serves the reference for the shards of one partition from a span of the reference that is loaded once for many shards.
+ *
+ * The shards of a partition produced by {@link SparkSharder} are in coordinate order and their padded intervals overlap,
+ * so rather than reading the reference of each shard from the reference file, this reads a span starting at the first
+ * shard that runs ahead of it by a fixed number of bases, and reads the next span only when a shard runs off the end of
+ * the current one. For the default shard sizes a partition typically needs one or two spans.
+ */
+final class PartitionReferenceCache {
+    static final int DEFAULT_PREFETCH_SIZE = 1_000_000;
+
+    private final ReferenceMultiSparkSource referenceSource;
+    private final SAMSequenceDictionary sequenceDictionary;
+    private final int prefetchSize;
+
+    private ReferenceMemorySource cachedSpan;
+    private SimpleInterval cachedInterval;
+
+    PartitionReferenceCache(final ReferenceMultiSparkSource referenceSource, final SAMSequenceDictionary sequenceDictionary) {
+        this(referenceSource, sequenceDictionary, DEFAULT_PREFETCH_SIZE);
+    }
+
+    PartitionReferenceCache(final ReferenceMultiSparkSource referenceSource, final SAMSequenceDictionary sequenceDictionary, final int prefetchSize) {
+        Utils.validateArg(prefetchSize > 0, "prefetchSize must be positive");
+        this.referenceSource = Utils.nonNull(referenceSource);
+        this.sequenceDictionary = Utils.nonNull(sequenceDictionary);
+        this.prefetchSize = prefetchSize;
+    }
+
+    /**
+     * @return a reference covering the given interval, and usually more
+     */
+    ReferenceDataSource getReference(final SimpleInterval interval) {
+        if (cachedInterval == null || !cachedInterval.contains(interval)) {
+            final int contigLength = sequenceDictionary.getSequence(interval.getContig()).getSequenceLength();
+            final int end = Math.min(contigLength, Math.max(interval.getEnd(), interval.getStart() + prefetchSize - 1));
+            final SimpleInterval span = new SimpleInterval(interval.getContig(), interval.getStart(), end);
+            try {
+                final ReferenceBases bases = referenceSource.getReferenceBases(span);
+                cachedSpan = new ReferenceMemorySource(bases, sequenceDictionary);
+                cachedInterval = bases.getInterval();
+            } catch (final IOException e) {
+                throw new GATKException("Failed to read the reference bases of " + span, e);
+            }
+        }
+        return cachedSpan;
+    }
+}
@@ -4,20 +4,25 @@ import org.apache.spark.Partition;
 import org.apache.spark.rdd.PartitionCoalescer;
 import org.apache.spark.rdd.PartitionGroup;
 import org.apache.spark.rdd.RDD;
+import org.broadinstitute.hellbender.utils.Utils;
 import scala.collection.JavaConversions;
 import scala.collection.Seq;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * A {@link PartitionCoalescer} that allows a range of partitions to be coalesced into groups.
  */
-class RangePartitionCoalescer implements PartitionCoalescer, Serializable, scala.Serializable {
+public class RangePartitionCoalescer implements PartitionCoalescer, Serializable, scala.Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    private List<Integer> startPartitionIndexes;
     private List<Integer> maxEndPartitionIndexes;
 
     /**
@@ -26,25 +31,60 @@ class RangePartitionCoalescer implements PartitionCoalescer, Serializable, scala
      *                               from index {@code i} to {@code maxEndPartitionIndexes.get(i)} (inclusive)
      */
     public RangePartitionCoalescer(List<Integer> maxEndPartitionIndexes) {
+        this(IntStream.range(0, maxEndPartitionIndexes.size()).boxed().collect(Collectors.toList()), maxEndPartitionIndexes);
+    }
+
+    /**
+     * @param startPartitionIndexes the indexes of the start of each coalesced partition
+     * @param maxEndPartitionIndexes the indexes of the end of each coalesced partition, so that
+     *                               coalesced partition {@code i} in the coalesced partitions is made up of partitions
+     *                               from index {@code startPartitionIndexes.get(i)} to
+     *                               {@code maxEndPartitionIndexes.get(i)} (inclusive)
+     */
+    public RangePartitionCoalescer(List<Integer> startPartitionIndexes, List<Integer> maxEndPartitionIndexes) {
+        Utils.validateArg(startPartitionIndexes.size() == maxEndPartitionIndexes.size(),
+                "there must be a start and an end index for each coalesced partition");
+        this.startPartitionIndexes = startPartitionIndexes;
         this.maxEndPartitionIndexes = maxEndPartitionIndexes;
     }
 
+    /**
+     * Make a coalescer for runs of consecutive partitions, each with about the same number of partitions, which keeps
+     * the order of the elements of the parent RDD. Spark's default coalescer groups partitions by their preferred
+     * locations instead, which can interleave partitions from different parts of a sorted input.
+     *
+     * @param numParentPartitions the number of partitions of the RDD to coalesce
+     * @param numPartitions the number of partitions to coalesce them into, at most {@code numParentPartitions}
+     */
+    public static RangePartitionCoalescer contiguous(final int numParentPartitions, final int numPartitions) {
+        Utils.validateArg(numPartitions > 0 && numPartitions <= numParentPartitions,
+                () -> "cannot coalesce " + numParentPartitions + " partitions into " + numPartitions);
+        final List<Integer> startPartitionIndexes = new ArrayList<>(numPartitions);
+        final List<Integer> maxEndPartitionIndexes = new ArrayList<>(numPartitions);
+        for (int i = 0; i < numPartitions; i++) {
+            startPartitionIndexes.add((int) ((long) i * numParentPartitions / numPartitions));
+            maxEndPartitionIndexes.add((int) ((long) (i + 1) * numParentPartitions / numPartitions) - 1);
+        }
+        return new RangePartitionCoalescer(startPartitionIndexes, maxEndPartitionIndexes);
+    }
+
     @Override
     public PartitionGroup[] coalesce(int maxPartitions, RDD<?> parent) {
-        if (maxPartitions != parent.getNumPartitions()) {
+        if (maxPartitions != startPartitionIndexes.size()) {
             throw new IllegalArgumentException("Cannot use " + getClass().getSimpleName() +
-                    " with a different number of partitions to the parent RDD.");
+                    " with a different number of partitions to the ranges it was given.");
         }
         List<Partition> partitions = Arrays.asList(parent.getPartitions());
-        PartitionGroup[] groups = new PartitionGroup[partitions.size()];
+        PartitionGroup[] groups = new PartitionGroup[startPartitionIndexes.size()];
 
-        for (int i = 0; i < partitions.size(); i++) {
-            Seq<String> preferredLocations = parent.getPreferredLocations(partitions.get(i));
+        for (int i = 0; i < groups.length; i++) {
+            final int start = startPartitionIndexes.get(i);
+            Seq<String> preferredLocations = parent.getPreferredLocations(partitions.get(start));
             scala.Option<String> preferredLocation = scala.Option.apply
                     (preferredLocations.isEmpty() ? null : preferredLocations.apply(0));
             PartitionGroup group = new PartitionGroup(preferredLocation);
             List<Partition> partitionsInGroup =
-                    partitions.subList(i, maxEndPartitionIndexes.get(i) + 1);
+                    partitions.subList(start, maxEndPartitionIndexes.get(i) + 1);
             group.partitions().append(JavaConversions.asScalaBuffer(partitionsInGroup));
             groups[i] = group;
         }
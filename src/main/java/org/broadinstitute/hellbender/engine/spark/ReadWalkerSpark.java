@@ -1,5 +1,6 @@
 package org.broadinstitute.hellbender.engine.spark;
 
+import com.google.common.collect.Iterators;
 import htsjdk.samtools.SAMSequenceDictionary;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
@@ -12,6 +13,7 @@ import org.broadinstitute.hellbender.utils.IntervalUtils;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -67,24 +69,29 @@ public abstract class ReadWalkerSpark extends GATKSparkTool {
         JavaRDD<Shard<GATKRead>> shardedReads = SparkSharder.shard(ctx, getReads(), GATKRead.class, sequenceDictionary, intervalShards, readShardSize, shuffle);
         Broadcast<ReferenceMultiSparkSource> bReferenceSource = hasReference() ? ctx.broadcast(getReference()) : null;
         Broadcast<FeatureManager> bFeatureManager = features == null ? null : ctx.broadcast(features);
-        return shardedReads.flatMap(getReadsFunction(bReferenceSource, bFeatureManager, sequenceDictionary, readShardPadding));
+        return shardedReads.mapPartitions(getReadsFunction(bReferenceSource, bFeatureManager, sequenceDictionary, readShardPadding));
     }
 
-    private static FlatMapFunction<Shard<GATKRead>, ReadWalkerContext> getReadsFunction(
+    private static FlatMapFunction<Iterator<Shard<GATKRead>>, ReadWalkerContext> getReadsFunction(
             Broadcast<ReferenceMultiSparkSource> bReferenceSource, Broadcast<FeatureManager> bFeatureManager,
             SAMSequenceDictionary sequenceDictionary, int readShardPadding) {
-        return (FlatMapFunction<Shard<GATKRead>, ReadWalkerContext>) shard -> {
-            // get reference bases for this shard (padded)
-            SimpleInterval paddedInterval = shard.getInterval().expandWithinContig(readShardPadding, sequenceDictionary);
-            ReferenceDataSource reference = bReferenceSource == null ? null :
-                    new ReferenceMemorySource(bReferenceSource.getValue().getReferenceBases(paddedInterval), sequenceDictionary);
+        return (FlatMapFunction<Iterator<Shard<GATKRead>>, ReadWalkerContext>) shards -> {
+            // the shards of a partition are in order, so their reference bases are read in spans shared by many shards
+            PartitionReferenceCache referenceCache = bReferenceSource == null ? null :
+                    new PartitionReferenceCache(bReferenceSource.getValue(), sequenceDictionary);
             FeatureManager features = bFeatureManager == null ? null : bFeatureManager.getValue();
 
-            return StreamSupport.stream(shard.spliterator(), false)
-                    .map(r -> {
-                        final SimpleInterval readInterval = getReadInterval(r);
-                        return new ReadWalkerContext(r, new ReferenceContext(reference, readInterval), new FeatureContext(features, readInterval));
-                    }).iterator();
+            return Iterators.concat(Iterators.transform(shards, shard -> {
+                // get reference bases for this shard (padded)
+                SimpleInterval paddedInterval = shard.getInterval().expandWithinContig(readShardPadding, sequenceDictionary);
+                ReferenceDataSource reference = referenceCache == null ? null : referenceCache.getReference(paddedInterval);
+
+                return StreamSupport.stream(shard.spliterator(), false)
+                        .map(r -> {
+                            final SimpleInterval readInterval = getReadInterval(r);
+                            return new ReadWalkerContext(r, new ReferenceContext(reference, readInterval), new FeatureContext(features, readInterval));
+                        }).iterator();
+            }));
         };
     }
 
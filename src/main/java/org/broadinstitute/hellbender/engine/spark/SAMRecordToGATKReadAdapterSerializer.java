@@ -8,12 +8,12 @@ import htsjdk.samtools.*;
 import org.broadinstitute.hellbender.utils.read.SAMRecordToGATKReadAdapter;
 
 /**
- * Efficient serializer for SAMRecordToGATKReadAdapters that uses SAMRecordSparkCodec for encoding/decoding.
+ * Efficient serializer for SAMRecordToGATKReadAdapters that uses CompactSAMRecordSparkCodec for encoding/decoding.
  * Assumes that the underlying SAMRecords are headerless (and clears their header if they're not).
  */
 public final class SAMRecordToGATKReadAdapterSerializer extends Serializer<SAMRecordToGATKReadAdapter> {
 
-    private SAMRecordSparkCodec lazyCodec = new SAMRecordSparkCodec();
+    private final CompactSAMRecordSparkCodec codec = new CompactSAMRecordSparkCodec();
 
     @Override
     public void write(Kryo kryo, Output output, SAMRecordToGATKReadAdapter adapter) {
@@ -22,33 +22,17 @@ public final class SAMRecordToGATKReadAdapterSerializer extends Serializer<SAMRe
         // measure in case it's not, set the header to null explicitly.
         record.setHeaderStrict(null);
 
-        // serialize reference names to avoid having to have a header at read time
-        output.writeString(record.getReferenceName());
-        output.writeString(record.getMateReferenceName());
-        lazyCodec.setOutputStream(output);
-        lazyCodec.encode(record);
-
-        // clear indexing bin after encoding to ensure all SAMRecords compare properly
-        record.setFlags(record.getFlags());
+        // the codec writes reference names rather than indices, so no header is needed at read time
+        codec.encode(record, output);
     }
 
     @Override
     public SAMRecordToGATKReadAdapter read(Kryo kryo, Input input, Class<SAMRecordToGATKReadAdapter> type) {
-        final String referenceName = input.readString();
-        final String mateReferenceName = input.readString();
-        lazyCodec.setInputStream(input);
-        final SAMRecord record = lazyCodec.decode();
-
-        // clear indexing bin after decoding to ensure all SAMRecords compare properly
-        record.setFlags(record.getFlags());
-
-        // set reference names (and indices to null)
-        record.setReferenceName(referenceName);
-        record.setMateReferenceName(mateReferenceName);
+        final SAMRecord record = codec.decode(input);
 
-        // headerlessReadAdapter() calls setHeaderStrict(null), which will set reference indices to null if the above
-        // setReferenceName()/setMateReferenceName() calls failed to do so (eg., in the case of "*" as the
+        // headerlessReadAdapter() calls setHeaderStrict(null), which will set reference indices to null if
+        // setReferenceName()/setMateReferenceName() in the codec failed to do so (eg., in the case of "*" as the
         // reference name).
         return SAMRecordToGATKReadAdapter.headerlessReadAdapter(record);
     }
-}
\ No newline at end of file
+}
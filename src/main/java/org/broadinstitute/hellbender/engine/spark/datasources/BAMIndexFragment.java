@@ -0,0 +1,199 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import htsjdk.samtools.LinearIndex;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.util.BinaryCodec;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The content of a BAM index (BAI) for the records of one part of a coordinate sorted BAM, built as the part is written.
+ *
+ * Virtual file offsets are relative to the start of the part, so the fragments of all the parts of a BAM can be merged
+ * arithmetically, by shifting the offsets of each part by the position of the part in the final file, into the index of
+ * the whole BAM without reading the records again. Bins, chunks, linear index and metadata follow htsjdk's BAMIndexer.
+ */
+final class BAMIndexFragment implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final byte[] BAI_MAGIC = {'B', 'A', 'I', 1};
+    // the pseudo-bin holding the metadata of a reference
+    private static final int METADATA_BIN = 37450;
+    // offsets within a part start at zero, so windows without an offset are marked with this instead
+    private static final long NO_OFFSET = -1;
+
+    private final ReferenceContent[] references;
+    private long noCoordinateCount = 0;
+
+    BAMIndexFragment(final int numReferences) {
+        references = new ReferenceContent[numReferences];
+    }
+
+    /**
+     * Add a record of a coordinate sorted part, with header, written from one virtual file offset to another
+     */
+    void add(final SAMRecord record, final long start, final long end) {
+        final int referenceIndex = record.getReferenceIndex();
+        final int alignmentStart = record.getAlignmentStart();
+        if (referenceIndex == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX || alignmentStart == SAMRecord.NO_ALIGNMENT_START) {
+            noCoordinateCount++;
+            return;
+        }
+        if (references[referenceIndex] == null) {
+            references[referenceIndex] = new ReferenceContent();
+        }
+        final ReferenceContent reference = references[referenceIndex];
+        // the bin the record was written with, as in BAMRecordCodec
+        final Integer bin = record.getIndexingBin();
+        reference.addChunk(bin == null ? record.computeIndexingBin() : bin, start, end);
+        reference.recordMetadata(record.getReadUnmappedFlag(), start, end);
+
+        // as in htsjdk, an alignment without an end, such as an unmapped read placed with its mate, is only in the
+        // window of its start
+        final int alignmentEnd = record.getAlignmentEnd();
+        final int startWindow = LinearIndex.convertToLinearIndexOffset(alignmentStart);
+        final int endWindow = alignmentEnd == SAMRecord.NO_ALIGNMENT_START ? startWindow : LinearIndex.convertToLinearIndexOffset(alignmentEnd);
+        for (int window = startWindow; window <= endWindow; window++) {
+            reference.setWindowOffsetIfUnset(window, start);
+        }
+    }
+
+    /**
+     * Append the content of the fragment of the next part of the BAM
+     *
+     * @param partStart the position in bytes of the start of the part in the BAM
+     */
+    void addPart(final BAMIndexFragment part, final long partStart) {
+        Utils.validateArg(part.references.length == references.length, "index fragments have different numbers of references");
+        final long shift = partStart << 16;
+        for (int n = 0; n < references.length; n++) {
+            final ReferenceContent partReference = part.references[n];
+            if (partReference == null) {
+                continue;
+            }
+            if (references[n] == null) {
+                references[n] = new ReferenceContent();
+            }
+            references[n].addShifted(partReference, shift);
+        }
+        noCoordinateCount += part.noCoordinateCount;
+    }
+
+    /**
+     * Write the content as a BAI file
+     */
+    void write(final OutputStream outputStream) {
+        final BinaryCodec codec = new BinaryCodec(outputStream);
+        codec.writeBytes(BAI_MAGIC);
+        codec.writeInt(references.length);
+        for (final ReferenceContent reference : references) {
+            if (reference == null) {
+                codec.writeInt(0);
+                codec.writeInt(0);
+            } else {
+                reference.write(codec);
+            }
+        }
+        codec.writeLong(noCoordinateCount);
+    }
+
+    private static final class ReferenceContent implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        // the starts and ends of the chunks of each bin, in order
+        private final TreeMap<Integer, LongArrayList> chunksByBin = new TreeMap<>();
+        private final LongArrayList windowOffsets = new LongArrayList();
+        private long firstOffset = NO_OFFSET;
+        private long lastOffset = 0;
+        private long alignedCount = 0;
+        private long unalignedCount = 0;
+
+        private void addChunk(final int bin, final long start, final long end) {
+            final LongArrayList chunks = chunksByBin.computeIfAbsent(bin, b -> new LongArrayList());
+            final int size = chunks.size();
+            // coalesce chunks in the same or adjacent blocks, as htsjdk does
+            if (size > 0 && BlockCompressedFilePointerUtil.areInSameOrAdjacentBlocks(chunks.getLong(size - 1), start)) {
+                chunks.set(size - 1, Math.max(chunks.getLong(size - 1), end));
+            } else {
+                chunks.add(start);
+                chunks.add(end);
+            }
+        }
+
+        private void recordMetadata(final boolean unaligned, final long start, final long end) {
+            if (unaligned) {
+                unalignedCount++;
+            } else {
+                alignedCount++;
+            }
+            if (firstOffset == NO_OFFSET || start < firstOffset) {
+                firstOffset = start;
+            }
+            lastOffset = Math.max(lastOffset, end);
+        }
+
+        private void setWindowOffsetIfUnset(final int window, final long offset) {
+            while (windowOffsets.size() <= window) {
+                windowOffsets.add(NO_OFFSET);
+            }
+            if (windowOffsets.getLong(window) == NO_OFFSET) {
+                windowOffsets.set(window, offset);
+            }
+        }
+
+        // the part comes after everything added so far, so its offsets are larger
+        private void addShifted(final ReferenceContent part, final long shift) {
+            for (final Map.Entry<Integer, LongArrayList> bin : part.chunksByBin.entrySet()) {
+                final LongArrayList chunks = bin.getValue();
+                for (int n = 0; n < chunks.size(); n += 2) {
+                    addChunk(bin.getKey(), chunks.getLong(n) + shift, chunks.getLong(n + 1) + shift);
+                }
+            }
+            for (int window = 0; window < part.windowOffsets.size(); window++) {
+                if (part.windowOffsets.getLong(window) != NO_OFFSET) {
+                    setWindowOffsetIfUnset(window, part.windowOffsets.getLong(window) + shift);
+                }
+            }
+            if (part.firstOffset != NO_OFFSET && firstOffset == NO_OFFSET) {
+                firstOffset = part.firstOffset + shift;
+            }
+            lastOffset = Math.max(lastOffset, part.lastOffset + shift);
+            alignedCount += part.alignedCount;
+            unalignedCount += part.unalignedCount;
+        }
+
+        private void write(final BinaryCodec codec) {
+            codec.writeInt(chunksByBin.size() + 1);
+            for (final Map.Entry<Integer, LongArrayList> bin : chunksByBin.entrySet()) {
+                final LongArrayList chunks = bin.getValue();
+                codec.writeInt(bin.getKey());
+                codec.writeInt(chunks.size() / 2);
+                for (int n = 0; n < chunks.size(); n++) {
+                    codec.writeLong(chunks.getLong(n));
+                }
+            }
+            codec.writeInt(METADATA_BIN);
+            codec.writeInt(2);
+            codec.writeLong(firstOffset);
+            codec.writeLong(lastOffset);
+            codec.writeLong(alignedCount);
+            codec.writeLong(unalignedCount);
+
+            // windows without alignments take the offset of the window before them, as in htsjdk and samtools
+            codec.writeInt(windowOffsets.size());
+            long previousOffset = 0;
+            for (int window = 0; window < windowOffsets.size(); window++) {
+                if (windowOffsets.getLong(window) != NO_OFFSET) {
+                    previousOffset = windowOffsets.getLong(window);
+                }
+                codec.writeLong(previousOffset);
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import htsjdk.samtools.*;
+import htsjdk.samtools.util.BinaryCodec;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.seqdoop.hadoop_bam.SplittingBAMIndexer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes the parts of a coordinate sorted BAM along with the {@link BAMIndexFragment}s of their indices and the virtual
+ * offsets of their splitting indices, and merges them into a single BAM, its index and its splitting index.
+ *
+ * Parts are headerless and have no terminator, so the BAM is the header, followed by the parts in order, followed by the
+ * terminator. The position of each part in the BAM is known from the lengths of the parts, which is all that is needed to
+ * merge the index fragments and the splitting index offsets, and lets the parts of a local BAM be copied into place
+ * concurrently.
+ */
+final class IndexedBAMParts {
+    private static final byte[] BAM_MAGIC = {'B', 'A', 'M', 1};
+
+    private IndexedBAMParts() {}
+
+    /**
+     * A part written by {@link #writePart}, with the content of its indices, with offsets relative to the start of the part
+     */
+    static final class Part implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String path;
+        private final long length;
+        private final BAMIndexFragment index;
+        // the virtual offsets of the first record of the part and of every SplittingBAMIndexer.DEFAULT_GRANULARITY records after it
+        private final long[] splittingIndexOffsets;
+
+        Part(final String path, final long length, final BAMIndexFragment index, final long[] splittingIndexOffsets) {
+            this.path = path;
+            this.length = length;
+            this.index = index;
+            this.splittingIndexOffsets = splittingIndexOffsets;
+        }
+    }
+
+    /**
+     * Write the records of a part, which must be coordinate sorted
+     *
+     * @return the part, with its length in bytes and the content of the indices of its records
+     */
+    static Part writePart(final String partPath, final Iterator<SAMRecord> records, final SAMFileHeader header, final Configuration conf) throws IOException {
+        final BAMIndexFragment index = new BAMIndexFragment(header.getSequenceDictionary().size());
+        final LongArrayList splittingIndexOffsets = new LongArrayList();
+        final Path path = new Path(partPath);
+        try (final OutputStream partStream = path.getFileSystem(conf).create(path)) {
+            final BlockCompressedOutputStream compressedStream = new BlockCompressedOutputStream(partStream, (File) null);
+            final BAMRecordCodec codec = new BAMRecordCodec(header);
+            codec.setOutputStream(compressedStream);
+            long count = 0;
+            while (records.hasNext()) {
+                final SAMRecord record = records.next();
+                record.setHeaderStrict(header);
+                final long start = compressedStream.getFilePointer();
+                codec.encode(record);
+                index.add(record, start, compressedStream.getFilePointer());
+                if (count++ % SplittingBAMIndexer.DEFAULT_GRANULARITY == 0) {
+                    splittingIndexOffsets.add(start);
+                }
+            }
+            // flushing rather than closing the compressed stream leaves out the terminator
+            compressedStream.flush();
+            return new Part(partPath, compressedStream.getFilePointer() >>> 16, index, splittingIndexOffsets.toLongArray());
+        }
+    }
+
+    /**
+     * Merge parts written by {@link #writePart}, in order, into a BAM, its index and its splitting index
+     */
+    static void merge(final List<Part> parts, final String outputFile, final SAMFileHeader header, final Configuration conf) throws IOException {
+        final byte[] headerBytes = encodeHeader(header);
+        final BAMIndexFragment index = new BAMIndexFragment(header.getSequenceDictionary().size());
+        final LongArrayList splittingIndexOffsets = new LongArrayList();
+        final long[] partStarts = new long[parts.size()];
+        long position = headerBytes.length;
+        for (int n = 0; n < parts.size(); n++) {
+            final Part part = parts.get(n);
+            partStarts[n] = position;
+            index.addPart(part.index, position);
+            for (final long offset : part.splittingIndexOffsets) {
+                splittingIndexOffsets.add(offset + (position << 16));
+            }
+            position += part.length;
+        }
+
+        if (isLocal(outputFile)) {
+            concatenateInParallel(parts, partStarts, headerBytes, position, outputFile);
+        } else {
+            concatenate(parts, headerBytes, outputFile, conf);
+        }
+
+        final Path indexPath = new Path(outputFile.substring(0, outputFile.length() - BamFileIoUtils.BAM_FILE_EXTENSION.length()) + BAMIndex.BAMIndexSuffix);
+        try (final OutputStream indexStream = new BufferedOutputStream(indexPath.getFileSystem(conf).create(indexPath))) {
+            index.write(indexStream);
+        }
+
+        // the same as the splitting index Hadoop-BAM merges from the splitting indices of its parts, which ends with the
+        // length of the BAM
+        final Path splittingIndexPath = new Path(outputFile + SplittingBAMIndexer.OUTPUT_FILE_EXTENSION);
+        try (final OutputStream splittingIndexStream = new BufferedOutputStream(splittingIndexPath.getFileSystem(conf).create(splittingIndexPath))) {
+            final SplittingBAMIndexer splittingIndexer = new SplittingBAMIndexer(splittingIndexStream);
+            for (final long offset : splittingIndexOffsets) {
+                splittingIndexer.writeVirtualOffset(offset);
+            }
+            splittingIndexer.finish(position + BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.length);
+        }
+    }
+
+    private static byte[] encodeHeader(final SAMFileHeader header) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final BlockCompressedOutputStream compressedStream = new BlockCompressedOutputStream(bytes, (File) null);
+        final BinaryCodec codec = new BinaryCodec(compressedStream);
+        codec.writeBytes(BAM_MAGIC);
+        final StringWriter headerText = new StringWriter();
+        new SAMTextHeaderCodec().encode(headerText, header);
+        codec.writeString(headerText.toString(), true, false);
+        codec.writeInt(header.getSequenceDictionary().size());
+        for (final SAMSequenceRecord sequence : header.getSequenceDictionary().getSequences()) {
+            codec.writeString(sequence.getSequenceName(), true, true);
+            codec.writeInt(sequence.getSequenceLength());
+        }
+        compressedStream.flush();
+        return bytes.toByteArray();
+    }
+
+    private static boolean isLocal(final String file) {
+        final String scheme = new Path(file).toUri().getScheme();
+        return scheme == null || scheme.equals("file");
+    }
+
+    private static java.nio.file.Path getLocalPath(final String file) {
+        return Paths.get(new Path(file).toUri().getPath());
+    }
+
+    private static void concatenate(final List<Part> parts, final byte[] headerBytes,
+                                    final String outputFile, final Configuration conf) throws IOException {
+        final Path outputPath = new Path(outputFile);
+        try (final OutputStream outputStream = outputPath.getFileSystem(conf).create(outputPath)) {
+            outputStream.write(headerBytes);
+            for (final Part part : parts) {
+                final Path partPath = new Path(part.path);
+                try (final InputStream partStream = partPath.getFileSystem(conf).open(partPath)) {
+                    ByteStreams.copy(partStream, outputStream);
+                }
+            }
+            outputStream.write(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK);
+        }
+    }
+
+    private static void concatenateInParallel(final List<Part> parts, final long[] partStarts,
+                                              final byte[] headerBytes, final long terminatorStart, final String outputFile) throws IOException {
+        final int numThreads = Math.max(1, Math.min(parts.size(), Runtime.getRuntime().availableProcessors()));
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("bam-merge-%d").build());
+        try (final FileChannel output = FileChannel.open(getLocalPath(outputFile),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(output, headerBytes, 0);
+            // writing the terminator first sets the length of the file, so that the parts can be written concurrently
+            write(output, BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK, terminatorStart);
+
+            final List<Future<?>> futures = new ArrayList<>(parts.size());
+            for (int n = 0; n < parts.size(); n++) {
+                final java.nio.file.Path partPath = getLocalPath(parts.get(n).path);
+                final long partStart = partStarts[n];
+                final long partLength = parts.get(n).length;
+                futures.add(executor.submit(() -> {
+                    try (final FileChannel part = FileChannel.open(partPath, StandardOpenOption.READ)) {
+                        for (long copied = 0; copied < partLength; ) {
+                            final long transferred = output.transferFrom(part, partStart + copied, partLength - copied);
+                            if (transferred == 0) {
+                                throw new IOException("Part " + partPath + " is shorter than the " + partLength + " bytes written to it");
+                            }
+                            copied += transferred;
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while merging the parts of " + outputFile, e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new GATKException("Failed to merge the parts of " + outputFile, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void write(final FileChannel channel, final byte[] bytes, final long position) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMTextHeaderCodec;
+import htsjdk.samtools.SAMTextTagCodec;
+import htsjdk.samtools.TagValueAndUnsignedArrayFlag;
+import htsjdk.samtools.util.BufferedLineReader;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.RowFactory;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.types.DataType;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructField;
+import org.apache.spark.sql.types.StructType;
+import org.broadinstitute.hellbender.engine.TraversalParameters;
+import org.broadinstitute.hellbender.engine.filters.ReadFilter;
+import org.broadinstitute.hellbender.engine.filters.ReadFilterLibrary;
+import org.broadinstitute.hellbender.engine.filters.WellformedReadFilter;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.SAMRecordToGATKReadAdapter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.apache.spark.sql.functions.col;
+import static org.apache.spark.sql.functions.lit;
+
+/**
+ * Stores reads as Parquet, with one column for each field of a read, using Spark SQL.
+ *
+ * Because the data is columnar, a query for some intervals only reads the row groups whose contig and position
+ * statistics overlap the intervals (predicate pushdown), and a tool that only looks at a few fields of the reads, such
+ * as the flags, only reads those columns (projection). The SAM header is stored as text in a file alongside the Parquet
+ * parts, since the columns carry no header.
+ *
+ * Parquet output is a directory whose name ends in {@value #PARQUET_EXTENSION}. The reads are not returned in the order
+ * they were written, so the header that is read back is always unsorted.
+ */
+public final class ReadsParquetFormat {
+
+    public static final String PARQUET_EXTENSION = ".parquet";
+
+    // Spark ignores files whose names start with an underscore when it reads the parts
+    static final String HEADER_FILE_NAME = "_header.sam";
+
+    /**
+     * The columns of a read. The contig of an unmapped read without a position is null, and the end of an unmapped read
+     * with a position is its start, so that intervals can be matched against the start and end alone.
+     */
+    public enum ReadColumn {
+        NAME("name", DataTypes.StringType),
+        FLAGS("flags", DataTypes.IntegerType),
+        CONTIG("contig", DataTypes.StringType),
+        START("start", DataTypes.IntegerType),
+        END("end", DataTypes.IntegerType),
+        MAPPING_QUALITY("mappingQuality", DataTypes.IntegerType),
+        CIGAR("cigar", DataTypes.StringType),
+        MATE_CONTIG("mateContig", DataTypes.StringType),
+        MATE_START("mateStart", DataTypes.IntegerType),
+        INSERT_SIZE("insertSize", DataTypes.IntegerType),
+        BASES("bases", DataTypes.BinaryType),
+        QUALITIES("qualities", DataTypes.BinaryType),
+        // tab separated, in SAM text format
+        ATTRIBUTES("attributes", DataTypes.StringType);
+
+        private final String columnName;
+        private final DataType type;
+
+        ReadColumn(final String columnName, final DataType type) {
+            this.columnName = columnName;
+            this.type = type;
+        }
+
+        public String getColumnName() {
+            return columnName;
+        }
+    }
+
+    static final StructType SCHEMA = DataTypes.createStructType(Arrays.stream(ReadColumn.values())
+            .map(column -> DataTypes.createStructField(column.columnName, column.type, true))
+            .toArray(StructField[]::new));
+
+    private ReadsParquetFormat() {}
+
+    /**
+     * @return true if the path names reads stored as Parquet by this class
+     */
+    public static boolean isParquet(final String path) {
+        return path.endsWith(PARQUET_EXTENSION) || path.endsWith(PARQUET_EXTENSION + "/");
+    }
+
+    /**
+     * @return the columns that a read filter looks at. Filters that aren't known to look at only some of the fields of a
+     * read get all the columns.
+     */
+    public static Set<ReadColumn> getReadColumns(final ReadFilter readFilter) {
+        Utils.nonNull(readFilter);
+        if (readFilter instanceof ReadFilterLibrary.AllowAllReadsReadFilter) {
+            return EnumSet.noneOf(ReadColumn.class);
+        }
+        if (readFilter instanceof WellformedReadFilter) {
+            // the end is derived from the start and cigar, and the read group is one of the attributes
+            return EnumSet.of(ReadColumn.FLAGS, ReadColumn.CONTIG, ReadColumn.START, ReadColumn.CIGAR,
+                    ReadColumn.BASES, ReadColumn.QUALITIES, ReadColumn.ATTRIBUTES);
+        }
+        return EnumSet.allOf(ReadColumn.class);
+    }
+
+    /**
+     * Write reads as Parquet, replacing any existing output.
+     *
+     * @param ctx the JavaSparkContext to write with
+     * @param outputPath the directory to write to
+     * @param reads the reads to write
+     * @param header the header of the reads
+     */
+    public static void writeReads(final JavaSparkContext ctx, final String outputPath, final JavaRDD<GATKRead> reads,
+                                  final SAMFileHeader header) throws IOException {
+        final JavaRDD<Row> rows = reads.map(read -> toRow(read.convertToSAMRecord(null)));
+        getSparkSession(ctx).createDataFrame(rows, SCHEMA).write().mode(SaveMode.Overwrite).parquet(outputPath);
+
+        final Path headerPath = new Path(outputPath, HEADER_FILE_NAME);
+        try (final Writer writer = new OutputStreamWriter(
+                headerPath.getFileSystem(ctx.hadoopConfiguration()).create(headerPath), StandardCharsets.UTF_8)) {
+            new SAMTextHeaderCodec().encode(writer, header);
+        }
+    }
+
+    /**
+     * @return the header of reads written by {@link #writeReads}, with its sort order set to unsorted
+     */
+    public static SAMFileHeader readHeader(final String path, final Configuration conf) {
+        final Path headerPath = new Path(path, HEADER_FILE_NAME);
+        try {
+            final FileSystem fs = headerPath.getFileSystem(conf);
+            if (!fs.exists(headerPath)) {
+                throw new UserException.CouldNotReadInputFile(path, "it has no " + HEADER_FILE_NAME + " file");
+            }
+            try (final InputStream in = fs.open(headerPath)) {
+                final SAMFileHeader header = new SAMTextHeaderCodec().decode(new BufferedLineReader(in), path);
+                header.setSortOrder(SAMFileHeader.SortOrder.unsorted);
+                return header;
+            }
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(path, e);
+        }
+    }
+
+    /**
+     * Read reads written by {@link #writeReads}. Only the given columns are read, and the fields of the returned reads
+     * that are not in those columns have their default values (for example, no bases), so the reads should only be
+     * passed to code that does not look at those fields.
+     *
+     * @param ctx the JavaSparkContext to read with
+     * @param path the directory to read from
+     * @param traversalParameters the intervals to read, and whether to read unmapped reads, or null to read all the reads
+     * @param columns the columns to read
+     * @return the reads
+     */
+    public static JavaRDD<GATKRead> readReads(final JavaSparkContext ctx, final String path,
+                                              final TraversalParameters traversalParameters, final Set<ReadColumn> columns) {
+        Utils.nonNull(columns);
+        Dataset<Row> rows = getSparkSession(ctx).read().schema(SCHEMA).parquet(path);
+        if (traversalParameters != null) {
+            rows = rows.filter(overlaps(traversalParameters));
+        }
+        // EnumSet iterates in the order of the columns
+        final Set<ReadColumn> orderedColumns = EnumSet.noneOf(ReadColumn.class);
+        orderedColumns.addAll(columns);
+        final ReadColumn[] selected = orderedColumns.toArray(new ReadColumn[0]);
+        rows = rows.select(Arrays.stream(selected).map(column -> col(column.columnName)).toArray(org.apache.spark.sql.Column[]::new));
+        return rows.javaRDD().map(row -> (GATKRead) SAMRecordToGATKReadAdapter.headerlessReadAdapter(toRecord(row, selected)));
+    }
+
+    private static SparkSession getSparkSession(final JavaSparkContext ctx) {
+        // returns a session for the running context
+        return SparkSession.builder().config(ctx.getConf()).getOrCreate();
+    }
+
+    // the same as ReadsSparkSource.samRecordOverlaps, as a filter that Parquet can check against the statistics of the row groups
+    private static org.apache.spark.sql.Column overlaps(final TraversalParameters traversalParameters) {
+        org.apache.spark.sql.Column overlaps = lit(false);
+        if (traversalParameters.traverseUnmappedReads()) {
+            overlaps = overlaps.or(col(ReadColumn.CONTIG.columnName).isNull());
+        }
+        for (final SimpleInterval interval : traversalParameters.getIntervalsForTraversal()) {
+            overlaps = overlaps.or(col(ReadColumn.CONTIG.columnName).equalTo(interval.getContig())
+                    .and(col(ReadColumn.START.columnName).leq(interval.getEnd()))
+                    .and(col(ReadColumn.END.columnName).geq(interval.getStart())));
+        }
+        return overlaps;
+    }
+
+    static Row toRow(final SAMRecord record) {
+        final boolean placed = record.getAlignmentStart() != SAMRecord.NO_ALIGNMENT_START;
+        final SAMTextTagCodec tagCodec = new SAMTextTagCodec();
+        final String attributes = record.getAttributes().isEmpty() ? null : record.getAttributes().stream()
+                .map(attribute -> tagCodec.encode(attribute.tag, attribute.value))
+                .collect(Collectors.joining("\t"));
+        return RowFactory.create(
+                record.getReadName(),
+                record.getFlags(),
+                nullIfMissing(record.getReferenceName()),
+                record.getAlignmentStart(),
+                record.getReadUnmappedFlag() || !placed ? record.getAlignmentStart() : record.getAlignmentEnd(),
+                record.getMappingQuality(),
+                record.getCigarString(),
+                nullIfMissing(record.getMateReferenceName()),
+                record.getMateAlignmentStart(),
+                record.getInferredInsertSize(),
+                record.getReadBases(),
+                record.getBaseQualities(),
+                attributes);
+    }
+
+    static SAMRecord toRecord(final Row row, final ReadColumn[] columns) {
+        final SAMRecord record = new SAMRecord(null);
+        for (int i = 0; i < columns.length; i++) {
+            if (row.isNullAt(i)) {
+                continue;
+            }
+            switch (columns[i]) {
+                case NAME: record.setReadName(row.getString(i)); break;
+                case FLAGS: record.setFlags(row.getInt(i)); break;
+                case CONTIG: record.setReferenceName(row.getString(i)); break;
+                case START: record.setAlignmentStart(row.getInt(i)); break;
+                case END: break; // derived from the start and cigar
+                case MAPPING_QUALITY: record.setMappingQuality(row.getInt(i)); break;
+                case CIGAR: record.setCigarString(row.getString(i)); break;
+                case MATE_CONTIG: record.setMateReferenceName(row.getString(i)); break;
+                case MATE_START: record.setMateAlignmentStart(row.getInt(i)); break;
+                case INSERT_SIZE: record.setInferredInsertSize(row.getInt(i)); break;
+                case BASES: record.setReadBases((byte[]) row.get(i)); break;
+                case QUALITIES: record.setBaseQualities((byte[]) row.get(i)); break;
+                case ATTRIBUTES:
+                    final SAMTextTagCodec tagCodec = new SAMTextTagCodec();
+                    for (final String attribute : row.getString(i).split("\t")) {
+                        final Map.Entry<String, Object> tagAndValue = tagCodec.decode(attribute);
+                        if (tagAndValue.getValue() instanceof TagValueAndUnsignedArrayFlag) {
+                            record.setUnsignedArrayAttribute(tagAndValue.getKey(), ((TagValueAndUnsignedArrayFlag) tagAndValue.getValue()).value);
+                        } else {
+                            record.setAttribute(tagAndValue.getKey(), tagAndValue.getValue());
+                        }
+                    }
+                    break;
+                default: throw new IllegalStateException("Unknown column " + columns[i]);
+            }
+        }
+        return record;
+    }
+
+    private static String nullIfMissing(final String referenceName) {
+        return SAMRecord.NO_ALIGNMENT_REFERENCE_NAME.equals(referenceName) ? null : referenceName;
+    }
+}
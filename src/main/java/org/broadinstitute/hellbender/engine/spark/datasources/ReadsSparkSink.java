@@ -13,6 +13,7 @@ import org.apache.hadoop.mapreduce.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.parquet.avro.AvroParquetOutputFormat;
+import org.apache.spark.SerializableWritable;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
@@ -35,7 +36,9 @@ import scala.Tuple2;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 
 /**
  * ReadsSparkSink writes GATKReads to a file. This code lifts from the HadoopGenomics/Hadoop-BAM
@@ -44,6 +47,7 @@ import java.util.Comparator;
 public final class ReadsSparkSink {
 
     private final static Logger logger = LogManager.getLogger(ReadsSparkSink.class);
+    private static final String HADOOP_PART_PREFIX = "part-";
 
     // Output format class for writing BAM files through saveAsNewAPIHadoopFile. Must be public.
     public static class SparkBAMOutputFormat extends KeyIgnoringBAMOutputFormat<NullWritable> {
@@ -184,6 +188,36 @@ public final class ReadsSparkSink {
     public static void writeReads(
             final JavaSparkContext ctx, final String outputFile, final String referenceFile, final JavaRDD<GATKRead> reads,
             final SAMFileHeader header, ReadsWriteFormat format, final int numReducers, final String outputPartsDir) throws IOException {
+        writeReads(ctx, outputFile, referenceFile, reads, header, format, numReducers, outputPartsDir, false);
+    }
+
+    /**
+     * writeReads writes rddReads to outputFile with header as the file header.
+     * @param ctx the JavaSparkContext to write.
+     * @param outputFile path to the output bam.
+     * @param referenceFile path to the reference. required for cram output, otherwise may be null.
+     * @param reads reads to write.
+     * @param header the header to put at the top of the files
+     * @param format should the output be a single file, sharded, ADAM, etc.
+     * @param numReducers the number of reducers to use when writing a single file. A value of zero indicates that the default
+     *                    should be used.
+     * @param outputPartsDir directory for temporary files for SINGLE output format, should be null for default value of filename + .output
+     * @param writeBai whether to write a BAM index when writing a coordinate sorted BAM as a single file. The index, and
+     *                 the splitting index, are built from fragments written along with the parts of the BAM.
+     */
+    public static void writeReads(
+            final JavaSparkContext ctx, final String outputFile, final String referenceFile, final JavaRDD<GATKRead> reads,
+            final SAMFileHeader header, ReadsWriteFormat format, final int numReducers, final String outputPartsDir,
+            final boolean writeBai) throws IOException {
+
+        if (format == ReadsWriteFormat.PARQUET) {
+            if (outputPartsDir!=null) {
+                throw new  GATKException(String.format("You specified the bam output parts directory %s, but requested a Parquet output format which does not use this option",outputPartsDir));
+            }
+            // the reads go straight into Parquet rows, without the Hadoop-BAM configuration
+            ReadsParquetFormat.writeReads(ctx, BucketUtils.makeFilePathAbsolute(outputFile), reads, header);
+            return;
+        }
 
         SAMFormat samOutputFormat = SAMFormat.inferFromFilePath(outputFile);
         if (samOutputFormat == null) {
@@ -202,7 +236,9 @@ public final class ReadsSparkSink {
         // for efficient serialization.
         final JavaRDD<SAMRecord> samReads = reads.map(read -> read.convertToSAMRecord(null));
 
-        if (format == ReadsWriteFormat.SINGLE) {
+        if (format == ReadsWriteFormat.SINGLE && writeBai && samOutputFormat == SAMFormat.BAM && header.getSortOrder() == SAMFileHeader.SortOrder.coordinate) {
+            writeReadsSingleIndexedBAM(ctx, absoluteOutputFile, samReads, header, numReducers, outputPartsDir);
+        } else if (format == ReadsWriteFormat.SINGLE) {
             writeReadsSingle(ctx, absoluteOutputFile, absoluteReferenceFile, samOutputFormat, samReads, header, numReducers, outputPartsDir);
         } else if (format == ReadsWriteFormat.SHARDED) {
             if (outputPartsDir!=null) {
@@ -294,6 +330,35 @@ public final class ReadsSparkSink {
         logger.info("Finished merging shards into a single output bam");
     }
 
+    /**
+     * Write a coordinate sorted BAM, its index and its splitting index as a single file. Each partition is written as a
+     * headerless part by its own task, which also builds the {@link BAMIndexFragment} and the splitting index offsets of
+     * its part. The driver then merges those into the indices arithmetically and concatenates the parts, in parallel
+     * when the output is a local file.
+     */
+    private static void writeReadsSingleIndexedBAM(
+            final JavaSparkContext ctx, final String outputFile, final JavaRDD<SAMRecord> reads,
+            final SAMFileHeader header, final int numReducers, final String outputPartsDir) throws IOException {
+        final JavaRDD<SAMRecord> sortedReads = sortSamRecordsToMatchHeader(reads, header, numReducers);
+        final String outputPartsDirectory = (outputPartsDir == null)? getDefaultPartsDirectory(outputFile)  : outputPartsDir;
+        deleteHadoopFile(outputPartsDirectory, ctx.hadoopConfiguration());
+
+        final Broadcast<SAMFileHeader> headerBroadcast = ctx.broadcast(header);
+        // the parts are written with the job's Hadoop configuration, which isn't serializable itself
+        final Broadcast<SerializableWritable<Configuration>> confBroadcast = ctx.broadcast(new SerializableWritable<>(ctx.hadoopConfiguration()));
+        final List<IndexedBAMParts.Part> parts = sortedReads.mapPartitionsWithIndex((index, records) -> {
+            final String partPath = new Path(outputPartsDirectory, String.format("%sr-%05d", HADOOP_PART_PREFIX, index)).toString();
+            return Collections.singletonList(IndexedBAMParts.writePart(partPath, records, headerBroadcast.getValue(), confBroadcast.getValue().value())).iterator();
+        }, false).collect();
+        headerBroadcast.destroy();
+        confBroadcast.destroy();
+
+        logger.info("Finished sorting the bam file and dumping read shards to disk, proceeding to merge the shards and their indices into a single file");
+        IndexedBAMParts.merge(parts, outputFile, header, ctx.hadoopConfiguration());
+        deleteHadoopFile(outputPartsDirectory, ctx.hadoopConfiguration());
+        logger.info("Finished merging shards into a single output bam and its index");
+    }
+
     private static Class<? extends OutputFormat<NullWritable, SAMRecordWritable>> getOutputFormat(final SAMFormat samFormat, final boolean writeHeader) {
         if (samFormat == SAMFormat.CRAM) {
             return writeHeader ? SparkCRAMOutputFormat.class : SparkHeaderlessCRAMOutputFormat.class;
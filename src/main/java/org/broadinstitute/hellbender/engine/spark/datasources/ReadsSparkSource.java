@@ -1,6 +1,7 @@
 package org.broadinstitute.hellbender.engine.spark.datasources;
 
 import htsjdk.samtools.*;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
@@ -10,6 +11,7 @@ import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -18,24 +20,32 @@ import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.rdd.PartitionCoalescer;
+import org.apache.spark.rdd.RDD;
 import org.bdgenomics.formats.avro.AlignmentRecord;
 import org.broadinstitute.hellbender.engine.ReadsDataSource;
 import org.broadinstitute.hellbender.engine.TraversalParameters;
+import org.broadinstitute.hellbender.engine.spark.RangePartitionCoalescer;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
 import org.broadinstitute.hellbender.utils.io.IOUtils;
 import org.broadinstitute.hellbender.utils.read.*;
 import org.broadinstitute.hellbender.utils.spark.SparkUtils;
 import org.seqdoop.hadoop_bam.*;
 import org.seqdoop.hadoop_bam.util.SAMHeaderReader;
+import org.seqdoop.hadoop_bam.util.WrapSeekable;
+import scala.Option;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 /** Loads the reads from disk either serially (using samReaderFactory) or in parallel using Hadoop-BAM.
  * The parallel code is a modified version of the example writing code from Hadoop-BAM.
@@ -43,6 +53,10 @@ import java.util.Objects;
 public final class ReadsSparkSource implements Serializable {
     private static final long serialVersionUID = 1L;
     private static final String HADOOP_PART_PREFIX = "part-";
+    // set when the splits of a read name grouped BAM should be aligned to template boundaries
+    private static final String KEEP_TEMPLATES_TOGETHER_PROPERTY = "hellbender.spark.keepTemplatesTogether";
+    // splits smaller than a BGZF block would mostly be empty
+    private static final long MIN_PARTITION_SPLIT_SIZE = BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE;
 
     private transient final JavaSparkContext ctx;
     private ValidationStringency validationStringency = ReadConstants.DEFAULT_READ_VALIDATION_STRINGENCY;
@@ -75,12 +89,15 @@ public final class ReadsSparkSource implements Serializable {
      * this is a hack to work around https://github.com/HadoopGenomics/Hadoop-BAM/issues/199
      *
      * fix the problem by explicitly sorting the input file splits
+     *
+     * For read name grouped BAMs it also moves the boundaries between splits so that templates never straddle two splits,
+     * see {@link TemplateSplitAdjuster}.
      */
     public static class SplitSortingSamInputFormat extends AnySAMInputFormat{
         @SuppressWarnings("unchecked")
         @Override
         public List<InputSplit> getSplits(JobContext job) throws IOException {
-            final List<InputSplit> splits = super.getSplits(job);
+            List<InputSplit> splits = super.getSplits(job);
 
             if( splits.stream().allMatch(split -> split instanceof FileVirtualSplit || split instanceof FileSplit)) {
                 splits.sort(Comparator.comparing(split -> {
@@ -92,6 +109,10 @@ public final class ReadsSparkSource implements Serializable {
                 }));
             }
 
+            if (job.getConfiguration().getBoolean(KEEP_TEMPLATES_TOGETHER_PROPERTY, false) &&
+                    splits.stream().allMatch(split -> split instanceof FileVirtualSplit)) {
+                splits = TemplateSplitAdjuster.keepTemplatesTogether(splits, job.getConfiguration());
+            }
             return splits;
         }
     }
@@ -108,6 +129,31 @@ public final class ReadsSparkSource implements Serializable {
      * @return RDD of (SAMRecord-backed) GATKReads from the file.
      */
     public JavaRDD<GATKRead> getParallelReads(final String readFileName, final String referencePath, final TraversalParameters traversalParameters, final long splitSize) {
+        return getParallelReads(readFileName, referencePath, traversalParameters, splitSize, 0);
+    }
+
+    /**
+     * Loads Reads using Hadoop-BAM. For local files, bam must have the fully-qualified path,
+     * i.e., file:///path/to/bam.bam.
+     *
+     * Hadoop-BAM cuts the splits of a BAM at record boundaries using its splitting index (.splitting-bai, see
+     * CreateHadoopBamSplittingIndex) when there is one, and restricts them to the given intervals using the BAM index.
+     * When a number of partitions is given instead of a split size, the split size is chosen to give about that many
+     * partitions from the bytes of the input that will be read, which for a BAM with an index and intervals are only
+     * the bytes of the chunks overlapping the intervals.
+     *
+     * @param readFileName file to load
+     * @param referencePath Reference path or null if not available. Reference is required for CRAM files.
+     * @param traversalParameters parameters controlling which reads to include. If <code>null</code> then all the reads (both mapped and unmapped) will be returned.
+     * @param splitSize maximum bytes of bam file to read into a single partition, increasing this will result in fewer partitions. A value of zero means
+     *                  use the default split size (determined by the Hadoop input format, typically the size of one HDFS block).
+     * @param numPartitions the target number of partitions, used to choose the split size when splitSize is zero. A value of zero means
+     *                      use the default split size.
+     * @return RDD of (SAMRecord-backed) GATKReads from the file.
+     */
+    public JavaRDD<GATKRead> getParallelReads(final String readFileName, final String referencePath, final TraversalParameters traversalParameters,
+                                              final long splitSize, final int numPartitions) {
+        Utils.validateArg(numPartitions >= 0, "numPartitions must not be negative");
         SAMFileHeader header = getHeader(readFileName, referencePath);
 
         // use the Hadoop configuration attached to the Spark context to maintain cumulative settings
@@ -121,6 +167,9 @@ public final class ReadsSparkSource implements Serializable {
         setHadoopBAMConfigurationProperties(readFileName, referencePath);
 
         boolean isBam = IOUtils.isBamFileName(readFileName);
+        // the splits of a single read name grouped BAM can be aligned to templates when all the reads are loaded
+        final boolean keepTemplatesTogether = isBam && traversalParameters == null && ReadUtils.isReadNameGroupedBam(header) && !isDirectory(readFileName);
+        conf.setBoolean(KEEP_TEMPLATES_TOGETHER_PROPERTY, keepTemplatesTogether);
         if (isBam) {
             if (traversalParameters == null) {
                 BAMInputFormat.unsetTraversalParameters(conf);
@@ -129,9 +178,26 @@ public final class ReadsSparkSource implements Serializable {
             }
         }
 
+        if (isBam && !isDirectory(readFileName) && !hasSplittingIndex(readFileName)) {
+            logger.info("No splitting index for " + readFileName + ", so the boundaries of its splits will be found by probing for records. " +
+                    "Create one with CreateHadoopBamSplittingIndex to avoid this.");
+        }
+
+        // the split size chosen for the number of partitions is only set on a copy of the configuration, so it doesn't carry over to other inputs
+        final Configuration readConf;
+        if (splitSize == 0 && numPartitions > 0) {
+            final long partitionSplitSize = getSplitSizeForPartitions(readFileName, header, traversalParameters, numPartitions);
+            logger.info("Using a split size of " + partitionSplitSize + " bytes to load " + readFileName + " into about " + numPartitions + " partitions");
+            readConf = new Configuration(conf);
+            readConf.setLong(FileInputFormat.SPLIT_MINSIZE, partitionSplitSize);
+            readConf.setLong(FileInputFormat.SPLIT_MAXSIZE, partitionSplitSize);
+        } else {
+            readConf = conf;
+        }
+
         rdd2 = ctx.newAPIHadoopFile(
                 readFileName, SplitSortingSamInputFormat.class, LongWritable.class, SAMRecordWritable.class,
-                conf);
+                readConf);
 
         JavaRDD<GATKRead> reads= rdd2.map(v1 -> {
             SAMRecord sam = v1._2().get();
@@ -141,7 +207,109 @@ public final class ReadsSparkSource implements Serializable {
             return null;
         }).filter(Objects::nonNull);
 
-        return fixPartitionsIfQueryGrouped(ctx, header, reads);
+        // Hadoop-BAM divides the whole file at the split size before dropping the splits that don't overlap the intervals,
+        // so intervals scattered across the file can leave many more splits than the number of partitions asked for
+        if (splitSize == 0 && numPartitions > 0 && reads.getNumPartitions() > numPartitions) {
+            logger.info("Coalescing " + reads.getNumPartitions() + " splits of " + readFileName + " into " + numPartitions + " partitions");
+            reads = coalesceContiguously(reads, numPartitions);
+        }
+
+        return keepTemplatesTogether ? reads : fixPartitionsIfQueryGrouped(ctx, header, reads);
+    }
+
+    /**
+     * Coalesce runs of consecutive partitions of the reads into the given number of partitions, which keeps the reads
+     * of a coordinate sorted input in order, and the reads of each template of a read name grouped input together.
+     */
+    private static JavaRDD<GATKRead> coalesceContiguously(final JavaRDD<GATKRead> reads, final int numPartitions) {
+        final PartitionCoalescer partitionCoalescer = RangePartitionCoalescer.contiguous(reads.getNumPartitions(), numPartitions);
+        final RDD<GATKRead> coalescedRdd = reads.rdd().coalesce(numPartitions, false, Option.apply(partitionCoalescer), null);
+        return new JavaRDD<>(coalescedRdd, reads.classTag());
+    }
+
+    private boolean isDirectory(final String readFileName) {
+        try {
+            final Path path = new Path(readFileName);
+            return path.getFileSystem(ctx.hadoopConfiguration()).isDirectory(path);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new UserException("Failed to access " + readFileName + "\n Caused by:" + e.getMessage(), e);
+        }
+    }
+
+    private boolean hasSplittingIndex(final String readFileName) {
+        return exists(readFileName + SplittingBAMIndexer.OUTPUT_FILE_EXTENSION);
+    }
+
+    private boolean exists(final String fileName) {
+        try {
+            final Path path = new Path(fileName);
+            return path.getFileSystem(ctx.hadoopConfiguration()).exists(path);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new UserException("Failed to access " + fileName + "\n Caused by:" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The split size that divides the bytes of the input to be read into the given number of partitions, but no smaller
+     * than a BGZF block
+     */
+    private long getSplitSizeForPartitions(final String readFileName, final SAMFileHeader header, final TraversalParameters traversalParameters, final int numPartitions) {
+        final long inputSize = getSizeToRead(readFileName, header, traversalParameters);
+        return Math.max(MIN_PARTITION_SPLIT_SIZE, (inputSize + numPartitions - 1) / numPartitions);
+    }
+
+    /**
+     * The number of bytes of the input that a traversal reads. This is the size of the input, unless the input is a BAM
+     * with an index and there are intervals, in which case it is the compressed size of the chunks that the index gives
+     * for the intervals, along with the unmapped reads at the end of the file if they are traversed.
+     */
+    private long getSizeToRead(final String readFileName, final SAMFileHeader header, final TraversalParameters traversalParameters) {
+        final long inputSize = BucketUtils.dirSize(readFileName);
+        if (traversalParameters == null || !IOUtils.isBamFileName(readFileName) || isDirectory(readFileName)) {
+            return inputSize;
+        }
+        final String indexFileName = getBamIndexFileName(readFileName);
+        if (indexFileName == null) {
+            return inputSize;
+        }
+
+        final Configuration conf = ctx.hadoopConfiguration();
+        final SamReaderFactory factory = SamReaderFactory.makeDefault().validationStringency(validationStringency);
+        try (final SamReader reader = factory.open(SamInputResource.of(WrapSeekable.openPath(conf, new Path(readFileName)))
+                .index(WrapSeekable.openPath(conf, new Path(indexFileName))))) {
+            final BAMIndex index = reader.indexing().getIndex();
+            final List<BAMFileSpan> spans = new ArrayList<>();
+            for (final SimpleInterval interval : traversalParameters.getIntervalsForTraversal()) {
+                final int referenceIndex = header.getSequenceIndex(interval.getContig());
+                final BAMFileSpan span = referenceIndex == SAMSequenceRecord.UNAVAILABLE_SEQUENCE_INDEX ? null :
+                        index.getSpanOverlapping(referenceIndex, interval.getStart(), interval.getEnd());
+                // there is no span for references without reads
+                if (span != null) {
+                    spans.add(span);
+                }
+            }
+            long size = 0;
+            for (final Chunk chunk : BAMFileSpan.merge(spans.toArray(new BAMFileSpan[spans.size()])).getChunks()) {
+                size += (chunk.getChunkEnd() >>> 16) - (chunk.getChunkStart() >>> 16);
+            }
+            final long startOfUnmapped = index.getStartOfLastLinearBin();
+            if (traversalParameters.traverseUnmappedReads() && startOfUnmapped != -1) {
+                size += inputSize - (startOfUnmapped >>> 16);
+            }
+            return size;
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(readFileName, e);
+        }
+    }
+
+    // the index of a BAM is either next to it with .bai appended, or in place of the .bam extension
+    private String getBamIndexFileName(final String readFileName) {
+        final String appended = readFileName + BAMIndex.BAMIndexSuffix;
+        if (exists(appended)) {
+            return appended;
+        }
+        final String replaced = readFileName.substring(0, readFileName.length() - BamFileIoUtils.BAM_FILE_EXTENSION.length()) + BAMIndex.BAMIndexSuffix;
+        return exists(replaced) ? replaced : null;
     }
 
     private static JavaRDD<GATKRead> fixPartitionsIfQueryGrouped(JavaSparkContext ctx, SAMFileHeader header, JavaRDD<GATKRead> reads) {
@@ -200,6 +368,18 @@ public final class ReadsSparkSource implements Serializable {
         return fixPartitionsIfQueryGrouped(ctx, header, filteredRdd);
     }
 
+    /**
+     * Loads reads stored as Parquet by {@link ReadsParquetFormat}, reading only the row groups that overlap the
+     * traversal intervals and only the given columns.
+     * @param inputPath path to the Parquet data
+     * @param traversalParameters the intervals to load, or null to load all the reads
+     * @param columns the columns to load; the other fields of the reads have their default values
+     * @return RDD of (SAMRecord-backed) GATKReads from the file.
+     */
+    public JavaRDD<GATKRead> getParquetReads(final String inputPath, final TraversalParameters traversalParameters, final Set<ReadsParquetFormat.ReadColumn> columns) {
+        return ReadsParquetFormat.readReads(ctx, inputPath, traversalParameters, columns);
+    }
+
     /**
      * Loads the header using Hadoop-BAM.
      * @param filePath path to the bam.
@@ -207,6 +387,10 @@ public final class ReadsSparkSource implements Serializable {
      * @return the header for the bam.
      */
     public SAMFileHeader getHeader(final String filePath, final String referencePath) {
+        if (ReadsParquetFormat.isParquet(filePath)) {
+            return ReadsParquetFormat.readHeader(filePath, ctx.hadoopConfiguration());
+        }
+
         // GCS case
         if (BucketUtils.isCloudStorageUrl(filePath)) {
             try (ReadsDataSource readsDataSource = new ReadsDataSource(IOUtils.getPath(filePath))) {
@@ -0,0 +1,91 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import htsjdk.samtools.*;
+import htsjdk.samtools.util.CloseableIterator;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.seqdoop.hadoop_bam.FileVirtualSplit;
+import org.seqdoop.hadoop_bam.util.WrapSeekable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves the boundaries between the splits of read name grouped BAMs so that the reads of a template never straddle two
+ * splits, which lets Spark tools that work on templates, such as MarkDuplicatesSpark, group reads by name within
+ * partitions without first fixing up the partitions with another Spark job.
+ *
+ * Each boundary between two splits of a file is moved forward to the start of the first template that starts at or after
+ * the first record of the second split, by reading the records of the template at the boundary. This only reads a few records at each boundary, and if a template
+ * covers a whole split that split is dropped.
+ */
+final class TemplateSplitAdjuster {
+
+    private TemplateSplitAdjuster() {}
+
+    /**
+     * @param splits the splits of one or more BAMs, sorted by file and then by offset, as {@link FileVirtualSplit}s
+     * @return the splits with their boundaries moved to the starts of templates
+     */
+    static List<InputSplit> keepTemplatesTogether(final List<InputSplit> splits, final Configuration conf) throws IOException {
+        final List<InputSplit> result = new ArrayList<>(splits.size());
+        int fileStart = 0;
+        while (fileStart < splits.size()) {
+            final Path path = ((FileVirtualSplit) splits.get(fileStart)).getPath();
+            int fileEnd = fileStart + 1;
+            while (fileEnd < splits.size() && ((FileVirtualSplit) splits.get(fileEnd)).getPath().equals(path)) {
+                fileEnd++;
+            }
+            result.addAll(keepTemplatesTogether(path, splits.subList(fileStart, fileEnd), conf));
+            fileStart = fileEnd;
+        }
+        return result;
+    }
+
+    private static List<InputSplit> keepTemplatesTogether(final Path path, final List<InputSplit> fileSplits, final Configuration conf) throws IOException {
+        if (fileSplits.size() == 1) {
+            return fileSplits;
+        }
+        final List<InputSplit> result = new ArrayList<>(fileSplits.size());
+        final long endOfFile = ((FileVirtualSplit) fileSplits.get(fileSplits.size() - 1)).getEndVirtualOffset();
+        try (final SamReader reader = SamReaderFactory.makeDefault()
+                .validationStringency(ValidationStringency.SILENT)
+                .enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS)
+                .open(SamInputResource.of(WrapSeekable.openPath(conf, path)))) {
+            long start = ((FileVirtualSplit) fileSplits.get(0)).getStartVirtualOffset();
+            for (int n = 0; n < fileSplits.size(); n++) {
+                final FileVirtualSplit split = (FileVirtualSplit) fileSplits.get(n);
+                // the end of a split is not always the offset of a record (without a splitting index Hadoop-BAM ends
+                // splits at the last possible virtual offset of a block), but the start of the next split always is
+                final long end = n == fileSplits.size() - 1 ? endOfFile
+                        : startOfNextTemplate(reader, ((FileVirtualSplit) fileSplits.get(n + 1)).getStartVirtualOffset(), endOfFile);
+                if (start < end) {
+                    result.add(new FileVirtualSplit(path, start, end, split.getLocations()));
+                }
+                start = Math.max(start, end);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The virtual offset of the first record at or after the given offset whose name differs from the name of the record
+     * at that offset, or the end of the file if there is none
+     */
+    private static long startOfNextTemplate(final SamReader reader, final long offset, final long endOfFile) {
+        try (final CloseableIterator<SAMRecord> records = reader.indexing().iterator(new BAMFileSpan(new Chunk(offset, endOfFile)))) {
+            String templateName = null;
+            while (records.hasNext()) {
+                final SAMRecord record = records.next();
+                if (templateName == null) {
+                    templateName = record.getReadName();
+                } else if (!record.getReadName().equals(templateName)) {
+                    return ((BAMFileSpan) record.getFileSource().getFilePointer()).getChunks().get(0).getChunkStart();
+                }
+            }
+            return endOfFile;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.FlatMapFunction;
 import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.storage.StorageLevel;
 import org.broadinstitute.barclay.argparser.*;
 import org.broadinstitute.barclay.argparser.Advanced;
 import org.broadinstitute.barclay.argparser.Argument;
@@ -22,6 +23,7 @@ import org.broadinstitute.hellbender.cmdline.programgroups.ShortVariantDiscovery
 import org.broadinstitute.hellbender.engine.*;
 import org.broadinstitute.hellbender.engine.spark.datasources.ReferenceMultiSparkSource;
 import org.broadinstitute.hellbender.engine.filters.ReadFilter;
+import org.broadinstitute.hellbender.engine.spark.CostBalancedPartitioner;
 import org.broadinstitute.hellbender.engine.spark.GATKSparkTool;
 import org.broadinstitute.hellbender.engine.ShardToMultiIntervalShardAdapter;
 import org.broadinstitute.hellbender.engine.spark.SparkSharder;
@@ -36,6 +38,7 @@ import org.broadinstitute.hellbender.tools.walkers.haplotypecaller.ReferenceConf
 import org.broadinstitute.hellbender.utils.IntervalUtils;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
 import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.activityprofile.ActivityProfileState;
 import org.broadinstitute.hellbender.utils.downsampling.PositionalDownsampler;
 import org.broadinstitute.hellbender.utils.downsampling.ReadsDownsampler;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
@@ -117,6 +120,12 @@ public final class HaplotypeCallerSpark extends GATKSparkTool {
         @Argument(fullName = AssemblyRegionWalker.PROPAGATION_LONG_NAME, doc="Upper limit on how many bases away probability mass can be moved around when calculating the boundaries between active and inactive assembly regions", optional = true)
         public int maxProbPropagationDistance = HaplotypeCaller.DEFAULT_MAX_PROB_PROPAGATION_DISTANCE;
 
+        @Advanced
+        @Argument(fullName = "balance-assembly-regions", doc = "Find the assembly regions first, then move them between partitions so that the partitions have about " +
+                "the same estimated cost of calling variants, based on the number of reads and size of each region. This avoids partitions with high-depth " +
+                "regions holding up the job, at the cost of shuffling the regions.", optional = true)
+        public boolean balanceAssemblyRegions = false;
+
     }
 
     @ArgumentCollection
@@ -199,13 +208,17 @@ public final class HaplotypeCallerSpark extends GATKSparkTool {
         final VariantAnnotatorEngine variantannotatorEngine = new VariantAnnotatorEngine(annotations,  hcArgs.dbsnp.dbsnp, hcArgs.comps, hcArgs.emitReferenceConfidence != ReferenceConfidenceMode.NONE);
 
         final HaplotypeCallerEngine hcEngine = new HaplotypeCallerEngine(hcArgs, false, false, readsHeader, new ReferenceMultiSourceAdapter(reference), variantannotatorEngine);
-        final JavaRDD<VariantContext> variants = callVariantsWithHaplotypeCaller(ctx, coordinateSortedReads, readsHeader, reference, intervals, hcArgs, shardingArgs, variantannotatorEngine);
+        final List<JavaRDD<?>> persistedRDDs = new ArrayList<>();
+        final JavaRDD<VariantContext> variants = callVariantsWithHaplotypeCaller(ctx, coordinateSortedReads, readsHeader, reference, intervals, hcArgs, shardingArgs, variantannotatorEngine, persistedRDDs);
         variants.cache(); // without caching, computations are run twice as a side effect of finding partition boundaries for sorting
         try {
             VariantsSparkSink.writeVariants(ctx, output, variants, hcEngine.makeVCFHeader(readsHeader.getSequenceDictionary(), new HashSet<>()),
                     hcArgs.emitReferenceConfidence == ReferenceConfidenceMode.GVCF, hcArgs.GVCFGQBands, hcArgs.genotypeArgs.samplePloidy);
         } catch (IOException e) {
             throw new UserException.CouldNotCreateOutputFile(output, "writing failed", e);
+        } finally {
+            variants.unpersist();
+            persistedRDDs.forEach(JavaRDD::unpersist);
         }
     }
 
@@ -222,6 +235,8 @@ public final class HaplotypeCallerSpark extends GATKSparkTool {
      * @param hcArgs haplotype caller arguments
      * @param shardingArgs arguments to control how the assembly regions are sharded
      * @param variantannotatorEngine
+     * @param persistedRDDs the RDDs this persists are added to this list, for the caller to unpersist once it has run an
+     *                      action on the variants
      * @return an RDD of Variants
      */
     public static JavaRDD<VariantContext> callVariantsWithHaplotypeCaller(
@@ -232,7 +247,9 @@ public final class HaplotypeCallerSpark extends GATKSparkTool {
             final List<SimpleInterval> intervals,
             final HaplotypeCallerArgumentCollection hcArgs,
             final ShardingArgumentCollection shardingArgs,
-            final VariantAnnotatorEngine variantannotatorEngine) {
+            final VariantAnnotatorEngine variantannotatorEngine,
+            final List<JavaRDD<?>> persistedRDDs) {
+        Utils.nonNull(persistedRDDs);
         Utils.validateArg(hcArgs.dbsnp.dbsnp == null, "HaplotypeCallerSpark does not yet support -D or --dbsnp arguments" );
         Utils.validateArg(hcArgs.comps.isEmpty(), "HaplotypeCallerSpark does not yet support -comp or --comp arguments" );
         Utils.validateArg(hcArgs.bamOutputPath == null, "HaplotypeCallerSpark does not yet support -bamout or --bamOutput");
@@ -251,13 +268,67 @@ public final class HaplotypeCallerSpark extends GATKSparkTool {
 
         final JavaRDD<Shard<GATKRead>> readShards = SparkSharder.shard(ctx, reads, GATKRead.class, header.getSequenceDictionary(), shardBoundaries, maxReadLength);
 
-        final JavaRDD<Tuple2<AssemblyRegion, SimpleInterval>> assemblyRegions = readShards
+        JavaRDD<Tuple2<AssemblyRegion, SimpleInterval>> assemblyRegions = readShards
                 .mapPartitions(shardsToAssemblyRegions(referenceBroadcast,
                                                        hcArgsBroadcast, shardingArgs, header, annotatorEngineBroadcast));
 
+        if (shardingArgs.balanceAssemblyRegions) {
+            // the regions are used once to estimate their costs and again to repartition them, so they are persisted rather
+            // than found twice. Every region refers to the header, so they are persisted and shuffled without it
+            final JavaRDD<HeaderlessAssemblyRegion> headerlessRegions = assemblyRegions.map(HeaderlessAssemblyRegion::new)
+                    .persist(StorageLevel.MEMORY_AND_DISK());
+            persistedRDDs.add(headerlessRegions);
+            assemblyRegions = CostBalancedPartitioner.repartitionByCost(headerlessRegions, region -> region.cost)
+                    .map(region -> region.toAssemblyRegion(header));
+        }
+
         return assemblyRegions.mapPartitions(callVariantsFromAssemblyRegions(header, referenceBroadcast, hcArgsBroadcast, annotatorEngineBroadcast));
     }
 
+    /**
+     * An estimate of the relative cost of calling variants in an assembly region. Assembling and genotyping an active
+     * region scales with both its number of reads and its size, while an inactive region is only traversed, if that.
+     */
+    @VisibleForTesting
+    static long estimateCallingCost(final AssemblyRegion region) {
+        final long numReads = region.getReads().size();
+        return region.isActive() ? 1 + numReads * region.getExtendedSpan().size() : 1 + numReads;
+    }
+
+    /**
+     * The contents of an assembly region and the interval it was generated in, without the header, along with the
+     * estimated cost of calling variants in the region.
+     */
+    private static final class HeaderlessAssemblyRegion {
+        private final SimpleInterval span;
+        private final List<ActivityProfileState> supportingStates;
+        private final boolean isActive;
+        private final int extension;
+        private final boolean isFinalized;
+        private final List<GATKRead> reads;
+        private final SimpleInterval shardInterval;
+        private final long cost;
+
+        HeaderlessAssemblyRegion(final Tuple2<AssemblyRegion, SimpleInterval> regionAndInterval) {
+            final AssemblyRegion region = regionAndInterval._1();
+            span = region.getSpan();
+            supportingStates = region.getSupportingStates();
+            isActive = region.isActive();
+            extension = region.getExtension();
+            isFinalized = region.isFinalized();
+            reads = region.getReads();
+            shardInterval = regionAndInterval._2();
+            cost = estimateCallingCost(region);
+        }
+
+        Tuple2<AssemblyRegion, SimpleInterval> toAssemblyRegion(final SAMFileHeader header) {
+            final AssemblyRegion region = new AssemblyRegion(span, supportingStates, isActive, extension, header);
+            region.addAll(reads);
+            region.setFinalized(isFinalized);
+            return new Tuple2<>(region, shardInterval);
+        }
+    }
+
     /**
      * Call variants from Tuples of AssemblyRegion and Simple Interval
      * The interval should be the non-padded shard boundary for the shard that the corresponding AssemblyRegion was
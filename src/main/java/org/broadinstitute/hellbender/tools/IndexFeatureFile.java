@@ -19,6 +19,7 @@ import org.broadinstitute.hellbender.engine.FeatureManager;
 import org.broadinstitute.hellbender.engine.ProgressMeter;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.codecs.ProgressReportingDelegatingCodec;
+import org.broadinstitute.hellbender.utils.codecs.binarygvcf.BinaryGVCFCodec;
 
 import java.io.File;
 import java.io.IOException;
@@ -108,6 +109,10 @@ public final class IndexFeatureFile extends CommandLineProgram {
             }
             // TODO: detection of GVCF files should not be file-extension-based. Need to come up with canonical
             // TODO: way of detecting GVCFs based on the contents (may require changes to the spec!)
+            else if (featureFile.getName().endsWith(BinaryGVCFCodec.BINARY_GVCF_EXTENSION)) {
+                // Binary GVCFs can only be queried with index bins that match their BGZF blocks
+                return IndexFactory.createLinearIndex(featureFile, codec, BinaryGVCFCodec.INDEX_BIN_SIZE);
+            }
             else if (featureFile.getName().endsWith(GVCF_FILE_EXTENSION)) {
                 // Optimize GVCF indices for the use case of having a large number of GVCFs open simultaneously
                 return IndexFactory.createLinearIndex(featureFile, codec, OPTIMAL_GVCF_INDEX_BIN_SIZE);
@@ -1,6 +1,9 @@
 package org.broadinstitute.hellbender.tools.genomicsdb;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.util.JsonFormat;
 import com.intel.genomicsdb.importer.GenomicsDBImporter;
 import com.intel.genomicsdb.importer.model.ChromosomeInterval;
 import com.intel.genomicsdb.model.Coordinates;
@@ -17,8 +20,11 @@ import htsjdk.tribble.TribbleException;
 import htsjdk.tribble.readers.LineIterator;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFFileReader;
+import htsjdk.variant.vcf.VCFFormatHeaderLine;
 import htsjdk.variant.vcf.VCFHeader;
 import htsjdk.variant.vcf.VCFHeaderLine;
+import htsjdk.variant.vcf.VCFInfoHeaderLine;
 import htsjdk.variant.vcf.VCFUtils;
 import org.broadinstitute.barclay.argparser.Advanced;
 import org.broadinstitute.barclay.argparser.Argument;
@@ -38,6 +44,7 @@ import org.broadinstitute.hellbender.utils.nio.SeekableByteChannelPrefetcher;
 import java.io.File;
 import java.io.IOException;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
@@ -103,6 +110,18 @@ import java.util.stream.Collectors;
  *       --reader-threads 5
  *  </pre>
  *
+ *  Add new samples to a workspace created by a previous run of the tool, using the same intervals as that run.
+ *
+ *  <pre>
+ *    gatk --java-options "-Xmx4g -Xms4g" \
+ *       GenomicsDBImport \
+ *       --genomicsdb-workspace-path my_database \
+ *       --update-existing-genomicsdb-workspace \
+ *       -L chr1:1000-10000 \
+ *       --sample-name-map new_samples.sample_map \
+ *       --tmp-dir=/path/to/large/tmp
+ *  </pre>
+ *
  *  The sample map is a tab-delimited text file with sample_name--tab--path_to_sample_vcf per line. Using a sample map
  *  saves the tool from having to download the GVCF headers in order to determine the sample names. Sample names in
  *  the sample name map file may have non-tab whitespace, but may not begin or end with whitespace.
@@ -118,7 +137,10 @@ import java.util.stream.Collectors;
  *     <li>IMPORTANT: The -Xmx value the tool is run with should be less than the total amount of physical memory available by at least a few GB, as the native TileDB library requires additional memory on top of the Java memory. Failure to leave enough memory for the native code can result in confusing error messages!</li>
  *     <li>At least one interval must be provided</li>
  *     <li>Input GVCFs cannot contain multiple entries for a single genomic position</li>
- *     <li>The --genomicsdb-workspace-path must point to a non-existent or empty directory.</li>
+ *     <li>The --genomicsdb-workspace-path must point to a non-existent or empty directory, unless --update-existing-genomicsdb-workspace is specified.</li>
+ *     <li>When updating an existing workspace, the intervals must be the same as those used to create the workspace,
+ *     the new GVCFs must have the same sequence dictionary as the workspace, the new samples must not already be present
+ *     in it, and the new GVCFs may not declare INFO or FORMAT header lines that the workspace does not already know about.</li>
  *     <li>GenomicsDBImport uses temporary disk storage during import. The amount of temporary disk storage required can exceed the space available, especially when specifying a large number of intervals. The command line argument `--tmp-dir` can be used to specify an alternate temporary storage location with sufficient space..</li>
  * </ul>
  *
@@ -140,6 +162,7 @@ public final class GenomicsDBImport extends GATKTool {
     public static final String WORKSPACE_ARG_LONG_NAME = "genomicsdb-workspace-path";
     public static final String SEGMENT_SIZE_ARG_LONG_NAME = "genomicsdb-segment-size";
     public static final String OVERWRITE_WORKSPACE_LONG_NAME = "overwrite-existing-genomicsdb-workspace";
+    public static final String UPDATE_WORKSPACE_LONG_NAME = "update-existing-genomicsdb-workspace";
 
     public static final String VCF_BUFFER_SIZE_ARG_NAME = "genomicsdb-vcf-buffer-size";
 
@@ -149,6 +172,7 @@ public final class GenomicsDBImport extends GATKTool {
     public static final String VALIDATE_SAMPLE_MAP_LONG_NAME = "validate-sample-name-map";
     public static final String VCF_INITIALIZER_THREADS_LONG_NAME = "reader-threads";
     public static final String MAX_NUM_INTERVALS_TO_IMPORT_IN_PARALLEL = "max-num-intervals-to-import-in-parallel";
+    public static final String PREFETCH_NEXT_BATCH_LONG_NAME = "prefetch-next-batch";
     public static final int INTERVAL_LIST_SIZE_WARNING_THRESHOLD = 100;
 
     @Argument(fullName = WORKSPACE_ARG_LONG_NAME,
@@ -187,9 +211,18 @@ public final class GenomicsDBImport extends GATKTool {
               doc = "Will overwrite given workspace if it exists. " +
                     "Otherwise a new workspace is created. " +
                     "Defaults to false",
-              optional = true)
+              optional = true,
+              mutex = {UPDATE_WORKSPACE_LONG_NAME})
     private Boolean overwriteExistingWorkspace = false;
 
+    @Argument(fullName = UPDATE_WORKSPACE_LONG_NAME,
+              doc = "Will add the input samples to the given workspace, which must have been created by a previous run " +
+                    "of this tool over the same intervals. Samples already in the workspace are not re-read, and none " +
+                    "of the input samples may already be present in it. Defaults to false",
+              optional = true,
+              mutex = {OVERWRITE_WORKSPACE_LONG_NAME})
+    private Boolean updateExistingWorkspace = false;
+
     @Argument(fullName = BATCHSIZE_ARG_LONG_NAME,
               doc = "Batch size controls the number of samples for which readers are open at once " +
                     "and therefore provides a way to minimize memory consumption. However, it can take longer to complete. " +
@@ -248,9 +281,26 @@ public final class GenomicsDBImport extends GATKTool {
             minValue = 1)
     private int maxNumIntervalsToImportInParallel = 1;
 
+    @Advanced
+    @Argument(fullName = PREFETCH_NEXT_BATCH_LONG_NAME,
+            shortName = PREFETCH_NEXT_BATCH_LONG_NAME,
+            doc = "Boolean flag to open the readers for the next batch in the background while the current batch is " +
+                  "being imported. At most one batch is prefetched, so at most two batches of readers are open at " +
+                  "the same time. Has no effect unless " + BATCHSIZE_ARG_LONG_NAME + " is specified, and cannot be " +
+                  "combined with a value of " + MAX_NUM_INTERVALS_TO_IMPORT_IN_PARALLEL + " greater than 1. " +
+                  "Defaults to false",
+            optional = true)
+    private Boolean prefetchNextBatch = false;
+
     //executor service used when vcfInitializerThreads > 1
     private ExecutorService inputPreloadExecutorService;
 
+    //executor service used to open the readers for the next batch when prefetchNextBatch is true
+    private ExecutorService batchPrefetchExecutorService;
+
+    //readers for the next batch, keyed by the lower sample index of that batch, being opened in the background
+    private final Map<Integer, Future<SortedMap<String, FeatureReader<VariantContext>>>> prefetchedBatches = new ConcurrentHashMap<>();
+
     @Override
     public boolean requiresIntervals() { return true; }
 
@@ -306,9 +356,16 @@ public final class GenomicsDBImport extends GATKTool {
     // used to write the callset json file on traversal success
     private GenomicsDBCallsetsMapProto.CallsetMappingPB callsetMappingPB;
 
+    // Callsets already present in the workspace when updating an existing workspace
+    private GenomicsDBCallsetsMapProto.CallsetMappingPB existingCallsetMappingPB;
+
     //in-progress batchCount
     private int batchCount = 1;
 
+    //start time and number of samples of the in-progress batch, used to report per-batch throughput
+    private long batchStartTimeNanos;
+    private int batchSampleCount;
+
     /**
      * Before traversal starts, create the feature readers
      * for all the input GVCFs, create the merged header and
@@ -319,6 +376,10 @@ public final class GenomicsDBImport extends GATKTool {
         assertVariantPathsOrSampleNameFileWasSpecified();
         initializeHeaderAndSampleMappings();
         initializeIntervals();
+        assertPrefetchIsCompatibleWithIntervalParallelism();
+        if (updateExistingWorkspace) {
+            initializeExistingWorkspaceMappings();
+        }
         super.onStartup();
     }
 
@@ -329,6 +390,13 @@ public final class GenomicsDBImport extends GATKTool {
         }
     }
 
+    private void assertPrefetchIsCompatibleWithIntervalParallelism() {
+        if (prefetchNextBatch && maxNumIntervalsToImportInParallel > 1 && intervals.size() > 1) {
+            throw new CommandLineException.BadArgumentValue("--" + PREFETCH_NEXT_BATCH_LONG_NAME + " cannot be used when importing " +
+                    "more than one interval in parallel (--" + MAX_NUM_INTERVALS_TO_IMPORT_IN_PARALLEL + " > 1)");
+        }
+    }
+
     /**
      * sets the values of mergedHeaderLines, mergedHeaderSequenceDictionary, and sampleNameToVcfPath
      */
@@ -375,6 +443,104 @@ public final class GenomicsDBImport extends GATKTool {
         }
     }
 
+    /**
+     * Loads the callsets already present in the workspace being updated, and checks that the new samples and
+     * header lines can be added to it
+     */
+    private void initializeExistingWorkspaceMappings() {
+        final File workspaceDir = new File(workspace);
+        if (!workspaceDir.exists()) {
+            throw new UserException("The workspace you're trying to update doesn't exist: " + workspaceDir.getAbsolutePath());
+        }
+        checkIfValidWorkspace(workspaceDir);
+
+        existingCallsetMappingPB = readCallsetMappingFromFile(new File(workspaceDir, GenomicsDBConstants.DEFAULT_CALLSETMAP_FILE_NAME));
+        final Set<String> existingSamples = existingCallsetMappingPB.getCallsetsList().stream()
+                .map(GenomicsDBCallsetsMapProto.SampleIDToTileDBIDMap::getSampleName)
+                .collect(Collectors.toSet());
+        final List<String> duplicateSamples = sampleNameToVcfPath.keySet().stream()
+                .filter(existingSamples::contains)
+                .collect(Collectors.toList());
+        if (!duplicateSamples.isEmpty()) {
+            throw new UserException("Samples " + duplicateSamples + " are already present in workspace " + workspaceDir.getAbsolutePath());
+        }
+
+        assertIntervalsMatchWorkspace(intervals, workspaceDir);
+
+        final File existingHeaderFile = new File(workspaceDir, GenomicsDBConstants.DEFAULT_VCFHEADER_FILE_NAME);
+        final VCFHeader existingHeader;
+        try (final VCFFileReader reader = new VCFFileReader(existingHeaderFile, false)) {
+            existingHeader = reader.getFileHeader();
+        }
+        assertSequenceDictionaryMatchesWorkspace(mergedHeaderSequenceDictionary, existingHeader.getSequenceDictionary());
+        assertHeaderLinesAreInExistingHeader(mergedHeaderLines, existingHeader);
+
+        // GenomicsDB builds the vid map for the import from these header lines, so use those the workspace was
+        // written with, which give the same field indices and contig offsets
+        mergedHeaderLines = new LinkedHashSet<>(existingHeader.getMetaDataInInputOrder());
+        mergedHeaderSequenceDictionary = existingHeader.getSequenceDictionary();
+    }
+
+    /**
+     * The columns of a workspace are laid out by its contigs, so new samples can only be added to it if their contigs
+     * are the same as the workspace's, in the same order and with the same lengths
+     */
+    @VisibleForTesting
+    static void assertSequenceDictionaryMatchesWorkspace(final SAMSequenceDictionary newDictionary, final SAMSequenceDictionary workspaceDictionary) {
+        if (workspaceDictionary == null || !workspaceDictionary.isSameDictionary(newDictionary)) {
+            throw new UserException("The sequence dictionary of the input GVCFs must be identical to that of the workspace being updated, " +
+                    "with the same contigs in the same order and with the same lengths");
+        }
+    }
+
+    /**
+     * Each interval of a workspace is stored in an array of its own, and new samples must be added to all of them,
+     * so the intervals to import must be exactly those the workspace was created with
+     */
+    @VisibleForTesting
+    static void assertIntervalsMatchWorkspace(final List<ChromosomeInterval> intervals, final File workspaceDir) {
+        final Set<String> requestedArrays = intervals.stream()
+                .map(GenomicsDBImport::getArrayName)
+                .collect(Collectors.toCollection(TreeSet::new));
+        final File[] arrayDirs = workspaceDir.listFiles(File::isDirectory);
+        final Set<String> workspaceArrays = arrayDirs == null ? Collections.emptySet() : Arrays.stream(arrayDirs)
+                .map(File::getName)
+                .collect(Collectors.toCollection(TreeSet::new));
+        if (!requestedArrays.equals(workspaceArrays)) {
+            throw new UserException("The intervals to import must be the same as those the workspace being updated was created with. " +
+                    "Requested " + requestedArrays + " but the workspace has " + workspaceArrays);
+        }
+    }
+
+    /**
+     * @return the name of the array GenomicsDB generates for an interval from its bounds
+     * (see {@link GenomicsDBImportConfiguration.Partition#getGenerateArrayNameFromPartitionBounds})
+     */
+    @VisibleForTesting
+    static String getArrayName(final ChromosomeInterval interval) {
+        return interval.getContig() + "$" + interval.getStart() + "$" + interval.getEnd();
+    }
+
+    /**
+     * Fields missing from the vid mapping of an existing workspace can't be imported into it,
+     * so they must all be declared in the header the workspace was created with
+     */
+    private static void assertHeaderLinesAreInExistingHeader(final Set<VCFHeaderLine> newHeaderLines, final VCFHeader existingHeader) {
+        final VCFHeader newHeader = new VCFHeader(newHeaderLines);
+        final List<String> missing = new ArrayList<>();
+        newHeader.getInfoHeaderLines().stream()
+                .map(VCFInfoHeaderLine::getID)
+                .filter(id -> !existingHeader.hasInfoLine(id))
+                .forEach(id -> missing.add("INFO=" + id));
+        newHeader.getFormatHeaderLines().stream()
+                .map(VCFFormatHeaderLine::getID)
+                .filter(id -> !existingHeader.hasFormatLine(id))
+                .forEach(id -> missing.add("FORMAT=" + id));
+        if (!missing.isEmpty()) {
+            throw new UserException("The input GVCFs declare header lines that are not present in the workspace being updated: " + missing);
+        }
+    }
+
     private VCFHeader getHeaderFromPath(final Path variantPath) {
         try(final AbstractFeatureReader<VariantContext, LineIterator> reader = getReaderFromPath(variantPath)) {
             return (VCFHeader) reader.getHeader();
@@ -462,11 +628,22 @@ public final class GenomicsDBImport extends GATKTool {
     @Override
     public void onTraversalStart() {
 
-        final File workspaceDir = overwriteOrCreateWorkspace();
-
-        vidMapJSONFile = new File(workspaceDir + "/" + GenomicsDBConstants.DEFAULT_VIDMAP_FILE_NAME);
-        callsetMapJSONFile = new File(workspaceDir + "/" + GenomicsDBConstants.DEFAULT_CALLSETMAP_FILE_NAME);
-        vcfHeaderFile = new File(workspaceDir + "/" + GenomicsDBConstants.DEFAULT_VCFHEADER_FILE_NAME);
+        final File workspaceDir = updateExistingWorkspace ? new File(workspace) : overwriteOrCreateWorkspace();
+
+        if (updateExistingWorkspace) {
+            // The mappings GenomicsDB writes only describe the new samples. The workspace's vid map and header
+            // already describe them (see initializeExistingWorkspaceMappings), and the new callsets are merged
+            // into the workspace's callset map once the import succeeds.
+            vidMapJSONFile = IOUtils.createTempFile("genomicsdb-update-vidmap", ".json");
+            callsetMapJSONFile = IOUtils.createTempFile("genomicsdb-update-callset", ".json");
+            vcfHeaderFile = IOUtils.createTempFile("genomicsdb-update-vcfheader", ".vcf");
+            logger.info("Adding " + sampleNameToVcfPath.size() + " samples to the " + existingCallsetMappingPB.getCallsetsCount()
+                    + " samples in GenomicsDB workspace: " + workspaceDir);
+        } else {
+            vidMapJSONFile = new File(workspaceDir + "/" + GenomicsDBConstants.DEFAULT_VIDMAP_FILE_NAME);
+            callsetMapJSONFile = new File(workspaceDir + "/" + GenomicsDBConstants.DEFAULT_CALLSETMAP_FILE_NAME);
+            vcfHeaderFile = new File(workspaceDir + "/" + GenomicsDBConstants.DEFAULT_VCFHEADER_FILE_NAME);
+        }
 
         logger.info("Vid Map JSON file will be written to " + vidMapJSONFile);
         logger.info("Callset Map JSON file will be written to " + callsetMapJSONFile);
@@ -474,6 +651,7 @@ public final class GenomicsDBImport extends GATKTool {
         logger.info("Importing to array - " + workspace + "/" + GenomicsDBConstants.DEFAULT_ARRAY_NAME);
 
         initializeInputPreloadExecutorService();
+        initializeBatchPrefetchExecutorService();
     }
 
     private void initializeInputPreloadExecutorService() {
@@ -488,17 +666,76 @@ public final class GenomicsDBImport extends GATKTool {
         }
     }
 
+    private void initializeBatchPrefetchExecutorService() {
+        if (prefetchNextBatch && batchSize != DEFAULT_ZERO_BATCH_SIZE) {
+            final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                    .setNameFormat("batchPrefetch-thread-%d")
+                    .setDaemon(true)
+                    .build();
+            batchPrefetchExecutorService = Executors.newSingleThreadExecutor(threadFactory);
+        } else {
+            batchPrefetchExecutorService = null;
+        }
+    }
+
     private Map<String, FeatureReader<VariantContext>> createSampleToReaderMap(
             final Map<String, Path> sampleNameToVcfPath, final int batchSize, final int index) {
+        final SortedMap<String, FeatureReader<VariantContext>> sampleToReaderMap;
+        if (batchPrefetchExecutorService != null) {
+            sampleToReaderMap = getPrefetchedFeatureReaders(sampleNameToVcfPath, batchSize, index);
+
+            // start opening the readers for the next batch while GenomicsDB imports this one
+            final int nextIndex = index + batchSize;
+            if (nextIndex < sampleNameToVcfPath.size()) {
+                prefetchedBatches.put(nextIndex, batchPrefetchExecutorService.submit(
+                        () -> getFeatureReaders(sampleNameToVcfPath, batchSize, nextIndex)));
+            }
+        } else {
+            sampleToReaderMap = getFeatureReaders(sampleNameToVcfPath, batchSize, index);
+        }
+        logger.info("Importing batch " + this.batchCount + " with " + sampleToReaderMap.size() + " samples");
+        batchSampleCount = sampleToReaderMap.size();
+        batchStartTimeNanos = System.nanoTime();
+        return sampleToReaderMap;
+    }
+
+    private SortedMap<String, FeatureReader<VariantContext>> getFeatureReaders(
+            final Map<String, Path> sampleNameToVcfPath, final int batchSize, final int index) {
         // TODO: fix casting since it's really ugly
         return inputPreloadExecutorService != null ?
                 getFeatureReadersInParallel((SortedMap<String, Path>) sampleNameToVcfPath, batchSize, index)
                 : getFeatureReadersSerially(sampleNameToVcfPath, batchSize, index);
     }
 
+    /**
+     * Returns the readers for the batch starting at the given index, waiting for them if they are still being
+     * prefetched, or opening them in the calling thread if this batch was never prefetched
+     */
+    private SortedMap<String, FeatureReader<VariantContext>> getPrefetchedFeatureReaders(
+            final Map<String, Path> sampleNameToVcfPath, final int batchSize, final int index) {
+        final Future<SortedMap<String, FeatureReader<VariantContext>>> prefetched = prefetchedBatches.remove(index);
+        if (prefetched == null) {
+            return getFeatureReaders(sampleNameToVcfPath, batchSize, index);
+        }
+        try {
+            return prefetched.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while waiting for the readers of the next batch", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof UserException) {
+                throw (UserException) e.getCause();
+            }
+            throw new UserException.CouldNotReadInputFile("Failure while waiting for prefetched FeatureReaders to initialize", e);
+        }
+    }
+
     private Void logMessageOnBatchCompletion(final BatchCompletionCallbackFunctionArgument arg) {
         progressMeter.update(intervals.get(0));
-        logger.info("Done importing batch " + arg.batchCount + "/" + arg.totalBatchCount);
+        final double elapsedSeconds = (System.nanoTime() - batchStartTimeNanos) / 1.0e9;
+        logger.info(String.format("Done importing batch %d/%d (%d samples in %.1f seconds, %.2f samples/second)",
+                arg.batchCount, arg.totalBatchCount, batchSampleCount, elapsedSeconds,
+                elapsedSeconds > 0 ? batchSampleCount / elapsedSeconds : 0.0));
         this.batchCount = arg.batchCount + 1;
         return null;
     }
@@ -528,7 +765,11 @@ public final class GenomicsDBImport extends GATKTool {
                 GenomicsDBImportConfiguration.ImportConfiguration.newBuilder();
         importConfigurationBuilder.addAllColumnPartitions(partitions);
         importConfigurationBuilder.setSizePerColumnPartition(vcfBufferSizePerSample);
-        importConfigurationBuilder.setFailIfUpdating(true);
+        importConfigurationBuilder.setFailIfUpdating(!updateExistingWorkspace);
+        if (updateExistingWorkspace) {
+            // new samples are written to the rows following those of the samples already in the workspace
+            importConfigurationBuilder.setLbCallsetRowIdx(getNextRowIdx(existingCallsetMappingPB));
+        }
         importConfigurationBuilder.setSegmentSize(segmentSize);
         importConfigurationBuilder.setConsolidateTiledbArrayAfterLoad(doConsolidation);
         ImportConfig importConfig = new ImportConfig(importConfigurationBuilder.build(), validateSampleToReaderMap, true,
@@ -567,6 +808,12 @@ public final class GenomicsDBImport extends GATKTool {
 
     @Override
     public Object onTraversalSuccess() {
+        if (updateExistingWorkspace) {
+            final GenomicsDBCallsetsMapProto.CallsetMappingPB newCallsets = readCallsetMappingFromFile(callsetMapJSONFile);
+            writeCallsetMappingToFile(mergeCallsetMappings(existingCallsetMappingPB, newCallsets),
+                    new File(workspace, GenomicsDBConstants.DEFAULT_CALLSETMAP_FILE_NAME));
+            logger.info("Workspace now contains " + (existingCallsetMappingPB.getCallsetsCount() + newCallsets.getCallsetsCount()) + " samples");
+        }
         if (batchSize == DEFAULT_ZERO_BATCH_SIZE) {
             logger.info("Import completed!");
         } else {
@@ -612,7 +859,6 @@ public final class GenomicsDBImport extends GATKTool {
             }
         });
         logger.info("Finished batch preload");
-        logger.info("Importing batch " + this.batchCount + " with " + sampleToReaderMap.size() + " samples");
         return sampleToReaderMap;
     }
 
@@ -625,7 +871,6 @@ public final class GenomicsDBImport extends GATKTool {
             final AbstractFeatureReader<VariantContext, LineIterator> reader = getReaderFromPath(sampleNameToPath.get(sampleName));
             sampleToReaderMap.put(sampleName, reader);
         }
-        logger.info("Importing batch " + this.batchCount + " with " + sampleToReaderMap.size() + " samples");
         return sampleToReaderMap;
     }
 
@@ -676,6 +921,62 @@ public final class GenomicsDBImport extends GATKTool {
         }
     }
 
+    /**
+     * Appends the callsets of newly imported samples to those already in a workspace. The new callsets keep their
+     * relative order and are assigned the rows following the last existing row, which is where
+     * {@link #createImportConfig} directs GenomicsDB to write them.
+     *
+     * @param existing  callsets already in the workspace
+     * @param added  callsets of the newly imported samples, as written by GenomicsDB
+     * @return callset mapping containing the existing callsets followed by the added ones
+     */
+    @VisibleForTesting
+    static GenomicsDBCallsetsMapProto.CallsetMappingPB mergeCallsetMappings(final GenomicsDBCallsetsMapProto.CallsetMappingPB existing,
+                                                                           final GenomicsDBCallsetsMapProto.CallsetMappingPB added) {
+        final GenomicsDBCallsetsMapProto.CallsetMappingPB.Builder merged = existing.toBuilder();
+        final long firstNewRow = getNextRowIdx(existing);
+        final List<GenomicsDBCallsetsMapProto.SampleIDToTileDBIDMap> addedCallsets = added.getCallsetsList().stream()
+                .sorted(Comparator.comparingLong(GenomicsDBCallsetsMapProto.SampleIDToTileDBIDMap::getRowIdx))
+                .collect(Collectors.toList());
+        for (int i = 0; i < addedCallsets.size(); i++) {
+            merged.addCallsets(addedCallsets.get(i).toBuilder().setRowIdx(firstNewRow + i));
+        }
+        return merged.build();
+    }
+
+    /**
+     * @return the row following the last row of the callsets in a workspace, where new samples are written
+     */
+    @VisibleForTesting
+    static long getNextRowIdx(final GenomicsDBCallsetsMapProto.CallsetMappingPB existing) {
+        return existing.getCallsetsList().stream()
+                .mapToLong(GenomicsDBCallsetsMapProto.SampleIDToTileDBIDMap::getRowIdx)
+                .max().orElse(-1L) + 1;
+    }
+
+    @VisibleForTesting
+    static GenomicsDBCallsetsMapProto.CallsetMappingPB readCallsetMappingFromFile(final File callsetJSONFile) {
+        final GenomicsDBCallsetsMapProto.CallsetMappingPB.Builder builder = GenomicsDBCallsetsMapProto.CallsetMappingPB.newBuilder();
+        try {
+            final String json = new String(Files.readAllBytes(callsetJSONFile.toPath()), StandardCharsets.UTF_8);
+            JsonFormat.parser().merge(json, builder);
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(callsetJSONFile, "exception while reading GenomicsDB callset mapping", e);
+        }
+        return builder.build();
+    }
+
+    @VisibleForTesting
+    static void writeCallsetMappingToFile(final GenomicsDBCallsetsMapProto.CallsetMappingPB callsetMappingPB, final File callsetJSONFile) {
+        try {
+            Files.write(callsetJSONFile.toPath(), JsonFormat.printer().print(callsetMappingPB).getBytes(StandardCharsets.UTF_8));
+        } catch (final InvalidProtocolBufferException e) {
+            throw new GATKException("Unable to serialize GenomicsDB callset mapping", e);
+        } catch (final IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(callsetJSONFile, "exception while writing GenomicsDB callset mapping", e);
+        }
+    }
+
     static class UnableToCreateGenomicsDBWorkspace extends UserException {
         private static final long serialVersionUID = 1L;
 
@@ -727,6 +1028,28 @@ public final class GenomicsDBImport extends GATKTool {
         if(inputPreloadExecutorService != null) {
             inputPreloadExecutorService.shutdownNow();
         }
+        if(batchPrefetchExecutorService != null) {
+            batchPrefetchExecutorService.shutdownNow();
+            closePrefetchedReaders();
+        }
+    }
+
+    // readers for a batch that was prefetched but never imported (e.g. because the import failed) must still be closed
+    private void closePrefetchedReaders() {
+        prefetchedBatches.values().forEach(future -> {
+            if (future.isDone() && !future.isCancelled()) {
+                try {
+                    for (final FeatureReader<VariantContext> reader : future.get().values()) {
+                        reader.close();
+                    }
+                } catch (final InterruptedException | ExecutionException | IOException e) {
+                    logger.warn("Unable to close prefetched reader", e);
+                }
+            } else {
+                future.cancel(true);
+            }
+        });
+        prefetchedBatches.clear();
     }
 
     /**
@@ -15,6 +15,7 @@ public class BwaArgumentCollection implements Serializable {
     public static final String SINGLE_END_ALIGNMENT_SHORT_NAME = "se";
     public static final String BWA_MEM_INDEX_IMAGE_FULL_NAME = "bwa-mem-index-image";
     public static final String BWA_MEM_INDEX_IMAGE_SHORT_NAME = "image";
+    public static final String ALIGNMENT_BATCH_SIZE_FULL_NAME = "alignment-batch-size";
 
     /**
      * The BWA-MEM index image file name that you've distributed to each executor. The image file can be generated using
@@ -35,4 +36,15 @@ public class BwaArgumentCollection implements Serializable {
             shortName = SINGLE_END_ALIGNMENT_SHORT_NAME,
             optional = true)
     public boolean singleEndAlignment = false;
+
+    /**
+     * The number of reads to align in each call to BWA. Each partition is aligned in batches of this size, so that one
+     * batch can be aligned while the reads of the next are being prepared and those of the previous are being written.
+     * BWA-MEM estimates the insert size distribution of pairs from each batch, so very small batches give poorer estimates.
+     */
+    @Argument(doc = "The number of reads to align in each call to BWA",
+            fullName = ALIGNMENT_BATCH_SIZE_FULL_NAME,
+            minValue = 1,
+            optional = true)
+    public int alignmentBatchSize = BwaSparkEngine.DEFAULT_BATCH_SIZE;
 }
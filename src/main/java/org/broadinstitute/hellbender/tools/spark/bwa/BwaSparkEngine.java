@@ -1,21 +1,30 @@
 package org.broadinstitute.hellbender.tools.spark.bwa;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMSequenceDictionary;
 import org.apache.spark.SparkFiles;
+import org.apache.spark.TaskContext;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.util.TaskCompletionListener;
 import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.bwa.*;
+import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
 import org.broadinstitute.hellbender.utils.io.IOUtils;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.read.SAMRecordToGATKReadAdapter;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The BwaSparkEngine provides a simple interface for transforming a JavaRDD<GATKRead> in which the reads are paired
@@ -30,9 +39,25 @@ import java.util.*;
  */
 public final class BwaSparkEngine implements AutoCloseable {
     private static final String REFERENCE_INDEX_IMAGE_FILE_SUFFIX = ".img";
+    /**
+     * Spark property for a local directory, seen by all the executors on a host, in which they share a copy of a
+     * distributed index image. When it isn't set, each executor maps the copy Spark made for it. A copy is removed when
+     * a newer version of the same image is shared, and the latest copy of each image is kept for later jobs, so the
+     * directory can be deleted when no jobs are running to free the space.
+     */
+    public static final String SHARED_INDEX_IMAGE_DIRECTORY_PROPERTY = "spark.gatk.bwa.sharedIndexImageDirectory";
+    /**
+     * The default number of reads aligned in each call to BWA, which is about as many bases as BWA-MEM itself
+     * processes in a batch for reads of 100 bases.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 100_000;
     private final JavaSparkContext ctx;
     private final String indexFileName;
     private final boolean resolveIndexFileName;
+    // for a distributed image, identifies the image among shared copies on the executors
+    private final String indexImageVersion;
+    private final String sharedIndexImageDirectory;
+    private final int batchSize;
     private final Broadcast<SAMFileHeader> broadcastHeader;
 
     /**
@@ -48,18 +73,51 @@ public final class BwaSparkEngine implements AutoCloseable {
                           final String indexFileName,
                           SAMFileHeader inputHeader,
                           final SAMSequenceDictionary refDictionary) {
+        this(ctx, referenceFile, indexFileName, inputHeader, refDictionary, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param ctx           the Spark context
+     * @param referenceFile the path to the reference file named <i>_prefix_.fa</i>, which is used to find the image file with name <i>_prefix_.fa.img</i>.
+     *                      Can be <code>null</code> if the indexFileName is provided.
+     * @param indexFileName the index image file name that already exists, or <code>null</code> to have the image file automatically distributed.
+     * @param inputHeader   the SAM file header to use for reads
+     * @param refDictionary the sequence dictionary to use for reads if the SAM file header doesn't have one (or it's empty)
+     * @param batchSize     the number of reads to align in each call to BWA
+     */
+    public BwaSparkEngine(final JavaSparkContext ctx,
+                          final String referenceFile,
+                          final String indexFileName,
+                          SAMFileHeader inputHeader,
+                          final SAMSequenceDictionary refDictionary,
+                          final int batchSize) {
         Utils.nonNull(referenceFile);
         Utils.nonNull(inputHeader);
+        Utils.validateArg(batchSize > 0, "batchSize must be positive");
         this.ctx = ctx;
+        this.batchSize = batchSize;
         if (indexFileName != null) {
             this.indexFileName = indexFileName;
             this.resolveIndexFileName = false;
+            this.indexImageVersion = null;
         } else {
             String indexFile = referenceFile + REFERENCE_INDEX_IMAGE_FILE_SUFFIX;
+            // check the image before shipping it, rather than having every executor fail to load it
+            try {
+                if (!BucketUtils.fileExists(indexFile) || BucketUtils.fileSize(indexFile) == 0) {
+                    throw new UserException.CouldNotReadInputFile(indexFile, "the index image is missing or empty");
+                }
+                // the size, modification time and location tell shared copies of different images apart
+                this.indexImageVersion = BucketUtils.fileSize(indexFile) + "-" + BucketUtils.fileModificationTime(indexFile) +
+                        "-" + Integer.toHexString(indexFile.hashCode());
+            } catch (final IOException e) {
+                throw new UserException.CouldNotReadInputFile(indexFile, e);
+            }
             ctx.addFile(indexFile); // distribute index file to all executors
             this.indexFileName = IOUtils.getPath(indexFile).getFileName().toString();
             this.resolveIndexFileName = true;
         }
+        this.sharedIndexImageDirectory = ctx.getConf().get(SHARED_INDEX_IMAGE_DIRECTORY_PROPERTY, null);
 
         if (inputHeader.getSequenceDictionary() == null || inputHeader.getSequenceDictionary().isEmpty()) {
             Utils.nonNull(refDictionary);
@@ -100,8 +158,21 @@ public final class BwaSparkEngine implements AutoCloseable {
         final Broadcast<SAMFileHeader> broadcastHeader = this.broadcastHeader;
         final String indexFileName = this.indexFileName;
         final boolean resolveIndexFileName = this.resolveIndexFileName;
-        return unalignedReads.mapPartitions(itr ->
-                new ReadAligner(resolveIndexFileName ? SparkFiles.get(indexFileName) : indexFileName, broadcastHeader.value(), pairedAlignment).apply(itr));
+        final String indexImageVersion = this.indexImageVersion;
+        final String sharedIndexImageDirectory = this.sharedIndexImageDirectory;
+        final int batchSize = this.batchSize;
+        return unalignedReads.mapPartitions(itr -> {
+            final BwaMemIndex bwaMemIndex;
+            if (!resolveIndexFileName) {
+                bwaMemIndex = BwaMemIndexCache.getInstance(indexFileName);
+            } else if (sharedIndexImageDirectory != null) {
+                // executors on a host map a single copy of a distributed image, so they share its pages
+                bwaMemIndex = BwaMemIndexCache.getSharedInstance(SparkFiles.get(indexFileName), indexImageVersion, sharedIndexImageDirectory);
+            } else {
+                bwaMemIndex = BwaMemIndexCache.getDistributedInstance(SparkFiles.get(indexFileName));
+            }
+            return new ReadAligner(bwaMemIndex, broadcastHeader.value(), pairedAlignment, batchSize).apply(itr);
+        });
     }
 
     @Override
@@ -110,76 +181,169 @@ public final class BwaSparkEngine implements AutoCloseable {
         BwaMemIndexCache.closeAllDistributedInstances(ctx);
     }
 
+    /**
+     * Aligns the reads of a partition in batches, as a pipeline: while BWA aligns one batch on a thread of its own, the
+     * next batch is read from the partition, and the alignments of the previous batch are turned into reads on another
+     * thread. At most {@link #BATCHES_IN_FLIGHT} batches are being read or aligned at once, in addition to the batch
+     * whose reads are being returned.
+     */
     private static final class ReadAligner {
+        private static final int BATCHES_IN_FLIGHT = 2;
+
         private final BwaMemIndex bwaMemIndex;
         private final SAMFileHeader readsHeader;
         private final boolean alignsPairs;
+        private final int batchSize;
 
-        // assumes 128Mb partitions, with reads needing about 100bytes each when BAM compressed
-        private static final int READS_PER_PARTITION_GUESS = 1500000;
-
-        ReadAligner( final String indexFileName, final SAMFileHeader readsHeader, final boolean alignsPairs) {
-            this.bwaMemIndex = BwaMemIndexCache.getInstance(indexFileName);
+        ReadAligner( final BwaMemIndex bwaMemIndex, final SAMFileHeader readsHeader, final boolean alignsPairs, final int batchSize ) {
+            this.bwaMemIndex = bwaMemIndex;
             this.readsHeader = readsHeader;
             this.alignsPairs = alignsPairs;
+            this.batchSize = batchSize;
             if ( alignsPairs && readsHeader.getSortOrder() != SAMFileHeader.SortOrder.queryname ) {
                 throw new UserException("Input must be queryname sorted unless you use single-ended alignment mode.");
             }
         }
 
         Iterator<GATKRead> apply( final Iterator<GATKRead> readItr ) {
-            final List<GATKRead> inputReads = new ArrayList<>(READS_PER_PARTITION_GUESS);
-            while ( readItr.hasNext() ) {
-                inputReads.add(readItr.next());
+            if ( !readItr.hasNext() ) {
+                return Collections.emptyIterator();
+            }
+            return new BatchPipeline(readItr);
+        }
+
+        private final class BatchPipeline implements Iterator<GATKRead> {
+            private final Iterator<GATKRead> readItr;
+            private final BwaMemAligner aligner;
+            private final List<String> refNames;
+            // only BWA runs on the alignment thread, so the aligner is only used by one thread at a time
+            private final ExecutorService alignmentThread;
+            private final ExecutorService conversionThread;
+            private final Deque<Future<List<GATKRead>>> batchesInFlight = new ArrayDeque<>(BATCHES_IN_FLIGHT);
+            private Iterator<GATKRead> alignedReads = Collections.emptyIterator();
+
+            BatchPipeline( final Iterator<GATKRead> readItr ) {
+                this.readItr = readItr;
+                aligner = new BwaMemAligner(bwaMemIndex);
+                // we are dealing with interleaved, paired reads.  tell BWA that they're paired.
+                if ( alignsPairs ) {
+                    aligner.alignPairs();
+                }
+                refNames = bwaMemIndex.getReferenceContigNames();
+                alignmentThread = Executors.newSingleThreadExecutor(
+                        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("bwa-align-%d").build());
+                conversionThread = Executors.newSingleThreadExecutor(
+                        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("bwa-convert-%d").build());
+                // stop the threads if the task ends without reading all the reads
+                final TaskContext taskContext = TaskContext.get();
+                if ( taskContext != null ) {
+                    taskContext.addTaskCompletionListener((TaskCompletionListener) context -> shutdown());
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                while ( !alignedReads.hasNext() ) {
+                    while ( batchesInFlight.size() < BATCHES_IN_FLIGHT && readItr.hasNext() ) {
+                        batchesInFlight.addLast(submitBatch(readBatch()));
+                    }
+                    if ( batchesInFlight.isEmpty() ) {
+                        shutdown();
+                        return false;
+                    }
+                    alignedReads = getAlignedReads(batchesInFlight.removeFirst()).iterator();
+                }
+                return true;
             }
-            final int nReads = inputReads.size();
-            if ( alignsPairs ) {
-                if ( (nReads & 1) != 0 ) {
-                    throw new GATKException("We're supposed to be aligning paired reads, but there are an odd number of them.");
+
+            @Override
+            public GATKRead next() {
+                if ( !hasNext() ) {
+                    throw new NoSuchElementException("No more aligned reads");
                 }
-                for ( int idx = 0; idx != nReads; idx += 2 ) {
-                    final String readName1 = inputReads.get(idx).getName();
-                    final String readName2 = inputReads.get(idx+1).getName();
-                    if ( !Objects.equals(readName1,readName2) ) {
-                        throw new GATKException("Read pair has varying template name: "+readName1+" .vs "+readName2);
+                return alignedReads.next();
+            }
+
+            private List<GATKRead> readBatch() {
+                final List<GATKRead> inputReads = new ArrayList<>(batchSize + 1);
+                // a batch of pairs always holds both reads of each pair
+                while ( readItr.hasNext() && (inputReads.size() < batchSize || (alignsPairs && (inputReads.size() & 1) != 0)) ) {
+                    inputReads.add(readItr.next());
+                }
+                final int nReads = inputReads.size();
+                if ( alignsPairs ) {
+                    if ( (nReads & 1) != 0 ) {
+                        throw new GATKException("We're supposed to be aligning paired reads, but there are an odd number of them.");
+                    }
+                    for ( int idx = 0; idx != nReads; idx += 2 ) {
+                        final String readName1 = inputReads.get(idx).getName();
+                        final String readName2 = inputReads.get(idx+1).getName();
+                        if ( !Objects.equals(readName1,readName2) ) {
+                            throw new GATKException("Read pair has varying template name: "+readName1+" .vs "+readName2);
+                        }
                     }
                 }
+                return inputReads;
             }
-            final List<List<BwaMemAlignment>> allAlignments;
-            if ( nReads == 0 ) allAlignments = Collections.emptyList();
-            else {
-                final List<byte[]> seqs = new ArrayList<>(nReads);
-                for (final GATKRead read : inputReads) {
+
+            private Future<List<GATKRead>> submitBatch( final List<GATKRead> inputReads ) {
+                final List<byte[]> seqs = new ArrayList<>(inputReads.size());
+                for ( final GATKRead read : inputReads ) {
                     seqs.add(read.getBases());
                 }
-                final BwaMemAligner aligner = new BwaMemAligner(bwaMemIndex);
-                // we are dealing with interleaved, paired reads.  tell BWA that they're paired.
-                if (alignsPairs) {
-                    aligner.alignPairs();
+                final Future<List<List<BwaMemAlignment>>> alignments = alignmentThread.submit(() -> aligner.alignSeqs(seqs));
+                return conversionThread.submit(() -> applyAlignments(inputReads, alignments.get()));
+            }
+
+            private List<GATKRead> applyAlignments( final List<GATKRead> inputReads, final List<List<BwaMemAlignment>> allAlignments ) {
+                final int nReads = inputReads.size();
+                final List<GATKRead> outputReads = new ArrayList<>(allAlignments.stream().mapToInt(List::size).sum());
+                for ( int idx = 0; idx != nReads; ++idx ) {
+                    final GATKRead originalRead = inputReads.get(idx);
+                    final String readName = originalRead.getName();
+                    final byte[] bases = originalRead.getBases();
+                    final byte[] quals = originalRead.getBaseQualities();
+                    final String readGroup = originalRead.getReadGroup();
+                    final List<BwaMemAlignment> alignments = allAlignments.get(idx);
+                    final Map<BwaMemAlignment,String> saTagMap = BwaMemAlignmentUtils.createSATags(alignments,refNames);
+                    for ( final BwaMemAlignment alignment : alignments ) {
+                        final SAMRecord samRecord =
+                                BwaMemAlignmentUtils.applyAlignment(readName, bases, quals, readGroup,
+                                                                    alignment, refNames, readsHeader, false, true);
+                        final GATKRead rec = SAMRecordToGATKReadAdapter.headerlessReadAdapter(samRecord);
+                        final String saTag = saTagMap.get(alignment);
+                        if ( saTag != null ) rec.setAttribute("SA", saTag);
+                        outputReads.add(rec);
+                    }
                 }
-                allAlignments = aligner.alignSeqs(seqs);
+                return outputReads;
             }
-            final List<String> refNames = bwaMemIndex.getReferenceContigNames();
-            final List<GATKRead> outputReads = new ArrayList<>(allAlignments.stream().mapToInt(List::size).sum());
-            for ( int idx = 0; idx != nReads; ++idx ) {
-                final GATKRead originalRead = inputReads.get(idx);
-                final String readName = originalRead.getName();
-                final byte[] bases = originalRead.getBases();
-                final byte[] quals = originalRead.getBaseQualities();
-                final String readGroup = originalRead.getReadGroup();
-                final List<BwaMemAlignment> alignments = allAlignments.get(idx);
-                final Map<BwaMemAlignment,String> saTagMap = BwaMemAlignmentUtils.createSATags(alignments,refNames);
-                for ( final BwaMemAlignment alignment : alignments ) {
-                    final SAMRecord samRecord =
-                            BwaMemAlignmentUtils.applyAlignment(readName, bases, quals, readGroup,
-                                                                alignment, refNames, readsHeader, false, true);
-                    final GATKRead rec = SAMRecordToGATKReadAdapter.headerlessReadAdapter(samRecord);
-                    final String saTag = saTagMap.get(alignment);
-                    if ( saTag != null ) rec.setAttribute("SA", saTag);
-                    outputReads.add(rec);
+
+            private List<GATKRead> getAlignedReads( final Future<List<GATKRead>> batch ) {
+                try {
+                    return batch.get();
+                } catch ( final InterruptedException e ) {
+                    shutdown();
+                    Thread.currentThread().interrupt();
+                    throw new GATKException("Interrupted while aligning reads", e);
+                } catch ( final ExecutionException e ) {
+                    shutdown();
+                    // the conversion of a batch fails with the failure of its alignment
+                    Throwable cause = e.getCause();
+                    while ( cause instanceof ExecutionException && cause.getCause() != null ) {
+                        cause = cause.getCause();
+                    }
+                    if ( cause instanceof RuntimeException ) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new GATKException("Failed to align reads", cause);
                 }
             }
-            return outputReads.iterator();
+
+            private void shutdown() {
+                alignmentThread.shutdownNow();
+                conversionThread.shutdownNow();
+            }
         }
     }
 }
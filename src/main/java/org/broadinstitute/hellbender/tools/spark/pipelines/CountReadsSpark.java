@@ -9,10 +9,13 @@ import org.broadinstitute.barclay.help.DocumentedFeature;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import org.broadinstitute.hellbender.cmdline.programgroups.CoverageAnalysisProgramGroup;
 import org.broadinstitute.hellbender.engine.spark.GATKSparkTool;
+import org.broadinstitute.hellbender.engine.spark.datasources.ReadsParquetFormat.ReadColumn;
 import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 
 import java.io.PrintStream;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * Calculate the overall number of reads in a SAM/BAM file
@@ -64,6 +67,12 @@ public final class CountReadsSpark extends GATKSparkTool {
     )
     public String out;
 
+    // counting needs no fields of the reads
+    @Override
+    public Set<ReadColumn> getReadColumns() {
+        return EnumSet.noneOf(ReadColumn.class);
+    }
+
     @Override
     protected void runTool(final JavaSparkContext ctx) {
         final JavaRDD<GATKRead> reads = getReads();
@@ -9,11 +9,14 @@ import org.broadinstitute.barclay.help.DocumentedFeature;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import picard.cmdline.programgroups.DiagnosticsAndQCProgramGroup;
 import org.broadinstitute.hellbender.engine.spark.GATKSparkTool;
+import org.broadinstitute.hellbender.engine.spark.datasources.ReadsParquetFormat.ReadColumn;
 import org.broadinstitute.hellbender.tools.FlagStat.FlagStatus;
 import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 
 import java.io.PrintStream;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * Spark tool to accumulate flag statistics given a BAM file, e.g. total number of reads with QC failure flag set, number of
@@ -66,6 +69,13 @@ public final class FlagStatSpark extends GATKSparkTool {
     )
     public String out;
 
+    // FlagStatus only looks at the flags, the positions of the read and its mate, and the mapping quality
+    @Override
+    public Set<ReadColumn> getReadColumns() {
+        return EnumSet.of(ReadColumn.FLAGS, ReadColumn.CONTIG, ReadColumn.START,
+                ReadColumn.MATE_CONTIG, ReadColumn.MATE_START, ReadColumn.MAPPING_QUALITY);
+    }
+
     @Override
     protected void runTool(final JavaSparkContext ctx) {
         final JavaRDD<GATKRead> reads = getReads();
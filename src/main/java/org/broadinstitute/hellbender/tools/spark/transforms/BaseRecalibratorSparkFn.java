@@ -32,6 +32,7 @@ public final class BaseRecalibratorSparkFn {
 
                 bqsr.processRead(readWithData._1(), refDS, variants);
             }
+            bqsr.flushAccumulatedCounts();
             return Arrays.asList(bqsr.getRecalibrationTables()).iterator();
         });
 
@@ -86,6 +86,7 @@ public final class BaseRecalibratorEngineSparkWrapper implements Serializable {
             }
         }
         ArrayList<RecalibrationTables> ret = new ArrayList<>();
+        recalibrationEngine.flushAccumulatedCounts();
         ret.add(recalibrationEngine.getRecalibrationTables());
         return ret.iterator();
     }
@@ -26,7 +26,6 @@ import org.broadinstitute.hellbender.utils.read.SAMRecordToGATKReadAdapter;
 import org.broadinstitute.hellbender.utils.read.markduplicates.GATKDuplicationMetrics;
 import org.broadinstitute.hellbender.utils.read.markduplicates.MarkDuplicatesScoringStrategy;
 import org.broadinstitute.hellbender.utils.read.markduplicates.SerializableOpticalDuplicatesFinder;
-import org.broadinstitute.hellbender.utils.spark.SparkUtils;
 import picard.cmdline.programgroups.ReadDataManipulationProgramGroup;
 import picard.sam.markduplicates.util.OpticalDuplicateFinder;
 import scala.Tuple2;
@@ -73,11 +72,12 @@ public final class MarkDuplicatesSpark extends GATKSparkTool {
      * Main method for marking duplicates, takes an JavaRDD of GATKRead and an associated SAMFileHeader with corresponding
      * sorting information and returns a new JavaRDD\<GATKRead\> in which all read templates have been marked as duplicates
      *
-     * NOTE: This method expects the incoming reads to be grouped by read name (queryname sorted/querygrouped) and for this
-     *       to be explicitly be set in the the provided header. Furthermore, all the reads in a template must be grouped
+     * NOTE: This method performs best when the incoming reads are grouped by read name (queryname sorted/querygrouped) and
+     *       this is explicitly set in the provided header, in which case all the reads in a template must be grouped
      *       into the same partition or there may be problems duplicate marking.
-     *       If MarkDuplicates detects reads are sorted in some other way, it will perform an extra sort operation first,
-     *       thus it is preferable to input reads to this method sorted for performance reasons.
+     *       If MarkDuplicates detects reads are sorted in some other way, it shuffles a small summary of each read to bring
+     *       the reads of each template together, rather than sorting the reads themselves. Either way the reads stay in
+     *       their partitions and in their order.
      *
      * @param reads input reads to be duplicate marked
      * @param header header corresponding to the input reads
@@ -92,21 +92,17 @@ public final class MarkDuplicatesSpark extends GATKSparkTool {
                                          final OpticalDuplicateFinder opticalDuplicateFinder,
                                          final int numReducers, final boolean dontMarkUnmappedMates) {
         final boolean markUnmappedMates = !dontMarkUnmappedMates;
-        SAMFileHeader headerForTool = header.clone();
 
-        // If the input isn't queryname sorted, sort it before duplicate marking
-        final JavaRDD<GATKRead> sortedReadsForMarking = querynameSortReadsIfNecessary(reads, numReducers, headerForTool);
-
-        final JavaPairRDD<MarkDuplicatesSparkUtils.IndexPair<String>, Integer> namesOfNonDuplicates = MarkDuplicatesSparkUtils.transformToDuplicateNames(headerForTool, scoringStrategy, opticalDuplicateFinder, sortedReadsForMarking, numReducers);
+        final JavaPairRDD<MarkDuplicatesSparkUtils.IndexPair<String>, Integer> namesOfNonDuplicates = MarkDuplicatesSparkUtils.transformToDuplicateNames(header, scoringStrategy, opticalDuplicateFinder, reads, numReducers);
 
         // Here we explicitly repartition the read names of the unmarked reads to match the partitioning of the original bam
         final JavaRDD<Tuple2<String,Integer>> repartitionedReadNames = namesOfNonDuplicates
                 .mapToPair(pair -> new Tuple2<>(pair._1.getIndex(), new Tuple2<>(pair._1.getValue(),pair._2)))
-                .partitionBy(new KnownIndexPartitioner(sortedReadsForMarking.getNumPartitions()))
+                .partitionBy(new KnownIndexPartitioner(reads.getNumPartitions()))
                 .values();
 
         // Here we combine the original bam with the repartitioned unmarked readnames to produce our marked reads
-        return sortedReadsForMarking.zipPartitions(repartitionedReadNames, (readsIter, readNamesIter)  -> {
+        return reads.zipPartitions(repartitionedReadNames, (readsIter, readNamesIter)  -> {
             final Map<String,Integer> namesOfNonDuplicateReadsAndOpticalCounts = new HashMap<>();
             readNamesIter.forEachRemaining(tup -> { if (namesOfNonDuplicateReadsAndOpticalCounts.putIfAbsent(tup._1,tup._2)!=null) {
                 throw new GATKException(String.format("Detected multiple mark duplicate records objects corresponding to read with name '%s', this could be the result of the file sort order being incorrect or that a previous tool has let readnames span multiple partitions",tup._1()));
@@ -140,20 +136,6 @@ public final class MarkDuplicatesSpark extends GATKSparkTool {
         });
     }
 
-    /**
-     * Sort reads into queryname order if they are not already sorted
-     */
-    private static JavaRDD<GATKRead> querynameSortReadsIfNecessary(JavaRDD<GATKRead> reads, int numReducers, SAMFileHeader headerForTool) {
-        JavaRDD<GATKRead> sortedReadsForMarking;
-        if (ReadUtils.isReadNameGroupedBam(headerForTool)) {
-            sortedReadsForMarking = reads;
-        } else {
-            headerForTool.setSortOrder(SAMFileHeader.SortOrder.queryname);
-            sortedReadsForMarking = SparkUtils.sortReadsAccordingToHeader(reads, headerForTool, numReducers);
-        }
-        return sortedReadsForMarking;
-    }
-
     /**
      * A custom partitioner designed to cut down on spark shuffle costs.
      * This is designed such that getPartition(key) is called on a key which corresponds to the already known target partition
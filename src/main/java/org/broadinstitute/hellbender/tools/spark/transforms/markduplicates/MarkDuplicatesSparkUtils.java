@@ -11,7 +11,6 @@ import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.broadcast.Broadcast;
-import org.broadinstitute.hellbender.engine.filters.ReadFilterLibrary;
 import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.metrics.MetricsUtils;
@@ -37,6 +36,14 @@ public class MarkDuplicatesSparkUtils {
 
     // Used to set an attribute on the GATKRead marking this read as an optical duplicate.
     public static final String OPTICAL_DUPLICATE_TOTAL_ATTRIBUTE_NAME = "OD";
+
+    // The order of the reads of a template: the first of pair before the second, then by the rest of the flags and where the read came from
+    private static final Comparator<ReadSummary> TEMPLATE_ORDER = Comparator.comparing((ReadSummary summary) -> !summary.isFirstOfPair())
+            .thenComparingInt(ReadSummary::getFlags)
+            .thenComparingInt(ReadSummary::getPartitionIndex)
+            .thenComparingInt(ReadSummary::getReferenceIndex)
+            .thenComparingInt(ReadSummary::getStrandedUnclippedStart);
+
     // This comparator represents the tiebreaking for PairedEnds duplicate marking.
     // We compare first on score, followed by unclipped start position (which is reversed here because of the expected ordering)
     private static final Comparator<TransientFieldPhysicalLocation> PAIRED_ENDS_SCORE_COMPARATOR = Comparator.comparing(TransientFieldPhysicalLocation::getScore)
@@ -97,11 +104,13 @@ public class MarkDuplicatesSparkUtils {
     }
 
     /**
-     * (0) filter: remove unpaired reads and reads with an unmapped mate.
-     * (1) keyReadsByName: label each read with its read group and read name.
-     * (2) GroupByKey: group together reads with the same group and name.
+     * (0) summarize: reduce each read to a {@link ReadSummary} holding its name, the partition it came from and the
+     *     alignment information needed to mark duplicates.
+     * (1) keySummariesByName: label each summary with its read name.
+     * (2) GroupByKey: group together the summaries of reads with the same name. This happens within partitions if the reads
+     *     are grouped by name, and otherwise shuffles the summaries, which are much smaller than the reads themselves.
      * (3) keyMarkDuplicatesSparkRecords with alignment info:
-     *   (a) Generate a fragment or emptyFragment from each read if it's unpaired.
+     *   (a) Generate a fragment or emptyFragment from each mapped read if it's unpaired.
      *   (b) Pair grouped reads into MarkDuplicatesSparkRecord. In most cases there will only be two reads
      *       with the same name. Mapped reads missing mates will be emitted as fragments, more than two reads will cause an exception.
      *   (c) Label each read with alignment information: Library, reference index,
@@ -113,88 +122,119 @@ public class MarkDuplicatesSparkUtils {
      *   (a) For each group created by (4), sort the pairs by score and mark all but the
      *       highest scoring as duplicates.
      *   (b) Determine which duplicates are optical duplicates and increase the overall count.
+     * (6) If the reads are not grouped by name, the reads of a template may be in several partitions, so the name of each
+     *     non-duplicate template is also emitted, with no optical duplicate count, for every other partition holding its reads.
      */
     static JavaPairRDD<IndexPair<String>, Integer> transformToDuplicateNames(final SAMFileHeader header, final MarkDuplicatesScoringStrategy scoringStrategy, final OpticalDuplicateFinder finder, final JavaRDD<GATKRead>  reads, final int numReducers) {
-        // we treat these specially and don't mark them as duplicates
-        final JavaRDD<GATKRead> mappedReads = reads.filter(ReadFilterLibrary.MAPPED::test);
-
-        final JavaPairRDD<String, Iterable<IndexPair<GATKRead>>> keyedReads = getReadsGroupedByName(header, mappedReads, numReducers);
-
         final Broadcast<Map<String, Short>> headerReadGroupIndexMap = JavaSparkContext.fromSparkContext(reads.context()).broadcast( getHeaderReadGroupIndexMap(header));
         final Broadcast<Map<String, Byte>> libraryIndex = JavaSparkContext.fromSparkContext(reads.context()).broadcast( constructLibraryIndex(header));
 
+        final JavaRDD<ReadSummary> summaries = reads.mapPartitionsWithIndex(
+                (index, iter) -> Utils.stream(iter).map(read -> {
+                    if (!(read.getClass() == SAMRecordToGATKReadAdapter.class)) {
+                        throw new GATKException(String.format("MarkDuplicatesSpark currently only supports SAMRecords as an underlying reads data source class, %s found instead",
+                                read.getClass().toString()));
+                    }
+                    return new ReadSummary(read, header, index, scoringStrategy, libraryIndex.getValue(), headerReadGroupIndexMap.getValue());
+                }).iterator(), false);
+
+        final JavaPairRDD<String, Iterable<ReadSummary>> keyedSummaries = getSummariesGroupedByName(header, summaries, numReducers);
+
         // Place all the reads into a single RDD of MarkDuplicatesSparkRecord objects
-        final JavaPairRDD<ReadsKey, MarkDuplicatesSparkRecord> pairedEnds = keyedReads.flatMapToPair(keyedRead -> {
-            final List<Tuple2<ReadsKey, MarkDuplicatesSparkRecord>> out = Lists.newArrayList();
-            final IndexPair<?>[] hadNonPrimaryRead = {null};
-
-            final List<IndexPair<GATKRead>> primaryReads = Utils.stream(keyedRead._2())
-                    ////// Making The Fragments //////
-                    // Make a PairedEnd object with no second read for each fragment (and an empty one for each paired read)
-                    .peek(readWithIndex -> {
-                        final GATKRead read = readWithIndex.getValue();
-                        if (!(read.isSecondaryAlignment()||read.isSupplementaryAlignment())) {
-                            PairedEnds fragment = (ReadUtils.readHasMappedMate(read)) ?
-                                    MarkDuplicatesSparkRecord.newEmptyFragment(read, header, libraryIndex.getValue()) :
-                                    MarkDuplicatesSparkRecord.newFragment(read, header, readWithIndex.getIndex(), scoringStrategy, libraryIndex.getValue());
-
-                            out.add(new Tuple2<>(fragment.key(), fragment));
-                        } else {
-                            hadNonPrimaryRead[0] = readWithIndex;
-                        }
-                    })
-                    .filter(indexPair -> !(indexPair.getValue().isSecondaryAlignment()||indexPair.getValue().isSupplementaryAlignment()))
-                    .collect(Collectors.toList());
-
-            // Catching the case where there are only secondary and supplementary reads in the readname group
-            if (primaryReads.isEmpty()) {
-                final MarkDuplicatesSparkRecord pass = MarkDuplicatesSparkRecord.getPassthrough((GATKRead)hadNonPrimaryRead[0].getValue(), hadNonPrimaryRead[0].getIndex());
-                out.add(new Tuple2<>(pass.key(), pass));
-                return out.iterator();
+        final JavaPairRDD<ReadsKey, MarkDuplicatesSparkRecord> pairedEnds = keyedSummaries.flatMapToPair(keyedSummary -> makeRecordsForTemplate(keyedSummary._2()).iterator());
 
-                // Mark duplicates cant properly handle templates with more than two reads in a pair
-            } else if (primaryReads.size()>2) {
-                throw new UserException.UnimplementedFeature(String.format("MarkDuplicatesSpark only supports singleton fragments and pairs. We found the following group with >2 primary reads: ( %d number of reads)." +
-                        " \n%s.", primaryReads.size(), primaryReads.stream().map(Object::toString).collect(Collectors.joining("\n"))));
-            }
+        final JavaPairRDD<ReadsKey, Iterable<MarkDuplicatesSparkRecord>> keyedPairs = pairedEnds.groupByKey(); //TODO evaluate replacing this with a smart aggregate by key.
 
-            ////// Making The Paired Reads //////
-            // Write each paired read with a mapped mate as a pair
-            final List<IndexPair<GATKRead>> mappedPair = primaryReads.stream()
-                    .filter(readWithIndex -> ReadUtils.readHasMappedMate(readWithIndex.getValue()))
-                    .collect(Collectors.toList());
-
-            // If there are two primary reads in the group pass them as a pair
-            if (mappedPair.size()==2) {
-                final GATKRead firstRead = mappedPair.get(0).getValue();
-                final IndexPair<GATKRead> secondRead = mappedPair.get(1);
-                final Pair pair = MarkDuplicatesSparkRecord.newPair(firstRead, secondRead.getValue(), header, secondRead.getIndex(), scoringStrategy, libraryIndex.getValue());
-                // Validate and add the read group to the pair
-                final Short readGroup = headerReadGroupIndexMap.getValue().get(firstRead.getReadGroup());
-                if (readGroup != null) {
-                    pair.setReadGroup(readGroup);
-                } else {
-                    throw (firstRead.getReadGroup()==null) ?
-                            new UserException.ReadMissingReadGroup(firstRead) :
-                            new UserException.HeaderMissingReadGroup(firstRead);
-                }
-                out.add(new Tuple2<>(pair.key(), pair));
+        final JavaPairRDD<IndexPair<String>, Integer> nonDuplicates = markDuplicateRecords(keyedPairs, finder);
+        if (ReadUtils.isReadNameGroupedBam(header)) {
+            return nonDuplicates;
+        }
+        return nonDuplicates.union(getNonDuplicatesInOtherPartitions(keyedSummaries, nonDuplicates));
+    }
 
-                // If there is one paired read in the template this probably means the bam is missing its mate, don't duplicate mark it
-            } else if (mappedPair.size()==1) {
-                final IndexPair<GATKRead> firstRead = mappedPair.get(0);
-                final MarkDuplicatesSparkRecord pass = MarkDuplicatesSparkRecord.getPassthrough(firstRead.getValue(), firstRead.getIndex());
+    /**
+     * Make the MarkDuplicatesSparkRecords of a template from the summaries of its reads
+     */
+    private static List<Tuple2<ReadsKey, MarkDuplicatesSparkRecord>> makeRecordsForTemplate(final Iterable<ReadSummary> template) {
+        final List<Tuple2<ReadsKey, MarkDuplicatesSparkRecord>> out = Lists.newArrayList();
+        final List<ReadSummary> primaryReads = new ArrayList<>(2);
+        ReadSummary nonPrimaryRead = null;
+
+        for (final ReadSummary read : template) {
+            // we treat unmapped reads specially and don't mark them as duplicates
+            if (read.isUnmapped()) {
+                continue;
+            }
+            ////// Making The Fragments //////
+            // Make a PairedEnd object with no second read for each fragment (and an empty one for each paired read)
+            if (read.isPrimary()) {
+                final PairedEnds fragment = read.hasMappedMate() ?
+                        MarkDuplicatesSparkRecord.newEmptyFragment(read) :
+                        MarkDuplicatesSparkRecord.newFragment(read);
+                out.add(new Tuple2<>(fragment.key(), fragment));
+                primaryReads.add(read);
+            } else {
+                nonPrimaryRead = read;
+            }
+        }
+
+        // Catching the case where there are only secondary and supplementary reads in the readname group
+        if (primaryReads.isEmpty()) {
+            if (nonPrimaryRead != null) {
+                final MarkDuplicatesSparkRecord pass = MarkDuplicatesSparkRecord.getPassthrough(nonPrimaryRead);
                 out.add(new Tuple2<>(pass.key(), pass));
             }
-            // If mappedPair is empty here, it probably means that we had a fragment with an unmapped mate, which has already been built
-            // and added to out. So we just pass through and return.
+            return out;
 
-            return out.iterator();
-        });
+            // Mark duplicates cant properly handle templates with more than two reads in a pair
+        } else if (primaryReads.size()>2) {
+            throw new UserException.UnimplementedFeature(String.format("MarkDuplicatesSpark only supports singleton fragments and pairs. We found the following group with >2 primary reads: ( %d number of reads)." +
+                    " \n%s.", primaryReads.size(), primaryReads.stream().map(Object::toString).collect(Collectors.joining("\n"))));
+        }
 
-        final JavaPairRDD<ReadsKey, Iterable<MarkDuplicatesSparkRecord>> keyedPairs = pairedEnds.groupByKey(); //TODO evaluate replacing this with a smart aggregate by key.
+        ////// Making The Paired Reads //////
+        // Write each paired read with a mapped mate as a pair
+        final List<ReadSummary> mappedPair = primaryReads.stream()
+                .filter(ReadSummary::hasMappedMate)
+                .collect(Collectors.toList());
+
+        // If there are two primary reads in the group pass them as a pair
+        if (mappedPair.size()==2) {
+            final ReadSummary firstRead = mappedPair.get(0);
+            final Pair pair = MarkDuplicatesSparkRecord.newPair(firstRead, mappedPair.get(1));
+            // the read group was validated when the read was summarized
+            pair.setReadGroup(firstRead.getReadGroupIndex());
+            out.add(new Tuple2<>(pair.key(), pair));
+
+            // If there is one paired read in the template this probably means the bam is missing its mate, don't duplicate mark it
+        } else if (mappedPair.size()==1) {
+            final MarkDuplicatesSparkRecord pass = MarkDuplicatesSparkRecord.getPassthrough(mappedPair.get(0));
+            out.add(new Tuple2<>(pass.key(), pass));
+        }
+        // If mappedPair is empty here, it probably means that we had a fragment with an unmapped mate, which has already been built
+        // and added to out. So we just pass through and return.
+
+        return out;
+    }
 
-        return markDuplicateRecords(keyedPairs, finder);
+    /**
+     * For each non-duplicate template whose reads are in several partitions, the name of the template for each partition
+     * other than the one it was marked in, so that its reads in those partitions are not marked as duplicates either. These
+     * have no optical duplicate count, so that the count is only set on the reads of one partition.
+     */
+    private static JavaPairRDD<IndexPair<String>, Integer> getNonDuplicatesInOtherPartitions(final JavaPairRDD<String, Iterable<ReadSummary>> keyedSummaries,
+                                                                                             final JavaPairRDD<IndexPair<String>, Integer> nonDuplicates) {
+        final JavaPairRDD<String, int[]> partitionsOfSplitTemplates = keyedSummaries
+                .mapValues(template -> Utils.stream(template).mapToInt(ReadSummary::getPartitionIndex).distinct().toArray())
+                .filter(template -> template._2().length > 1);
+
+        return nonDuplicates
+                .mapToPair(nonDuplicate -> new Tuple2<>(nonDuplicate._1().getValue(), nonDuplicate._1().getIndex()))
+                .join(partitionsOfSplitTemplates)
+                .flatMapToPair(template -> Arrays.stream(template._2()._2())
+                        .filter(partition -> partition != template._2()._1())
+                        .mapToObj(partition -> new Tuple2<>(new IndexPair<>(template._1(), partition), -1))
+                        .iterator());
     }
 
     /**
@@ -229,49 +269,22 @@ public class MarkDuplicatesSparkUtils {
     }
 
     /**
-     * Method that ensures the reads are grouped together keyed by their readname groups with indexpairs represeting the source partition.
-     * If the bam is querygrouped/queryname sorted then it calls spanReadsByKey to perform the mapping operation
-     * If the bam is sorted in some other way it performs a groupBy operation on the key
+     * Method that ensures the summaries of reads are grouped together keyed by their readname groups.
+     * If the bam is querygrouped/queryname sorted then it calls spanByKey to perform the mapping operation
+     * If the bam is sorted in some other way it performs a groupBy operation on the key, which shuffles the summaries but not the reads
      */
-    private static JavaPairRDD<String, Iterable<IndexPair<GATKRead>>> getReadsGroupedByName(SAMFileHeader header, JavaRDD<GATKRead> reads, int numReducers) {
-
-        final JavaPairRDD<String, Iterable<IndexPair<GATKRead>>> keyedReads;
-        final JavaRDD<IndexPair<GATKRead>> indexedReads = reads.mapPartitionsWithIndex(
-                (index, iter) -> Utils.stream(iter).map(read -> {
-                    if (!(read.getClass() == SAMRecordToGATKReadAdapter.class)) {
-                        throw new GATKException(String.format("MarkDuplicatesSpark currently only supports SAMRecords as an underlying reads data source class, %s found instead",
-                                read.getClass().toString()));
-                    }
-                    return new IndexPair<>(read, index);}).iterator(), false);
+    private static JavaPairRDD<String, Iterable<ReadSummary>> getSummariesGroupedByName(final SAMFileHeader header, final JavaRDD<ReadSummary> summaries, final int numReducers) {
+        final JavaPairRDD<String, ReadSummary> nameSummaryPairs = summaries.mapToPair(summary -> new Tuple2<>(summary.getName(), summary));
         if (ReadUtils.isReadNameGroupedBam(header)) {
             // reads are already grouped by name, so perform grouping within the partition (no shuffle)
-            keyedReads = spanReadsByKey(indexedReads);
+            return spanByKey(nameSummaryPairs);
         } else {
-            // sort by group and name (incurs a shuffle)
-            throw new GATKException(String.format("MarkDuplicatesSparkUtils.mark() requires input reads to be queryname sorted or querygrouped, yet the header indicated it was in %s order instead", header.getSortOrder()));
+            // group by name (incurs a shuffle of the summaries), then put the reads of each template in a fixed order,
+            // since the order they come out of the shuffle in depends on which partitions were fetched first, and the
+            // first read of a pair is the one its key and read group come from
+            return nameSummaryPairs.groupByKey(numReducers)
+                    .mapValues(template -> Utils.stream(template).sorted(TEMPLATE_ORDER).collect(Collectors.toList()));
         }
-        return keyedReads;
-    }
-
-    /**
-     * Method which takes an RDD of reads that is guaranteed to have every readname group placed together on the same
-     * partition and maps those so a JavaPairRDD with the readname as the key.
-     */
-    private static JavaPairRDD<String, Iterable<IndexPair<GATKRead>>> spanReadsByKey(final JavaRDD<IndexPair<GATKRead>> reads) {
-        JavaPairRDD<String, IndexPair<GATKRead>> nameReadPairs = reads.mapToPair(read -> new Tuple2<>(read.getValue().getName(), read));
-        return spanByKey(nameReadPairs).flatMapToPair(namedRead -> {
-            // for each name, separate reads by key (group name)
-            List<Tuple2<String, Iterable<IndexPair<GATKRead>>>> out = Lists.newArrayList();
-            ListMultimap<String, IndexPair<GATKRead>> multi = LinkedListMultimap.create();
-            for (IndexPair<GATKRead> read : namedRead._2()) {
-                multi.put(ReadsKey.keyForRead(read.getValue()), read);
-            }
-            for (String key : multi.keySet()) {
-                // list from Multimap is not serializable by Kryo, so put in a new array list
-                out.add(new Tuple2<>(key, Lists.newArrayList(multi.get(key))));
-            }
-            return out.iterator();
-        });
     }
 
     /**
@@ -0,0 +1,126 @@
+package org.broadinstitute.hellbender.tools.walkers;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLine;
+import org.broadinstitute.barclay.argparser.Argument;
+import org.broadinstitute.barclay.argparser.CommandLineException;
+import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
+import org.broadinstitute.barclay.help.DocumentedFeature;
+import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.cmdline.programgroups.ShortVariantDiscoveryProgramGroup;
+import org.broadinstitute.hellbender.engine.FeatureContext;
+import org.broadinstitute.hellbender.engine.MultiVariantWalker;
+import org.broadinstitute.hellbender.engine.ReadsContext;
+import org.broadinstitute.hellbender.engine.ReferenceContext;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.variant.HomoSapiensConstants;
+import org.broadinstitute.hellbender.utils.variant.writers.GVCFWriter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Gather the shards of a single-sample GVCF produced by a scattered HaplotypeCaller run, re-merging the reference
+ * blocks that were split at the shard boundaries
+ *
+ * <p>
+ * When HaplotypeCaller is scattered over intervals, every shard ends its current reference block at the end of its
+ * interval and the next shard starts a new one, even when both blocks fall in the same GQ band. This tool writes the
+ * records of all the shards, in coordinate order, through the same GVCF writer HaplotypeCaller uses, so that contiguous
+ * reference blocks in the same GQ band are merged. Variant records are passed through unchanged.
+ * </p>
+ *
+ * <p>
+ * The merged blocks keep the minimum PLs and MIN_DP of the blocks they were built from, and their GQ is recomputed from
+ * the minimum PLs, exactly as if HaplotypeCaller had been run without scattering. The DP of a merged block is the median
+ * of the DPs of its blocks, each weighted by its length, since the per-position depths are no longer available.
+ * </p>
+ *
+ * <h3>Input</h3>
+ * <p>
+ * The GVCF shards of a single sample, produced by HaplotypeCaller with the same GQ bands. The shards may be given in any
+ * order but must not overlap.
+ * </p>
+ *
+ * <h3>Output</h3>
+ * <p>
+ * A single GVCF.
+ * </p>
+ *
+ * <h3>Usage example</h3>
+ * <pre>
+ * gatk GatherGVCFs \
+ *   -V shard1.g.vcf.gz \
+ *   -V shard2.g.vcf.gz \
+ *   -V shard3.g.vcf.gz \
+ *   -O sample.g.vcf.gz
+ * </pre>
+ *
+ * <h3>Caveats</h3>
+ * <p>The GQ bands are read from the GVCFBlock lines of the input headers unless given with --gvcf-gq-bands. GVCFs
+ * produced with -ERC BP_RESOLUTION have no bands and should be gathered with GatherVcfs instead.</p>
+ */
+@CommandLineProgramProperties(
+        summary = "Gathers the GVCF shards of a single sample into one GVCF, merging the reference blocks that were split at shard boundaries",
+        oneLineSummary = "Gathers GVCF shards, merging reference blocks across shard boundaries",
+        programGroup = ShortVariantDiscoveryProgramGroup.class
+)
+@DocumentedFeature
+public final class GatherGVCFs extends MultiVariantWalker {
+
+    public static final String GQ_BANDS_LONG_NAME = "gvcf-gq-bands";
+    public static final String GQ_BANDS_SHORT_NAME = "GQB";
+
+    @Argument(fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME,
+            shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME,
+            doc = "The gathered GVCF output file")
+    private File outputFile;
+
+    @Argument(fullName = GQ_BANDS_LONG_NAME, shortName = GQ_BANDS_SHORT_NAME,
+            doc = "Exclusive upper bounds of the reference confidence GQ bands the input GVCFs were written with. " +
+                  "Defaults to the bands declared in the input headers.",
+            optional = true)
+    private List<Integer> gqBands = new ArrayList<>();
+
+    private VariantContextWriter writer;
+
+    @Override
+    public void onTraversalStart() {
+        final VCFHeader inputHeader = getHeaderForVariants();
+        if (inputHeader.getNGenotypeSamples() != 1) {
+            throw new UserException.BadInput("GVCF shards must all be for the same single sample, but found samples " + inputHeader.getGenotypeSamples());
+        }
+
+        final List<Integer> partitions = gqBands.isEmpty() ? GVCFWriter.getGQPartitionsFromHeader(inputHeader) : gqBands;
+        if (partitions.isEmpty()) {
+            throw new UserException.BadInput("The input GVCFs don't declare their GQ bands, please provide them with --" + GQ_BANDS_LONG_NAME);
+        }
+
+        try {
+            writer = new GVCFWriter(createVCFWriter(outputFile), partitions, HomoSapiensConstants.DEFAULT_PLOIDY);
+        } catch ( final IllegalArgumentException e ) {
+            throw new CommandLineException.BadArgumentValue(GQ_BANDS_LONG_NAME, "are malformed: " + e.getMessage());
+        }
+
+        final Set<VCFHeaderLine> headerLines = new LinkedHashSet<>(inputHeader.getMetaDataInInputOrder());
+        headerLines.addAll(getDefaultToolVCFHeaderLines());
+        writer.writeHeader(new VCFHeader(headerLines, inputHeader.getGenotypeSamples()));
+    }
+
+    @Override
+    public void apply(final VariantContext variant, final ReadsContext readsContext, final ReferenceContext referenceContext, final FeatureContext featureContext) {
+        writer.add(variant);
+    }
+
+    @Override
+    public void closeTool() {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+}
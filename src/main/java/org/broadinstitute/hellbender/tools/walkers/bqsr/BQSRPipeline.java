@@ -0,0 +1,259 @@
+package org.broadinstitute.hellbender.tools.walkers.bqsr;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.tribble.Feature;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.broadinstitute.barclay.argparser.Argument;
+import org.broadinstitute.barclay.argparser.ArgumentCollection;
+import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
+import org.broadinstitute.barclay.help.DocumentedFeature;
+import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.engine.FeatureContext;
+import org.broadinstitute.hellbender.engine.FeatureInput;
+import org.broadinstitute.hellbender.engine.ReadWalker;
+import org.broadinstitute.hellbender.engine.ReferenceContext;
+import org.broadinstitute.hellbender.engine.ReferenceDataSource;
+import org.broadinstitute.hellbender.engine.filters.ReadFilter;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.tools.ApplyBQSRArgumentCollection;
+import org.broadinstitute.hellbender.tools.ApplyBQSRUniqueArgumentCollection;
+import org.broadinstitute.hellbender.transformers.BQSRReadTransformer;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.io.IOUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.ReadUtils;
+import org.broadinstitute.hellbender.utils.read.SAMFileGATKReadWriter;
+import org.broadinstitute.hellbender.utils.recalibration.BaseRecalibrationEngine;
+import org.broadinstitute.hellbender.utils.recalibration.EventType;
+import org.broadinstitute.hellbender.utils.recalibration.QuantizationInfo;
+import org.broadinstitute.hellbender.utils.recalibration.RecalUtils;
+import org.broadinstitute.hellbender.utils.recalibration.RecalibrationArgumentCollection;
+import org.broadinstitute.hellbender.utils.recalibration.covariates.CovariateKeyCache;
+import org.broadinstitute.hellbender.utils.recalibration.covariates.ReadCovariates;
+import org.broadinstitute.hellbender.utils.recalibration.covariates.StandardCovariateList;
+import picard.cmdline.programgroups.ReadDataManipulationProgramGroup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Run both passes of base quality score recalibration, BaseRecalibrator then ApplyBQSR, in a single tool
+ *
+ * <p>
+ * The output is the same as running BaseRecalibrator and then ApplyBQSR with its recalibration table on the same
+ * input, but the covariates are computed in the first pass only. While the reads are traversed to build the
+ * recalibration tables, the covariate keys ApplyBQSR would compute for each read are written to a compact temporary
+ * file. Once the tables are finalized, the reads are streamed again and recalibrated with the keys read back from that
+ * file, without recomputing the context and cycle covariates.
+ * </p>
+ *
+ * <p>
+ * The keys of a read that contributes to the recalibration tables are the ones computed for the tables, unless
+ * BaseRecalibrator clipped adaptor or soft clipped bases off the read first, in which case the keys of the whole read
+ * are computed separately, as they are for reads that don't pass the BQSR read filters.
+ * </p>
+ *
+ * <p>
+ * As in BaseRecalibrator, only reads passing the BQSR read filters contribute to the recalibration tables, but all the
+ * reads passing the tool's read filters are recalibrated and written to the output, as in ApplyBQSR.
+ * </p>
+ *
+ * <h3>Input</h3>
+ * <ul>
+ *     <li>A BAM or CRAM file containing input read data</li>
+ *     <li>One or more databases of known polymorphic sites</li>
+ * </ul>
+ *
+ * <h3>Output</h3>
+ * <ul>
+ *     <li>A BAM or CRAM file containing the recalibrated read data</li>
+ *     <li>Optionally, the recalibration table BaseRecalibrator would have produced</li>
+ * </ul>
+ *
+ * <h3>Usage example</h3>
+ * <pre>
+ * gatk BQSRPipeline \
+ *   -R reference.fasta \
+ *   -I input.bam \
+ *   --known-sites sites_of_variation.vcf \
+ *   --recal-table-output recalibration.table \
+ *   -O output.bam
+ * </pre>
+ *
+ * <h3>Caveats</h3>
+ * <p>The temporary covariate keys file takes roughly one to two bytes per base of input, before compression.</p>
+ */
+@CommandLineProgramProperties(
+        summary = BQSRPipeline.USAGE_SUMMARY,
+        oneLineSummary = BQSRPipeline.USAGE_ONE_LINE_SUMMARY,
+        programGroup = ReadDataManipulationProgramGroup.class
+)
+@DocumentedFeature
+public final class BQSRPipeline extends ReadWalker {
+    static final String USAGE_ONE_LINE_SUMMARY = "Runs BaseRecalibrator and ApplyBQSR in a single tool";
+    static final String USAGE_SUMMARY = "Runs both passes of the Base Quality Score Recalibration (BQSR), reusing the covariates " +
+            "computed for the recalibration tables when applying the recalibration, and outputs the recalibrated reads.";
+
+    public static final String RECAL_TABLE_OUTPUT_LONG_NAME = "recal-table-output";
+
+    private static final Logger logger = LogManager.getLogger(BQSRPipeline.class);
+
+    @Argument(fullName = BaseRecalibrator.KNOWN_SITES_ARG_FULL_NAME, doc = "One or more databases of known polymorphic sites used to exclude regions around known polymorphisms from analysis.", optional = false)
+    private List<FeatureInput<Feature>> knownSites;
+
+    @Argument(fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME, shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME, doc = "Write recalibrated reads to this file")
+    private String output;
+
+    @Argument(fullName = RECAL_TABLE_OUTPUT_LONG_NAME, doc = "Write the recalibration table to this file", optional = true)
+    private File recalTableFile = null;
+
+    /**
+     * All the command line arguments for BQSR and its covariates.
+     */
+    @ArgumentCollection(doc = "all the command line arguments for BQSR and its covariates")
+    private final RecalibrationArgumentCollection recalArgs = new RecalibrationArgumentCollection();
+
+    /**
+     * Command-line arguments to fine tune the recalibration.
+     */
+    @ArgumentCollection
+    private final ApplyBQSRUniqueArgumentCollection applyArgs = new ApplyBQSRUniqueArgumentCollection();
+
+    /**
+     * The header of the reads, copied so that the platforms the engine fills in for read groups without one don't leak
+     * into the output. Both passes compute covariates with it.
+     */
+    private SAMFileHeader recalibrationHeader;
+
+    private BaseRecalibrationEngine recalibrationEngine;
+
+    private ReferenceDataSource referenceDataSource; // datasource for the reference. We're using a different one from the engine itself to avoid messing with its caches.
+
+    private ReadFilter bqsrReadFilter;
+
+    private StandardCovariateList covariates;
+    private final CovariateKeyCache keyCache = new CovariateKeyCache();
+
+    private File covariateKeysFile;
+    private CovariateKeySpillFile.Writer covariateKeysWriter;
+
+    private SAMFileGATKReadWriter outputWriter;
+
+    @Override
+    public boolean requiresReference() {
+        return true;
+    }
+
+    @Override
+    public void onTraversalStart() {
+        if (recalArgs.FORCE_PLATFORM != null) {
+            recalArgs.DEFAULT_PLATFORM = recalArgs.FORCE_PLATFORM;
+        }
+
+        Utils.warnOnNonIlluminaReadGroups(getHeaderForReads(), logger);
+
+        recalibrationHeader = getHeaderForReads().clone();
+        recalibrationEngine = new BaseRecalibrationEngine(recalArgs, recalibrationHeader);
+        recalibrationEngine.logCovariatesUsed();
+        referenceDataSource = ReferenceDataSource.of(referenceArguments.getReferencePath());
+        bqsrReadFilter = ReadFilter.fromList(BaseRecalibrator.getBQSRSpecificReadFilterList(), recalibrationHeader);
+        covariates = new StandardCovariateList(recalArgs, recalibrationHeader);
+
+        covariateKeysFile = IOUtils.createTempFile("bqsr-covariate-keys", ".bgz");
+        covariateKeysWriter = new CovariateKeySpillFile.Writer(covariateKeysFile);
+    }
+
+    /**
+     * Recalibrate in two passes: the first one, run by {@link ReadWalker#traverse}, builds the recalibration tables
+     * and saves the covariate keys of every read, the second one recalibrates the reads from the saved keys.
+     */
+    @Override
+    public void traverse() {
+        super.traverse();
+        covariateKeysWriter.close();
+        covariateKeysWriter = null;
+
+        recalibrationEngine.finalizeData();
+
+        logger.info("Calculating quantized quality scores...");
+        final QuantizationInfo quantizationInfo = new QuantizationInfo(recalibrationEngine.getFinalRecalibrationTables(), recalArgs.QUANTIZING_LEVELS);
+
+        // the report goes through its text representation, so the recalibration is exactly the same as ApplyBQSR's
+        final File reportFile = recalTableFile != null ? recalTableFile : IOUtils.createTempFile("bqsr-recalibration", ".table");
+        logger.info("Writing recalibration report...");
+        try ( PrintStream recalTableStream = new PrintStream(reportFile) ) {
+            RecalUtils.outputRecalibrationReport(recalTableStream, recalArgs, quantizationInfo, recalibrationEngine.getFinalRecalibrationTables(), recalibrationEngine.getCovariates());
+        } catch (final IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(reportFile, e);
+        }
+
+        logger.info("Applying recalibration...");
+        final BQSRReadTransformer transformer = new BQSRReadTransformer(recalibrationHeader, reportFile, makeApplyBQSRArgumentCollection());
+        outputWriter = createSAMWriter(IOUtils.getPath(output), true);
+        try ( CovariateKeySpillFile.Reader covariateKeysReader = new CovariateKeySpillFile.Reader(covariateKeysFile, covariates.size() - covariates.numberOfSpecialCovariates()) ) {
+            getTransformedReadStream(makeReadFilter())
+                    .forEach(read -> outputWriter.addRead(transformer.apply(read, covariateKeysReader.next(read.getLength()))));
+        }
+        logger.info("...done!");
+    }
+
+    private ApplyBQSRArgumentCollection makeApplyBQSRArgumentCollection() {
+        final ApplyBQSRArgumentCollection args = applyArgs.toApplyBQSRArgumentCollection(recalArgs.PRESERVE_QSCORES_LESS_THAN);
+        args.useOriginalBaseQualities = recalArgs.useOriginalBaseQualities;
+        args.staticQuantizationQuals = applyArgs.staticQuantizationQuals;
+        args.roundDown = applyArgs.roundDown;
+        return args;
+    }
+
+    /**
+     * Update the recalibration tables with the read if it passes the BQSR read filters, then save the covariate keys
+     * ApplyBQSR would use for the read.
+     *
+     * The engine computes the covariates of the read after clipping its adaptor and soft clipped bases, so they are
+     * the keys ApplyBQSR would use whenever nothing was clipped, and are only computed again for the other reads.
+     */
+    @Override
+    public void apply( GATKRead read, ReferenceContext ref, FeatureContext featureContext ) {
+        final int readLength = read.getLength();
+        // the engine fills in missing qualities in place, so the keys of such reads are computed before it sees them
+        ReadCovariates readCovariates = read.getBaseQualityCount() < readLength ? computeCovariateKeys(read) : null;
+
+        if (bqsrReadFilter.test(read)) {
+            final ReadCovariates engineCovariates = recalibrationEngine.processRead(read, referenceDataSource, featureContext.getValues(knownSites));
+            if (readCovariates == null && engineCovariates != null && engineCovariates.getKeySet(EventType.BASE_SUBSTITUTION).length == readLength) {
+                readCovariates = engineCovariates;
+            }
+        }
+
+        if (readCovariates == null) {
+            readCovariates = computeCovariateKeys(read);
+        }
+        covariateKeysWriter.write(readCovariates.getKeySet(EventType.BASE_SUBSTITUTION), readLength, covariates.numberOfSpecialCovariates());
+    }
+
+    private ReadCovariates computeCovariateKeys(final GATKRead read) {
+        final GATKRead readForKeys = recalArgs.useOriginalBaseQualities ? ReadUtils.resetOriginalBaseQualities(read) : read;
+        return RecalUtils.computeCovariates(readForKeys, recalibrationHeader, covariates, false, keyCache);
+    }
+
+    @Override
+    public Object onTraversalSuccess() {
+        return recalibrationEngine.getNumReadsProcessed();
+    }
+
+    @Override
+    public void closeTool() {
+        if (covariateKeysWriter != null) {
+            covariateKeysWriter.close();
+        }
+        if (outputWriter != null) {
+            outputWriter.close();
+        }
+        if (referenceDataSource != null) {
+            referenceDataSource.close();
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package org.broadinstitute.hellbender.tools.walkers.bqsr;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import htsjdk.tribble.Feature;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.broadinstitute.barclay.argparser.Advanced;
 import org.broadinstitute.barclay.argparser.Argument;
 import org.broadinstitute.barclay.argparser.ArgumentCollection;
 import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
@@ -12,6 +15,7 @@ import org.broadinstitute.hellbender.engine.*;
 import org.broadinstitute.hellbender.engine.filters.ReadFilter;
 import org.broadinstitute.hellbender.engine.filters.ReadFilterLibrary;
 import org.broadinstitute.hellbender.engine.filters.WellformedReadFilter;
+import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
@@ -24,8 +28,16 @@ import picard.cmdline.programgroups.ReadDataManipulationProgramGroup;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * First pass of the base quality score recalibration.
@@ -87,6 +99,10 @@ public final class BaseRecalibrator extends ReadWalker {
             "(such as read group, reported quality score, machine cycle, and nucleotide context).";
 
     public static final String KNOWN_SITES_ARG_FULL_NAME = "known-sites";
+    public static final String RECALIBRATION_THREADS_LONG_NAME = "recalibration-threads";
+
+    // number of reads handed to a worker thread at once when running with more than one thread
+    private static final int READS_PER_BATCH = 1000;
 
     protected static final Logger logger = LogManager.getLogger(BaseRecalibrator.class);
 
@@ -115,6 +131,16 @@ public final class BaseRecalibrator extends ReadWalker {
     @Argument(shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME, fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME, doc = "The output recalibration table file to create", optional = false)
     private File recalTableFile = null;
 
+    /**
+     * With more than one thread, reads are handed in batches to worker threads that each compute the covariates and
+     * accumulate the recalibration tables of their reads independently. The tables of all the threads are combined
+     * before being finalized, so the report is the same as with a single thread. Reading the input and querying the
+     * known sites still happen on the main thread.
+     */
+    @Advanced
+    @Argument(fullName = RECALIBRATION_THREADS_LONG_NAME, doc = "Number of threads used to compute covariates and accumulate the recalibration tables", minValue = 1, optional = true)
+    private int recalibrationThreads = 1;
+
     private BaseRecalibrationEngine recalibrationEngine;
 
     private ReferenceDataSource referenceDataSource; // datasource for the reference. We're using a different one from the engine itself to avoid messing with its caches.
@@ -124,6 +150,25 @@ public final class BaseRecalibrator extends ReadWalker {
      */
     private QuantizationInfo quantizationInfo = null;
 
+    private ExecutorService recalibrationExecutor;
+
+    // each worker thread has its own engine and reference, all of which are kept here to be combined and closed at the end
+    private ThreadLocal<RecalibrationWorker> threadWorker;
+    private final List<RecalibrationWorker> workers = Collections.synchronizedList(new ArrayList<>());
+
+    private List<Pair<GATKRead, List<Feature>>> currentBatch;
+    private final Deque<Future<?>> pendingBatches = new ArrayDeque<>();
+
+    private static final class RecalibrationWorker {
+        private final BaseRecalibrationEngine engine;
+        private final ReferenceDataSource reference;
+
+        private RecalibrationWorker(final BaseRecalibrationEngine engine, final ReferenceDataSource reference) {
+            this.engine = engine;
+            this.reference = reference;
+        }
+    }
+
     @Override
     public boolean requiresReference() {
         return true;
@@ -144,6 +189,22 @@ public final class BaseRecalibrator extends ReadWalker {
         recalibrationEngine = new BaseRecalibrationEngine(recalArgs, getHeaderForReads());
         recalibrationEngine.logCovariatesUsed();
         referenceDataSource = ReferenceDataSource.of(referenceArguments.getReferencePath());
+
+        if (recalibrationThreads > 1) {
+            final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                    .setNameFormat("recalibration-thread-%d")
+                    .setDaemon(true)
+                    .build();
+            recalibrationExecutor = Executors.newFixedThreadPool(recalibrationThreads, threadFactory);
+            threadWorker = ThreadLocal.withInitial(() -> {
+                final RecalibrationWorker worker = new RecalibrationWorker(
+                        new BaseRecalibrationEngine(recalArgs, getHeaderForReads()),
+                        ReferenceDataSource.of(referenceArguments.getReferencePath()));
+                workers.add(worker);
+                return worker;
+            });
+            currentBatch = new ArrayList<>(READS_PER_BATCH);
+        }
     }
 
     @Override
@@ -182,11 +243,70 @@ public final class BaseRecalibrator extends ReadWalker {
      */
     @Override
     public void apply( GATKRead read, ReferenceContext ref, FeatureContext featureContext ) {
-        recalibrationEngine.processRead(read, referenceDataSource, featureContext.getValues(knownSites));
+        if (recalibrationExecutor == null) {
+            recalibrationEngine.processRead(read, referenceDataSource, featureContext.getValues(knownSites));
+            return;
+        }
+
+        currentBatch.add(Pair.of(read, featureContext.getValues(knownSites)));
+        if (currentBatch.size() >= READS_PER_BATCH) {
+            submitCurrentBatch();
+        }
+    }
+
+    private void submitCurrentBatch() {
+        final List<Pair<GATKRead, List<Feature>>> batch = currentBatch;
+        currentBatch = new ArrayList<>(READS_PER_BATCH);
+
+        // bound the number of reads held in memory by waiting for the oldest batches once enough are queued
+        while (pendingBatches.size() >= 2 * recalibrationThreads) {
+            waitForBatch(pendingBatches.removeFirst());
+        }
+        pendingBatches.addLast(recalibrationExecutor.submit(() -> {
+            final RecalibrationWorker worker = threadWorker.get();
+            for (final Pair<GATKRead, List<Feature>> readAndKnownSites : batch) {
+                worker.engine.processRead(readAndKnownSites.getLeft(), worker.reference, readAndKnownSites.getRight());
+            }
+        }));
+    }
+
+    private static void waitForBatch(final Future<?> batch) {
+        try {
+            batch.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while waiting for a batch of reads to be recalibrated", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new GATKException("Failure while recalibrating a batch of reads", e.getCause());
+        }
+    }
+
+    /**
+     * Wait for all the worker threads to be done and combine their tables into the main engine.
+     */
+    private void combineWorkerTables() {
+        if (!currentBatch.isEmpty()) {
+            submitCurrentBatch();
+        }
+        while (!pendingBatches.isEmpty()) {
+            waitForBatch(pendingBatches.removeFirst());
+        }
+        synchronized (workers) {
+            for (final RecalibrationWorker worker : workers) {
+                recalibrationEngine.combine(worker.engine);
+            }
+        }
+        logger.info(String.format("Combined the recalibration tables of %d threads", workers.size()));
     }
 
     @Override
     public Object onTraversalSuccess() {
+        if (recalibrationExecutor != null) {
+            combineWorkerTables();
+        }
         recalibrationEngine.finalizeData();
 
         logger.info("Calculating quantized quality scores...");
@@ -209,6 +329,16 @@ public final class BaseRecalibrator extends ReadWalker {
         quantizationInfo = new QuantizationInfo(recalibrationEngine.getFinalRecalibrationTables(), recalArgs.QUANTIZING_LEVELS);
     }
 
+    @Override
+    public void closeTool() {
+        if (recalibrationExecutor != null) {
+            recalibrationExecutor.shutdownNow();
+            synchronized (workers) {
+                workers.forEach(worker -> worker.reference.close());
+            }
+        }
+    }
+
     private void generateReport() {
         try ( PrintStream recalTableStream = new PrintStream(recalTableFile) ) {
             RecalUtils.outputRecalibrationReport(recalTableStream, recalArgs, quantizationInfo, recalibrationEngine.getFinalRecalibrationTables(), recalibrationEngine.getCovariates());
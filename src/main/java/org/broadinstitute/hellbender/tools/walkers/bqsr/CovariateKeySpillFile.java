@@ -0,0 +1,130 @@
+package org.broadinstitute.hellbender.tools.walkers.bqsr;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.exceptions.UserException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.broadinstitute.hellbender.utils.io.VarIntUtils.readVarInt;
+import static org.broadinstitute.hellbender.utils.io.VarIntUtils.unZigZag;
+import static org.broadinstitute.hellbender.utils.io.VarIntUtils.writeVarInt;
+import static org.broadinstitute.hellbender.utils.io.VarIntUtils.zigZag;
+
+/**
+ * Temporary file holding the base substitution keys of the additional covariates of every read, written in a first
+ * pass over the reads and read back, in the same order, in a second pass.
+ *
+ * <p>Each read is stored as its length followed, for every additional covariate, by the differences between the keys
+ * of consecutive offsets. Cycle keys change by one at every offset and context keys are small, so with zig-zag varints
+ * most keys take one or two bytes. The file is block compressed at the fastest compression level.</p>
+ */
+final class CovariateKeySpillFile {
+
+    private static final int COMPRESSION_LEVEL = 1;
+
+    private CovariateKeySpillFile() {}
+
+    static final class Writer implements Closeable {
+        private final File file;
+        private final OutputStream out;
+
+        Writer(final File file) {
+            this.file = file;
+            this.out = new BlockCompressedOutputStream(file, COMPRESSION_LEVEL);
+        }
+
+        /**
+         * Spill the keys of the additional covariates of a read
+         *
+         * @param keySet the base substitution keys of the read, indexed by offset then covariate
+         * @param readLength the length of the read
+         * @param firstCovariate index of the first additional covariate in the key set
+         */
+        void write(final int[][] keySet, final int readLength, final int firstCovariate) {
+            try {
+                writeVarInt(out, readLength);
+                final int numCovariates = readLength == 0 ? 0 : keySet[0].length;
+                for (int covariate = firstCovariate; covariate < numCovariates; covariate++) {
+                    int previous = 0;
+                    for (int offset = 0; offset < readLength; offset++) {
+                        final int key = keySet[offset][covariate];
+                        writeVarInt(out, zigZag(key - previous));
+                        previous = key;
+                    }
+                }
+            } catch (final IOException e) {
+                throw new UserException.CouldNotCreateOutputFile(file, e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                out.close();
+            } catch (final IOException e) {
+                throw new UserException.CouldNotCreateOutputFile(file, e);
+            }
+        }
+    }
+
+    static final class Reader implements Closeable {
+        private final File file;
+        private final InputStream in;
+        private int[][] keys;
+
+        Reader(final File file, final int numCovariates) {
+            this.file = file;
+            try {
+                this.in = new BlockCompressedInputStream(file);
+            } catch (final IOException e) {
+                throw new UserException.CouldNotReadInputFile(file, e);
+            }
+            this.keys = new int[numCovariates][0];
+        }
+
+        /**
+         * Read back the keys of the next read, which must have the given length
+         *
+         * @return the keys of the additional covariates, indexed by covariate then offset. The arrays are reused by the
+         *         next call and may be longer than the read.
+         */
+        int[][] next(final int expectedReadLength) {
+            try {
+                final int readLength = readVarInt(in);
+                if (readLength != expectedReadLength) {
+                    throw new GATKException(String.format("Covariate keys in %s are out of sync with the reads: expected a read of length %d but found %d",
+                            file, expectedReadLength, readLength));
+                }
+                for (int covariate = 0; covariate < keys.length; covariate++) {
+                    if (keys[covariate].length < readLength) {
+                        keys[covariate] = new int[readLength];
+                    }
+                    final int[] covariateKeys = keys[covariate];
+                    int previous = 0;
+                    for (int offset = 0; offset < readLength; offset++) {
+                        previous += unZigZag(readVarInt(in));
+                        covariateKeys[offset] = previous;
+                    }
+                }
+                return keys;
+            } catch (final IOException e) {
+                throw new UserException.CouldNotReadInputFile(file, e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (final IOException e) {
+                throw new UserException.CouldNotReadInputFile(file, e);
+            }
+        }
+    }
+}
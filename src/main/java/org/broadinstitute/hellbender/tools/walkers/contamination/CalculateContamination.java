@@ -1,6 +1,5 @@
 package org.broadinstitute.hellbender.tools.walkers.contamination;
 
-import htsjdk.samtools.util.OverlapDetector;
 import org.apache.commons.lang.mutable.MutableDouble;
 import org.apache.commons.lang3.Range;
 import org.apache.commons.lang3.tuple.Pair;
@@ -18,6 +17,7 @@ import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import picard.cmdline.programgroups.DiagnosticsAndQCProgramGroup;
 import org.broadinstitute.hellbender.tools.copynumber.utils.segmentation.KernelSegmenter;
 import org.broadinstitute.hellbender.tools.walkers.mutect.FilterMutectCalls;
+import org.broadinstitute.hellbender.utils.IndexRange;
 import org.broadinstitute.hellbender.utils.MathUtils;
 import org.broadinstitute.hellbender.utils.OptimizationUtils;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
@@ -145,43 +145,49 @@ public class CalculateContamination extends CommandLineProgram {
 
     private static final double SEGMENTATION_KERNEL_VARIANCE = 0.025;
 
-    private static final BiFunction<PileupSummary, PileupSummary, Double> SEGMENTATION_KERNEL = (ps1, ps2) -> {
-        final double maf1 = FastMath.min(ps1.getAltFraction(), 1 - ps1.getAltFraction());
-        final double maf2 = FastMath.min(ps2.getAltFraction(), 1 - ps2.getAltFraction());
+    // the kernel acts on the alt fractions of het sites
+    private static final BiFunction<Double, Double, Double> SEGMENTATION_KERNEL = (altFraction1, altFraction2) -> {
+        final double maf1 = FastMath.min(altFraction1, 1 - altFraction1);
+        final double maf2 = FastMath.min(altFraction2, 1 - altFraction2);
         return FastMath.exp(-MathUtils.square(maf1 - maf2)/(2 * SEGMENTATION_KERNEL_VARIANCE));
     };
 
     @Override
     public Object doWork() {
-        final List<PileupSummary> sites = filterSites(PileupSummary.readFromFile(inputPileupSummariesTable));
+        final PileupSummaryColumns sites = filterSites(PileupSummaryColumns.readFromFile(inputPileupSummariesTable));
 
         // used the matched normal to genotype (i.e. find hom alt sites) if available
-        final List<PileupSummary> genotypingSites = matchedPileupSummariesTable == null ? sites :
-                filterSites(PileupSummary.readFromFile(matchedPileupSummariesTable));
+        final PileupSummaryColumns genotypingSites = matchedPileupSummariesTable == null ? sites :
+                filterSites(PileupSummaryColumns.readFromFile(matchedPileupSummariesTable));
 
         // we partition the genome into contiguous allelic copy-number segments in order to infer the local minor
         // allele fraction at each site.  This is important because a minor allele fraction close to 1/2 (neutral)
         // allows hets and hom alts to be distinguished easily, while a low minor allele fraction makes it harder
         // to discriminate.  It is crucial to know which site are true hom alts and which sites are hets with
         // loss of heterozygosity.  We do this for the genotyping sample because that is the sample from which
-        // the hom alts are deduced.
-        final List<List<PileupSummary>> genotypingSegments = findSegments(genotypingSites);
+        // the hom alts are deduced.  Segments are ranges of indices of sites.
+        final List<IndexRange> genotypingSegments = findSegments(genotypingSites);
 
+        // the minor allele fraction of a segment doesn't depend on the contamination, so we compute it only once
+        final double[] genotypingMinorAlleleFractions = genotypingSegments.stream()
+                .mapToDouble(segment -> calculateMinorAlleleFraction(genotypingSites, segment)).toArray();
 
-        List<PileupSummary> homAltGenotypingSites = new ArrayList<>();
+        PileupSummaryColumns homAltGenotypingSites = genotypingSites.subset(new int[0]);
         final MutableDouble genotypingContamination = new MutableDouble(INITIAL_CONTAMINATION_GUESS);
+        final double genotypingErrorRate = errorRate(genotypingSites);
 
         for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
-            List<List<PileupSummary>> homAltSitesBySegment = Arrays.asList(new ArrayList<>());
+            int[] homAltIndices = new int[0];
             final MutableDouble minorAlleleFractionThreshold = new MutableDouble(STRICT_LOH_MAF_THRESHOLD);
-            while (homAltSitesBySegment.stream().mapToInt(List::size).sum() < DESIRED_MINIMUM_HOM_ALT_COUNT && minorAlleleFractionThreshold.doubleValue() > 0) {
-                homAltSitesBySegment = genotypingSegments.stream()
-                        .map(segment -> segmentHomAlts(segment, genotypingContamination.doubleValue(), minorAlleleFractionThreshold.doubleValue()))
-                        .collect(Collectors.toList());
+            while (homAltIndices.length < DESIRED_MINIMUM_HOM_ALT_COUNT && minorAlleleFractionThreshold.doubleValue() > 0) {
+                homAltIndices = IntStream.range(0, genotypingSegments.size())
+                        .flatMap(n -> segmentHomAlts(genotypingSites, genotypingSegments.get(n), genotypingMinorAlleleFractions[n],
+                                genotypingContamination.doubleValue(), minorAlleleFractionThreshold.doubleValue()))
+                        .toArray();
                 minorAlleleFractionThreshold.subtract(MINOR_ALLELE_FRACTION_STEP_SIZE);
             }
-            homAltGenotypingSites = homAltSitesBySegment.stream().flatMap(List::stream).collect(Collectors.toList());
-            final double newGenotypingContamination = calculateContamination(homAltGenotypingSites, errorRate(genotypingSites)).getLeft();
+            homAltGenotypingSites = genotypingSites.subset(homAltIndices);
+            final double newGenotypingContamination = calculateContamination(homAltGenotypingSites, genotypingErrorRate).getLeft();
             if (Math.abs(newGenotypingContamination - genotypingContamination.doubleValue()) < CONTAMINATION_CONVERGENCE_THRESHOLD) {
                 break;
             }
@@ -189,15 +195,15 @@ public class CalculateContamination extends CommandLineProgram {
         }
 
         if (outputTumorSegmentation != null) {
-            final List<List<PileupSummary>> tumorSegments = matchedPileupSummariesTable == null ?
+            final List<IndexRange> tumorSegments = matchedPileupSummariesTable == null ?
                     genotypingSegments : findSegments(sites);
             List<MinorAlleleFractionRecord> tumorMinorAlleleFractions = tumorSegments.stream()
-                    .map(this::makeMinorAlleleFractionRecord).collect(Collectors.toList());
+                    .map(segment -> makeMinorAlleleFractionRecord(sites, segment)).collect(Collectors.toList());
             MinorAlleleFractionRecord.writeToFile(tumorMinorAlleleFractions, outputTumorSegmentation);
 
         }
 
-        final List<PileupSummary> homAltSites = subsetSites(sites, homAltGenotypingSites);
+        final PileupSummaryColumns homAltSites = subsetSites(sites, homAltGenotypingSites);
         final Pair<Double, Double> contaminationAndError = calculateContamination(homAltSites, errorRate(sites));
         final double contamination = contaminationAndError.getLeft();
         final double error = contaminationAndError.getRight();
@@ -206,56 +212,62 @@ public class CalculateContamination extends CommandLineProgram {
         return "SUCCESS";
     }
 
-    private List<List<PileupSummary>> findSegments(final List<PileupSummary> sites) {
-        final Map<String, List<PileupSummary>> sitesByContig = sites.stream().collect(Collectors.groupingBy(PileupSummary::getContig));
-
-        return sitesByContig.values().stream()
-                .flatMap(contig -> findContigSegments(contig).stream())
+    private List<IndexRange> findSegments(final PileupSummaryColumns sites) {
+        return sites.getContigRanges().stream()
+                .flatMap(contig -> findContigSegments(sites, contig).stream())
                 .filter(segment -> segment.size() >= MIN_SITES_PER_SEGMENT)
                 .collect(Collectors.toList());
     }
 
     // in a biallelic site, essentially every non-ref, non-primary alt base is an error, since there are 2 such possible
     // errors out of 3 total, we multiply by 3/2 to get the total base error rate
-    private double errorRate(List<PileupSummary> sites) {
-        final long totalBases = sites.stream().mapToInt(PileupSummary::getTotalCount).sum();
-        final long otherAltBases = sites.stream().mapToInt(PileupSummary::getOtherAltCount).sum();
+    private double errorRate(final PileupSummaryColumns sites) {
+        long totalBases = 0;
+        long otherAltBases = 0;
+        for (int n = 0; n < sites.size(); n++) {
+            totalBases += sites.getTotalCount(n);
+            otherAltBases += sites.getOtherAltCount(n);
+        }
         return 1.5 * ((double) otherAltBases / totalBases);
     }
 
     // subset sites in the contaminated sample to hom alt site found in the genotyping sample
-    private static List<PileupSummary> subsetSites(final List<PileupSummary> sites, final List<PileupSummary> subsetLoci) {
-        final OverlapDetector<PileupSummary> homAltsInMatchedNormalOverlapDetector = OverlapDetector.create(subsetLoci);
-        return sites.stream().filter(homAltsInMatchedNormalOverlapDetector::overlapsAny).collect(Collectors.toList());
+    private static PileupSummaryColumns subsetSites(final PileupSummaryColumns sites, final PileupSummaryColumns subsetLoci) {
+        final Map<String, Set<Integer>> subsetPositionsByContig = new HashMap<>();
+        for (int n = 0; n < subsetLoci.size(); n++) {
+            subsetPositionsByContig.computeIfAbsent(subsetLoci.getContig(n), contig -> new HashSet<>()).add(subsetLoci.getPosition(n));
+        }
+        return sites.filter(n -> subsetPositionsByContig.getOrDefault(sites.getContig(n), Collections.emptySet()).contains(sites.getPosition(n)));
     }
 
-    private List<PileupSummary> segmentHomAlts(final List<PileupSummary> segment, final double contamination, double minimiumMinorAlleleFraction) {
-        final double minorAlleleFraction = calculateMinorAlleleFraction(segment);
-        return minorAlleleFraction < minimiumMinorAlleleFraction ? Collections.emptyList() :
-                segment.stream().filter(site -> homAltProbability(site, minorAlleleFraction, contamination) > 0.5).collect(Collectors.toList());
+    // indices of the hom alt sites of a segment
+    private IntStream segmentHomAlts(final PileupSummaryColumns sites, final IndexRange segment, final double minorAlleleFraction,
+                                     final double contamination, double minimiumMinorAlleleFraction) {
+        return minorAlleleFraction < minimiumMinorAlleleFraction ? IntStream.empty() :
+                IntStream.range(segment.from, segment.to).filter(n -> homAltProbability(sites, n, minorAlleleFraction, contamination) > 0.5);
     }
 
-    private double calculateMinorAlleleFraction(final List<PileupSummary> segment) {
-        final List<PileupSummary> hets = getLikelyHetsBasedOnAlleleFraction(segment);
-        final Function<Double, Double> objective = maf -> logLikelihoodOfHetsInSegment(hets, maf);
+    private double calculateMinorAlleleFraction(final PileupSummaryColumns sites, final IndexRange segment) {
+        final int[] hets = getLikelyHetsBasedOnAlleleFraction(sites, segment);
+        final Function<Double, Double> objective = maf -> logLikelihoodOfHetsInSegment(sites, hets, maf);
         return OptimizationUtils.argmax(objective, ALT_FRACTIONS_FOR_SEGMENTATION.getMinimum(), 0.5, 0.4, 0.01, 0.01, 20);
     }
 
-    private MinorAlleleFractionRecord makeMinorAlleleFractionRecord(final List<PileupSummary> segment) {
-        final String contig = segment.get(0).getContig();
-        final int start = segment.get(0).getStart();
-        final int end = segment.get(segment.size() - 1).getEnd();
-        final double minorAlleleFraction = calculateMinorAlleleFraction(segment);
+    private MinorAlleleFractionRecord makeMinorAlleleFractionRecord(final PileupSummaryColumns sites, final IndexRange segment) {
+        final String contig = sites.getContig(segment.from);
+        final int start = sites.getPosition(segment.from);
+        final int end = sites.getPosition(segment.to - 1);
+        final double minorAlleleFraction = calculateMinorAlleleFraction(sites, segment);
         return new MinorAlleleFractionRecord(new SimpleInterval(contig, start, end), minorAlleleFraction);
     }
 
 
     // we want log(1/2 (likelihood of alt minor + likelihood of alt major))
     //         =  logSumLog(log likelihood of alt minor, log likelihood of alt major) - log(2)
-    private final double logLikelihoodOfHetsInSegment(final List<PileupSummary> hets, final double minorAlleleFraction) {
-        return hets.stream().mapToDouble(het -> {
-            final int n = het.getTotalCount();
-            final int a = het.getAltCount();
+    private final double logLikelihoodOfHetsInSegment(final PileupSummaryColumns sites, final int[] hets, final double minorAlleleFraction) {
+        return Arrays.stream(hets).mapToDouble(het -> {
+            final int n = sites.getTotalCount(het);
+            final int a = sites.getAltCount(het);
             final double altMinorLogLikelihood = new BinomialDistribution(null, n, minorAlleleFraction).logProbability(a);
             final double altMajorLogLikelihood = new BinomialDistribution(null, n, 1 - minorAlleleFraction).logProbability(a);
 
@@ -263,11 +275,11 @@ public class CalculateContamination extends CommandLineProgram {
         }).sum();
     }
 
-    private List<List<PileupSummary>> findContigSegments(List<PileupSummary> sites) {
+    private List<IndexRange> findContigSegments(final PileupSummaryColumns sites, final IndexRange contig) {
         // segment based on obvious hets
-        final List<PileupSummary> hetSites = getLikelyHetsBasedOnAlleleFraction(sites);
+        final int[] hetSites = getLikelyHetsBasedOnAlleleFraction(sites, contig);
 
-        if (hetSites.isEmpty()) {
+        if (hetSites.length == 0) {
             return Collections.emptyList();
         }
 
@@ -276,47 +288,45 @@ public class CalculateContamination extends CommandLineProgram {
         // against the usual end-exclusive intervals of IndexRange etc.  This explains adding in the first changepoint of -1
         // instead of 0 and all the "changepoint + 1" constructions below
         changepoints.add(-1);
-        final KernelSegmenter<PileupSummary> segmenter = new KernelSegmenter<>(hetSites);
+        final List<Double> hetAltFractions = Arrays.stream(hetSites).mapToObj(sites::getAltFraction).collect(Collectors.toList());
+        final KernelSegmenter<Double> segmenter = new KernelSegmenter<>(hetAltFractions);
         changepoints.addAll(segmenter.findChangepoints(MAX_CHANGEPOINTS_PER_CHROMOSOME, SEGMENTATION_KERNEL, KERNEL_SEGMENTER_DIMENSION,
                 Arrays.asList(POINTS_PER_SEGMENTATION_WINDOW), KERNEL_SEGMENTER_LINEAR_COST, KERNEL_SEGMENTER_LOG_LINEAR_COST, KernelSegmenter.ChangepointSortOrder.INDEX));
-        changepoints.add(hetSites.size()-1);
+        changepoints.add(hetSites.length - 1);
 
-        final List<SimpleInterval> segments = IntStream.range(0, changepoints.size() - 1)
+        // each segment contains all sites, not just the hets, from its first het to its last het
+        return IntStream.range(0, changepoints.size() - 1)
                 .mapToObj(n -> {
-                    final PileupSummary firstSiteInSegment = hetSites.get(changepoints.get(n) + 1);
-                    final PileupSummary lastSiteInSegment = hetSites.get(changepoints.get(n+1));
-                    return new SimpleInterval(firstSiteInSegment.getContig(), firstSiteInSegment.getStart(), lastSiteInSegment.getEnd());
+                    final int firstSiteInSegment = hetSites[changepoints.get(n) + 1];
+                    final int lastSiteInSegment = hetSites[changepoints.get(n+1)];
+                    return sites.getSitesBetween(contig, sites.getPosition(firstSiteInSegment), sites.getPosition(lastSiteInSegment));
                 }).collect(Collectors.toList());
-
-        final OverlapDetector<PileupSummary> od = OverlapDetector.create(sites);
-
-        // for each segment, find overlapping sites and sort by coordinate
-        return segments.stream()
-                .map(segment -> od.getOverlaps(segment).stream().sorted(Comparator.comparingInt(PileupSummary::getStart)).collect(Collectors.toList()))
-                .collect(Collectors.toList());
     }
 
-    private List<PileupSummary> getLikelyHetsBasedOnAlleleFraction(List<PileupSummary> sites) {
-        return sites.stream()
-                    .filter(ps -> ALT_FRACTIONS_FOR_SEGMENTATION.contains(ps.getAltFraction()))
-                    .collect(Collectors.toList());
+    private int[] getLikelyHetsBasedOnAlleleFraction(final PileupSummaryColumns sites, final IndexRange range) {
+        return IntStream.range(range.from, range.to)
+                .filter(n -> ALT_FRACTIONS_FOR_SEGMENTATION.contains(sites.getAltFraction(n)))
+                .toArray();
     }
 
-    private static Pair<Double, Double> calculateContamination(List<PileupSummary> homAltSites, final double errorRate) {
-        if (homAltSites.isEmpty()) {
+    private static Pair<Double, Double> calculateContamination(final PileupSummaryColumns homAltSites, final double errorRate) {
+        if (homAltSites.size() == 0) {
             logger.warn("No hom alt sites found!  Perhaps GetPileupSummaries was run on too small of an interval, or perhaps the sample was extremely inbred or haploid.");
             return Pair.of(0.0, 1.0);
         }
 
-        final long totalReadCount = homAltSites.stream().mapToLong(PileupSummary::getTotalCount).sum();
-        final long totalRefCount = homAltSites.stream().mapToLong(PileupSummary::getRefCount).sum();
+        long totalReadCount = 0;
+        long totalRefCount = 0;
+        double totalDepthWeightedByRefFrequency = 0;
+        for (int n = 0; n < homAltSites.size(); n++) {
+            totalReadCount += homAltSites.getTotalCount(n);
+            totalRefCount += homAltSites.getRefCount(n);
+            totalDepthWeightedByRefFrequency += homAltSites.getTotalCount(n) * (1 - homAltSites.getAlleleFrequency(n));
+        }
 
         // if eg ref is A, alt is C, then # of ref reads due to error is roughly (# of G read + # of T reads)/2
         final long errorRefCount = Math.round(totalReadCount * errorRate / 3);
         final long contaminationRefCount = Math.max(totalRefCount - errorRefCount, 0);
-        final double totalDepthWeightedByRefFrequency = homAltSites.stream()
-                .mapToDouble(ps -> ps.getTotalCount() * (1 - ps.getAlleleFrequency()))
-                .sum();
         final double contamination = contaminationRefCount / totalDepthWeightedByRefFrequency;
         final double standardError = Math.sqrt(contamination / totalDepthWeightedByRefFrequency);
 
@@ -329,28 +339,26 @@ public class CalculateContamination extends CommandLineProgram {
         return Pair.of(Math.min(contamination, 1.0), standardError);
     }
 
-    private List<PileupSummary> filterSites(final List<PileupSummary> allSites) {
+    private PileupSummaryColumns filterSites(final PileupSummaryColumns allSites) {
         // Just in case the intervals given to GetPileupSummaries contained un-covered sites, we remove them
         // so that a bunch of zeroes don't throw off the median coverage
-        final List<PileupSummary> coveredSites = allSites.stream().filter(s -> s.getTotalCount() > MIN_COVERAGE).collect(Collectors.toList());
-        final double[] coverage = coveredSites.stream().mapToDouble(PileupSummary::getTotalCount).toArray();
+        final PileupSummaryColumns coveredSites = allSites.filter(n -> allSites.getTotalCount(n) > MIN_COVERAGE);
+        final double[] coverage = IntStream.range(0, coveredSites.size()).mapToDouble(coveredSites::getTotalCount).toArray();
         final double medianCoverage = new Median().evaluate(coverage);
         final double meanCoverage = new Mean().evaluate(coverage);
         final double lowCoverageThreshold = medianCoverage * lowCoverageRatioThreshold;
         final double highCoverageThreshold = meanCoverage * highCoverageRatioThreshold;
-        return coveredSites.stream()
-                .filter(ps -> ps.getTotalCount() > lowCoverageThreshold && ps.getTotalCount() < highCoverageThreshold)
-                .filter(ps -> ps.getAltFraction() > ALT_FRACTION_OF_DEFINITE_HOM_REF)
-                .collect(Collectors.toList());
+        return coveredSites.filter(n -> coveredSites.getTotalCount(n) > lowCoverageThreshold && coveredSites.getTotalCount(n) < highCoverageThreshold
+                && coveredSites.getAltFraction(n) > ALT_FRACTION_OF_DEFINITE_HOM_REF);
     }
 
-    private double homAltProbability(final PileupSummary site, final double minorAlleleFraction, final double contamination) {
-        final double alleleFrequency = site.getAlleleFrequency();
+    private double homAltProbability(final PileupSummaryColumns sites, final int site, final double minorAlleleFraction, final double contamination) {
+        final double alleleFrequency = sites.getAlleleFrequency(site);
         final double homAltPrior = MathUtils.square(alleleFrequency);
         final double hetPrior = 2 * alleleFrequency * (1 - alleleFrequency);
 
-        final int altCount = site.getAltCount();
-        final int totalCount = altCount + site.getRefCount();
+        final int altCount = sites.getAltCount(site);
+        final int totalCount = altCount + sites.getRefCount(site);
 
         if (altCount < totalCount / 2) {
             return 0;
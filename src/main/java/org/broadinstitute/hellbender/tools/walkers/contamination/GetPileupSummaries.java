@@ -1,8 +1,13 @@
 package org.broadinstitute.hellbender.tools.walkers.contamination;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SamReaderFactory;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFConstants;
 import htsjdk.variant.vcf.VCFHeader;
+import org.broadinstitute.barclay.argparser.Advanced;
 import org.broadinstitute.barclay.argparser.Argument;
 import org.broadinstitute.barclay.argparser.BetaFeature;
 import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
@@ -10,17 +15,28 @@ import org.broadinstitute.barclay.help.DocumentedFeature;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import org.broadinstitute.hellbender.cmdline.programgroups.CoverageAnalysisProgramGroup;
 import org.broadinstitute.hellbender.engine.*;
+import org.broadinstitute.hellbender.engine.filters.CountingReadFilter;
 import org.broadinstitute.hellbender.engine.filters.MappingQualityReadFilter;
 import org.broadinstitute.hellbender.engine.filters.ReadFilter;
 import org.broadinstitute.hellbender.engine.filters.ReadFilterLibrary;
 import org.broadinstitute.hellbender.engine.filters.WellformedReadFilter;
+import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.transformers.ReadTransformer;
 import org.broadinstitute.hellbender.utils.GATKProtectedVariantContextUtils;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.locusiterator.AlignmentContextIteratorBuilder;
 import org.broadinstitute.hellbender.utils.pileup.ReadPileup;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * <p>Summarizes counts of reads that support reference, alternate and other alleles for given sites. Results can be used with {@link CalculateContamination}.</p>
@@ -99,6 +115,12 @@ import java.util.List;
  * file that have AF of 0.01 or more.
  * </p>
  *
+ * <p>
+ * With {@code --pileup-threads} greater than one, the intervals are split into shards of consecutive sites that are
+ * processed on separate threads, each with its own readers of the reads and of the variants, and the summaries
+ * are written in the original order. This pays off for large site lists such as those derived from gnomAD.
+ * </p>
+ *
  */
 @CommandLineProgramProperties(
         summary = "Tabulates pileup metrics for inferring contamination",
@@ -114,6 +136,11 @@ public class GetPileupSummaries extends LocusWalker {
     public static final String MIN_SITE_AF_SHORT_NAME = "min-af";
     public static final String MIN_MAPPING_QUALITY_LONG_NAME = "min-mapping-quality";
     public static final String MIN_MAPPING_QUALITY_SHORT_NAME = "mmq";
+    public static final String PILEUP_THREADS_LONG_NAME = "pileup-threads";
+
+    // a shard of the intervals handed to a thread holds at most this many intervals and bases
+    private static final int MAX_INTERVALS_PER_SHARD = 1000;
+    private static final int MAX_BASES_PER_SHARD = 1_000_000;
 
     private static final double DEFAULT_MIN_POPULATION_AF = 0.01;
     private static final double DEFAULT_MAX_POPULATION_AF = 0.2;
@@ -140,10 +167,15 @@ public class GetPileupSummaries extends LocusWalker {
     @Argument(fullName = MIN_MAPPING_QUALITY_LONG_NAME, shortName = MIN_MAPPING_QUALITY_SHORT_NAME, doc = "Minimum read mapping quality", optional = true)
     private int minMappingQuality = DEFAULT_MINIMUM_MAPPING_QUALITY;
 
+    @Advanced
+    @Argument(fullName = PILEUP_THREADS_LONG_NAME, doc = "Number of threads used to process shards of the intervals", minValue = 1, optional = true)
+    private int pileupThreads = 1;
+
     private final List<PileupSummary> pileupSummaries = new ArrayList<>();
 
-    private boolean sawVariantsWithoutAlleleFrequency = false;
-    private boolean sawVariantsWithAlleleFrequency = false;
+    // set from several threads when running in shards
+    private volatile boolean sawVariantsWithoutAlleleFrequency = false;
+    private volatile boolean sawVariantsWithAlleleFrequency = false;
 
     @Override
     public boolean requiresReads() {
@@ -190,18 +222,175 @@ public class GetPileupSummaries extends LocusWalker {
         }
     }
 
+    @Override
+    public void traverse() {
+        if (pileupThreads == 1) {
+            super.traverse();
+        } else {
+            traverseInShards();
+        }
+    }
+
     @Override
     public void apply(AlignmentContext alignmentContext, ReferenceContext referenceContext, FeatureContext featureContext) {
-        final List<VariantContext> vcs = featureContext.getValues(variants);
+        final PileupSummary summary = summarize(alignmentContext, featureContext.getValues(variants));
+        if (summary != null) {
+            pileupSummaries.add(summary);
+        }
+    }
+
+    // the summary of a site, or null if the site is not a biallelic SNP within the allele frequency range
+    private PileupSummary summarize(final AlignmentContext alignmentContext, final List<VariantContext> vcs) {
         if (vcs.isEmpty()) {
-            return;
+            return null;
         }
         final VariantContext vc = vcs.get(0);
 
         if ( vc.isBiallelic() && vc.isSNP() && alleleFrequencyInRange(vc) ) {
             final ReadPileup pileup = alignmentContext.getBasePileup()
                     .makeFilteredPileup(pe -> pe.getRead().getMappingQuality() >= minMappingQuality);
-            pileupSummaries.add(new PileupSummary(vc, pileup));
+            return new PileupSummary(vc, pileup);
+        }
+        return null;
+    }
+
+    /**
+     * Process shards of the intervals on {@link #pileupThreads} threads. Each thread opens its own readers, since
+     * neither the reads nor the features data sources are thread-safe, and walks the loci of a shard as
+     * {@link LocusWalker#traverse} does. Shards don't overlap, so every locus is processed exactly once, and the
+     * summaries of the shards are collected in the order of the intervals.
+     */
+    private void traverseInShards() {
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("pileup-summaries-thread-%d")
+                .setDaemon(true)
+                .build();
+        final ExecutorService executor = Executors.newFixedThreadPool(pileupThreads, threadFactory);
+        final List<ShardDataSources> openedDataSources = Collections.synchronizedList(new ArrayList<>());
+        final ThreadLocal<ShardDataSources> dataSources = ThreadLocal.withInitial(() -> {
+            final ShardDataSources shardDataSources = new ShardDataSources();
+            openedDataSources.add(shardDataSources);
+            return shardDataSources;
+        });
+
+        // the filter and transformers are made once, since making a filter sets the header of the shared filter
+        // instances, and the counts of the filter are kept for all the shards
+        final CountingReadFilter filter = makeReadFilter();
+        final ReadTransformer preTransformer = makePreReadFilterTransformer();
+        final ReadTransformer postTransformer = makePostReadFilterTransformer();
+
+        try {
+            final Deque<Future<List<PileupSummary>>> pendingShards = new ArrayDeque<>();
+            for (final List<SimpleInterval> shard : makeShards(getTraversalIntervals())) {
+                // bound the number of summaries held in memory by collecting the oldest shards once enough are queued
+                while (pendingShards.size() >= 2 * pileupThreads) {
+                    collectShard(pendingShards.removeFirst());
+                }
+                pendingShards.addLast(executor.submit(() -> summarizeShard(shard, dataSources.get(), filter, preTransformer, postTransformer)));
+            }
+            while (!pendingShards.isEmpty()) {
+                collectShard(pendingShards.removeFirst());
+            }
+            logger.info(filter.getSummaryLine());
+        } finally {
+            executor.shutdownNow();
+            openedDataSources.forEach(ShardDataSources::close);
+        }
+    }
+
+    private void collectShard(final Future<List<PileupSummary>> shard) {
+        final List<PileupSummary> summaries;
+        try {
+            summaries = shard.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while waiting for a shard of pileup summaries", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new GATKException("Failed to compute a shard of pileup summaries", e.getCause());
+        }
+        summaries.forEach(summary -> progressMeter.update(summary));
+        pileupSummaries.addAll(summaries);
+    }
+
+    private List<PileupSummary> summarizeShard(final List<SimpleInterval> shard, final ShardDataSources dataSources, final CountingReadFilter filter,
+                                               final ReadTransformer preTransformer, final ReadTransformer postTransformer) {
+        final SAMFileHeader header = getHeaderForReads();
+        dataSources.reads.setTraversalBounds(shard);
+        final Iterator<GATKRead> readIterator = Utils.stream(dataSources.reads)
+                .map(preTransformer)
+                .filter(filter)
+                .map(postTransformer)
+                .iterator();
+
+        final AlignmentContextIteratorBuilder alignmentContextIteratorBuilder = new AlignmentContextIteratorBuilder();
+        alignmentContextIteratorBuilder.setDownsamplingInfo(getDownsamplingInfo());
+        alignmentContextIteratorBuilder.setEmitEmptyLoci(emitEmptyLoci());
+        alignmentContextIteratorBuilder.setIncludeDeletions(includeDeletions());
+        alignmentContextIteratorBuilder.setKeepUniqueReadListInLibs(keepUniqueReadListInLibs());
+        alignmentContextIteratorBuilder.setIncludeNs(includeNs());
+        final Iterator<AlignmentContext> alignmentContexts = alignmentContextIteratorBuilder.build(
+                readIterator, header, shard, getBestAvailableSequenceDictionary(), hasReference());
+
+        final List<PileupSummary> summaries = new ArrayList<>();
+        alignmentContexts.forEachRemaining(alignmentContext -> {
+            final PileupSummary summary = summarize(alignmentContext, dataSources.variants.queryAndPrefetch(new SimpleInterval(alignmentContext)));
+            if (summary != null) {
+                summaries.add(summary);
+            }
+        });
+        return summaries;
+    }
+
+    /**
+     * Split sorted, non-overlapping intervals into consecutive shards, cutting intervals longer than a shard
+     */
+    @VisibleForTesting
+    static List<List<SimpleInterval>> makeShards(final List<SimpleInterval> intervals) {
+        final List<List<SimpleInterval>> shards = new ArrayList<>();
+        List<SimpleInterval> shard = new ArrayList<>();
+        long basesInShard = 0;
+        for (final SimpleInterval interval : intervals) {
+            for (int start = interval.getStart(); start <= interval.getEnd(); start += MAX_BASES_PER_SHARD) {
+                final SimpleInterval piece = new SimpleInterval(interval.getContig(), start, (int) Math.min((long) start + MAX_BASES_PER_SHARD - 1, interval.getEnd()));
+                if (!shard.isEmpty() && (shard.size() == MAX_INTERVALS_PER_SHARD || basesInShard + piece.size() > MAX_BASES_PER_SHARD)) {
+                    shards.add(shard);
+                    shard = new ArrayList<>();
+                    basesInShard = 0;
+                }
+                shard.add(piece);
+                basesInShard += piece.size();
+            }
+        }
+        if (!shard.isEmpty()) {
+            shards.add(shard);
+        }
+        return shards;
+    }
+
+    /**
+     * The readers of one thread processing shards
+     */
+    private final class ShardDataSources {
+        private final ReadsDataSource reads;
+        private final FeatureDataSource<VariantContext> variants;
+
+        private ShardDataSources() {
+            SamReaderFactory factory = SamReaderFactory.makeDefault().validationStringency(readArguments.getReadValidationStringency());
+            if (hasReference()) {
+                factory = factory.referenceSequence(referenceArguments.getReferencePath());
+            }
+            reads = new ReadsDataSource(readArguments.getReadPaths(), readArguments.getReadIndexPaths(), factory, cloudPrefetchBuffer,
+                    (cloudIndexPrefetchBuffer < 0 ? cloudPrefetchBuffer : cloudIndexPrefetchBuffer));
+            variants = new FeatureDataSource<>(GetPileupSummaries.this.variants, FeatureDataSource.DEFAULT_QUERY_LOOKAHEAD_BASES, VariantContext.class,
+                    cloudPrefetchBuffer, (cloudIndexPrefetchBuffer < 0 ? cloudPrefetchBuffer : cloudIndexPrefetchBuffer));
+        }
+
+        private void close() {
+            reads.close();
+            variants.close();
         }
     }
 
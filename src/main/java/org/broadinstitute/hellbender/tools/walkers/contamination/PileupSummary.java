@@ -16,6 +16,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.OptionalDouble;
+import java.util.function.Consumer;
 import java.util.stream.StreamSupport;
 
 /**
@@ -107,6 +108,17 @@ public class PileupSummary implements Locatable {
         }
     }
 
+    /**
+     * Stream the records of a pileup summary file without holding them all in memory
+     */
+    public static void forEachInFile(final File tableFile, final Consumer<PileupSummary> action) {
+        try( PileupSummaryTableReader reader = new PileupSummaryTableReader(tableFile) ) {
+            reader.forEach(action);
+        } catch (IOException e){
+            throw new UserException(String.format("Encountered an IO exception while reading from %s.", tableFile));
+        }
+    }
+
     //-------- The following methods are boilerplate for reading and writing pileup summary tables
     private static class PileupSummaryTableWriter extends TableWriter<PileupSummary> {
         private PileupSummaryTableWriter(final File output) throws IOException {
@@ -0,0 +1,161 @@
+package org.broadinstitute.hellbender.tools.walkers.contamination;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.broadinstitute.hellbender.utils.IndexRange;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.File;
+import java.util.*;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * The sites of a pileup summary table stored as one primitive array per column, rather than as a list of
+ * {@link PileupSummary}s, so that {@link CalculateContamination} can handle the millions of sites of a
+ * genome-wide common variant resource in little memory.
+ *
+ * Sites are sorted by contig, in the order in which contigs first appear in the table, and then by position,
+ * so that the sites of each contig form a contiguous range of indices.
+ */
+final class PileupSummaryColumns {
+    private final List<String> contigs;
+    private final int[] contigIndices;
+    private final int[] positions;
+    private final int[] refCounts;
+    private final int[] altCounts;
+    private final int[] otherAltCounts;
+    private final double[] alleleFrequencies;
+
+    private PileupSummaryColumns(final List<String> contigs, final int[] contigIndices, final int[] positions, final int[] refCounts,
+                                 final int[] altCounts, final int[] otherAltCounts, final double[] alleleFrequencies) {
+        this.contigs = contigs;
+        this.contigIndices = contigIndices;
+        this.positions = positions;
+        this.refCounts = refCounts;
+        this.altCounts = altCounts;
+        this.otherAltCounts = otherAltCounts;
+        this.alleleFrequencies = alleleFrequencies;
+    }
+
+    static PileupSummaryColumns readFromFile(final File tableFile) {
+        final List<String> contigs = new ArrayList<>();
+        final Map<String, Integer> contigIndicesByName = new HashMap<>();
+        final IntArrayList contigIndices = new IntArrayList();
+        final IntArrayList positions = new IntArrayList();
+        final IntArrayList refCounts = new IntArrayList();
+        final IntArrayList altCounts = new IntArrayList();
+        final IntArrayList otherAltCounts = new IntArrayList();
+        final DoubleArrayList alleleFrequencies = new DoubleArrayList();
+
+        PileupSummary.forEachInFile(tableFile, site -> {
+            contigIndices.add((int) contigIndicesByName.computeIfAbsent(site.getContig(), contig -> {
+                contigs.add(contig);
+                return contigs.size() - 1;
+            }));
+            positions.add(site.getStart());
+            refCounts.add(site.getRefCount());
+            altCounts.add(site.getAltCount());
+            otherAltCounts.add(site.getOtherAltCount());
+            alleleFrequencies.add(site.getAlleleFrequency());
+        });
+
+        final PileupSummaryColumns sites = new PileupSummaryColumns(contigs, contigIndices.toIntArray(), positions.toIntArray(),
+                refCounts.toIntArray(), altCounts.toIntArray(), otherAltCounts.toIntArray(), alleleFrequencies.toDoubleArray());
+        return sites.isSorted() ? sites : sites.sorted();
+    }
+
+    int size() { return positions.length; }
+
+    String getContig(final int n) { return contigs.get(contigIndices[n]); }
+
+    int getPosition(final int n) { return positions[n]; }
+
+    int getRefCount(final int n) { return refCounts[n]; }
+
+    int getAltCount(final int n) { return altCounts[n]; }
+
+    int getOtherAltCount(final int n) { return otherAltCounts[n]; }
+
+    int getTotalCount(final int n) { return refCounts[n] + altCounts[n] + otherAltCounts[n]; }
+
+    double getAlleleFrequency(final int n) { return alleleFrequencies[n]; }
+
+    double getAltFraction(final int n) {
+        final int totalCount = getTotalCount(n);
+        return totalCount == 0 ? 0 : (double) altCounts[n] / totalCount;
+    }
+
+    /**
+     * The sites satisfying a predicate of their index
+     */
+    PileupSummaryColumns filter(final IntPredicate predicate) {
+        return subset(IntStream.range(0, size()).filter(predicate).toArray());
+    }
+
+    /**
+     * The sites at the given indices, in the given order
+     */
+    PileupSummaryColumns subset(final int[] indices) {
+        return new PileupSummaryColumns(contigs, select(contigIndices, indices), select(positions, indices), select(refCounts, indices),
+                select(altCounts, indices), select(otherAltCounts, indices), Arrays.stream(indices).mapToDouble(n -> alleleFrequencies[n]).toArray());
+    }
+
+    /**
+     * The ranges of indices of the sites of each contig
+     */
+    List<IndexRange> getContigRanges() {
+        final List<IndexRange> result = new ArrayList<>();
+        int start = 0;
+        for (int n = 1; n <= size(); n++) {
+            if (n == size() || contigIndices[n] != contigIndices[start]) {
+                result.add(new IndexRange(start, n));
+                start = n;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The range of indices of the sites of a contig from a start position to an end position, inclusive
+     *
+     * @param contigRange the range of indices of all sites of the contig
+     */
+    IndexRange getSitesBetween(final IndexRange contigRange, final int start, final int end) {
+        Utils.validateArg(start <= end, "start must not be after end");
+        return new IndexRange(firstIndexAtOrAfter(contigRange, start), firstIndexAtOrAfter(contigRange, end + 1));
+    }
+
+    private int firstIndexAtOrAfter(final IndexRange contigRange, final int position) {
+        final int index = Arrays.binarySearch(positions, contigRange.from, contigRange.to, position);
+        if (index < 0) {
+            return -index - 1;
+        }
+        // with repeated positions, binary search may land on any of them
+        int first = index;
+        while (first > contigRange.from && positions[first - 1] == position) {
+            first--;
+        }
+        return first;
+    }
+
+    private boolean isSorted() {
+        for (int n = 1; n < size(); n++) {
+            if (contigIndices[n] < contigIndices[n - 1] || (contigIndices[n] == contigIndices[n - 1] && positions[n] < positions[n - 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private PileupSummaryColumns sorted() {
+        final int[] order = IntStream.range(0, size()).boxed()
+                .sorted(Comparator.<Integer>comparingInt(n -> contigIndices[n]).thenComparingInt(n -> positions[n]))
+                .mapToInt(Integer::intValue).toArray();
+        return subset(order);
+    }
+
+    private static int[] select(final int[] column, final int[] indices) {
+        return Arrays.stream(indices).map(n -> column[n]).toArray();
+    }
+}
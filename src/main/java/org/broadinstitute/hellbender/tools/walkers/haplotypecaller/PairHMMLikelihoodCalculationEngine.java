@@ -1,6 +1,7 @@
 package org.broadinstitute.hellbender.tools.walkers.haplotypecaller;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import htsjdk.samtools.SAMUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.logging.log4j.LogManager;
@@ -22,6 +23,10 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /*
  * Classic likelihood computation: full pair-hmm all haplotypes vs all reads.
@@ -43,6 +48,10 @@ public final class PairHMMLikelihoodCalculationEngine implements ReadLikelihoodC
 
     private final PairHMM pairHMM;
 
+    // with more than one thread, the PairHMMs of the threads other than the calling one, which uses pairHMM
+    private final List<PairHMM> additionalPairHMMs;
+    private final ExecutorService sampleExecutor;
+
     @VisibleForTesting
     static boolean writeLikelihoodsToFile = false;
 
@@ -126,6 +135,29 @@ public final class PairHMMLikelihoodCalculationEngine implements ReadLikelihoodC
                                               final double log10globalReadMismappingRate,
                                               final PCRErrorModel pcrErrorModel,
                                               final byte baseQualityScoreThreshold) {
+        this( constantGCP, arguments, hmmType, log10globalReadMismappingRate, pcrErrorModel, baseQualityScoreThreshold, 1 );
+    }
+
+    /**
+     * Create a new PairHMMLikelihoodCalculationEngine using provided parameters and hmm to do its calculations, and
+     * computing the likelihoods of the reads of different samples on up to {@code numSampleThreads} threads, each with
+     * its own PairHMM
+     *
+     * @param constantGCP the gap continuation penalty to use with the PairHMM
+     * @param hmmType the type of the HMM to use
+     * @param log10globalReadMismappingRate the global mismapping probability, in log10(prob) units.
+     * @param pcrErrorModel model to correct for PCR indel artifacts
+     * @param baseQualityScoreThreshold Base qualities below this threshold will be reduced to the minimum usable base
+     *                                  quality.
+     * @param numSampleThreads number of threads computing the likelihoods of the samples, including the calling thread
+     */
+    public PairHMMLikelihoodCalculationEngine(final byte constantGCP,
+                                              final PairHMMNativeArguments arguments,
+                                              final PairHMM.Implementation hmmType,
+                                              final double log10globalReadMismappingRate,
+                                              final PCRErrorModel pcrErrorModel,
+                                              final byte baseQualityScoreThreshold,
+                                              final int numSampleThreads) {
         Utils.nonNull(hmmType, "hmmType is null");
         Utils.nonNull(pcrErrorModel, "pcrErrorModel is null");
         if (constantGCP < 0){
@@ -138,6 +170,13 @@ public final class PairHMMLikelihoodCalculationEngine implements ReadLikelihoodC
         this.log10globalReadMismappingRate = log10globalReadMismappingRate;
         this.pcrErrorModel = pcrErrorModel;
         this.pairHMM = hmmType.makeNewHMM(arguments);
+        Utils.validateArg(numSampleThreads > 0, "numSampleThreads must be positive");
+        this.additionalPairHMMs = new ArrayList<>(numSampleThreads - 1);
+        for (int n = 1; n < numSampleThreads; n++) {
+            additionalPairHMMs.add(hmmType.makeNewHMM(arguments));
+        }
+        this.sampleExecutor = numSampleThreads == 1 ? null : Executors.newFixedThreadPool(numSampleThreads - 1,
+                new ThreadFactoryBuilder().setNameFormat("sample-likelihoods-thread-%d").setDaemon(true).build());
 
         initializePCRErrorModel();
 
@@ -162,7 +201,13 @@ public final class PairHMMLikelihoodCalculationEngine implements ReadLikelihoodC
         if ( likelihoodsStream != null ) {
             likelihoodsStream.close();
         }
-        pairHMM.close();
+        final List<PairHMM> hmms = new ArrayList<>(additionalPairHMMs.size() + 1);
+        hmms.add(pairHMM);
+        hmms.addAll(additionalPairHMMs);
+        PairHMM.closeAll(hmms);
+        if ( sampleExecutor != null ) {
+            sampleExecutor.shutdownNow();
+        }
     }
 
     @Override
@@ -174,13 +219,16 @@ public final class PairHMMLikelihoodCalculationEngine implements ReadLikelihoodC
         final List<Haplotype> haplotypeList = assemblyResultSet.getHaplotypeList();
         final AlleleList<Haplotype> haplotypes = new IndexedAlleleList<>(haplotypeList);
 
-        initializePairHMM(haplotypeList, perSampleReadList);
-
         // Add likelihoods for each sample's reads to our result
         final ReadLikelihoods<Haplotype> result = new ReadLikelihoods<>(samples, haplotypes, perSampleReadList);
         final int sampleCount = result.numberOfSamples();
-        for (int i = 0; i < sampleCount; i++) {
-            computeReadLikelihoods(result.sampleMatrix(i));
+        if (sampleExecutor == null || sampleCount == 1) {
+            initializePairHMM(pairHMM, haplotypeList, perSampleReadList);
+            for (int i = 0; i < sampleCount; i++) {
+                computeReadLikelihoods(pairHMM, result.sampleMatrix(i));
+            }
+        } else {
+            computeReadLikelihoodsInParallel(result, haplotypeList, perSampleReadList);
         }
 
         result.normalizeLikelihoods(log10globalReadMismappingRate);
@@ -231,25 +279,67 @@ public final class PairHMMLikelihoodCalculationEngine implements ReadLikelihoodC
      * After calling this routine the PairHMM will be configured to best evaluate all reads in the samples
      * against the set of haplotypes
      *
+     * @param hmm the pairHMM to initialize
      * @param haplotypes a non-null list of haplotypes
      * @param perSampleReadList a mapping from sample -> reads
      */
-    private void initializePairHMM(final List<Haplotype> haplotypes, final Map<String, List<GATKRead>> perSampleReadList) {
+    private static void initializePairHMM(final PairHMM hmm, final List<Haplotype> haplotypes, final Map<String, List<GATKRead>> perSampleReadList) {
         final int readMaxLength = perSampleReadList.entrySet().stream().flatMap(e -> e.getValue().stream()).mapToInt(read -> read.getLength()).max().orElse(0);
         final int haplotypeMaxLength = haplotypes.stream().mapToInt(h -> h.getBases().length).max().orElse(0);
 
         // initialize arrays to hold the probabilities of being in the match, insertion and deletion cases
-        pairHMM.initialize(haplotypes, perSampleReadList, readMaxLength, haplotypeMaxLength);
+        hmm.initialize(haplotypes, perSampleReadList, readMaxLength, haplotypeMaxLength);
+    }
+
+    /**
+     * Compute the likelihoods of the samples on several threads, each with its own PairHMM. The samples are dealt to
+     * the threads in turn, the calling thread taking the first share, and every thread only writes to the likelihood
+     * matrices of its own samples.
+     */
+    private void computeReadLikelihoodsInParallel(final ReadLikelihoods<Haplotype> result, final List<Haplotype> haplotypes,
+                                                  final Map<String, List<GATKRead>> perSampleReadList) {
+        final int sampleCount = result.numberOfSamples();
+        final int numThreads = Math.min(additionalPairHMMs.size() + 1, sampleCount);
+        final List<Future<?>> futures = new ArrayList<>(numThreads - 1);
+        for (int thread = 1; thread < numThreads; thread++) {
+            final PairHMM threadPairHMM = additionalPairHMMs.get(thread - 1);
+            final int firstSample = thread;
+            futures.add(sampleExecutor.submit(() -> {
+                initializePairHMM(threadPairHMM, haplotypes, perSampleReadList);
+                for (int i = firstSample; i < sampleCount; i += numThreads) {
+                    computeReadLikelihoods(threadPairHMM, result.sampleMatrix(i));
+                }
+            }));
+        }
+
+        initializePairHMM(pairHMM, haplotypes, perSampleReadList);
+        for (int i = 0; i < sampleCount; i += numThreads) {
+            computeReadLikelihoods(pairHMM, result.sampleMatrix(i));
+        }
+
+        for (final Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GATKException("Interrupted while computing read likelihoods", e);
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new GATKException("Failure while computing read likelihoods", e.getCause());
+            }
+        }
     }
 
-    private void computeReadLikelihoods(final LikelihoodMatrix<Haplotype> likelihoods) {
+    private void computeReadLikelihoods(final PairHMM hmm, final LikelihoodMatrix<Haplotype> likelihoods) {
         // Modify the read qualities by applying the PCR error model and capping the minimum base,insertion,deletion qualities
         final List<GATKRead> processedReads = modifyReadQualities(likelihoods.reads());
 
         final Map<GATKRead, byte[]> gapContinuationPenalties = buildGapContinuationPenalties(processedReads, constantGCP);
 
         // Run the PairHMM to calculate the log10 likelihood of each (processed) reads' arising from each haplotype
-        pairHMM.computeLog10Likelihoods(likelihoods, processedReads, gapContinuationPenalties);
+        hmm.computeLog10Likelihoods(likelihoods, processedReads, gapContinuationPenalties);
 
         writeDebugLikelihoods(likelihoods);
     }
@@ -307,6 +397,13 @@ public final class PairHMMLikelihoodCalculationEngine implements ReadLikelihoodC
             return;
         }
 
+        synchronized (likelihoodsStream) {
+            writeDebugLikelihoodsForSample(likelihoods);
+        }
+    }
+
+    private void writeDebugLikelihoodsForSample(final LikelihoodMatrix<Haplotype> likelihoods) {
+
         final List<GATKRead> reads = likelihoods.reads();
         final List<Haplotype> haplotypes = likelihoods.alleles();
         for (int i = 0; i < reads.size(); i++) {
@@ -0,0 +1,448 @@
+package org.broadinstitute.hellbender.tools.walkers.mutect;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFConstants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.io.IOUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A compact, read-only index of the sites of a VCF, such as a germline resource or a panel of normals, queried by
+ * Mutect2 through a memory mapping of the file instead of by parsing the VCF records overlapping every active region.
+ *
+ * <p>
+ *     Only what Mutect2 uses is kept for each site: its position, its alleles and, if present, its allele frequencies
+ *     stored as floats. The file starts with a variable-length entry holding the alleles and allele frequencies of
+ *     every site, followed by fixed-length records (start, end and entry offset) sorted by position within each
+ *     contig, so that sites are found by binary search, and ends with a footer listing the contigs.
+ * </p>
+ *
+ * <p>
+ *     The index is created by {@link CreateBinarySiteIndex}. Queries don't modify any state and can be made from
+ *     several threads, until the index is closed.
+ * </p>
+ */
+public final class BinarySiteIndex implements Closeable {
+    private static final Logger logger = LogManager.getLogger(BinarySiteIndex.class);
+
+    public static final String FILE_EXTENSION = ".sites";
+
+    private static final int MAGIC = 0x4D325349;    // "M2SI"
+    private static final int VERSION = 1;
+    private static final int RECORD_SIZE = 16;
+    private static final int FOOTER_POINTER_SIZE = Long.BYTES;
+
+    // the file is mapped in segments of 1 GB, each extended by the largest possible entry so that no entry or
+    // record needs to be read across two segments
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final int MAX_ENTRY_SIZE = 1 << 16;
+
+    private static final byte NO_ALLELE_FREQUENCIES = 0;
+    private static final byte HAS_ALLELE_FREQUENCIES = 1;
+
+    private final File file;
+    private final MappedByteBuffer[] segments;
+    private final long recordsOffset;
+    private final Map<String, ContigRecords> contigs;
+
+    private BinarySiteIndex(final File file) {
+        this.file = file;
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final int numSegments = (int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+            segments = new MappedByteBuffer[numSegments];
+            for (int n = 0; n < numSegments; n++) {
+                final long start = (long) n << SEGMENT_SHIFT;
+                segments[n] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE + MAX_ENTRY_SIZE, size - start));
+            }
+            if (size < FOOTER_POINTER_SIZE + 2 * Integer.BYTES) {
+                throw new UserException.MalformedFile(file, "file is too short to be a binary site index");
+            }
+
+            final long footerOffset = getLong(size - FOOTER_POINTER_SIZE);
+            if (footerOffset < 0 || footerOffset > size - FOOTER_POINTER_SIZE - 2 * Integer.BYTES || getInt(footerOffset) != MAGIC) {
+                throw new UserException.MalformedFile(file, "not a binary site index; create one with " + CreateBinarySiteIndex.class.getSimpleName());
+            }
+            final int version = getInt(footerOffset + Integer.BYTES);
+            if (version != VERSION) {
+                throw new UserException.MalformedFile(file, "unsupported binary site index version " + version + ", recreate it with this version of GATK");
+            }
+            final ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, footerOffset, size - FOOTER_POINTER_SIZE - footerOffset);
+            footer.position(2 * Integer.BYTES);
+            recordsOffset = footer.getLong();
+            final int numContigs = footer.getInt();
+            contigs = new LinkedHashMap<>(numContigs * 2);
+            for (int n = 0; n < numContigs; n++) {
+                final byte[] name = new byte[footer.getShort() & 0xFFFF];
+                footer.get(name);
+                final ContigRecords contig = new ContigRecords(footer.getLong(), footer.getInt(), footer.getInt());
+                contigs.put(new String(name, StandardCharsets.UTF_8), contig);
+            }
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(file, e);
+        }
+    }
+
+    /**
+     * Open a binary site index created by {@link CreateBinarySiteIndex}
+     */
+    public static BinarySiteIndex open(final File file) {
+        Utils.nonNull(file);
+        if (!file.canRead()) {
+            throw new UserException.CouldNotReadInputFile(file, "file does not exist or cannot be read");
+        }
+        return new BinarySiteIndex(file);
+    }
+
+    /**
+     * Whether any site overlaps the interval contig:start-end
+     */
+    public boolean overlaps(final String contig, final int start, final int end) {
+        final ContigRecords records = contigs.get(contig);
+        if (records == null) {
+            return false;
+        }
+        for (long n = records.firstPossiblyOverlapping(start); n < records.endRecord && recordStart(n) <= end; n++) {
+            if (recordEnd(n) >= start) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The sites overlapping the interval contig:start-end, in the order of the indexed VCF, as variant contexts with
+     * the alleles of the site and, if the site had allele frequencies, the {@link VCFConstants#ALLELE_FREQUENCY_KEY}
+     * attribute. This is what a {@link org.broadinstitute.hellbender.engine.FeatureContext} query of the VCF returns,
+     * as far as Mutect2 is concerned.
+     */
+    public List<VariantContext> getOverlapping(final String contig, final int start, final int end) {
+        final ContigRecords records = contigs.get(contig);
+        if (records == null) {
+            return Collections.emptyList();
+        }
+        List<VariantContext> result = Collections.emptyList();
+        for (long n = records.firstPossiblyOverlapping(start); n < records.endRecord && recordStart(n) <= end; n++) {
+            if (recordEnd(n) >= start) {
+                if (result.isEmpty()) {
+                    result = new ArrayList<>(1);
+                }
+                result.add(decode(contig, n));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The sites starting at contig:start, in the order of the indexed VCF, as in {@link #getOverlapping}
+     */
+    public List<VariantContext> getStartingAt(final String contig, final int start) {
+        final ContigRecords records = contigs.get(contig);
+        if (records == null) {
+            return Collections.emptyList();
+        }
+        List<VariantContext> result = Collections.emptyList();
+        for (long n = records.firstStartingAtOrAfter(start); n < records.endRecord && recordStart(n) == start; n++) {
+            if (result.isEmpty()) {
+                result = new ArrayList<>(1);
+            }
+            result.add(decode(contig, n));
+        }
+        return result;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Drop the mappings of the file, so that they are unmapped once they are garbage collected. The index can't be
+     * queried afterwards.
+     */
+    @Override
+    public void close() {
+        Arrays.fill(segments, null);
+    }
+
+    private VariantContext decode(final String contig, final long record) {
+        long offset = getLong(recordsOffset + record * RECORD_SIZE + 2 * Integer.BYTES);
+        final int numAlleles = getByte(offset++) & 0xFF;
+        final List<Allele> alleles = new ArrayList<>(numAlleles);
+        for (int n = 0; n < numAlleles; n++) {
+            final byte[] bases = new byte[getShort(offset) & 0xFFFF];
+            offset += Short.BYTES;
+            for (int i = 0; i < bases.length; i++) {
+                bases[i] = getByte(offset++);
+            }
+            alleles.add(Allele.create(bases, n == 0));
+        }
+
+        final VariantContextBuilder builder = new VariantContextBuilder(file.getName(), contig, recordStart(record), recordEnd(record), alleles);
+        if (getByte(offset++) == HAS_ALLELE_FREQUENCIES) {
+            final List<Object> alleleFrequencies = new ArrayList<>(numAlleles - 1);
+            for (int n = 1; n < numAlleles; n++, offset += Float.BYTES) {
+                final float af = getFloat(offset);
+                // going through the shortest decimal representation of the float gives back the value of the VCF,
+                // rather than its closest float, whenever the VCF has no more digits than a float can hold
+                alleleFrequencies.add(Float.isNaN(af) ? VCFConstants.MISSING_VALUE_v4 : Double.valueOf(Float.toString(af)));
+            }
+            builder.attribute(VCFConstants.ALLELE_FREQUENCY_KEY, alleleFrequencies);
+        }
+        return builder.make();
+    }
+
+    private int recordStart(final long record) {
+        return getInt(recordsOffset + record * RECORD_SIZE);
+    }
+
+    private int recordEnd(final long record) {
+        return getInt(recordsOffset + record * RECORD_SIZE + Integer.BYTES);
+    }
+
+    private MappedByteBuffer segment(final long offset) {
+        final MappedByteBuffer segment = segments[(int) (offset >>> SEGMENT_SHIFT)];
+        if (segment == null) {
+            throw new IllegalStateException("The binary site index " + file + " has been closed");
+        }
+        return segment;
+    }
+
+    private static int positionInSegment(final long offset) {
+        return (int) (offset & (SEGMENT_SIZE - 1));
+    }
+
+    private byte getByte(final long offset) {
+        return segment(offset).get(positionInSegment(offset));
+    }
+
+    private short getShort(final long offset) {
+        return segment(offset).getShort(positionInSegment(offset));
+    }
+
+    private int getInt(final long offset) {
+        return segment(offset).getInt(positionInSegment(offset));
+    }
+
+    private long getLong(final long offset) {
+        return segment(offset).getLong(positionInSegment(offset));
+    }
+
+    private float getFloat(final long offset) {
+        return segment(offset).getFloat(positionInSegment(offset));
+    }
+
+    /**
+     * The records of one contig, sorted by start
+     */
+    private final class ContigRecords {
+        private final long firstRecord;
+        private final long endRecord;
+        private final int maxSiteLength;
+
+        private ContigRecords(final long firstRecord, final int numRecords, final int maxSiteLength) {
+            this.firstRecord = firstRecord;
+            this.endRecord = firstRecord + numRecords;
+            this.maxSiteLength = maxSiteLength;
+        }
+
+        // the first record that can overlap a position, given that no site is longer than the longest one of the contig
+        private long firstPossiblyOverlapping(final int position) {
+            return firstStartingAtOrAfter((long) position - maxSiteLength + 1);
+        }
+
+        private long firstStartingAtOrAfter(final long minStart) {
+            long low = firstRecord;
+            long high = endRecord;
+            while (low < high) {
+                final long mid = (low + high) >>> 1;
+                if (recordStart(mid) < minStart) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Writes a binary site index from sites added in the order of a coordinate-sorted VCF
+     */
+    public static final class Writer implements Closeable {
+        private final File output;
+        private final File recordsFile;
+        private final DataOutputStream entries;
+        private final DataOutputStream records;
+        private final Map<String, long[]> contigs = new LinkedHashMap<>();  // contig -> {first record, number of records, max site length}
+
+        private long entriesSize = 0;
+        private long numRecords = 0;
+        private String currentContig = null;
+        private int previousStart = 0;
+        private long numSkipped = 0;
+        private boolean closed = false;
+
+        public Writer(final File output) {
+            this.output = Utils.nonNull(output);
+            recordsFile = IOUtils.createTempFile("binary-site-index-records", ".tmp");
+            try {
+                entries = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output), 1 << 16));
+                records = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(recordsFile), 1 << 16));
+            } catch (final IOException e) {
+                throw new UserException.CouldNotCreateOutputFile(output, e);
+            }
+        }
+
+        /**
+         * Add a site. Sites must be added sorted by position within each contig, with all the sites of a contig
+         * added together.
+         */
+        public void add(final VariantContext vc) {
+            Utils.nonNull(vc);
+            final String contig = vc.getContig();
+            if (!contig.equals(currentContig)) {
+                if (contigs.containsKey(contig)) {
+                    throw new UserException.BadInput("sites of contig " + contig + " are not contiguous, the input must be sorted");
+                }
+                contigs.put(contig, new long[] {numRecords, 0, 0});
+                currentContig = contig;
+                previousStart = 0;
+            } else if (vc.getStart() < previousStart) {
+                throw new UserException.BadInput("site " + contig + ":" + vc.getStart() + " comes after " + contig + ":" + previousStart + ", the input must be sorted");
+            }
+            previousStart = vc.getStart();
+
+            final byte[] entry = encodeEntry(vc);
+            if (entry == null) {
+                numSkipped++;
+                return;
+            }
+
+            try {
+                records.writeInt(vc.getStart());
+                records.writeInt(vc.getEnd());
+                records.writeLong(entriesSize);
+                entries.write(entry);
+            } catch (final IOException e) {
+                throw new UserException.CouldNotCreateOutputFile(output, e);
+            }
+            entriesSize += entry.length;
+            numRecords++;
+            final long[] contigRecords = contigs.get(contig);
+            contigRecords[1]++;
+            contigRecords[2] = Math.max(contigRecords[2], vc.getEnd() - vc.getStart() + 1);
+        }
+
+        // the alleles and allele frequencies of the site, or null if they don't fit in an entry
+        private static byte[] encodeEntry(final VariantContext vc) {
+            final List<Allele> alleles = vc.getAlleles();
+            if (alleles.size() > 0xFF) {
+                return null;
+            }
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+            final DataOutputStream entry = new DataOutputStream(bytes);
+            try {
+                entry.writeByte(alleles.size());
+                for (final Allele allele : alleles) {
+                    final byte[] bases = allele.getDisplayString().getBytes(StandardCharsets.US_ASCII);
+                    if (bases.length > 0xFFFF) {
+                        return null;
+                    }
+                    entry.writeShort(bases.length);
+                    entry.write(bases);
+                }
+
+                if (vc.hasAttribute(VCFConstants.ALLELE_FREQUENCY_KEY)) {
+                    final List<Double> alleleFrequencies = vc.getAttributeAsDoubleList(VCFConstants.ALLELE_FREQUENCY_KEY, Double.NaN);
+                    entry.writeByte(HAS_ALLELE_FREQUENCIES);
+                    for (int n = 0; n < alleles.size() - 1; n++) {
+                        entry.writeFloat(n < alleleFrequencies.size() ? alleleFrequencies.get(n).floatValue() : Float.NaN);
+                    }
+                } else {
+                    entry.writeByte(NO_ALLELE_FREQUENCIES);
+                }
+            } catch (final IOException e) {
+                throw new UserException("Could not encode site " + vc.getContig() + ":" + vc.getStart(), e);
+            }
+            return bytes.size() <= MAX_ENTRY_SIZE ? bytes.toByteArray() : null;
+        }
+
+        public long getNumSites() {
+            return numRecords;
+        }
+
+        /**
+         * Discard the index, unless it has already been closed, so that the sites added so far aren't left behind
+         * looking like a complete index
+         */
+        public void abort() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                records.close();
+                entries.close();
+            } catch (final IOException e) {
+                logger.warn("Could not close the partial binary site index " + output, e);
+            } finally {
+                recordsFile.delete();
+                output.delete();
+            }
+        }
+
+        /**
+         * Append the records and the footer to the entries
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                records.close();
+                final long recordsOffset = entriesSize;
+                Files.copy(recordsFile.toPath(), entries);
+
+                final long footerOffset = recordsOffset + numRecords * RECORD_SIZE;
+                entries.writeInt(MAGIC);
+                entries.writeInt(VERSION);
+                entries.writeLong(recordsOffset);
+                entries.writeInt(contigs.size());
+                for (final Map.Entry<String, long[]> contig : contigs.entrySet()) {
+                    final byte[] name = contig.getKey().getBytes(StandardCharsets.UTF_8);
+                    entries.writeShort(name.length);
+                    entries.write(name);
+                    entries.writeLong(contig.getValue()[0]);
+                    entries.writeInt((int) contig.getValue()[1]);
+                    entries.writeInt((int) contig.getValue()[2]);
+                }
+                entries.writeLong(footerOffset);
+                entries.close();
+            } catch (final IOException e) {
+                throw new UserException.CouldNotCreateOutputFile(output, e);
+            } finally {
+                recordsFile.delete();
+            }
+
+            if (numSkipped > 0) {
+                logger.warn(String.format("Skipped %d sites with more than 255 alleles or alleles too long to be indexed", numSkipped));
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.broadinstitute.hellbender.tools.walkers.mutect;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import org.broadinstitute.barclay.argparser.Argument;
+import org.broadinstitute.barclay.argparser.BetaFeature;
+import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
+import org.broadinstitute.barclay.help.DocumentedFeature;
+import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.engine.FeatureContext;
+import org.broadinstitute.hellbender.engine.ReadsContext;
+import org.broadinstitute.hellbender.engine.ReferenceContext;
+import org.broadinstitute.hellbender.engine.VariantWalker;
+import picard.cmdline.programgroups.VariantManipulationProgramGroup;
+
+import java.io.File;
+
+/**
+ * Compile a germline resource or a panel of normals VCF into a binary site index for {@link Mutect2}.
+ *
+ * <p>
+ *     Mutect2 only uses the positions, alleles and allele frequencies (AF) of the sites of the germline resource and
+ *     of the panel of normals, but querying the VCFs parses every overlapping record, including large INFO fields such
+ *     as those of gnomAD. The binary site index keeps only what Mutect2 uses, and Mutect2 queries it through a memory
+ *     mapping of the file. Pass the index to Mutect2 with --germline-resource-site-index or
+ *     --panel-of-normals-site-index instead of the VCF. The calls are the same as with the VCF, except that allele
+ *     frequencies are stored as floats and therefore lose precision beyond about seven significant digits.
+ * </p>
+ *
+ * <p>The input must be sorted. Intervals may be given to only index the sites Mutect2 will query.</p>
+ *
+ * <h3>Usage example</h3>
+ * <pre>
+ * gatk CreateBinarySiteIndex \
+ *   -V af-only-gnomad.vcf.gz \
+ *   -O af-only-gnomad.sites
+ * </pre>
+ */
+@CommandLineProgramProperties(
+        summary = "Compile a germline resource or a panel of normals VCF into a binary site index for Mutect2",
+        oneLineSummary = "Compile a germline resource or a panel of normals VCF into a binary site index for Mutect2",
+        programGroup = VariantManipulationProgramGroup.class
+)
+@DocumentedFeature
+@BetaFeature
+public final class CreateBinarySiteIndex extends VariantWalker {
+
+    @Argument(fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME,
+            shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME,
+            doc = "The output binary site index, conventionally with the " + BinarySiteIndex.FILE_EXTENSION + " extension")
+    private File output;
+
+    private BinarySiteIndex.Writer writer;
+
+    @Override
+    public void onTraversalStart() {
+        writer = new BinarySiteIndex.Writer(output);
+    }
+
+    @Override
+    public void apply(final VariantContext vc, final ReadsContext readsContext, final ReferenceContext refContext, final FeatureContext fc) {
+        writer.add(vc);
+    }
+
+    @Override
+    public Object onTraversalSuccess() {
+        writer.close();
+        return writer.getNumSites();
+    }
+
+    // the index is only completed by onTraversalSuccess, so after a failure the partial index is deleted
+    @Override
+    public void closeTool() {
+        if (writer != null) {
+            writer.abort();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.broadinstitute.hellbender.tools.walkers.mutect;
 
+import com.google.common.collect.Lists;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.MergingIterator;
@@ -20,12 +21,16 @@ import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import picard.cmdline.programgroups.VariantFilteringProgramGroup;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.tools.walkers.haplotypecaller.AssemblyBasedCallerUtils;
-import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.tools.walkers.mutect.PanelOfNormalsSiteCounts.Site;
 import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.io.IOUtils;
 import org.broadinstitute.hellbender.utils.variant.GATKVariantContextUtils;
 
 import java.io.File;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Create a panel of normals (PoN) containing germline and artifactual sites for use with Mutect2.
@@ -85,6 +90,15 @@ import java.util.*;
  * <p>By default the tool fails if multiple vcfs have the same sample name, but the --duplicate-sample-strategy argument can be changed to
  *  ALLOW_ALL to allow duplicates or CHOOSE_FIRST to use only the first vcf with a given sample name.</p>
  *
+ * <p>By default the tool reads all the vcfs at once. With thousands of normals, the --max-inputs-per-merge argument limits the number of
+ *  files open at once by merging the vcfs in stages through temporary files. The resulting PoN is the same.</p>
+ * <pre>
+ * gatk CreateSomaticPanelOfNormals \
+ *   -vcfs normals_for_pon_vcf.args \
+ *   --max-inputs-per-merge 200 \
+ *   -O pon.vcf.gz
+ * </pre>
+ *
  */
 @CommandLineProgramProperties(
         summary = "Make a panel of normals (PoN) for use with Mutect2",
@@ -104,6 +118,8 @@ public class CreateSomaticPanelOfNormals extends CommandLineProgram {
 
     public static final String DUPLICATE_SAMPLE_STRATEGY_LONG_NAME = "duplicate-sample-strategy";
 
+    public static final String MAX_INPUTS_PER_MERGE_LONG_NAME = "max-inputs-per-merge";
+
     public enum DuplicateSampleStrategy {
         THROW_ERROR, CHOOSE_FIRST, ALLOW_ALL
     }
@@ -136,67 +152,164 @@ public class CreateSomaticPanelOfNormals extends CommandLineProgram {
             doc="Output vcf", optional = false)
     private File outputVcf = null;
 
+    /**
+     * By default all the VCFs are read at once. For many normals, this limits the number of VCFs or temporary files
+     * open at any time: groups of this many VCFs are first merged into temporary files counting the records at every
+     * site, and these files are then merged in groups of the same size until they can all be merged into the panel.
+     */
+    @Argument(fullName = MAX_INPUTS_PER_MERGE_LONG_NAME,
+            doc="Merge the VCFs in stages, reading at most this many VCFs or temporary files at once.", minValue = 2, optional = true)
+    private Integer maxInputsPerMerge = null;
+
+    private SAMSequenceDictionary sequenceDictionary;
+
     public Object doWork() {
         final List<File> inputVcfs = new ArrayList<>(vcfs);
         if (!inputVcfs.stream().map(File::getAbsolutePath).allMatch(path -> path.endsWith(".vcf") || path.endsWith(".vcf.gz") || path.endsWith(".args") )) {
             logger.warn("Some input files don't seem to be .vcf or .args files.  Make sure that any input vcfs list end in .args.");
         }
-        final Collection<CloseableIterator<VariantContext>> iterators = new ArrayList<>(inputVcfs.size());
         final Collection<VCFHeader> headers = new HashSet<>(inputVcfs.size());
         final VCFHeader headerOfFirstVcf = new VCFFileReader(inputVcfs.get(0), false).getFileHeader();
-        final SAMSequenceDictionary sequenceDictionary = headerOfFirstVcf.getSequenceDictionary();
+        sequenceDictionary = headerOfFirstVcf.getSequenceDictionary();
+        if (sequenceDictionary == null) {
+            throw new UserException.BadInput(inputVcfs.get(0).getAbsolutePath() + " has no contig lines in its header.");
+        }
         final VariantContextComparator comparator = headerOfFirstVcf.getVCFRecordComparator();
 
+        // only the headers are read here, so that no more VCFs than necessary are open at once when merging
+        final List<File> normalVcfs = new ArrayList<>(inputVcfs.size());
         final Set<String> samples = new HashSet<>();
         for (final File vcf : inputVcfs) {
-            final VCFFileReader reader = new VCFFileReader(vcf, false);
-
-            final VCFHeader header = reader.getFileHeader();
-            final String sample = header.getGenotypeSamples().get(0);
-            if (duplicateSampleStrategy == DuplicateSampleStrategy.THROW_ERROR && samples.contains(sample)) {
-                throw new UserException.BadInput(String.format("Duplicate sample name %s found in multiple input vcfs, the second one being %s.  Consider changing the %s argument", sample, vcf.getAbsolutePath(), DUPLICATE_SAMPLE_STRATEGY_LONG_NAME));
-            } else if (duplicateSampleStrategy == DuplicateSampleStrategy.CHOOSE_FIRST && samples.contains(sample)) {
-                logger.info(String.format("Skipping input vcf %s because a different vcf with the same sample %s has already been seen", vcf.getAbsolutePath(), sample));
-                continue;
-            } else {
-                Utils.validateArg(comparator.isCompatible(header.getContigLines()), () -> vcf.getAbsolutePath() + " has incompatible contigs.");
-                headers.add(header);
-                iterators.add(reader.iterator());
-                samples.add(sample);
+            try (final VCFFileReader reader = new VCFFileReader(vcf, false)) {
+                final VCFHeader header = reader.getFileHeader();
+                final String sample = header.getGenotypeSamples().get(0);
+                if (duplicateSampleStrategy == DuplicateSampleStrategy.THROW_ERROR && samples.contains(sample)) {
+                    throw new UserException.BadInput(String.format("Duplicate sample name %s found in multiple input vcfs, the second one being %s.  Consider changing the %s argument", sample, vcf.getAbsolutePath(), DUPLICATE_SAMPLE_STRATEGY_LONG_NAME));
+                } else if (duplicateSampleStrategy == DuplicateSampleStrategy.CHOOSE_FIRST && samples.contains(sample)) {
+                    logger.info(String.format("Skipping input vcf %s because a different vcf with the same sample %s has already been seen", vcf.getAbsolutePath(), sample));
+                    continue;
+                } else {
+                    Utils.validateArg(comparator.isCompatible(header.getContigLines()), () -> vcf.getAbsolutePath() + " has incompatible contigs.");
+                    headers.add(header);
+                    normalVcfs.add(vcf);
+                    samples.add(sample);
+                }
             }
         }
 
+        final List<CloseableIterator<Site>> sites = maxInputsPerMerge == null || normalVcfs.size() <= maxInputsPerMerge ?
+                openVcfs(normalVcfs) : openSiteCounts(mergeInStages(normalVcfs));
+
         final VariantContextWriter writer = GATKVariantContextUtils.createVCFWriter(outputVcf, sequenceDictionary, false, Options.INDEX_ON_THE_FLY);
         writer.writeHeader(new VCFHeader(VCFUtils.smartMergeHeaders(headers, false)));
+        mergeSites(sites, site -> {
+            if (site.count >= minSampleCount) {
+                writer.add(toVariantContext(site));
+            }
+        });
+        writer.close();
+
+        return "SUCCESS";
+    }
+
+    /**
+     * Merge the VCFs into temporary site counts files, then merge these files until there are few enough of them to be
+     * merged at once
+     */
+    private List<File> mergeInStages(final List<File> normalVcfs) {
+        List<File> siteCounts = mergeGroups(normalVcfs, this::openVcfs);
+        while (siteCounts.size() > maxInputsPerMerge) {
+            final List<File> previousSiteCounts = siteCounts;
+            siteCounts = mergeGroups(previousSiteCounts, this::openSiteCounts);
+            previousSiteCounts.forEach(File::delete);
+        }
+        return siteCounts;
+    }
 
-        final MergingIterator<VariantContext> mergingIterator = new MergingIterator<>(comparator, iterators);
-        SimpleInterval currentPosition = new SimpleInterval("FAKE", 1, 1);
-        final List<VariantContext> variantsAtThisPosition = new ArrayList<>(20);
+    private List<File> mergeGroups(final List<File> inputs, final Function<List<File>, List<CloseableIterator<Site>>> open) {
+        final List<File> siteCounts = new ArrayList<>();
+        for (final List<File> group : Lists.partition(inputs, maxInputsPerMerge)) {
+            final File groupSiteCounts = IOUtils.createTempFile("pon-site-counts", ".bgz");
+            try (final PanelOfNormalsSiteCounts.Writer writer = new PanelOfNormalsSiteCounts.Writer(groupSiteCounts)) {
+                mergeSites(open.apply(group), writer::add);
+            }
+            siteCounts.add(groupSiteCounts);
+        }
+        logger.info(String.format("Merged %d inputs into %d temporary site counts files", inputs.size(), siteCounts.size()));
+        return siteCounts;
+    }
+
+    /**
+     * Merge sorted sites, passing on the merged sites at each position in order
+     */
+    private void mergeSites(final List<CloseableIterator<Site>> inputs, final Consumer<Site> action) {
+        final MergingIterator<Site> mergingIterator = new MergingIterator<>(Site.POSITION_COMPARATOR, inputs);
+        final List<Site> sitesAtThisPosition = new ArrayList<>(20);
         while (mergingIterator.hasNext()) {
-            final VariantContext vc = mergingIterator.next();
-            if (!currentPosition.overlaps(vc)) {
-                processVariantsAtSamePosition(variantsAtThisPosition, writer);
-                variantsAtThisPosition.clear();
-                currentPosition = new SimpleInterval(vc.getContig(), vc.getStart(), vc.getStart());
+            final Site site = mergingIterator.next();
+            if (!sitesAtThisPosition.isEmpty() && !sitesAtThisPosition.get(0).hasSamePosition(site)) {
+                action.accept(mergeSitesAtSamePosition(sitesAtThisPosition));
+                sitesAtThisPosition.clear();
             }
-            variantsAtThisPosition.add(vc);
+            sitesAtThisPosition.add(site);
+        }
+        if (!sitesAtThisPosition.isEmpty()) {
+            action.accept(mergeSitesAtSamePosition(sitesAtThisPosition));
         }
-        processVariantsAtSamePosition(variantsAtThisPosition, writer);
         mergingIterator.close();
-        writer.close();
-
-        return "SUCCESS";
     }
 
-    private void processVariantsAtSamePosition(final List<VariantContext> variants, final VariantContextWriter writer) {
-        if (variants.size() >= minSampleCount){
-            final VariantContext mergedVc = AssemblyBasedCallerUtils.makeMergedVariantContext(variants);
-            final VariantContext outputVc = new VariantContextBuilder()
-                    .source(mergedVc.getSource())
-                    .loc(mergedVc.getContig(), mergedVc.getStart(), mergedVc.getEnd())
-                    .alleles(mergedVc.getAlleles())
-                    .make();
-            writer.add(outputVc);
+    private Site mergeSitesAtSamePosition(final List<Site> sites) {
+        if (sites.size() == 1) {
+            return sites.get(0);
         }
+        // merging already merged alleles gives the same alleles as merging all of them at once
+        final VariantContext mergedVc = AssemblyBasedCallerUtils.makeMergedVariantContext(
+                sites.stream().map(this::toVariantContext).collect(Collectors.toList()));
+        return new Site(sites.get(0).contigIndex, sites.get(0).start, sites.stream().mapToInt(site -> site.count).sum(), mergedVc.getAlleles());
+    }
+
+    private VariantContext toVariantContext(final Site site) {
+        return new VariantContextBuilder()
+                .source(getClass().getSimpleName())
+                .loc(sequenceDictionary.getSequence(site.contigIndex).getSequenceName(), site.start, site.start + site.alleles.get(0).length() - 1)
+                .alleles(site.alleles)
+                .make();
+    }
+
+    private List<CloseableIterator<Site>> openVcfs(final List<File> vcfs) {
+        return vcfs.stream().map(this::openVcf).collect(Collectors.toList());
+    }
+
+    private CloseableIterator<Site> openVcf(final File vcf) {
+        final VCFFileReader reader = new VCFFileReader(vcf, false);
+        final CloseableIterator<VariantContext> variants = reader.iterator();
+        return new CloseableIterator<Site>() {
+            @Override
+            public boolean hasNext() {
+                return variants.hasNext();
+            }
+
+            @Override
+            public Site next() {
+                final VariantContext vc = variants.next();
+                final int contigIndex = sequenceDictionary.getSequenceIndex(vc.getContig());
+                if (contigIndex < 0) {
+                    throw new UserException.BadInput(String.format("%s has a variant at %s:%d, but contig %s is not in the sequence dictionary of the first input VCF.",
+                            vcf.getAbsolutePath(), vc.getContig(), vc.getStart(), vc.getContig()));
+                }
+                return new Site(contigIndex, vc);
+            }
+
+            @Override
+            public void close() {
+                variants.close();
+                reader.close();
+            }
+        };
+    }
+
+    private List<CloseableIterator<Site>> openSiteCounts(final List<File> siteCounts) {
+        return siteCounts.stream().map(PanelOfNormalsSiteCounts.Reader::new).collect(Collectors.toList());
     }
 }
@@ -1,16 +1,21 @@
 package org.broadinstitute.hellbender.tools.walkers.mutect;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import htsjdk.variant.vcf.VCFHeader;
 import htsjdk.variant.vcf.VCFHeaderLine;
+import org.broadinstitute.barclay.argparser.Advanced;
 import org.broadinstitute.barclay.argparser.Argument;
 import org.broadinstitute.barclay.argparser.ArgumentCollection;
 import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
 import org.broadinstitute.barclay.help.DocumentedFeature;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import org.broadinstitute.hellbender.engine.*;
+import org.broadinstitute.hellbender.exceptions.GATKException;
 import picard.cmdline.programgroups.VariantFilteringProgramGroup;
 import org.broadinstitute.hellbender.engine.FeatureContext;
 import org.broadinstitute.hellbender.engine.ReadsContext;
@@ -21,8 +26,17 @@ import org.broadinstitute.hellbender.utils.variant.GATKVCFConstants;
 import org.broadinstitute.hellbender.utils.variant.GATKVCFHeaderLines;
 
 import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.stream.Collectors;
 
 /**
@@ -70,6 +84,11 @@ import java.util.stream.Collectors;
 @DocumentedFeature
 public final class FilterMutectCalls extends TwoPassVariantWalker {
 
+    public static final String FILTERING_THREADS_LONG_NAME = "filtering-threads";
+
+    // number of variants handed to a worker thread at once when running with more than one thread
+    private static final int VARIANTS_PER_BATCH = 100;
+
     @Argument(fullName= StandardArgumentDefinitions.OUTPUT_LONG_NAME,
             shortName=StandardArgumentDefinitions.OUTPUT_SHORT_NAME,
             doc="The output filtered VCF file", optional=false)
@@ -78,12 +97,30 @@ public final class FilterMutectCalls extends TwoPassVariantWalker {
     @ArgumentCollection
     protected M2FiltersArgumentCollection MTFAC = new M2FiltersArgumentCollection();
 
+    /**
+     * With more than one thread, variants are handed in batches to worker threads that compute their filters
+     * independently. In the first pass each batch accumulates its own statistics, which are merged in the order of the
+     * variants, and in the second pass the filtered variants are written in their original order, so the output is the
+     * same as with a single thread. Reading the input VCF still happens on the main thread.
+     */
+    @Advanced
+    @Argument(fullName = FILTERING_THREADS_LONG_NAME, doc = "Number of threads used to filter variants", minValue = 1, optional = true)
+    private int filteringThreads = 1;
+
     private VariantContextWriter vcfWriter;
 
     private Mutect2FilteringEngine filteringEngine;
 
     private FilteringFirstPass filteringFirstPass;
 
+    private String tumorSample;
+
+    private ExecutorService filteringExecutor;
+
+    private List<VariantContext> currentBatch;
+    private final Deque<Future<FilteringFirstPass>> pendingFirstPassBatches = new ArrayDeque<>();
+    private final Deque<Future<List<VariantContext>>> pendingSecondPassBatches = new ArrayDeque<>();
+
     @Override
     public void onTraversalStart() {
         final VCFHeader inputHeader = getHeaderForVariants();
@@ -100,44 +137,152 @@ public final class FilterMutectCalls extends TwoPassVariantWalker {
         vcfWriter = createVCFWriter(new File(outputVcf));
         vcfWriter.writeHeader(vcfHeader);
 
-        final String tumorSample = getTumorSampleName();
+        tumorSample = getTumorSampleName();
         final VCFHeaderLine normalSampleHeaderLine = getHeaderForVariants().getMetaDataLine(Mutect2Engine.NORMAL_SAMPLE_KEY_IN_VCF_HEADER);
         final Optional<String> normalSample = normalSampleHeaderLine == null ? Optional.empty() : Optional.of(normalSampleHeaderLine.getValue());
 
         filteringEngine = new Mutect2FilteringEngine(MTFAC, tumorSample, normalSample);
         filteringFirstPass = new FilteringFirstPass(tumorSample);
+
+        if (filteringThreads > 1) {
+            final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                    .setNameFormat("filtering-thread-%d")
+                    .setDaemon(true)
+                    .build();
+            filteringExecutor = Executors.newFixedThreadPool(filteringThreads, threadFactory);
+            currentBatch = new ArrayList<>(VARIANTS_PER_BATCH);
+        }
     }
 
     @Override
     public Object onTraversalSuccess() {
+        if (filteringExecutor != null) {
+            if (!currentBatch.isEmpty()) {
+                submitSecondPassBatch();
+            }
+            while (!pendingSecondPassBatches.isEmpty()) {
+                waitForBatch(pendingSecondPassBatches.removeFirst()).forEach(vcfWriter::add);
+            }
+        }
         return "SUCCESS";
     }
 
     @Override
     public void firstPassApply(final VariantContext vc, final ReadsContext readsContext, final ReferenceContext refContext, final FeatureContext fc) {
-        final FilterResult filterResult = filteringEngine.calculateFilters(MTFAC, vc, Optional.empty());
-        filteringFirstPass.add(filterResult, vc);
+        if (filteringExecutor == null) {
+            final FilterResult filterResult = filteringEngine.calculateFilters(MTFAC, vc, Optional.empty());
+            filteringFirstPass.add(filterResult, vc);
+            return;
+        }
+
+        currentBatch.add(decodeGenotypes(vc));
+        if (currentBatch.size() >= VARIANTS_PER_BATCH) {
+            submitFirstPassBatch();
+        }
+    }
+
+    private void submitFirstPassBatch() {
+        final List<VariantContext> batch = currentBatch;
+        currentBatch = new ArrayList<>(VARIANTS_PER_BATCH);
+
+        // bound the number of variants held in memory by merging the oldest batches once enough are queued
+        while (pendingFirstPassBatches.size() >= 2 * filteringThreads) {
+            filteringFirstPass.merge(waitForBatch(pendingFirstPassBatches.removeFirst()));
+        }
+        pendingFirstPassBatches.addLast(filteringExecutor.submit(() -> {
+            final FilteringFirstPass batchFirstPass = new FilteringFirstPass(tumorSample);
+            for (final VariantContext vc : batch) {
+                batchFirstPass.add(filteringEngine.calculateFilters(MTFAC, vc, Optional.empty()), vc);
+            }
+            return batchFirstPass;
+        }));
     }
 
     @Override
     protected void afterFirstPass() {
+        if (filteringExecutor != null) {
+            if (!currentBatch.isEmpty()) {
+                submitFirstPassBatch();
+            }
+            while (!pendingFirstPassBatches.isEmpty()) {
+                filteringFirstPass.merge(waitForBatch(pendingFirstPassBatches.removeFirst()));
+            }
+        }
         filteringFirstPass.learnModelForSecondPass(MTFAC.maxFalsePositiveRate);
         filteringFirstPass.writeM2FilterSummary(MTFAC.mutect2FilteringStatsTable);
     }
 
     @Override
     public void secondPassApply(final VariantContext vc, final ReadsContext readsContext, final ReferenceContext refContext, final FeatureContext fc) {
+        if (filteringExecutor == null) {
+            vcfWriter.add(applyFilters(vc));
+            return;
+        }
+
+        currentBatch.add(decodeGenotypes(vc));
+        if (currentBatch.size() >= VARIANTS_PER_BATCH) {
+            submitSecondPassBatch();
+        }
+    }
+
+    private void submitSecondPassBatch() {
+        final List<VariantContext> batch = currentBatch;
+        currentBatch = new ArrayList<>(VARIANTS_PER_BATCH);
+
+        // write the oldest batches, in order, once enough are queued
+        while (pendingSecondPassBatches.size() >= 2 * filteringThreads) {
+            waitForBatch(pendingSecondPassBatches.removeFirst()).forEach(vcfWriter::add);
+        }
+        pendingSecondPassBatches.addLast(filteringExecutor.submit(() -> {
+            final List<VariantContext> filtered = new ArrayList<>(batch.size());
+            for (final VariantContext vc : batch) {
+                filtered.add(applyFilters(vc));
+            }
+            return filtered;
+        }));
+    }
+
+    private VariantContext applyFilters(final VariantContext vc) {
         final FilterResult filterResult = filteringEngine.calculateFilters(MTFAC, vc, Optional.of(filteringFirstPass));
         final VariantContextBuilder vcb = new VariantContextBuilder(vc);
 
         vcb.filters(filterResult.getFilters());
         filterResult.getAttributes().entrySet().forEach(e -> vcb.attribute(e.getKey(), e.getValue()));
 
-        vcfWriter.add(vcb.make());
+        return vcb.make();
+    }
+
+    /**
+     * Genotypes read from a VCF are decoded lazily by the codec, which isn't thread-safe, so they must be decoded on
+     * the main thread before the variant is handed to a worker thread.
+     */
+    private static VariantContext decodeGenotypes(final VariantContext vc) {
+        final GenotypesContext genotypes = vc.getGenotypes();
+        if (genotypes instanceof LazyGenotypesContext) {
+            ((LazyGenotypesContext) genotypes).decode();
+        }
+        return vc;
+    }
+
+    private static <T> T waitForBatch(final Future<T> batch) {
+        try {
+            return batch.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while waiting for a batch of variants to be filtered", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new GATKException("Failure while filtering a batch of variants", e.getCause());
+        }
     }
 
     @Override
     public void closeTool() {
+        if ( filteringExecutor != null ) {
+            filteringExecutor.shutdownNow();
+        }
         if ( vcfWriter != null ) {
             vcfWriter.close();
         }
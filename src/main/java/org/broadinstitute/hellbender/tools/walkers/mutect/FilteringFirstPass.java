@@ -76,6 +76,20 @@ public class FilteringFirstPass {
         }
     }
 
+    /**
+     * Add the results accumulated by another first pass, as if its variants had been added to this one.
+     * This lets batches of variants be processed independently and their results combined afterwards.
+     *
+     * @param other the first pass over variants that all come after the variants of this one
+     */
+    public void merge(final FilteringFirstPass other) {
+        Utils.validate(!readyForSecondPass && !other.readyForSecondPass, "cannot merge first passes once a model has been learned");
+        Utils.validateArg(tumorSample.equals(other.tumorSample), "cannot merge first passes for different tumor samples");
+        filterResults.addAll(other.filterResults);
+        // the other variants come later, so their filtered calls replace ours for the same phasing id
+        filteredPhasedCalls.putAll(other.filteredPhasedCalls);
+    }
+
     public void learnModelForSecondPass(final double requestedFPR){
         final double[] readOrientationPosteriors = getFilterResults().stream()
                 .filter(r -> r.getFilters().isEmpty())
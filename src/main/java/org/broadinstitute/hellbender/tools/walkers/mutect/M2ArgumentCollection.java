@@ -19,6 +19,8 @@ public class M2ArgumentCollection extends AssemblyBasedCallerArgumentCollection
     public static final String GENOTYPE_PON_SITES_LONG_NAME = "genotype-pon-sites";
     public static final String GENOTYPE_GERMLINE_SITES_LONG_NAME = "genotype-germline-sites";
     public static final String GERMLINE_RESOURCE_LONG_NAME = "germline-resource";
+    public static final String PANEL_OF_NORMALS_SITE_INDEX_LONG_NAME = "panel-of-normals-site-index";
+    public static final String GERMLINE_RESOURCE_SITE_INDEX_LONG_NAME = "germline-resource-site-index";
     public static final String DEFAULT_AF_LONG_NAME = "af-of-alleles-not-in-resource";
     public static final String DEFAULT_AF_SHORT_NAME = "default-af";
     public static final String EMISSION_LOD_LONG_NAME = "tumor-lod-to-emit";
@@ -37,6 +39,7 @@ public class M2ArgumentCollection extends AssemblyBasedCallerArgumentCollection
     public static final String IGNORE_ITR_ARTIFACTS_LONG_NAME = "ignore-itr-artifacts";
     public static final String ARTIFACT_PRIOR_TABLE_NAME = "orientation-bias-artifact-priors";
     public static final String GET_AF_FROM_AD_LONG_NAME = "get-af-from-ad";
+    public static final String SAMPLE_LIKELIHOOD_THREADS_LONG_NAME = "sample-likelihood-threads";
 
     public static final double DEFAULT_AF_FOR_TUMOR_ONLY_CALLING = 5e-8;
     public static final double DEFAULT_AF_FOR_TUMOR_NORMAL_CALLING = 1e-6;
@@ -64,6 +67,14 @@ public class M2ArgumentCollection extends AssemblyBasedCallerArgumentCollection
     @Argument(fullName= PANEL_OF_NORMALS_LONG_NAME, shortName = PANEL_OF_NORMALS_SHORT_NAME, doc="VCF file of sites observed in normal.", optional = true)
     public FeatureInput<VariantContext> pon;
 
+    /**
+     * The panel of normals compiled into a binary site index by {@link CreateBinarySiteIndex}, which is faster to
+     * query than the VCF.
+     */
+    @Argument(fullName = PANEL_OF_NORMALS_SITE_INDEX_LONG_NAME, doc = "Binary site index of a panel of normals, used instead of the VCF.",
+            optional = true, mutex = {PANEL_OF_NORMALS_LONG_NAME})
+    public File ponSiteIndex = null;
+
     /**
      * Usually we exclude sites in the panel of normals from active region determination, which saves time.  Setting this to true
      * causes Mutect to produce a variant call at these sites.  This call will still be filtered, but it shows up in the vcf.
@@ -84,6 +95,14 @@ public class M2ArgumentCollection extends AssemblyBasedCallerArgumentCollection
     @Argument(fullName= GERMLINE_RESOURCE_LONG_NAME, doc="Population vcf of germline sequencing containing allele fractions.", optional = true)
     public FeatureInput<VariantContext> germlineResource;
 
+    /**
+     * The germline resource compiled into a binary site index by {@link CreateBinarySiteIndex}, which is faster to
+     * query than the VCF.
+     */
+    @Argument(fullName = GERMLINE_RESOURCE_SITE_INDEX_LONG_NAME, doc = "Binary site index of a germline resource, used instead of the VCF.",
+            optional = true, mutex = {GERMLINE_RESOURCE_LONG_NAME})
+    public File germlineResourceSiteIndex = null;
+
     /**
      * Population allele fraction assigned to alleles not found in germline resource.
      */
@@ -157,6 +176,15 @@ public class M2ArgumentCollection extends AssemblyBasedCallerArgumentCollection
             doc = "Two or more phased substitutions separated by this distance or less are merged into MNPs.", optional = true)
     public int maxMnpDistance = 1;
 
+    /**
+     * Compute the likelihoods of the tumor and normal reads on separate threads, each with its own PairHMM.  This reduces
+     * the time spent on each assembly region when there is a normal, especially for deep samples, but not the total work.
+     */
+    @Advanced
+    @Argument(fullName = SAMPLE_LIKELIHOOD_THREADS_LONG_NAME,
+            doc = "Number of threads computing the read likelihoods of the tumor and normal samples concurrently.", minValue = 1, optional = true)
+    public int sampleLikelihoodThreads = 1;
+
     /**
      * When opposite ends of a fragment are inverted tandem repeats of each other, the sequence past one end may be copied onto the other
      * during library prep.  By default, Mutect2 identifies and clips these artifacts, which are especially prevalent when
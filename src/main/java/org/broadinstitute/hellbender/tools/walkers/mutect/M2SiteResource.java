@@ -0,0 +1,53 @@
+package org.broadinstitute.hellbender.tools.walkers.mutect;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import org.broadinstitute.hellbender.engine.FeatureContext;
+import org.broadinstitute.hellbender.engine.FeatureInput;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * A germline resource or a panel of normals, given to Mutect2 either as a VCF queried through the {@link FeatureContext}
+ * or as a {@link BinarySiteIndex}. Without either, queries find no sites.
+ */
+final class M2SiteResource implements AutoCloseable {
+    private final FeatureInput<VariantContext> vcf;
+    private final BinarySiteIndex siteIndex;
+
+    M2SiteResource(final FeatureInput<VariantContext> vcf, final File siteIndex) {
+        this.vcf = vcf;
+        this.siteIndex = siteIndex == null ? null : BinarySiteIndex.open(siteIndex);
+    }
+
+    /**
+     * The sites overlapping the interval
+     */
+    List<VariantContext> getOverlapping(final FeatureContext featureContext, final SimpleInterval interval) {
+        return siteIndex == null ? featureContext.getValues(vcf, interval)
+                : siteIndex.getOverlapping(interval.getContig(), interval.getStart(), interval.getEnd());
+    }
+
+    /**
+     * Whether any site overlaps the interval
+     */
+    boolean overlaps(final FeatureContext featureContext, final SimpleInterval interval) {
+        return siteIndex == null ? !featureContext.getValues(vcf, interval).isEmpty()
+                : siteIndex.overlaps(interval.getContig(), interval.getStart(), interval.getEnd());
+    }
+
+    /**
+     * The sites starting at a position within the interval of the feature context
+     */
+    List<VariantContext> getStartingAt(final FeatureContext featureContext, final String contig, final int start) {
+        return siteIndex == null ? featureContext.getValues(vcf, start) : siteIndex.getStartingAt(contig, start);
+    }
+
+    @Override
+    public void close() {
+        if (siteIndex != null) {
+            siteIndex.close();
+        }
+    }
+}
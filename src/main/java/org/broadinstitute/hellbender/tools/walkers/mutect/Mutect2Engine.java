@@ -90,6 +90,8 @@ public final class Mutect2Engine implements AssemblyRegionEvaluator {
     private VariantAnnotatorEngine annotationEngine;
     private final SmithWatermanAligner aligner;
     private AssemblyRegionTrimmer trimmer = new AssemblyRegionTrimmer();
+    private final M2SiteResource germlineResource;
+    private final M2SiteResource panelOfNormals;
 
     /**
      * Create and initialize a new HaplotypeCallerEngine given a collection of HaplotypeCaller arguments, a reads header,
@@ -115,8 +117,10 @@ public final class Mutect2Engine implements AssemblyRegionEvaluator {
 
         annotationEngine = Utils.nonNull(annotatorEngine);
         assemblyEngine = AssemblyBasedCallerUtils.createReadThreadingAssembler(MTAC);
-        likelihoodCalculationEngine = AssemblyBasedCallerUtils.createLikelihoodCalculationEngine(MTAC.likelihoodArgs);
-        genotypingEngine = new SomaticGenotypingEngine(samplesList, MTAC, tumorSample, normalSample);
+        likelihoodCalculationEngine = AssemblyBasedCallerUtils.createLikelihoodCalculationEngine(MTAC.likelihoodArgs, MTAC.sampleLikelihoodThreads);
+        germlineResource = new M2SiteResource(MTAC.germlineResource, MTAC.germlineResourceSiteIndex);
+        panelOfNormals = new M2SiteResource(MTAC.pon, MTAC.ponSiteIndex);
+        genotypingEngine = new SomaticGenotypingEngine(samplesList, MTAC, tumorSample, normalSample, germlineResource, panelOfNormals);
         genotypingEngine.setAnnotationEngine(annotationEngine);
         haplotypeBAMWriter = AssemblyBasedCallerUtils.createBamWriter(MTAC, createBamOutIndex, createBamOutMD5, header);
         trimmer.initialize(MTAC.assemblyRegionTrimmerArgs, header.getSequenceDictionary(), MTAC.debug,
@@ -246,6 +250,8 @@ public final class Mutect2Engine implements AssemblyRegionEvaluator {
         aligner.close();
         haplotypeBAMWriter.ifPresent(writer -> writer.close());
         referenceReader.close();
+        germlineResource.close();
+        panelOfNormals.close();
     }
 
     @Override
@@ -281,7 +287,7 @@ public final class Mutect2Engine implements AssemblyRegionEvaluator {
                 return new ActivityProfileState(refInterval, 0.0);
             }
         } else if (!MTAC.genotypeGermlineSites) {
-            final List<VariantContext> germline = featureContext.getValues(MTAC.germlineResource, refInterval);
+            final List<VariantContext> germline = germlineResource.getOverlapping(featureContext, refInterval);
             if (!germline.isEmpty()){
                 final List<Double> germlineAlleleFrequencies = germline.get(0).getAttributeAsDoubleList(VCFConstants.ALLELE_FREQUENCY_KEY, 0.0);
                 if (! germlineAlleleFrequencies.isEmpty() && germlineAlleleFrequencies.get(0) > MTAC.maxPopulationAlleleFrequency) {
@@ -290,7 +296,7 @@ public final class Mutect2Engine implements AssemblyRegionEvaluator {
             }
         }
 
-        if (!MTAC.genotypePonSites && !featureContext.getValues(MTAC.pon, new SimpleInterval(context.getContig(), (int) context.getPosition(), (int) context.getPosition())).isEmpty()) {
+        if (!MTAC.genotypePonSites && panelOfNormals.overlaps(featureContext, new SimpleInterval(context.getContig(), (int) context.getPosition(), (int) context.getPosition()))) {
             return new ActivityProfileState(refInterval, 0.0);
         }
 
@@ -0,0 +1,190 @@
+package org.broadinstitute.hellbender.tools.walkers.mutect;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.broadinstitute.hellbender.utils.io.VarIntUtils.readVarInt;
+import static org.broadinstitute.hellbender.utils.io.VarIntUtils.writeVarInt;
+
+/**
+ * Temporary file of the sites of a group of normal VCFs, written by {@link CreateSomaticPanelOfNormals} when it merges
+ * many VCFs in stages and read back by the next stage.
+ *
+ * <p>For every start position, sorted by contig index then start, the file holds the number of VCF records starting
+ * there and their merged alleles, which is all the final stage needs to decide whether, and with which alleles, the
+ * site goes into the panel. Numbers are varints, with starts stored as the difference from the previous start on the
+ * same contig, and the file is block compressed at the fastest compression level.</p>
+ */
+final class PanelOfNormalsSiteCounts {
+
+    private static final int COMPRESSION_LEVEL = 1;
+
+    private PanelOfNormalsSiteCounts() {}
+
+    /**
+     * The records of one or more normals starting at the same position
+     */
+    static final class Site {
+        static final Comparator<Site> POSITION_COMPARATOR = Comparator.<Site>comparingInt(site -> site.contigIndex).thenComparingInt(site -> site.start);
+
+        final int contigIndex;
+        final int start;
+        final int count;
+        final List<Allele> alleles;
+
+        Site(final int contigIndex, final int start, final int count, final List<Allele> alleles) {
+            Utils.validateArg(!alleles.isEmpty() && alleles.get(0).isReference(), "the first allele must be the reference");
+            this.contigIndex = contigIndex;
+            this.start = start;
+            this.count = count;
+            this.alleles = alleles;
+        }
+
+        Site(final int contigIndex, final VariantContext vc) {
+            this(contigIndex, vc.getStart(), 1, vc.getAlleles());
+        }
+
+        boolean hasSamePosition(final Site other) {
+            return contigIndex == other.contigIndex && start == other.start;
+        }
+    }
+
+    static final class Writer implements Closeable {
+        private final File file;
+        private final OutputStream out;
+        private int previousContigIndex = -1;
+        private int previousStart = 0;
+
+        Writer(final File file) {
+            this.file = file;
+            this.out = new BufferedOutputStream(new BlockCompressedOutputStream(file, COMPRESSION_LEVEL));
+        }
+
+        /**
+         * Add a site, after any site on a previous contig or at a previous position
+         */
+        void add(final Site site) {
+            if (site.contigIndex != previousContigIndex) {
+                previousContigIndex = site.contigIndex;
+                previousStart = 0;
+            }
+            try {
+                writeVarInt(out, site.contigIndex);
+                writeVarInt(out, site.start - previousStart);
+                writeVarInt(out, site.count);
+                writeVarInt(out, site.alleles.size());
+                for (final Allele allele : site.alleles) {
+                    final byte[] bases = allele.getDisplayString().getBytes(StandardCharsets.US_ASCII);
+                    writeVarInt(out, bases.length);
+                    out.write(bases);
+                }
+            } catch (final IOException e) {
+                throw new UserException.CouldNotCreateOutputFile(file, e);
+            }
+            previousStart = site.start;
+        }
+
+        @Override
+        public void close() {
+            try {
+                out.close();
+            } catch (final IOException e) {
+                throw new UserException.CouldNotCreateOutputFile(file, e);
+            }
+        }
+    }
+
+    static final class Reader implements CloseableIterator<Site> {
+        private final File file;
+        private final InputStream in;
+        private int previousContigIndex = -1;
+        private int previousStart = 0;
+        private Site next;
+
+        Reader(final File file) {
+            this.file = file;
+            try {
+                this.in = new BufferedInputStream(new BlockCompressedInputStream(file));
+            } catch (final IOException e) {
+                throw new UserException.CouldNotReadInputFile(file, e);
+            }
+            next = readSite();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Site next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            final Site site = next;
+            next = readSite();
+            return site;
+        }
+
+        private Site readSite() {
+            try {
+                final int firstByte = in.read();
+                if (firstByte < 0) {
+                    return null;
+                }
+                final int contigIndex = readVarInt(in, firstByte);
+                if (contigIndex != previousContigIndex) {
+                    previousContigIndex = contigIndex;
+                    previousStart = 0;
+                }
+                previousStart += readVarInt(in);
+                final int count = readVarInt(in);
+                final int numAlleles = readVarInt(in);
+                final List<Allele> alleles = new ArrayList<>(numAlleles);
+                for (int n = 0; n < numAlleles; n++) {
+                    final byte[] bases = new byte[readVarInt(in)];
+                    if (bases.length > 0 && readFully(in, bases) != bases.length) {
+                        throw new IOException("unexpected end of file");
+                    }
+                    alleles.add(Allele.create(bases, n == 0));
+                }
+                return new Site(contigIndex, previousStart, count, alleles);
+            } catch (final IOException e) {
+                throw new UserException.CouldNotReadInputFile(file, e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (final IOException e) {
+                throw new UserException.CouldNotReadInputFile(file, e);
+            }
+        }
+    }
+
+    private static int readFully(final InputStream in, final byte[] bytes) throws IOException {
+        int read = 0;
+        while (read < bytes.length) {
+            final int n = in.read(bytes, read, bytes.length - read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        return read;
+    }
+}
@@ -38,6 +38,8 @@ import static org.broadinstitute.hellbender.utils.OptimizationUtils.argmax;
 public class SomaticGenotypingEngine extends AssemblyBasedCallerGenotypingEngine {
 
     private final M2ArgumentCollection MTAC;
+    private final M2SiteResource germlineResource;
+    private final M2SiteResource panelOfNormals;
     public final String tumorSample;
     private final String normalSample;
     final boolean hasNormal;
@@ -59,9 +61,13 @@ public class SomaticGenotypingEngine extends AssemblyBasedCallerGenotypingEngine
     public SomaticGenotypingEngine(final SampleList samples,
                                    final M2ArgumentCollection MTAC,
                                    final String tumorSample,
-                                   final String normalSample) {
+                                   final String normalSample,
+                                   final M2SiteResource germlineResource,
+                                   final M2SiteResource panelOfNormals) {
         super(MTAC, samples, DUMMY_AF_CALCULATOR_PROVIDER, !MTAC.doNotRunPhysicalPhasing);
         this.MTAC = MTAC;
+        this.germlineResource = Utils.nonNull(germlineResource);
+        this.panelOfNormals = Utils.nonNull(panelOfNormals);
         this.tumorSample = tumorSample;
         this.normalSample = normalSample;
         hasNormal = normalSample != null;
@@ -148,7 +154,7 @@ public class SomaticGenotypingEngine extends AssemblyBasedCallerGenotypingEngine
             final Optional<LikelihoodMatrix<Allele>> subsettedLog10NormalMatrix =
                     getForNormal(() -> new SubsettedLikelihoodMatrix<>(log10NormalMatrix.get(), allAllelesToEmit));
 
-            final Map<String, Object> populationAFAnnotation = GermlineProbabilityCalculator.getPopulationAFAnnotation(featureContext.getValues(MTAC.germlineResource, loc), tumorAltAlleles, MTAC.getDefaultAlleleFrequency());
+            final Map<String, Object> populationAFAnnotation = GermlineProbabilityCalculator.getPopulationAFAnnotation(germlineResource.getStartingAt(featureContext, mergedVC.getContig(), loc), tumorAltAlleles, MTAC.getDefaultAlleleFrequency());
 
             final VariantContextBuilder callVcb = new VariantContextBuilder(mergedVC)
                     .alleles(allAllelesToEmit)
@@ -158,7 +164,7 @@ public class SomaticGenotypingEngine extends AssemblyBasedCallerGenotypingEngine
             normalLog10Odds.ifPresent(values -> callVcb.attribute(GATKVCFConstants.NORMAL_LOD_KEY, values.asDoubleArray(tumorAltAlleles)));
             normalArtifactLog10Odds.ifPresent(values -> callVcb.attribute(GATKVCFConstants.NORMAL_ARTIFACT_LOD_ATTRIBUTE, values.asDoubleArray(tumorAltAlleles)));
 
-            if (!featureContext.getValues(MTAC.pon, mergedVC.getStart()).isEmpty()) {
+            if (!panelOfNormals.getStartingAt(featureContext, mergedVC.getContig(), mergedVC.getStart()).isEmpty()) {
                 callVcb.attribute(GATKVCFConstants.IN_PON_VCF_ATTRIBUTE, true);
             }
 
@@ -0,0 +1,130 @@
+package org.broadinstitute.hellbender.tools.walkers.readorientation;
+
+import htsjdk.samtools.util.SequenceUtil;
+import org.broadinstitute.hellbender.utils.Nucleotide;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The alt sites of a single canonical reference context, i.e. the design matrix of {@link LearnReadOrientationModelEngine},
+ * stored in primitive arrays rather than as a list of {@link AltSiteRecord}s.
+ *
+ * Sites of the reverse complement context are added as their reverse complement records, as in
+ * {@link LearnReadOrientationModel#mergeDesignMatrices}, so that the matrix only ever holds the canonical representation.
+ */
+public final class AltSiteDesignMatrix {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final Nucleotide[] NUCLEOTIDES = Nucleotide.values();
+
+    private final String referenceContext;
+
+    private int size = 0;
+    private int[] depths = new int[INITIAL_CAPACITY];
+    private int[] altCounts = new int[INITIAL_CAPACITY];
+    private int[] altF1R2s = new int[INITIAL_CAPACITY];
+    private byte[] altAlleles = new byte[INITIAL_CAPACITY];
+
+    public AltSiteDesignMatrix(final String referenceContext) {
+        Utils.validateArg(F1R2FilterConstants.CANONICAL_KMERS.contains(referenceContext),
+                "the design matrix must have the canonical representation but got " + referenceContext);
+        this.referenceContext = referenceContext;
+    }
+
+    public AltSiteDesignMatrix(final String referenceContext, final List<AltSiteRecord> records) {
+        this(referenceContext);
+        records.forEach(this::add);
+    }
+
+    /**
+     * Add a record of either the canonical reference context of this matrix or of its reverse complement
+     */
+    public void add(final AltSiteRecord record) {
+        final AltSiteRecord canonicalRecord = record.getReferenceContext().equals(referenceContext) ? record : record.getReverseComplementOfRecord();
+        Utils.validateArg(canonicalRecord.getReferenceContext().equals(referenceContext),
+                () -> "expected a record of " + referenceContext + " or its reverse complement but got " + record.getReferenceContext());
+        add(canonicalRecord.getDepth(), canonicalRecord.getAltCount(), canonicalRecord.getAltF1R2(), canonicalRecord.getAltAllele());
+    }
+
+    private void add(final int depth, final int altCount, final int altF1R2, final Nucleotide altAllele) {
+        if (size == depths.length) {
+            final int capacity = 2 * size;
+            depths = Arrays.copyOf(depths, capacity);
+            altCounts = Arrays.copyOf(altCounts, capacity);
+            altF1R2s = Arrays.copyOf(altF1R2s, capacity);
+            altAlleles = Arrays.copyOf(altAlleles, capacity);
+        }
+        depths[size] = depth;
+        altCounts[size] = altCount;
+        altF1R2s[size] = altF1R2;
+        altAlleles[size] = (byte) altAllele.ordinal();
+        size++;
+    }
+
+    /**
+     * Append the sites of another matrix of the same reference context
+     */
+    public void addAll(final AltSiteDesignMatrix other) {
+        Utils.validateArg(other.referenceContext.equals(referenceContext), "the design matrices must have the same reference context");
+        for (int n = 0; n < other.size; n++) {
+            add(other.depths[n], other.altCounts[n], other.altF1R2s[n], other.getAltAllele(n));
+        }
+    }
+
+    public String getReferenceContext() { return referenceContext; }
+
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    public int getDepth(final int n) { return depths[n]; }
+
+    public int getAltCount(final int n) { return altCounts[n]; }
+
+    public int getAltF1R2(final int n) { return altF1R2s[n]; }
+
+    public Nucleotide getAltAllele(final int n) { return NUCLEOTIDES[altAlleles[n]]; }
+
+    /**
+     * Read a table written by {@link CollectF1R2Counts} one record at a time into a design matrix for each canonical
+     * reference context, without holding the {@link AltSiteRecord}s themselves in memory.
+     *
+     * The sites of the canonical context come first in each matrix, followed by the sites of its reverse complement,
+     * which is the order in which {@link LearnReadOrientationModel#mergeDesignMatrices} combines them.
+     */
+    public static Map<String, AltSiteDesignMatrix> readByCanonicalContext(final File table) {
+        return groupByCanonicalContext(action -> AltSiteRecord.forEachAltSiteRecord(table, action));
+    }
+
+    /**
+     * Expand the alt sites of binary {@link F1R2Counts} into a design matrix for each canonical reference context
+     */
+    public static Map<String, AltSiteDesignMatrix> groupByCanonicalContext(final F1R2Counts counts) {
+        return groupByCanonicalContext(action -> counts.forEachAltSite((record, count) -> {
+            for (long n = 0; n < count; n++) {
+                action.accept(record);
+            }
+        }));
+    }
+
+    private static Map<String, AltSiteDesignMatrix> groupByCanonicalContext(final Consumer<Consumer<AltSiteRecord>> records) {
+        final Map<String, AltSiteDesignMatrix> canonicalMatrices = new HashMap<>();
+        final Map<String, AltSiteDesignMatrix> reverseComplementMatrices = new HashMap<>();
+        records.accept(record -> {
+            final String context = record.getReferenceContext();
+            final boolean isCanonical = F1R2FilterConstants.CANONICAL_KMERS.contains(context);
+            final String canonicalContext = isCanonical ? context : SequenceUtil.reverseComplement(context);
+            (isCanonical ? canonicalMatrices : reverseComplementMatrices)
+                    .computeIfAbsent(canonicalContext, AltSiteDesignMatrix::new).add(record);
+        });
+
+        reverseComplementMatrices.forEach((context, matrix) -> canonicalMatrices.computeIfAbsent(context, AltSiteDesignMatrix::new).addAll(matrix));
+        return canonicalMatrices;
+    }
+}
@@ -13,6 +13,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Created by tsato on 10/11/17.
@@ -146,6 +147,17 @@ public class AltSiteRecord {
         return records;
     }
 
+    /**
+     * Read the records of a table one at a time, without keeping them in memory
+     */
+    public static void forEachAltSiteRecord(final File table, final Consumer<AltSiteRecord> action) {
+        try (AltSiteRecordTableReader reader = new AltSiteRecordTableReader(table)) {
+            reader.forEach(action);
+        } catch (IOException e) {
+            throw new UserException(String.format("Encountered an IO exception while reading from %s.", table), e);
+        }
+    }
+
     public static List<AltSiteRecord> readAltSiteRecords(final File table) {
         // arbitrarily initialize the list to size 100
         return readAltSiteRecords(table, 100);
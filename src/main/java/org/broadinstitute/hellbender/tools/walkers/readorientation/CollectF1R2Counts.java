@@ -30,6 +30,10 @@ import static org.broadinstitute.hellbender.tools.walkers.readorientation.F1R2Fi
  * At each genomic locus, count the number of F1R2/F2R1 alt reads.
  * {@link LearnReadOrientationModel} uses the tsv output of this tool
  *
+ * Alternatively, with --f1r2-counts the counts are written to a single binary file, which is smaller and faster to read.
+ * The binary files of a run scattered over intervals may be given together to {@link LearnReadOrientationModel}, or
+ * combined beforehand with {@link MergeF1R2Counts}.
+ *
  * <h3>Usage Example</h3>
  *
  * gatk CollectF1R2Counts \
@@ -39,6 +43,12 @@ import static org.broadinstitute.hellbender.tools.walkers.readorientation.F1R2Fi
  *   -alt-table tumor-alt.tsv \
  *   -ref-hist tumor-ref.metrics \
  *   -alt-hist tumor-alt.metrics
+ *
+ * gatk CollectF1R2Counts \
+ *   -R GRCh38.fasta \
+ *   -I tumor.bam \
+ *   -L chr1 \
+ *   --f1r2-counts tumor-chr1.f1r2counts
  */
 
 @CommandLineProgramProperties(
@@ -54,6 +64,7 @@ public class CollectF1R2Counts extends LocusWalker {
     public static final String MIN_MEDIAN_MQ_LONG_NAME = "median-mq";
     public static final String MIN_BASE_QUALITY_LONG_NAME = "min-bq";
     public static final String MAX_DEPTH_LONG_NAME = "max-depth";
+    public static final String F1R2_COUNTS_LONG_NAME = "f1r2-counts";
 
     @Argument(fullName = MIN_MEDIAN_MQ_LONG_NAME, doc = "skip sites with median mapping quality below this value", optional = true)
     private int MINIMUM_MEDIAN_MQ = 30;
@@ -61,15 +72,18 @@ public class CollectF1R2Counts extends LocusWalker {
     @Argument(fullName = MIN_BASE_QUALITY_LONG_NAME, doc = "exclude bases below this quality from pileup", optional = true)
     private int MINIMUM_BASE_QUALITY = 20;
 
-    @Argument(fullName = ALT_DATA_TABLE_LONG_NAME, doc = "a tab-separated output table of pileup data over alt sites")
+    @Argument(fullName = ALT_DATA_TABLE_LONG_NAME, doc = "a tab-separated output table of pileup data over alt sites", optional = true)
     private File altDataTable = null;
 
-    @Argument(fullName = REF_SITE_METRICS_LONG_NAME, doc = "a metrics file with overall summary metrics and reference context-specific depth histograms")
+    @Argument(fullName = REF_SITE_METRICS_LONG_NAME, doc = "a metrics file with overall summary metrics and reference context-specific depth histograms", optional = true)
     private File refMetricsOutput = null;
 
-    @Argument(fullName = ALT_DEPTH1_HISTOGRAM_LONG_NAME, doc = "a histogram of alt sites with alt depth = 1")
+    @Argument(fullName = ALT_DEPTH1_HISTOGRAM_LONG_NAME, doc = "a histogram of alt sites with alt depth = 1", optional = true)
     private File altMetricsOutput = null;
 
+    @Argument(fullName = F1R2_COUNTS_LONG_NAME, doc = "a binary output of all the counts, by convention with the " + F1R2Counts.FILE_EXTENSION + " extension", optional = true)
+    private File f1r2CountsOutput = null;
+
     @Argument(fullName = MAX_DEPTH_LONG_NAME, doc = "sites with depth higher than this value will be grouped", optional = true)
     private int maxDepth = F1R2FilterConstants.DEFAULT_MAX_DEPTH;
 
@@ -81,6 +95,8 @@ public class CollectF1R2Counts extends LocusWalker {
 
     private AltSiteRecordTableWriter altTableWriter;
 
+    private F1R2Counts f1r2Counts;
+
     private final MetricsFile<?, Integer> refMetricsFile = getMetricsFile();
 
     private final MetricsFile<?, Integer> altMetricsFile = getMetricsFile();
@@ -95,6 +111,17 @@ public class CollectF1R2Counts extends LocusWalker {
         return Mutect2Engine.makeStandardMutect2ReadFilters();
     }
 
+    @Override
+    protected String[] customCommandLineValidation() {
+        final boolean anyTextOutput = altDataTable != null || refMetricsOutput != null || altMetricsOutput != null;
+        final boolean allTextOutputs = altDataTable != null && refMetricsOutput != null && altMetricsOutput != null;
+        if (anyTextOutput && !allTextOutputs || !anyTextOutput && f1r2CountsOutput == null) {
+            return new String[]{String.format("Either all of --%s, --%s and --%s or --%s must be given",
+                    ALT_DATA_TABLE_LONG_NAME, REF_SITE_METRICS_LONG_NAME, ALT_DEPTH1_HISTOGRAM_LONG_NAME, F1R2_COUNTS_LONG_NAME)};
+        }
+        return null;
+    }
+
     @Override
     public void onTraversalStart() {
         // Initialize for each reference the histogram of the counts of reference sites by depth
@@ -105,10 +132,16 @@ public class CollectF1R2Counts extends LocusWalker {
 
         depthOneAltHistograms = new DepthOneHistograms(maxDepth);
         // Intentionally not use try-with-resources so that the writer stays open outside of the try block
-        try {
-            altTableWriter = new AltSiteRecordTableWriter(altDataTable);
-        } catch (IOException e) {
-            throw new UserException(String.format("Encountered an IO exception creating a writer for %s", altDataTable), e);
+        if (altDataTable != null) {
+            try {
+                altTableWriter = new AltSiteRecordTableWriter(altDataTable);
+            } catch (IOException e) {
+                throw new UserException(String.format("Encountered an IO exception creating a writer for %s", altDataTable), e);
+            }
+        }
+
+        if (f1r2CountsOutput != null) {
+            f1r2Counts = new F1R2Counts(maxDepth);
         }
 
     }
@@ -150,6 +183,9 @@ public class CollectF1R2Counts extends LocusWalker {
         // If the site is ref, we simply update the coverage histogram
         if (referenceSite) {
             refSiteHistograms.get(refContext).increment(Math.min(depth, maxDepth));
+            if (f1r2Counts != null) {
+                f1r2Counts.incrementRefSite(refContext, depth);
+            }
             return;
         }
 
@@ -166,23 +202,38 @@ public class CollectF1R2Counts extends LocusWalker {
         if (altCount == 1) {
             final ReadOrientation type = altF1R2 == 1 ? F1R2 : F2R1;
             depthOneAltHistograms.increment(refContext, altBase, type, depth);
+            if (f1r2Counts != null) {
+                f1r2Counts.incrementDepthOneAltSite(refContext, altBase, type, depth);
+            }
             return;
         }
 
-        try {
-            altTableWriter.writeRecord(new AltSiteRecord(refContext, refCount, altCount, refF1R2, altF1R2, altBase));
-        } catch (IOException e) {
-            throw new UserException("Encountered an IO Exception writing to the alt data table", e);
+        final AltSiteRecord record = new AltSiteRecord(refContext, refCount, altCount, refF1R2, altF1R2, altBase);
+        if (f1r2Counts != null) {
+            f1r2Counts.addAltSite(record);
+        }
+        if (altTableWriter != null) {
+            try {
+                altTableWriter.writeRecord(record);
+            } catch (IOException e) {
+                throw new UserException("Encountered an IO Exception writing to the alt data table", e);
+            }
         }
     }
 
     @Override
     public Object onTraversalSuccess() {
-        refSiteHistograms.values().forEach(h -> refMetricsFile.addHistogram(h));
-        refMetricsFile.write(refMetricsOutput);
+        if (refMetricsOutput != null) {
+            refSiteHistograms.values().forEach(h -> refMetricsFile.addHistogram(h));
+            refMetricsFile.write(refMetricsOutput);
 
-        depthOneAltHistograms.getHistograms().forEach(h -> altMetricsFile.addHistogram(h));
-        altMetricsFile.write(altMetricsOutput);
+            depthOneAltHistograms.getHistograms().forEach(h -> altMetricsFile.addHistogram(h));
+            altMetricsFile.write(altMetricsOutput);
+        }
+
+        if (f1r2Counts != null) {
+            f1r2Counts.write(f1r2CountsOutput);
+        }
 
         return "SUCCESS";
     }
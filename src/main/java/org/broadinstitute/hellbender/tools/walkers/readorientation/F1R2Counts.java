@@ -0,0 +1,280 @@
+package org.broadinstitute.hellbender.tools.walkers.readorientation;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.Histogram;
+import org.apache.commons.lang3.mutable.MutableLong;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.Nucleotide;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.ObjLongConsumer;
+
+import static org.broadinstitute.hellbender.utils.io.VarIntUtils.readVarLong;
+import static org.broadinstitute.hellbender.utils.io.VarIntUtils.writeVarLong;
+
+/**
+ * The counts collected by {@link CollectF1R2Counts} over a set of loci, in a compact binary form that is faster to read
+ * than the text outputs and that can be merged, so that the outputs of a scattered run can be given to
+ * {@link LearnReadOrientationModel} directly, or first combined with {@link MergeF1R2Counts}.
+ *
+ * It holds, for every reference context, the histogram of depths of ref sites and the histograms of depths of alt
+ * sites with a single alt read, and the alt sites with more than one alt read, where identical alt sites are stored
+ * once with their number of occurrences. All counts are varints in a block-compressed file.
+ */
+public final class F1R2Counts {
+    public static final String FILE_EXTENSION = ".f1r2counts";
+
+    private static final int MAGIC = 0x46315232; // "F1R2"
+    private static final int VERSION = 1;
+
+    private static final Map<String, Integer> KMER_INDICES = new HashMap<>(F1R2FilterConstants.NUM_KMERS);
+    static {
+        for (int i = 0; i < F1R2FilterConstants.NUM_KMERS; i++) {
+            KMER_INDICES.put(F1R2FilterConstants.ALL_KMERS.get(i), i);
+        }
+    }
+
+    // depth-one alt histograms of each context are indexed by alt base and read orientation, including the unused ref base
+    private static final int DEPTH_ONE_HISTOGRAMS_PER_KMER = Nucleotide.STANDARD_BASES.size() * ReadOrientation.SIZE;
+
+    private static final Nucleotide[] NUCLEOTIDES = Nucleotide.values();
+
+    private final int maxDepth;
+
+    // counts of sites by context index and depth - 1
+    private final long[][] refSiteCounts;
+    private final long[][] depthOneAltSiteCounts;
+
+    private final Map<AltSite, MutableLong> altSiteCounts = new HashMap<>();
+
+    public F1R2Counts(final int maxDepth) {
+        Utils.validateArg(maxDepth > 0, "max depth must be positive");
+        this.maxDepth = maxDepth;
+        refSiteCounts = new long[F1R2FilterConstants.NUM_KMERS][maxDepth];
+        depthOneAltSiteCounts = new long[F1R2FilterConstants.NUM_KMERS * DEPTH_ONE_HISTOGRAMS_PER_KMER][maxDepth];
+    }
+
+    public int getMaxDepth() { return maxDepth; }
+
+    public void incrementRefSite(final String referenceContext, final int depth) {
+        refSiteCounts[kmerIndex(referenceContext)][Math.min(depth, maxDepth) - 1]++;
+    }
+
+    public void incrementDepthOneAltSite(final String referenceContext, final Nucleotide altAllele, final ReadOrientation orientation, final int depth) {
+        depthOneAltSiteCounts[depthOneIndex(kmerIndex(referenceContext), altAllele, orientation)][Math.min(depth, maxDepth) - 1]++;
+    }
+
+    public void addAltSite(final AltSiteRecord record) {
+        addAltSite(new AltSite(record), 1);
+    }
+
+    private void addAltSite(final AltSite site, final long count) {
+        altSiteCounts.computeIfAbsent(site, s -> new MutableLong()).add(count);
+    }
+
+    /**
+     * The histograms of depths of ref sites of every reference context, as written to the ref metrics by {@link CollectF1R2Counts}
+     */
+    public List<Histogram<Integer>> getRefHistograms() {
+        final List<Histogram<Integer>> histograms = new ArrayList<>(F1R2FilterConstants.NUM_KMERS);
+        for (int i = 0; i < F1R2FilterConstants.NUM_KMERS; i++) {
+            histograms.add(toHistogram(F1R2FilterUtils.createRefHistogram(F1R2FilterConstants.ALL_KMERS.get(i), maxDepth), refSiteCounts[i]));
+        }
+        return histograms;
+    }
+
+    /**
+     * The histograms of depths of alt sites with a single alt read, as written to the alt metrics by {@link CollectF1R2Counts}
+     */
+    public List<Histogram<Integer>> getDepthOneAltHistograms() {
+        final List<Histogram<Integer>> histograms = new ArrayList<>(F1R2FilterConstants.NUM_KMERS * F1R2FilterConstants.numAltHistogramsPerContext);
+        for (int i = 0; i < F1R2FilterConstants.NUM_KMERS; i++) {
+            final String context = F1R2FilterConstants.ALL_KMERS.get(i);
+            for (final Nucleotide altAllele : Nucleotide.STANDARD_BASES) {
+                if (altAllele == F1R2FilterUtils.getMiddleBase(context)) {
+                    continue;
+                }
+                for (final ReadOrientation orientation : ReadOrientation.values()) {
+                    histograms.add(toHistogram(F1R2FilterUtils.createAltHistogram(context, altAllele, orientation, maxDepth),
+                            depthOneAltSiteCounts[depthOneIndex(i, altAllele, orientation)]));
+                }
+            }
+        }
+        return histograms;
+    }
+
+    private static Histogram<Integer> toHistogram(final Histogram<Integer> emptyHistogram, final long[] counts) {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                emptyHistogram.increment(i + 1, counts[i]);
+            }
+        }
+        return emptyHistogram;
+    }
+
+    /**
+     * Apply an action to each distinct alt site and its number of occurrences, sorted by reference context then counts
+     */
+    public void forEachAltSite(final ObjLongConsumer<AltSiteRecord> action) {
+        sortedAltSites().forEach(site -> action.accept(site.toRecord(), altSiteCounts.get(site).longValue()));
+    }
+
+    private List<AltSite> sortedAltSites() {
+        final List<AltSite> sites = new ArrayList<>(altSiteCounts.keySet());
+        Collections.sort(sites);
+        return sites;
+    }
+
+    public void write(final File file) {
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new BlockCompressedOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(maxDepth);
+            writeCounts(out, refSiteCounts);
+            writeCounts(out, depthOneAltSiteCounts);
+
+            final List<AltSite> sites = sortedAltSites();
+            writeVarLong(out, sites.size());
+            for (final AltSite site : sites) {
+                writeVarLong(out, site.contextIndex);
+                writeVarLong(out, site.refCount);
+                writeVarLong(out, site.altCount);
+                writeVarLong(out, site.refF1R2);
+                writeVarLong(out, site.altF1R2);
+                out.writeByte(site.altAllele);
+                writeVarLong(out, altSiteCounts.get(site).longValue());
+            }
+        } catch (final IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(file, e);
+        }
+    }
+
+    private static void writeCounts(final DataOutputStream out, final long[][] counts) throws IOException {
+        for (final long[] row : counts) {
+            for (final long count : row) {
+                writeVarLong(out, count);
+            }
+        }
+    }
+
+    /**
+     * Read and merge the counts of one or more files
+     */
+    public static F1R2Counts read(final List<File> files) {
+        Utils.nonEmpty(files, "no F1R2 counts files were given");
+        F1R2Counts merged = null;
+        for (final File file : files) {
+            try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new BlockCompressedInputStream(file)))) {
+                if (in.readInt() != MAGIC) {
+                    throw new UserException.MalformedFile(file, "not an F1R2 counts file");
+                }
+                final int version = in.readInt();
+                if (version != VERSION) {
+                    throw new UserException.MalformedFile(file, "unsupported F1R2 counts version " + version);
+                }
+                final int maxDepth = in.readInt();
+                if (merged == null) {
+                    merged = new F1R2Counts(maxDepth);
+                } else if (maxDepth != merged.maxDepth) {
+                    throw new UserException.BadInput(String.format("%s was collected with max depth %d but previous F1R2 counts with %d",
+                            file, maxDepth, merged.maxDepth));
+                }
+                readCounts(in, merged.refSiteCounts);
+                readCounts(in, merged.depthOneAltSiteCounts);
+
+                final long numSites = readVarLong(in);
+                for (long n = 0; n < numSites; n++) {
+                    final AltSite site = new AltSite((int) readVarLong(in), (int) readVarLong(in), (int) readVarLong(in),
+                            (int) readVarLong(in), (int) readVarLong(in), in.readByte());
+                    merged.addAltSite(site, readVarLong(in));
+                }
+            } catch (final EOFException e) {
+                throw new UserException.MalformedFile(file, "unexpected end of F1R2 counts file", e);
+            } catch (final IOException e) {
+                throw new UserException.CouldNotReadInputFile(file, e);
+            }
+        }
+        return merged;
+    }
+
+    private static void readCounts(final DataInputStream in, final long[][] counts) throws IOException {
+        for (final long[] row : counts) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] += readVarLong(in);
+            }
+        }
+    }
+
+    private static int kmerIndex(final String referenceContext) {
+        final Integer index = KMER_INDICES.get(referenceContext);
+        Utils.validateArg(index != null, () -> "invalid reference context " + referenceContext);
+        return index;
+    }
+
+    private static int depthOneIndex(final int kmerIndex, final Nucleotide altAllele, final ReadOrientation orientation) {
+        return kmerIndex * DEPTH_ONE_HISTOGRAMS_PER_KMER + Nucleotide.STANDARD_BASES.indexOf(altAllele) * ReadOrientation.SIZE + orientation.ordinal();
+    }
+
+    /**
+     * The fields of an {@link AltSiteRecord}, with the reference context by index
+     */
+    private static final class AltSite implements Comparable<AltSite> {
+        private static final Comparator<AltSite> COMPARATOR = Comparator.<AltSite>comparingInt(site -> site.contextIndex)
+                .thenComparingInt(site -> site.refCount)
+                .thenComparingInt(site -> site.altCount)
+                .thenComparingInt(site -> site.refF1R2)
+                .thenComparingInt(site -> site.altF1R2)
+                .thenComparingInt(site -> site.altAllele);
+
+        private final int contextIndex;
+        private final int refCount;
+        private final int altCount;
+        private final int refF1R2;
+        private final int altF1R2;
+        private final byte altAllele;
+
+        private AltSite(final int contextIndex, final int refCount, final int altCount, final int refF1R2, final int altF1R2, final byte altAllele) {
+            this.contextIndex = contextIndex;
+            this.refCount = refCount;
+            this.altCount = altCount;
+            this.refF1R2 = refF1R2;
+            this.altF1R2 = altF1R2;
+            this.altAllele = altAllele;
+        }
+
+        private AltSite(final AltSiteRecord record) {
+            this(kmerIndex(record.getReferenceContext()), record.getRefCount(), record.getAltCount(), record.getRefF1R2(),
+                    record.getAltF1R2(), (byte) record.getAltAllele().ordinal());
+        }
+
+        private AltSiteRecord toRecord() {
+            return new AltSiteRecord(F1R2FilterConstants.ALL_KMERS.get(contextIndex), refCount, altCount, refF1R2, altF1R2, NUCLEOTIDES[altAllele]);
+        }
+
+        @Override
+        public int compareTo(final AltSite other) {
+            return COMPARATOR.compare(this, other);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof AltSite)) {
+                return false;
+            }
+            final AltSite other = (AltSite) o;
+            return contextIndex == other.contextIndex && refCount == other.refCount && altCount == other.altCount
+                    && refF1R2 == other.refF1R2 && altF1R2 == other.altF1R2 && altAllele == other.altAllele;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(contextIndex, refCount, altCount, refF1R2, altF1R2, altAllele);
+        }
+    }
+}
@@ -1,21 +1,26 @@
 package org.broadinstitute.hellbender.tools.walkers.readorientation;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import htsjdk.samtools.metrics.MetricsFile;
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.Histogram;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.SequenceUtil;
+import org.broadinstitute.barclay.argparser.Advanced;
 import org.broadinstitute.barclay.argparser.Argument;
 import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
 import org.broadinstitute.hellbender.cmdline.CommandLineProgram;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import org.broadinstitute.hellbender.cmdline.programgroups.ShortVariantDiscoveryProgramGroup;
+import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.utils.Nucleotide;
 import org.broadinstitute.hellbender.utils.Utils;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -30,6 +35,13 @@ import java.util.stream.Collectors;
  *   -ref-hist my-tumor-sample-ref.metrics \
  *   -alt-hist my-tumor-sample-alt-depth1.metrics \
  *   -O my-tumor-sample-artifact-prior.tsv
+ *
+ * The binary outputs of {@link CollectF1R2Counts} from a run scattered over intervals are merged as they are read
+ *
+ * gatk LearnReadOrientationModel \
+ *   --f1r2-counts my-tumor-sample-chr1.f1r2counts \
+ *   --f1r2-counts my-tumor-sample-chr2.f1r2counts \
+ *   -O my-tumor-sample-artifact-prior.tsv
  */
 @CommandLineProgramProperties(
         summary = "Get the maximum likelihood estimates of artifact prior probabilities in the orientation bias mixture model filter",
@@ -43,17 +55,25 @@ public class LearnReadOrientationModel extends CommandLineProgram {
     public static final String EM_CONVERGENCE_THRESHOLD_LONG_NAME = "convergence-threshold";
     public static final String MAX_EM_ITERATIONS_LONG_NAME = "num-em-iterations";
     public static final String MAX_DEPTH_LONG_NAME = "max-depth";
+    public static final String NUM_EM_THREADS_LONG_NAME = "num-em-threads";
 
-    @Argument(fullName = CollectF1R2Counts.REF_SITE_METRICS_LONG_NAME, doc = "histograms of depths over ref sites for each reference context")
-    private File refHistogramTable;
+    @Argument(fullName = CollectF1R2Counts.REF_SITE_METRICS_LONG_NAME, doc = "histograms of depths over ref sites for each reference context",
+            optional = true, mutex = {CollectF1R2Counts.F1R2_COUNTS_LONG_NAME})
+    private File refHistogramTable = null;
 
-    @Argument(fullName = CollectF1R2Counts.ALT_DATA_TABLE_LONG_NAME,  doc = "a table of F1R2 and depth counts")
-    private File altDataTable;
+    @Argument(fullName = CollectF1R2Counts.ALT_DATA_TABLE_LONG_NAME,  doc = "a table of F1R2 and depth counts",
+            optional = true, mutex = {CollectF1R2Counts.F1R2_COUNTS_LONG_NAME})
+    private File altDataTable = null;
+
+    @Argument(fullName = CollectF1R2Counts.F1R2_COUNTS_LONG_NAME, doc = "binary F1R2 counts, which are merged if more than one is given", optional = true,
+            mutex = {CollectF1R2Counts.REF_SITE_METRICS_LONG_NAME, CollectF1R2Counts.ALT_DATA_TABLE_LONG_NAME, CollectF1R2Counts.ALT_DEPTH1_HISTOGRAM_LONG_NAME})
+    private List<File> f1r2CountsFiles = new ArrayList<>();
 
     @Argument(fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME, shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME, doc = "table of artifact priors")
     private File output;
 
-    @Argument(fullName = CollectF1R2Counts.ALT_DEPTH1_HISTOGRAM_LONG_NAME, doc = "histograms of depth 1 alt sites", optional = true)
+    @Argument(fullName = CollectF1R2Counts.ALT_DEPTH1_HISTOGRAM_LONG_NAME, doc = "histograms of depth 1 alt sites", optional = true,
+            mutex = {CollectF1R2Counts.F1R2_COUNTS_LONG_NAME})
     private File altHistogramTable = null;
 
     @Argument(fullName = EM_CONVERGENCE_THRESHOLD_LONG_NAME, doc = "Stop the EM when the distance between parameters between iterations falls below this value", optional = true)
@@ -65,14 +85,41 @@ public class LearnReadOrientationModel extends CommandLineProgram {
     @Argument(fullName = MAX_DEPTH_LONG_NAME, doc = "sites with depth higher than this value will be grouped", optional = true)
     private int maxDepth = F1R2FilterConstants.DEFAULT_MAX_DEPTH;
 
+    /**
+     * The model of each reference context is learned independently, so with more than one thread several contexts
+     * are learned at once. The priors are the same regardless of the number of threads.
+     */
+    @Advanced
+    @Argument(fullName = NUM_EM_THREADS_LONG_NAME, doc = "Number of threads used to learn the models of different reference contexts", minValue = 1, optional = true)
+    private int numEMThreads = 1;
+
     List<Histogram<Integer>> refHistograms;
 
     List<Histogram<Integer>> altHistograms;
 
     final ArtifactPriorCollection artifactPriorCollection = new ArtifactPriorCollection();;
 
+    // the merged binary counts, if given instead of the text tables
+    private F1R2Counts f1r2Counts;
+
+    @Override
+    protected String[] customCommandLineValidation() {
+        if (f1r2CountsFiles.isEmpty() && (refHistogramTable == null || altDataTable == null)) {
+            return new String[]{String.format("Either --%s or both --%s and --%s must be given", CollectF1R2Counts.F1R2_COUNTS_LONG_NAME,
+                    CollectF1R2Counts.REF_SITE_METRICS_LONG_NAME, CollectF1R2Counts.ALT_DATA_TABLE_LONG_NAME)};
+        }
+        return null;
+    }
+
     @Override
     protected void onStartup(){
+        if (!f1r2CountsFiles.isEmpty()) {
+            f1r2Counts = F1R2Counts.read(f1r2CountsFiles);
+            refHistograms = f1r2Counts.getRefHistograms();
+            altHistograms = f1r2Counts.getDepthOneAltHistograms();
+            return;
+        }
+
         final MetricsFile<?, Integer> referenceSiteMetrics = readMetricsFile(refHistogramTable);
         refHistograms = referenceSiteMetrics.getAllHistograms();
 
@@ -86,13 +133,13 @@ public class LearnReadOrientationModel extends CommandLineProgram {
 
     @Override
     public Object doWork(){
-        final int defaultInitialListSize = 1_000_000;
+        // Read the alt sites straight into primitive design matrices, combining each context with its reverse complement
+        // e.g. G->T under AGT F1R2 is equivalent to C->A under ACT F2R1
+        final Map<String, AltSiteDesignMatrix> altDesignMatrixByContext = f1r2Counts != null ?
+                AltSiteDesignMatrix.groupByCanonicalContext(f1r2Counts) : AltSiteDesignMatrix.readByCanonicalContext(altDataTable);
+        f1r2Counts = null;
 
-        final Map<String, List<AltSiteRecord>> altDesignMatrixByContext =
-                AltSiteRecord.readAltSiteRecords(altDataTable, defaultInitialListSize).stream()
-                        .collect(Collectors.groupingBy(AltSiteRecord::getReferenceContext));
-
-        // Since e.g. G->T under AGT F1R2 is equivalent to C->A under ACT F2R1, combine the data
+        final List<Supplier<ArtifactPrior>> engines = new ArrayList<>(F1R2FilterConstants.CANONICAL_KMERS.size());
         for (final String refContext : F1R2FilterConstants.CANONICAL_KMERS){
             final String reverseComplement = SequenceUtil.reverseComplement(refContext);
 
@@ -115,34 +162,64 @@ public class LearnReadOrientationModel extends CommandLineProgram {
                     .collect(Collectors.toList());
             final List<Histogram<Integer>> combinedAltHistograms = combineAltDepthOneHistogramWithRC(altDepthOneHistogramsForContext, altDepthOneHistogramsRevComp, maxDepth);
 
-            // Finally, merge the rest of alt records
-            final List<AltSiteRecord> altDesignMatrix = altDesignMatrixByContext.getOrDefault(refContext, new ArrayList<>()); // Cannot use Collections.emptyList() here because the input list must be mutable
-            final List<AltSiteRecord> altDesignMatrixRevComp = altDesignMatrixByContext.getOrDefault(reverseComplement, Collections.emptyList());
-            // Warning: the below method will mutate the content of {@link altDesignMatrixRevComp} and append to {@code altDesignMatrix}
-            mergeDesignMatrices(altDesignMatrix, altDesignMatrixRevComp);
-
+            // The alt records of the context and its reverse complement were merged when reading the table
+            final AltSiteDesignMatrix altDesignMatrix = altDesignMatrixByContext.remove(refContext);
 
-            if (combinedRefHistograms.getSumOfValues() == 0 || altDesignMatrix.isEmpty()) {
+            if (combinedRefHistograms.getSumOfValues() == 0 || altDesignMatrix == null) {
                 logger.info(String.format("Skipping the reference context %s as we didn't find either the ref or alt table for the context", refContext));
                 continue;
             }
 
-            final LearnReadOrientationModelEngine engine = new LearnReadOrientationModelEngine(
+            engines.add(() -> new LearnReadOrientationModelEngine(
                     combinedRefHistograms,
                     combinedAltHistograms,
                     altDesignMatrix,
                     converagenceThreshold,
                     maxEMIterations,
                     maxDepth,
-                    logger);
-            final ArtifactPrior artifactPrior = engine.learnPriorForArtifactStates();
-            artifactPriorCollection.set(artifactPrior);
+                    logger).learnPriorForArtifactStates());
         }
 
+        learnPriors(engines).forEach(artifactPriorCollection::set);
+
         artifactPriorCollection.writeArtifactPriors(output);
         return "SUCCESS";
     }
 
+    /**
+     * Run the EM of each reference context, on {@link #numEMThreads} threads, and return the priors in the same order
+     */
+    private List<ArtifactPrior> learnPriors(final List<Supplier<ArtifactPrior>> engines) {
+        if (numEMThreads == 1) {
+            return engines.stream().map(Supplier::get).collect(Collectors.toList());
+        }
+
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("read-orientation-em-thread-%d")
+                .setDaemon(true)
+                .build();
+        final ExecutorService executor = Executors.newFixedThreadPool(numEMThreads, threadFactory);
+        try {
+            final List<Future<ArtifactPrior>> futures = new ArrayList<>(engines.size());
+            engines.forEach(engine -> futures.add(executor.submit(engine::get)));
+            final List<ArtifactPrior> priors = new ArrayList<>(engines.size());
+            for (final Future<ArtifactPrior> future : futures) {
+                priors.add(future.get());
+            }
+            return priors;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while learning the read orientation model", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new GATKException("Failed to learn the read orientation model", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @VisibleForTesting
     public static Histogram<Integer> combineRefHistogramWithRC(final String refContext,
                                                                final Histogram<Integer> refHistogram,
@@ -33,13 +33,18 @@ public class LearnReadOrientationModelEngine {
 
     private final List<Histogram<Integer>> altDepthOneHistograms;
 
-    private final List<AltSiteRecord> altDesignMatrix;
+    private final AltSiteDesignMatrix altDesignMatrix;
 
     /**
-     * N by K matrix of posterior probabilities of latent variable z, where N is the number of alt sites,
-     * evaluated at the current estimates of the mixture weights
+     * K-dimensional vector of the sum over alt sites of the posterior probabilities of latent variable z, evaluated
+     * at the current estimates of the mixture weights. We accumulate it in the E-step rather than storing the
+     * N by K matrix of responsibilities, where N is the number of alt sites, which would dwarf the design matrix itself.
      */
-    private final RealMatrix altResponsibilities;
+    private double[] effectiveAltCountsFromDesignMatrix;
+
+    // The estimates of the mixture weights at which the responsibilities were last evaluated, the initial flat prior
+    // before the first E-step
+    private double[] priorOfLastEstep;
 
     private final Map<Triple<Integer, Nucleotide, ReadOrientation>, double[]> responsibilitiesOfAltDepth1Sites;
 
@@ -71,6 +76,9 @@ public class LearnReadOrientationModelEngine {
 
     private final Logger logger;
 
+    // Alt sites with lower depth share the responsibilities of sites with the same counts within an E-step
+    private static final int MAX_CACHED_DEPTH = 1 << 20;
+
     private int maxDepth;
 
     /** Fixed hyperparameters for betabinomials ***/
@@ -110,6 +118,17 @@ public class LearnReadOrientationModelEngine {
                                            final List<AltSiteRecord> altDesignMatrixForContext,
                                            final double convergenceThreshold, final int maxEMIterations,
                                            final int maxDepth, final Logger logger) {
+        this(refHistogram, altDepthOneHistograms, new AltSiteDesignMatrix(refHistogram.getValueLabel(), Utils.nonNull(altDesignMatrixForContext)),
+                convergenceThreshold, maxEMIterations, maxDepth, logger);
+    }
+
+    /**
+     * Contract: the reference contexts must be combined with its reverse complements prior to instantiating this class
+     */
+    public LearnReadOrientationModelEngine(final Histogram<Integer> refHistogram, final List<Histogram<Integer>> altDepthOneHistograms,
+                                           final AltSiteDesignMatrix altDesignMatrixForContext,
+                                           final double convergenceThreshold, final int maxEMIterations,
+                                           final int maxDepth, final Logger logger) {
         this.refHistogram = Utils.nonNull(refHistogram);
         this.altDepthOneHistograms = Utils.nonNull(altDepthOneHistograms);
         this.altDesignMatrix = Utils.nonNull(altDesignMatrixForContext);
@@ -118,6 +137,7 @@ public class LearnReadOrientationModelEngine {
                 String.format("reference context must have length %d but got %s", F1R2FilterConstants.REFERENCE_CONTEXT_SIZE, referenceContext));
         Utils.validate(F1R2FilterConstants.CANONICAL_KMERS.contains(referenceContext),
                 referenceContext + " is not in the set of canonical kmers");
+        Utils.validateArg(altDesignMatrix.getReferenceContext().equals(referenceContext), "the design matrix must be of the reference context " + referenceContext);
         this.numAltExamples = altDesignMatrix.size() + altDepthOneHistograms.stream().mapToInt(h -> (int) h.getSumOfValues()).sum();
         this.numRefExamples = (int) refHistogram.getSumOfValues();
         this.numExamples = numAltExamples + numRefExamples;
@@ -126,11 +146,10 @@ public class LearnReadOrientationModelEngine {
         // multiply by the number of counts for that depth
         this.refResponsibilities = new Array2DRowRealMatrix(maxDepth, F1R2FilterConstants.NUM_STATES);
 
-        this.altResponsibilities = new Array2DRowRealMatrix(altDesignMatrix.size(), F1R2FilterConstants.NUM_STATES);
-
         // Store responsibilities for each depth and the F1R2/F2R1 of the one alt read
         this.responsibilitiesOfAltDepth1Sites = new HashMap<>();
         this.refAllele = F1R2FilterUtils.getMiddleBase(referenceContext);
+        this.priorOfLastEstep = getFlatPrior(refAllele);
         this.convergenceThreshold = convergenceThreshold;
         this.maxEMIterations = maxEMIterations;
         this.maxDepth = maxDepth;
@@ -140,7 +159,7 @@ public class LearnReadOrientationModelEngine {
     // Learn the prior probabilities for the artifact states by the EM algorithm
     public ArtifactPrior learnPriorForArtifactStates() {
         // Initialize the prior for artifact
-        double[] statePrior = getFlatPrior(refAllele);
+        double[] statePrior = priorOfLastEstep;
         double l2Distance;
 
         do {
@@ -184,14 +203,16 @@ public class LearnReadOrientationModelEngine {
             refResponsibilities.setRow(i, computeResponsibilities(refAllele, refAllele, 0, 0, depth, artifactPriors, false));
         }
 
-        // Compute the responsibilities of alt sites
+        // Compute the responsibilities of alt sites and sum them over sites, in order. Many alt sites share the same
+        // counts, so we only compute the responsibilities once for each distinct combination of counts.
+        priorOfLastEstep = artifactPriors;
+        final Map<Long, double[]> responsibilitiesByCounts = new HashMap<>();
+        effectiveAltCountsFromDesignMatrix = new double[F1R2FilterConstants.NUM_STATES];
         for (int n = 0; n < altDesignMatrix.size(); n++) {
-            final AltSiteRecord example = altDesignMatrix.get(n);
-            final int depth = example.getDepth();
-            final int altDepth = example.getAltCount();
-            final int altF1R2 = example.getAltF1R2();
-
-            altResponsibilities.setRow(n, computeResponsibilities(refAllele, example.getAltAllele(), altDepth, altF1R2, depth, artifactPriors, false));
+            final double[] responsibilities = getAltResponsibilities(n, artifactPriors, responsibilitiesByCounts);
+            for (int k = 0; k < F1R2FilterConstants.NUM_STATES; k++) {
+                effectiveAltCountsFromDesignMatrix[k] += responsibilities[k];
+            }
         }
 
         // Compute the responsibilities of alt sites with depth=1
@@ -220,7 +241,6 @@ public class LearnReadOrientationModelEngine {
      */
     private double[] takeMstep() {
         // First we compute the effective counts of each state, N_k in the docs. We do this separately over alt and ref sites
-        final double[] effectiveAltCountsFromDesignMatrix = MathUtils.sumArrayFunction(0, altDesignMatrix.size(), n -> altResponsibilities.getRow(n));
         double[] effectiveAltCountsFromHistograms = new double[F1R2FilterConstants.NUM_STATES];
 
         for (Histogram<Integer> histogram : altDepthOneHistograms){
@@ -334,7 +354,22 @@ public class LearnReadOrientationModelEngine {
 
     @VisibleForTesting
     public double[] getAltResonsibilities(final int rowNum){
-        return altResponsibilities.getRow(rowNum);
+        return getAltResponsibilities(rowNum, priorOfLastEstep, new HashMap<>());
+    }
+
+    private double[] getAltResponsibilities(final int n, final double[] artifactPriors, final Map<Long, double[]> responsibilitiesByCounts) {
+        final int depth = altDesignMatrix.getDepth(n);
+        final int altDepth = altDesignMatrix.getAltCount(n);
+        final int altF1R2 = altDesignMatrix.getAltF1R2(n);
+        final Nucleotide altAllele = altDesignMatrix.getAltAllele(n);
+
+        // Pack the counts into a key, leaving out the unrealistic depths that don't fit
+        if (depth >= MAX_CACHED_DEPTH) {
+            return computeResponsibilities(refAllele, altAllele, altDepth, altF1R2, depth, artifactPriors, false);
+        }
+        final long key = (((((long) altAllele.ordinal() * MAX_CACHED_DEPTH) + depth) * MAX_CACHED_DEPTH) + altDepth) * MAX_CACHED_DEPTH + altF1R2;
+        return responsibilitiesByCounts.computeIfAbsent(key,
+                k -> computeResponsibilities(refAllele, altAllele, altDepth, altF1R2, depth, artifactPriors, false));
     }
 
     @VisibleForTesting
@@ -0,0 +1,46 @@
+package org.broadinstitute.hellbender.tools.walkers.readorientation;
+
+import org.broadinstitute.barclay.argparser.Argument;
+import org.broadinstitute.barclay.argparser.BetaFeature;
+import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
+import org.broadinstitute.hellbender.cmdline.CommandLineProgram;
+import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.cmdline.programgroups.CoverageAnalysisProgramGroup;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merge the binary outputs of {@link CollectF1R2Counts} run over different intervals of the same sample into one,
+ * which is no larger than the largest input apart from the alt sites found in only some of the inputs.
+ *
+ * <h3>Usage Example</h3>
+ *
+ * gatk MergeF1R2Counts \
+ *   -I tumor-chr1.f1r2counts \
+ *   -I tumor-chr2.f1r2counts \
+ *   -O tumor.f1r2counts
+ */
+@CommandLineProgramProperties(
+        summary = "Merge binary F1R2 counts collected over different intervals",
+        oneLineSummary = "Merge binary F1R2 counts collected over different intervals",
+        programGroup = CoverageAnalysisProgramGroup.class
+)
+@BetaFeature
+public class MergeF1R2Counts extends CommandLineProgram {
+
+    @Argument(fullName = StandardArgumentDefinitions.INPUT_LONG_NAME, shortName = StandardArgumentDefinitions.INPUT_SHORT_NAME,
+            doc = "binary F1R2 counts to merge, all collected with the same max depth")
+    private List<File> inputs = new ArrayList<>();
+
+    @Argument(fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME, shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME,
+            doc = "the merged binary F1R2 counts")
+    private File output;
+
+    @Override
+    protected Object doWork() {
+        F1R2Counts.read(inputs).write(output);
+        return "SUCCESS";
+    }
+}
@@ -3,6 +3,8 @@ package org.broadinstitute.hellbender.transformers;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMTag;
 import htsjdk.samtools.SAMUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.broadinstitute.hellbender.exceptions.UserException.MalformedRead;
 import org.broadinstitute.hellbender.tools.ApplyBQSRArgumentCollection;
 import org.broadinstitute.hellbender.utils.QualityUtils;
@@ -13,6 +15,7 @@ import org.broadinstitute.hellbender.utils.read.ReadUtils;
 import org.broadinstitute.hellbender.utils.recalibration.*;
 import org.broadinstitute.hellbender.utils.recalibration.covariates.CovariateKeyCache;
 import org.broadinstitute.hellbender.utils.recalibration.covariates.ReadCovariates;
+import org.broadinstitute.hellbender.utils.recalibration.covariates.ReadGroupCovariate;
 import org.broadinstitute.hellbender.utils.recalibration.covariates.StandardCovariateList;
 
 import java.io.File;
@@ -26,6 +29,14 @@ import static org.broadinstitute.hellbender.utils.recalibration.RecalDatum.MAX_R
 
 public final class BQSRReadTransformer implements ReadTransformer {
     private static final long serialVersionUID = 1L;
+    private static final Logger logger = LogManager.getLogger(BQSRReadTransformer.class);
+
+    /**
+     * Largest number of doubles the precomputed lookup tables may hold (128MB) before falling back to computing the
+     * recalibrated qualities from the recalibration tables for every base
+     */
+    static final long MAX_LOOKUP_TABLE_ENTRIES = 1L << 24;
+    private static final int NO_LOOKUP_ROW = -1;
 
     private final QuantizationInfo quantizationInfo; // histogram containing the map for qual quantization (calculated after recalibration is done)
     private final RecalibrationTables recalibrationTables;
@@ -48,6 +59,20 @@ public final class BQSRReadTransformer implements ReadTransformer {
 
     private byte[] staticQuantizedMapping;
     private final CovariateKeyCache keyCache;
+    private int[][] precomputedKeySet; // reused by apply with precomputed keys, grown to the longest read seen
+
+    // Precomputed lookup tables, null if they would have more than MAX_LOOKUP_TABLE_ENTRIES entries.
+    // Since the recalibration tables are fixed, everything in hierarchicalBayesianQualityEstimate that doesn't depend on
+    // the additional covariate keys is precomputed per read group and reported quality ("row"), and the contribution of
+    // each additional covariate per row and key. Recalibrating a base is then a few array lookups and additions, done in
+    // the same order as hierarchicalBayesianQualityEstimate so the results are identical.
+    private final int qualDimension;
+    private int[] lookupRowIndex;                 // indexed by readGroup * qualDimension + qual, NO_LOOKUP_ROW if unused
+    private double[] lookupConditionalPriors;     // per row: deltaQReported + globalDeltaQ + epsilon
+    private double[][] lookupCovariateDeltaQs;    // per additional covariate: row * (maximumKeyValue + 1) + key
+    private int[] lookupCovariateDimensions;      // per additional covariate: maximumKeyValue + 1
+    private double[] lookupMissingQualPriors;     // per read group: conditional prior for quals without a row
+    private byte[] finalQualMapping;              // recalibrated qual -> quantized and statically binned qual
 
     /**
      * Constructor using a GATK Report file
@@ -68,8 +93,9 @@ public final class BQSRReadTransformer implements ReadTransformer {
      * @param quantizationInfo quantization info
      * @param covariates standard covariate set
      * @param args ApplyBQSR arguments
+     * @param maxLookupTableEntries precompute the lookup tables only if they have at most this many entries
      */
-    private BQSRReadTransformer(final SAMFileHeader header, final RecalibrationTables recalibrationTables, final QuantizationInfo quantizationInfo, final StandardCovariateList covariates, final ApplyBQSRArgumentCollection args) {
+    private BQSRReadTransformer(final SAMFileHeader header, final RecalibrationTables recalibrationTables, final QuantizationInfo quantizationInfo, final StandardCovariateList covariates, final ApplyBQSRArgumentCollection args, final long maxLookupTableEntries) {
         this.header = header;
         this.recalibrationTables = recalibrationTables;
         this.covariates = covariates;
@@ -98,6 +124,106 @@ public final class BQSRReadTransformer implements ReadTransformer {
         //Note: We pre-create the varargs arrays that will be used in the calls. Otherwise we're spending a lot of time allocating those int[] objects
         empiricalQualCovsArgs = new RecalDatum[totalCovariateCount - specialCovariateCount];
         keyCache = new CovariateKeyCache();//one cache per transformer
+
+        qualDimension = covariates.getQualityScoreCovariate().maximumKeyValue() + 1;
+        buildLookupTables(maxLookupTableEntries);
+    }
+
+    /**
+     * Precompute the lookup tables used by {@link #apply} from the recalibration tables, unless they would be too large,
+     * in which case the lookup tables are left null and the recalibration tables are queried for every base.
+     */
+    private void buildLookupTables(final long maxLookupTableEntries) {
+        final NestedIntegerArray<RecalDatum> readGroupTable = recalibrationTables.getReadGroupTable();
+        final NestedIntegerArray<RecalDatum> qualityScoreTable = recalibrationTables.getQualityScoreTable();
+        final int numReadGroups = readGroupTable.getDimensions()[0];
+
+        // a row is needed for every read group and qual with any data for substitutions
+        final boolean[] rowNeeded = new boolean[numReadGroups * qualDimension];
+        for (int i = 1; i < totalCovariateCount; i++) {
+            for (final NestedIntegerArray.Leaf<RecalDatum> leaf : recalibrationTables.getTable(i).getAllLeaves()) {
+                if (leaf.keys[leaf.keys.length - 1] == BASE_SUBSTITUTION_INDEX) {
+                    rowNeeded[leaf.keys[0] * qualDimension + leaf.keys[1]] = true;
+                }
+            }
+        }
+        int numRows = 0;
+        for (final boolean needed : rowNeeded) {
+            numRows += needed ? 1 : 0;
+        }
+
+        final int numAdditionalCovariates = totalCovariateCount - specialCovariateCount;
+        final int[] covariateDimensions = new int[numAdditionalCovariates];
+        long numEntries = numRows;
+        for (int i = 0; i < numAdditionalCovariates; i++) {
+            covariateDimensions[i] = covariates.get(specialCovariateCount + i).maximumKeyValue() + 1;
+            numEntries += (long) numRows * covariateDimensions[i];
+        }
+        if (numEntries > maxLookupTableEntries) {
+            logger.info(String.format("The recalibration lookup tables would have %d entries, more than the maximum of %d; " +
+                    "recalibrating from the recalibration tables directly", numEntries, maxLookupTableEntries));
+            return;
+        }
+
+        lookupRowIndex = new int[rowNeeded.length];
+        lookupConditionalPriors = new double[numRows];
+        lookupCovariateDeltaQs = new double[numAdditionalCovariates][];
+        for (int i = 0; i < numAdditionalCovariates; i++) {
+            lookupCovariateDeltaQs[i] = new double[numRows * covariateDimensions[i]];
+        }
+        lookupCovariateDimensions = covariateDimensions;
+        lookupMissingQualPriors = new double[numReadGroups];
+
+        int row = 0;
+        for (int rgKey = 0; rgKey < numReadGroups; rgKey++) {
+            final RecalDatum empiricalQualRG = readGroupTable.get2Keys(rgKey, BASE_SUBSTITUTION_INDEX);
+            final double epsilon = empiricalQualRG == null ? 0.0 : getEpsilon(empiricalQualRG);
+            final double globalDeltaQ = empiricalQualRG == null ? 0.0 : empiricalQualRG.getEmpiricalQuality(epsilon) - epsilon;
+            lookupMissingQualPriors[rgKey] = 0.0 + globalDeltaQ + epsilon;
+
+            for (int qual = 0; qual < qualDimension; qual++) {
+                final int rowKey = rgKey * qualDimension + qual;
+                if (!rowNeeded[rowKey]) {
+                    lookupRowIndex[rowKey] = NO_LOOKUP_ROW;
+                    continue;
+                }
+                lookupRowIndex[rowKey] = row;
+
+                final RecalDatum empiricalQualQS = qualityScoreTable.get3Keys(rgKey, qual, BASE_SUBSTITUTION_INDEX);
+                final double deltaQReported = empiricalQualQS == null ? 0.0 : empiricalQualQS.getEmpiricalQuality(globalDeltaQ + epsilon) - (globalDeltaQ + epsilon);
+                final double conditionalPrior2 = deltaQReported + globalDeltaQ + epsilon;
+                lookupConditionalPriors[row] = conditionalPrior2;
+
+                for (int i = 0; i < numAdditionalCovariates; i++) {
+                    final NestedIntegerArray<RecalDatum> table = recalibrationTables.getTable(specialCovariateCount + i);
+                    for (int key = 0; key < covariateDimensions[i]; key++) {
+                        final RecalDatum empiricalQualCov = table.get4Keys(rgKey, qual, key, BASE_SUBSTITUTION_INDEX);
+                        if (empiricalQualCov != null) {
+                            lookupCovariateDeltaQs[i][row * covariateDimensions[i] + key] = empiricalQualCov.getEmpiricalQuality(conditionalPrior2) - conditionalPrior2;
+                        }
+                    }
+                }
+                row++;
+            }
+        }
+
+        final List<Byte> quantizedQuals = quantizationInfo.getQuantizedQuals();
+        finalQualMapping = new byte[quantizedQuals.size()];
+        for (int qual = 0; qual < finalQualMapping.length; qual++) {
+            final byte quantizedQual = quantizedQuals.get(qual);
+            finalQualMapping[qual] = staticQuantizedMapping == null ? quantizedQual : staticQuantizedMapping[quantizedQual];
+        }
+    }
+
+    private double getEpsilon(final RecalDatum empiricalQualRG) {
+        return globalQScorePrior > 0.0 ? globalQScorePrior : empiricalQualRG.getEstimatedQReported();
+    }
+
+    /**
+     * @return true if the base qualities are recalibrated with the precomputed lookup tables
+     */
+    boolean usesLookupTables() {
+        return lookupRowIndex != null;
     }
 
     /**
@@ -108,7 +234,19 @@ public final class BQSRReadTransformer implements ReadTransformer {
      * @param args a set of arguments to control how bqsr is applied
      */
     public BQSRReadTransformer(final SAMFileHeader header, final RecalibrationReport recalInfo, final ApplyBQSRArgumentCollection args) {
-        this(header, recalInfo.getRecalibrationTables(), recalInfo.getQuantizationInfo(), recalInfo.getCovariates(), args);
+        this(header, recalInfo, args, MAX_LOOKUP_TABLE_ENTRIES);
+    }
+
+    /**
+     * Constructor using a RecalibrationReport, with a custom limit on the size of the precomputed lookup tables
+     *
+     * @param header header for the reads
+     * @param recalInfo the output of BaseRecalibration, containing the recalibration information
+     * @param args a set of arguments to control how bqsr is applied
+     * @param maxLookupTableEntries precompute the lookup tables only if they have at most this many entries
+     */
+    BQSRReadTransformer(final SAMFileHeader header, final RecalibrationReport recalInfo, final ApplyBQSRArgumentCollection args, final long maxLookupTableEntries) {
+        this(header, recalInfo.getRecalibrationTables(), recalInfo.getQuantizationInfo(), recalInfo.getCovariates(), args, maxLookupTableEntries);
     }
 
     /**
@@ -132,6 +270,50 @@ public final class BQSRReadTransformer implements ReadTransformer {
      */
     @Override
     public GATKRead apply(final GATKRead originalRead) {
+        final GATKRead read = prepareRead(originalRead);
+
+        final ReadCovariates readCovariates = RecalUtils.computeCovariates(read, header, covariates, false, keyCache);
+
+        // get the keyset for this base using the error model
+        return recalibrate(read, readCovariates.getKeySet(EventType.BASE_SUBSTITUTION));
+    }
+
+    /**
+     * Recalibrates the base qualities of a read like {@link #apply(GATKRead)}, but with the keys of the additional
+     * covariates computed beforehand, so that only the read group and quality score keys are computed here.
+     *
+     * @param originalRead the read to recalibrate
+     * @param additionalCovariateKeys the base substitution keys of the additional covariates, indexed by covariate
+     *                                (in the order of the covariate list, after the special covariates) then by read
+     *                                offset, as computed by {@link RecalUtils#computeCovariates} on the read after
+     *                                resetting its original qualities if requested
+     */
+    public GATKRead apply(final GATKRead originalRead, final int[][] additionalCovariateKeys) {
+        Utils.validateArg(additionalCovariateKeys.length == totalCovariateCount - specialCovariateCount,
+                () -> "expected keys for " + (totalCovariateCount - specialCovariateCount) + " covariates but got " + additionalCovariateKeys.length);
+        final GATKRead read = prepareRead(originalRead);
+
+        final int readLength = read.getLength();
+        if (precomputedKeySet == null || precomputedKeySet.length < readLength) {
+            precomputedKeySet = new int[readLength][totalCovariateCount];
+        }
+        final int rgKey = covariates.getReadGroupCovariate().keyFromValue(ReadGroupCovariate.getID(ReadUtils.getSAMReadGroupRecord(read, header)));
+        final int baseQualityCount = read.getBaseQualityCount();
+        for (int offset = 0; offset < readLength; offset++) {
+            final int[] keySet = precomputedKeySet[offset];
+            keySet[0] = rgKey;
+            keySet[1] = offset < baseQualityCount ? read.getBaseQuality(offset) : 0;
+            for (int i = specialCovariateCount; i < totalCovariateCount; i++) {
+                keySet[i] = additionalCovariateKeys[i - specialCovariateCount][offset];
+            }
+        }
+        return recalibrate(read, precomputedKeySet);
+    }
+
+    /**
+     * Resets the original qualities of the read and saves them in the OQ tag, if requested
+     */
+    private GATKRead prepareRead(final GATKRead originalRead) {
         final GATKRead read = useOriginalBaseQualities ? ReadUtils.resetOriginalBaseQualities(originalRead) : originalRead;
 
         if (emitOriginalQuals && ! read.hasAttribute(SAMTag.OQ.name())) { // Save the old qualities if the tag isn't already taken in the read
@@ -141,16 +323,14 @@ public final class BQSRReadTransformer implements ReadTransformer {
                 throw new MalformedRead(read, "illegal base quality encountered; " + e.getMessage());
             }
         }
+        return read;
+    }
 
-        final ReadCovariates readCovariates = RecalUtils.computeCovariates(read, header, covariates, false, keyCache);
-
+    private GATKRead recalibrate(final GATKRead read, final int[][] fullReadKeySet) {
         //clear indel qualities
         read.clearAttribute(ReadUtils.BQSR_BASE_INSERTION_QUALITIES);
         read.clearAttribute(ReadUtils.BQSR_BASE_DELETION_QUALITIES);
 
-        // get the keyset for this base using the error model
-        final int[][] fullReadKeySet = readCovariates.getKeySet(EventType.BASE_SUBSTITUTION);
-
         // the rg key is constant over the whole read, the global deltaQ is too
         final int rgKey = fullReadKeySet[0][0];
 
@@ -161,8 +341,48 @@ public final class BQSRReadTransformer implements ReadTransformer {
         }
         final byte[] quals = read.getBaseQualities();
 
+        if (usesLookupTables()) {
+            recalibrateWithLookupTables(quals, fullReadKeySet, rgKey);
+        } else {
+            recalibrateWithRecalibrationTables(quals, fullReadKeySet, empiricalQualRG);
+        }
+        read.setBaseQualities(quals);
+        return read;
+    }
+
+    private void recalibrateWithLookupTables(final byte[] quals, final int[][] fullReadKeySet, final int rgKey) {
         final int readLength = quals.length;
-        final double epsilon = globalQScorePrior > 0.0 ? globalQScorePrior : empiricalQualRG.getEstimatedQReported();
+        final int rgRowKey = rgKey * qualDimension;
+
+        //Note: this loop is under very heavy use in applyBQSR. Keep it slim.
+        for (int offset = 0; offset < readLength; offset++) {
+            if (quals[offset] < preserveQLessThan) {
+                continue;
+            }
+            final int[] keySet = fullReadKeySet[offset];
+            final int row = lookupRowIndex[rgRowKey + keySet[1]];
+
+            final double recalibratedQualDouble;
+            if (row == NO_LOOKUP_ROW) {
+                recalibratedQualDouble = lookupMissingQualPriors[rgKey];
+            } else {
+                double deltaQCovariates = 0.0;
+                for (int i = specialCovariateCount; i < totalCovariateCount; i++) {
+                    final int key = keySet[i];
+                    if (key >= 0) {
+                        final int covariateIndex = i - specialCovariateCount;
+                        deltaQCovariates += lookupCovariateDeltaQs[covariateIndex][row * lookupCovariateDimensions[covariateIndex] + key];
+                    }
+                }
+                recalibratedQualDouble = lookupConditionalPriors[row] + deltaQCovariates;
+            }
+            quals[offset] = finalQualMapping[getRecalibratedQual(recalibratedQualDouble)];
+        }
+    }
+
+    private void recalibrateWithRecalibrationTables(final byte[] quals, final int[][] fullReadKeySet, final RecalDatum empiricalQualRG) {
+        final int readLength = quals.length;
+        final double epsilon = getEpsilon(empiricalQualRG);
 
         final NestedIntegerArray<RecalDatum> qualityScoreTable = recalibrationTables.getQualityScoreTable();
         final List<Byte> quantizedQuals = quantizationInfo.getQuantizedQuals();
@@ -192,8 +412,6 @@ public final class BQSRReadTransformer implements ReadTransformer {
             // Bin to static quals
             quals[offset] = staticQuantizedMapping == null ? recalibratedQualityScore : staticQuantizedMapping[recalibratedQualityScore];
         }
-        read.setBaseQualities(quals);
-        return read;
     }
 
     // recalibrated quality is bound between 1 and MAX_QUAL
@@ -1,15 +1,31 @@
 package org.broadinstitute.hellbender.utils.bwa;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.Utils;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.function.Function;
 
 /**
  * Manage a global collection of {@link BwaMemIndex} instances.
  */
 public class BwaMemIndexCache {
+    private static final Logger logger = LogManager.getLogger(BwaMemIndexCache.class);
+
+    private static final String LOCK_FILE_EXTENSION = ".lock";
+    private static final int WARMING_BUFFER_SIZE = 1 << 20;
 
     private final static Map<String, BwaMemIndex> instances = new HashMap<>();
 
@@ -20,12 +36,150 @@ public class BwaMemIndexCache {
      */
     public static synchronized BwaMemIndex getInstance( final String indexImageFile ) {
         Utils.nonNull(indexImageFile, "the index image file name provided cannot be null");
+        return getInstance(indexImageFile, false);
+    }
+
+    /**
+     * Returns a {@link BwaMemIndex} instance for an index image file that Spark has copied to this executor, for
+     * example with {@link JavaSparkContext#addFile}. A freshly copied image may not be in the page cache, so it is read
+     * through before the index maps it (see {@link #warmImage}).
+     * @param distributedImageFile the executor's copy of the image file.
+     * @return never {@code null}.
+     */
+    public static synchronized BwaMemIndex getDistributedInstance( final String distributedImageFile ) {
+        Utils.nonNull(distributedImageFile, "the index image file name provided cannot be null");
+        return getInstance(distributedImageFile, true);
+    }
+
+    private static BwaMemIndex getInstance( final String indexImageFile, final boolean warm ) {
         if (!instances.containsKey(indexImageFile)) {
+            if (warm) {
+                warmImage(indexImageFile);
+            }
             instances.put(indexImageFile, new BwaMemIndex(indexImageFile));
         }
         return instances.get(indexImageFile);
     }
 
+    /**
+     * Returns a {@link BwaMemIndex} instance for an index image file that Spark has copied to this executor, for
+     * example with {@link JavaSparkContext#addFile}.
+     * <p>
+     *     The index maps its image read-only, so processes that map the same file share its pages in the page cache.
+     *     Spark puts a copy of the file in the directory of each executor though, so instead the first executor on a
+     *     host copies the image to a directory shared by all the executors on the host, and they all map that copy.
+     *     The latest copy of each image is left in place for later jobs to use, and copies of other versions of the
+     *     image are removed once no executor is opening them. Images that are no longer used at all stay until the
+     *     directory is deleted.
+     * </p>
+     *
+     * @param distributedImageFile the executor's copy of the image file.
+     * @param imageVersion identifies the contents of the image, such as its size and modification time on the driver,
+     *                     so that a shared copy of an older image with the same name isn't used.
+     * @param sharedImageDirectory the directory to keep shared copies in, which must be on a local file system that all
+     *                             the executors on the host can see.
+     * @return never {@code null}.
+     */
+    public static synchronized BwaMemIndex getSharedInstance( final String distributedImageFile, final String imageVersion,
+                                                              final String sharedImageDirectory ) {
+        Utils.nonNull(distributedImageFile, "the index image file name provided cannot be null");
+        Utils.nonNull(imageVersion, "the image version provided cannot be null");
+        Utils.nonNull(sharedImageDirectory, "the shared image directory provided cannot be null");
+        // the index maps the shared copy before it can be removed, after which removing it does no harm
+        return shareImage(new File(distributedImageFile), imageVersion, new File(sharedImageDirectory),
+                sharedImage -> getInstance(sharedImage.getPath(), true));
+    }
+
+    /**
+     * Copies an image to a shared directory, unless another process has already done so, and opens the shared copy,
+     * then removes the shared copies of other versions of the image that no other process is opening.
+     * @param openSharedImage opens the shared copy of the image, which can't be removed until it returns.
+     * @return the result of opening the shared copy of the image.
+     */
+    static <T> T shareImage( final File imageFile, final String imageVersion, final File sharedImageDirectory,
+                             final Function<File, T> openSharedImage ) {
+        // each image has a directory of its own, holding the copies of its versions
+        final File imageDirectory = new File(sharedImageDirectory, imageFile.getName());
+        final File sharedImage = new File(imageDirectory, imageVersion + "-" + imageFile.getName());
+        final T opened;
+        try {
+            Files.createDirectories(imageDirectory.toPath());
+            // the lock keeps other executors on the host from copying the image at the same time, and from removing it
+            // while it's being opened
+            try ( final FileChannel lockChannel = FileChannel.open(getLockFile(sharedImage).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                  final FileLock lock = lockChannel.lock() ) {
+                if (!sharedImage.exists()) {
+                    logger.info("Copying the index image " + imageFile + " to " + sharedImage + " to share it between executors");
+                    final File partialImage = getPartialFile(sharedImage);
+                    Files.copy(imageFile.toPath(), partialImage.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    Files.move(partialImage.toPath(), sharedImage.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                }
+                opened = openSharedImage.apply(sharedImage);
+            }
+        } catch (final IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(sharedImage, "couldn't share the index image between executors", e);
+        }
+        removeOtherVersions(sharedImage);
+        return opened;
+    }
+
+    /**
+     * Removes the shared copies of the versions of an image other than the given one, skipping any that another
+     * process holds the lock of. The lock files themselves are left, since other processes may be about to lock them.
+     */
+    private static void removeOtherVersions( final File sharedImage ) {
+        final File[] lockFiles = sharedImage.getParentFile().listFiles((directory, name) ->
+                name.endsWith(LOCK_FILE_EXTENSION) && !name.equals(getLockFile(sharedImage).getName()));
+        if (lockFiles == null) {
+            return;
+        }
+        for (final File lockFile : lockFiles) {
+            final String lockFileName = lockFile.getName();
+            final File otherImage = new File(lockFile.getParentFile(), lockFileName.substring(0, lockFileName.length() - LOCK_FILE_EXTENSION.length()));
+            try ( final FileChannel lockChannel = FileChannel.open(lockFile.toPath(), StandardOpenOption.WRITE);
+                  final FileLock lock = lockChannel.tryLock() ) {
+                if (lock != null) {
+                    // a copy that failed part way through is left as a partial file
+                    Files.deleteIfExists(getPartialFile(otherImage).toPath());
+                    if (Files.deleteIfExists(otherImage.toPath())) {
+                        logger.info("Removed " + otherImage + ", a shared copy of another version of the index image " + sharedImage);
+                    }
+                }
+            } catch (final IOException e) {
+                // the copy is only left taking up space
+                logger.warn("Couldn't remove " + otherImage + ", a shared copy of another version of the index image " + sharedImage, e);
+            }
+        }
+    }
+
+    private static File getLockFile( final File sharedImage ) {
+        return new File(sharedImage.getParentFile(), sharedImage.getName() + LOCK_FILE_EXTENSION);
+    }
+
+    private static File getPartialFile( final File sharedImage ) {
+        return new File(sharedImage.getParentFile(), sharedImage.getName() + ".partial");
+    }
+
+    /**
+     * Checks that an image can be read, and reads through it so that its pages are in the page cache when the index
+     * maps it, rather than being faulted in one at a time as alignment touches them.
+     */
+    static void warmImage( final String indexImageFile ) {
+        final File imageFile = new File(indexImageFile);
+        if (!imageFile.canRead() || imageFile.length() == 0) {
+            throw new UserException.CouldNotReadInputFile(imageFile, "the index image is missing, unreadable or empty");
+        }
+        try ( final FileChannel channel = FileChannel.open(imageFile.toPath(), StandardOpenOption.READ) ) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(WARMING_BUFFER_SIZE);
+            while (channel.read(buffer) != -1) {
+                buffer.clear();
+            }
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(imageFile.toPath(), "couldn't read the index image", e);
+        }
+    }
+
     /**
      * Closes an index instance in the cache given its index file name.
      * <p>
@@ -0,0 +1,413 @@
+package org.broadinstitute.hellbender.utils.codecs.binarygvcf;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.tribble.Feature;
+import htsjdk.tribble.FeatureCodec;
+import htsjdk.tribble.FeatureCodecHeader;
+import htsjdk.tribble.SimpleFeature;
+import htsjdk.tribble.TribbleException;
+import htsjdk.tribble.readers.LineIteratorImpl;
+import htsjdk.tribble.readers.LocationAware;
+import htsjdk.tribble.readers.PositionalBufferedStream;
+import htsjdk.tribble.readers.SynchronousLineReader;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFConstants;
+import htsjdk.variant.vcf.VCFHeader;
+import org.broadinstitute.hellbender.utils.io.VarIntUtils;
+import org.broadinstitute.hellbender.utils.variant.GATKVCFConstants;
+import org.broadinstitute.hellbender.utils.variant.VcfUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Decoder for the compact binary GVCF format written by {@link BinaryGVCFWriter}.
+ *
+ * <p>
+ * A single-sample GVCF is overwhelmingly made of reference blocks that carry only a handful of small integers (END, GQ,
+ * DP, MIN_DP and PL), yet the text format spells each of them out in full, along with the ALT, FORMAT and INFO keys, and
+ * has to be tokenized again by every downstream consumer. This format stores those reference blocks as a few varints,
+ * stores the GT, GQ, DP, AD and PL of the sample of every other single-sample record as typed values, and keeps the
+ * records of multi-sample files as their VCF text line, so that it is lossless for any VCF while being much smaller and
+ * faster to parse for GVCFs.
+ * </p>
+ *
+ * <p>
+ * The layout is:
+ * <ul>
+ *     <li>the magic bytes {@code BGVCF\2}, followed by the length of the header as a varint and the VCF header text,
+ *     uncompressed</li>
+ *     <li>the records, BGZF compressed, each starting with a record type byte, the index of its contig in the sequence
+ *     dictionary of the header, its start and its length on the reference minus one, all as varints</li>
+ *     <li>for reference blocks, the reference base, a flags byte, the ploidy, GQ, DP, optionally MIN_DP, and the PLs as
+ *     varints</li>
+ *     <li>for other single-sample records, the length of the rest of the record as a varint, the alleles, a flags byte,
+ *     the ID, QUAL and FILTERs if present, and the INFO fields as key and value strings, followed by a genotype flags byte,
+ *     the allele indices of the genotype plus one (zero for a no-call), GQ, DP, AD and PL as varints if present, the
+ *     genotype filters if present, and any other FORMAT fields as key and value strings</li>
+ *     <li>for any other record, the length of its VCF line as a varint followed by the line itself</li>
+ * </ul>
+ * All varints are unsigned LEB128, and strings are their length as a varint followed by their UTF-8 bytes.
+ * </p>
+ *
+ * <p>
+ * The file is indexed with a tribble linear index with bins of {@link #INDEX_BIN_SIZE} bases, and the writer starts a
+ * new BGZF block with the first record of every bin, so that every index block starts at the beginning of a BGZF block
+ * and can be decompressed on its own. Such an index can be written on the fly, or by
+ * {@link org.broadinstitute.hellbender.tools.IndexFeatureFile}, but an index with bins of any other size can't be used
+ * to query the file.
+ * </p>
+ */
+public final class BinaryGVCFCodec implements FeatureCodec<VariantContext, BinaryGVCFSource> {
+
+    public static final String BINARY_GVCF_EXTENSION = ".bgvcf";
+
+    /**
+     * The width of the bins of the linear index of a binary GVCF
+     */
+    public static final int INDEX_BIN_SIZE = VcfUtils.DEFAULT_GVCF_INDEX_PARAMETER;
+
+    static final byte[] MAGIC = {'B', 'G', 'V', 'C', 'F', 2};
+
+    static final int REF_BLOCK_RECORD = 0;
+    static final int VCF_LINE_RECORD = 1;
+    static final int VARIANT_RECORD = 2;
+
+    static final int HAS_MIN_DP_FLAG = 1;
+
+    static final int HAS_ID_FLAG = 1;
+    static final int HAS_QUAL_FLAG = 2;
+    static final int FILTERS_APPLIED_FLAG = 4;
+
+    static final int PHASED_FLAG = 1;
+    static final int HAS_GQ_FLAG = 2;
+    static final int HAS_DP_FLAG = 4;
+    static final int HAS_AD_FLAG = 8;
+    static final int HAS_PL_FLAG = 16;
+    static final int HAS_FILTERS_FLAG = 32;
+
+    private static final String SOURCE_NAME = "BinaryGVCF";
+
+    private VCFHeader header;
+    private VCFCodec vcfCodec;
+    private List<String> contigs;
+    private String sampleName;
+    private byte[] lineBuffer = new byte[1024];
+
+    @Override
+    public Class<VariantContext> getFeatureType() {
+        return VariantContext.class;
+    }
+
+    @Override
+    public boolean canDecode(final String path) {
+        return path.toLowerCase().endsWith(BINARY_GVCF_EXTENSION);
+    }
+
+    @Override
+    public BinaryGVCFSource makeSourceFromStream(final InputStream bufferedInputStream) {
+        return new BinaryGVCFSource(bufferedInputStream instanceof PositionalBufferedStream ?
+                (PositionalBufferedStream) bufferedInputStream : new PositionalBufferedStream(bufferedInputStream));
+    }
+
+    @Override
+    public LocationAware makeIndexableSourceFromStream(final InputStream bufferedInputStream) {
+        return makeSourceFromStream(bufferedInputStream);
+    }
+
+    @Override
+    public boolean isDone(final BinaryGVCFSource source) {
+        try {
+            return source.isDone();
+        } catch ( final IOException e ) {
+            throw new TribbleException("Failed to read from binary GVCF", e);
+        }
+    }
+
+    @Override
+    public void close(final BinaryGVCFSource source) {
+        source.close();
+    }
+
+    @Override
+    public FeatureCodecHeader readHeader(final BinaryGVCFSource source) throws IOException {
+        final InputStream in = source.getHeaderStream();
+        final byte[] magic = new byte[MAGIC.length];
+        readFully(in, magic, magic.length);
+        if ( ! Arrays.equals(magic, MAGIC) ) {
+            throw new TribbleException.MalformedFeatureFile("Input does not start with the binary GVCF magic bytes", SOURCE_NAME);
+        }
+
+        final byte[] headerText = new byte[readVarInt(in)];
+        readFully(in, headerText, headerText.length);
+        vcfCodec = new VCFCodec();
+        header = (VCFHeader) vcfCodec.readActualHeader(new LineIteratorImpl(new SynchronousLineReader(
+                new StringReader(new String(headerText, StandardCharsets.UTF_8)))));
+
+        final SAMSequenceDictionary dictionary = header.getSequenceDictionary();
+        if ( dictionary == null ) {
+            throw new TribbleException.MalformedFeatureFile("Binary GVCF header has no contig lines", SOURCE_NAME);
+        }
+        contigs = dictionary.getSequences().stream().map(SAMSequenceRecord::getSequenceName).collect(Collectors.toList());
+        sampleName = header.getNGenotypeSamples() == 1 ? header.getGenotypeSamples().get(0) : null;
+        return new FeatureCodecHeader(header, source.getPosition());
+    }
+
+    @Override
+    public Feature decodeLoc(final BinaryGVCFSource source) throws IOException {
+        final InputStream in = source.getRecordStream();
+        final int recordType = readRecordType(in);
+        final String contig = readContig(in);
+        final int start = readVarInt(in);
+        final int end = start + readVarInt(in);
+        if ( recordType == REF_BLOCK_RECORD ) {
+            skipRefBlockPayload(in);
+        } else {
+            final int length = readVarInt(in);
+            if ( lineBuffer.length < length ) {
+                lineBuffer = new byte[Math.max(length, 2 * lineBuffer.length)];
+            }
+            readFully(in, lineBuffer, length);
+        }
+        return new SimpleFeature(contig, start, end);
+    }
+
+    @Override
+    public VariantContext decode(final BinaryGVCFSource source) throws IOException {
+        final InputStream in = source.getRecordStream();
+        final int recordType = readRecordType(in);
+        final String contig = readContig(in);
+        final int start = readVarInt(in);
+        final int end = start + readVarInt(in);
+        if ( recordType == REF_BLOCK_RECORD ) {
+            return decodeRefBlock(in, contig, start, end);
+        }
+
+        final int length = readVarInt(in);
+        if ( recordType == VARIANT_RECORD ) {
+            return decodeVariant(in, contig, start, end);
+        }
+        if ( lineBuffer.length < length ) {
+            lineBuffer = new byte[Math.max(length, 2 * lineBuffer.length)];
+        }
+        readFully(in, lineBuffer, length);
+        return vcfCodec.decode(new String(lineBuffer, 0, length, StandardCharsets.UTF_8));
+    }
+
+    private VariantContext decodeRefBlock(final InputStream in, final String contig, final int start, final int end) throws IOException {
+        final Allele ref = Allele.create((byte) readByte(in), true);
+        final int flags = readByte(in);
+        final int ploidy = readVarInt(in);
+        final GenotypeBuilder gb = new GenotypeBuilder(getSampleName(), Collections.nCopies(ploidy, ref))
+                .GQ(readVarInt(in))
+                .DP(readVarInt(in));
+        if ( (flags & HAS_MIN_DP_FLAG) != 0 ) {
+            gb.attribute(GATKVCFConstants.MIN_DP_FORMAT_KEY, readVarInt(in));
+        }
+        gb.PL(readVarInts(in));
+
+        return new VariantContextBuilder(SOURCE_NAME, contig, start, end, Arrays.asList(ref, Allele.NON_REF_ALLELE))
+                .attribute(VCFConstants.END_KEY, end)
+                .genotypes(gb.make())
+                .make();
+    }
+
+    private VariantContext decodeVariant(final InputStream in, final String contig, final int start, final int end) throws IOException {
+        final List<Allele> alleles = new ArrayList<>();
+        final int numAlleles = readVarInt(in);
+        for ( int i = 0; i < numAlleles; i++ ) {
+            alleles.add(Allele.create(readString(in), i == 0));
+        }
+        final VariantContextBuilder vcb = new VariantContextBuilder(SOURCE_NAME, contig, start, end, alleles);
+
+        final int flags = readByte(in);
+        if ( (flags & HAS_ID_FLAG) != 0 ) {
+            vcb.id(readString(in));
+        }
+        if ( (flags & HAS_QUAL_FLAG) != 0 ) {
+            vcb.log10PError(readDouble(in));
+        }
+        if ( (flags & FILTERS_APPLIED_FLAG) != 0 ) {
+            final Set<String> filters = new LinkedHashSet<>();
+            final int numFilters = readVarInt(in);
+            for ( int i = 0; i < numFilters; i++ ) {
+                filters.add(readString(in));
+            }
+            vcb.filters(filters);
+        }
+
+        final int numAttributes = readVarInt(in);
+        final Map<String, Object> attributes = new LinkedHashMap<>(numAttributes);
+        for ( int i = 0; i < numAttributes; i++ ) {
+            final String key = readString(in);
+            final String value = readString(in);
+            // the same values as VCFCodec, which leaves them as strings to be parsed on demand
+            if ( value.isEmpty() ) {
+                attributes.put(key, true);
+            } else if ( value.indexOf(',') >= 0 ) {
+                attributes.put(key, Arrays.asList(value.split(",")));
+            } else {
+                attributes.put(key, value);
+            }
+        }
+        vcb.attributes(attributes);
+
+        final int genotypeFlags = readByte(in);
+        final int ploidy = readVarInt(in);
+        final List<Allele> genotypeAlleles = new ArrayList<>(ploidy);
+        for ( int i = 0; i < ploidy; i++ ) {
+            final int alleleIndex = readVarInt(in);
+            genotypeAlleles.add(alleleIndex == 0 ? Allele.NO_CALL : alleles.get(alleleIndex - 1));
+        }
+        final GenotypeBuilder gb = new GenotypeBuilder(getSampleName(), genotypeAlleles)
+                .phased((genotypeFlags & PHASED_FLAG) != 0);
+        if ( (genotypeFlags & HAS_GQ_FLAG) != 0 ) {
+            gb.GQ(readVarInt(in));
+        }
+        if ( (genotypeFlags & HAS_DP_FLAG) != 0 ) {
+            gb.DP(readVarInt(in));
+        }
+        if ( (genotypeFlags & HAS_AD_FLAG) != 0 ) {
+            gb.AD(readVarInts(in));
+        }
+        if ( (genotypeFlags & HAS_PL_FLAG) != 0 ) {
+            gb.PL(readVarInts(in));
+        }
+        if ( (genotypeFlags & HAS_FILTERS_FLAG) != 0 ) {
+            gb.filter(readString(in));
+        }
+        final int numExtendedAttributes = readVarInt(in);
+        for ( int i = 0; i < numExtendedAttributes; i++ ) {
+            gb.attribute(readString(in), readString(in));
+        }
+
+        return vcb.genotypes(gb.make()).make();
+    }
+
+    private String getSampleName() {
+        if ( sampleName == null ) {
+            throw new TribbleException.MalformedFeatureFile("Binary GVCF has a typed record but not exactly one sample", SOURCE_NAME);
+        }
+        return sampleName;
+    }
+
+    private static void skipRefBlockPayload(final InputStream in) throws IOException {
+        readByte(in);
+        final int flags = readByte(in);
+        final int intsBeforePLs = (flags & HAS_MIN_DP_FLAG) != 0 ? 4 : 3;
+        for ( int i = 0; i < intsBeforePLs; i++ ) {
+            readVarInt(in);
+        }
+        readVarInts(in);
+    }
+
+    private static int readRecordType(final InputStream in) throws IOException {
+        final int recordType = readByte(in);
+        if ( recordType != REF_BLOCK_RECORD && recordType != VCF_LINE_RECORD && recordType != VARIANT_RECORD ) {
+            throw new TribbleException.MalformedFeatureFile("Unknown binary GVCF record type " + recordType, SOURCE_NAME);
+        }
+        return recordType;
+    }
+
+    private String readContig(final InputStream in) throws IOException {
+        final int contigIndex = readVarInt(in);
+        if ( contigIndex >= contigs.size() ) {
+            throw new TribbleException.MalformedFeatureFile("Binary GVCF record refers to contig " + contigIndex + " but the header only has " + contigs.size(), SOURCE_NAME);
+        }
+        return contigs.get(contigIndex);
+    }
+
+    private static int readByte(final InputStream in) throws IOException {
+        final int b = in.read();
+        if ( b < 0 ) {
+            throw new EOFException("Binary GVCF record is truncated");
+        }
+        return b;
+    }
+
+    private static void readFully(final InputStream in, final byte[] buffer, final int length) throws IOException {
+        int offset = 0;
+        while ( offset < length ) {
+            final int read = in.read(buffer, offset, length - offset);
+            if ( read < 0 ) {
+                throw new EOFException("Binary GVCF record is truncated");
+            }
+            offset += read;
+        }
+    }
+
+    static int readVarInt(final InputStream in) throws IOException {
+        try {
+            return VarIntUtils.readVarInt(in);
+        } catch ( final EOFException e ) {
+            throw new EOFException("Binary GVCF record is truncated");
+        }
+    }
+
+    static int[] readVarInts(final InputStream in) throws IOException {
+        final int[] values = new int[readVarInt(in)];
+        for ( int i = 0; i < values.length; i++ ) {
+            values[i] = readVarInt(in);
+        }
+        return values;
+    }
+
+    static String readString(final InputStream in) throws IOException {
+        final byte[] bytes = new byte[readVarInt(in)];
+        readFully(in, bytes, bytes.length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static double readDouble(final InputStream in) throws IOException {
+        long bits = 0;
+        for ( int i = 0; i < Long.BYTES; i++ ) {
+            bits = (bits << 8) | readByte(in);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    static void writeVarInts(final OutputStream out, final int[] values) throws IOException {
+        writeVarInt(out, values.length);
+        for ( final int value : values ) {
+            writeVarInt(out, value);
+        }
+    }
+
+    static void writeString(final OutputStream out, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static void writeDouble(final OutputStream out, final double value) throws IOException {
+        final long bits = Double.doubleToLongBits(value);
+        for ( int i = Long.BYTES - 1; i >= 0; i-- ) {
+            out.write((int) (bits >>> (8 * i)));
+        }
+    }
+
+    static void writeVarInt(final OutputStream out, final int value) throws IOException {
+        if ( value < 0 ) {
+            throw new IllegalArgumentException("Binary GVCF varints must be non-negative but got " + value);
+        }
+        VarIntUtils.writeVarInt(out, value);
+    }
+}
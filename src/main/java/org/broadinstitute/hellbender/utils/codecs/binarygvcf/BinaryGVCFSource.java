@@ -0,0 +1,81 @@
+package org.broadinstitute.hellbender.utils.codecs.binarygvcf;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.tribble.TribbleException;
+import htsjdk.tribble.readers.LocationAware;
+import htsjdk.tribble.readers.PositionalBufferedStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The source {@link BinaryGVCFCodec} decodes from.
+ *
+ * <p>
+ * The header of a binary GVCF is stored uncompressed, and the records that follow it are BGZF compressed. The source
+ * reads the header, if any, straight from the underlying stream, and starts decompressing at the first record. Since
+ * tribble seeks to the start of an index block before making a source, and every index block of a binary GVCF starts
+ * a new BGZF block, the first record read always starts at the beginning of a BGZF block.
+ * </p>
+ *
+ * <p>
+ * Positions are offsets in the file of the BGZF block that the next record starts in, which is the exact offset of
+ * the record for the first record of each index block, and all a linear index needs to know about the others.
+ * </p>
+ */
+public final class BinaryGVCFSource implements LocationAware {
+
+    private final PositionalBufferedStream stream;
+    private long recordsStart;
+    private BlockCompressedInputStream records;
+
+    BinaryGVCFSource(final PositionalBufferedStream stream) {
+        this.stream = stream;
+    }
+
+    /**
+     * @return the uncompressed stream the header is read from, which may only be used before any record is read
+     */
+    InputStream getHeaderStream() {
+        if ( records != null ) {
+            throw new IllegalStateException("The binary GVCF header must be read before any record");
+        }
+        return stream;
+    }
+
+    /**
+     * @return the decompressed stream of records
+     */
+    InputStream getRecordStream() {
+        if ( records == null ) {
+            recordsStart = stream.getPosition();
+            records = new BlockCompressedInputStream(stream);
+        }
+        return records;
+    }
+
+    boolean isDone() throws IOException {
+        return getRecordStream().available() == 0;
+    }
+
+    @Override
+    public long getPosition() {
+        if ( records == null ) {
+            return stream.getPosition();
+        }
+        try {
+            // moves on to the next block when the current one has been read to its end, so that the file pointer is the
+            // start of the block the next record is in
+            records.available();
+        } catch ( final IOException e ) {
+            throw new TribbleException("Failed to read from binary GVCF", e);
+        }
+        return recordsStart + (records.getFilePointer() >>> 16);
+    }
+
+    void close() {
+        CloserUtil.close(records);
+        stream.close();
+    }
+}
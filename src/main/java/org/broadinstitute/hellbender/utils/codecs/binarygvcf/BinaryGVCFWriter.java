@@ -0,0 +1,383 @@
+package org.broadinstitute.hellbender.utils.codecs.binarygvcf;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.tribble.Tribble;
+import htsjdk.tribble.index.Index;
+import htsjdk.tribble.index.linear.LinearIndexCreator;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
+import htsjdk.variant.vcf.VCFConstants;
+import htsjdk.variant.vcf.VCFEncoder;
+import htsjdk.variant.vcf.VCFHeader;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.variant.GATKVCFConstants;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Writes variant contexts in the compact binary GVCF format read by {@link BinaryGVCFCodec}.
+ *
+ * <p>
+ * Reference blocks with a single hom-ref genotype carrying only GQ, DP, PL and optionally MIN_DP, such as those produced
+ * by HaplotypeCaller in GVCF mode, are written as a handful of varints. Other records of a single sample are written with
+ * the GT, GQ, DP, AD and PL of the sample as typed values, and the records of files with any other number of samples as
+ * their VCF line, so nothing is lost for records that don't fit the compact encodings.
+ * </p>
+ *
+ * <p>
+ * The records are BGZF compressed, and a new BGZF block is started with the first record of every bin of the linear
+ * index, so that the file can still be queried through a tribble index.
+ * </p>
+ */
+public final class BinaryGVCFWriter implements VariantContextWriter {
+
+    private final File outputFile;
+    private final SAMSequenceDictionary referenceDictionary;
+    private final boolean allowMissingFieldsInHeader;
+    private final boolean writeFullFormatField;
+    private final OutputStream rawOut;
+    private final LinearIndexCreator indexCreator;
+
+    // the compressed records, which start after the uncompressed header
+    private BlockCompressedOutputStream out;
+    private long headerLength;
+
+    // each record is assembled here before being written, and the typed part of a variant record in payloadBuffer, so
+    // that its length can be written before it
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(256);
+    private final ByteArrayOutputStream payloadBuffer = new ByteArrayOutputStream(256);
+
+    private int lastContigIndex = -1;
+    private int lastIndexBin = -1;
+
+    private VCFHeader header;
+    private VCFEncoder encoder;
+    private SAMSequenceDictionary dictionary;
+    private String sampleName;
+
+    /**
+     * @param outputFile the file to write
+     * @param referenceDictionary dictionary to use for the contig indices when the header has none, may be null
+     * @param createIndex whether to write a linear tribble index alongside the output
+     * @param allowMissingFieldsInHeader whether records may use INFO and FORMAT fields not declared in the header
+     * @param writeFullFormatField whether to write trailing missing FORMAT fields of non-reference-block records
+     */
+    public BinaryGVCFWriter(final File outputFile, final SAMSequenceDictionary referenceDictionary, final boolean createIndex,
+                            final boolean allowMissingFieldsInHeader, final boolean writeFullFormatField) {
+        this.outputFile = Utils.nonNull(outputFile);
+        this.referenceDictionary = referenceDictionary;
+        this.allowMissingFieldsInHeader = allowMissingFieldsInHeader;
+        this.writeFullFormatField = writeFullFormatField;
+        this.indexCreator = createIndex ? new LinearIndexCreator(outputFile, BinaryGVCFCodec.INDEX_BIN_SIZE) : null;
+        try {
+            this.rawOut = new BufferedOutputStream(new FileOutputStream(outputFile));
+        } catch ( final IOException e ) {
+            throw new UserException.CouldNotCreateOutputFile(outputFile, "could not open binary GVCF for writing", e);
+        }
+    }
+
+    @Override
+    public void writeHeader(final VCFHeader header) {
+        setHeader(header);
+        final ByteArrayOutputStream headerText = new ByteArrayOutputStream();
+        try ( final VariantContextWriter textWriter = new VariantContextWriterBuilder()
+                .clearOptions()
+                .setOutputVCFStream(headerText)
+                .build() ) {
+            textWriter.writeHeader(this.header);
+        }
+
+        try {
+            recordBuffer.write(BinaryGVCFCodec.MAGIC);
+            BinaryGVCFCodec.writeVarInt(recordBuffer, headerText.size());
+            headerText.writeTo(recordBuffer);
+            recordBuffer.writeTo(rawOut);
+            headerLength = recordBuffer.size();
+            recordBuffer.reset();
+            out = new BlockCompressedOutputStream(rawOut, (File) null);
+        } catch ( final IOException e ) {
+            throw new UserException.CouldNotCreateOutputFile(outputFile, "could not write binary GVCF header", e);
+        }
+    }
+
+    @Override
+    public void setHeader(final VCFHeader header) {
+        Utils.nonNull(header);
+        this.header = new VCFHeader(header);
+        if ( header.getSequenceDictionary() == null ) {
+            if ( referenceDictionary == null ) {
+                throw new UserException("A sequence dictionary is required to write a binary GVCF, but the header has no contig lines and no reference was provided");
+            }
+            this.header.setSequenceDictionary(referenceDictionary);
+        }
+        this.dictionary = this.header.getSequenceDictionary();
+        this.sampleName = this.header.getNGenotypeSamples() == 1 ? this.header.getGenotypeSamples().get(0) : null;
+        this.encoder = new VCFEncoder(this.header, allowMissingFieldsInHeader, writeFullFormatField);
+        if ( indexCreator != null ) {
+            indexCreator.setIndexSequenceDictionary(dictionary);
+        }
+    }
+
+    @Override
+    public void add(final VariantContext vc) {
+        if ( header == null ) {
+            throw new IllegalStateException("The header must be written before any variant context");
+        }
+        final int contigIndex = dictionary.getSequenceIndex(vc.getContig());
+        if ( contigIndex < 0 ) {
+            throw new UserException.MalformedFile("Contig " + vc.getContig() + " of " + vc + " is not in the sequence dictionary of the binary GVCF header");
+        }
+
+        final int recordType = isCompactRefBlock(vc) ? BinaryGVCFCodec.REF_BLOCK_RECORD
+                : isTypedVariant(vc) ? BinaryGVCFCodec.VARIANT_RECORD : BinaryGVCFCodec.VCF_LINE_RECORD;
+        try {
+            recordBuffer.write(recordType);
+            BinaryGVCFCodec.writeVarInt(recordBuffer, contigIndex);
+            BinaryGVCFCodec.writeVarInt(recordBuffer, vc.getStart());
+            BinaryGVCFCodec.writeVarInt(recordBuffer, vc.getEnd() - vc.getStart());
+            if ( recordType == BinaryGVCFCodec.REF_BLOCK_RECORD ) {
+                writeRefBlockPayload(vc.getReference(), vc.getGenotype(0));
+            } else {
+                if ( recordType == BinaryGVCFCodec.VARIANT_RECORD ) {
+                    writeVariantPayload(vc);
+                } else {
+                    payloadBuffer.write(encoder.encode(vc).getBytes(StandardCharsets.UTF_8));
+                }
+                BinaryGVCFCodec.writeVarInt(recordBuffer, payloadBuffer.size());
+                payloadBuffer.writeTo(recordBuffer);
+                payloadBuffer.reset();
+            }
+
+            // the first record of each bin of the index starts a new BGZF block, so that the index blocks can be
+            // decompressed on their own
+            final int indexBin = (vc.getStart() - 1) / BinaryGVCFCodec.INDEX_BIN_SIZE;
+            if ( contigIndex != lastContigIndex || indexBin != lastIndexBin ) {
+                out.flush();
+                lastContigIndex = contigIndex;
+                lastIndexBin = indexBin;
+            }
+            if ( indexCreator != null ) {
+                indexCreator.addFeature(vc, getPosition());
+            }
+            recordBuffer.writeTo(out);
+            recordBuffer.reset();
+        } catch ( final IOException e ) {
+            throw new UserException.CouldNotCreateOutputFile(outputFile, "could not write binary GVCF record", e);
+        }
+    }
+
+    private void writeVariantPayload(final VariantContext vc) throws IOException {
+        final List<Allele> alleles = vc.getAlleles();
+        BinaryGVCFCodec.writeVarInt(payloadBuffer, alleles.size());
+        for ( final Allele allele : alleles ) {
+            BinaryGVCFCodec.writeString(payloadBuffer, allele.getDisplayString());
+        }
+
+        payloadBuffer.write((vc.hasID() ? BinaryGVCFCodec.HAS_ID_FLAG : 0)
+                | (vc.hasLog10PError() ? BinaryGVCFCodec.HAS_QUAL_FLAG : 0)
+                | (vc.filtersWereApplied() ? BinaryGVCFCodec.FILTERS_APPLIED_FLAG : 0));
+        if ( vc.hasID() ) {
+            BinaryGVCFCodec.writeString(payloadBuffer, vc.getID());
+        }
+        if ( vc.hasLog10PError() ) {
+            BinaryGVCFCodec.writeDouble(payloadBuffer, vc.getLog10PError());
+        }
+        if ( vc.filtersWereApplied() ) {
+            BinaryGVCFCodec.writeVarInt(payloadBuffer, vc.getFilters().size());
+            for ( final String filter : vc.getFilters() ) {
+                BinaryGVCFCodec.writeString(payloadBuffer, filter);
+            }
+        }
+
+        // a false flag is the same as a missing one
+        final Map<String, Object> attributes = vc.getAttributes().entrySet().stream()
+                .filter(attribute -> !Boolean.FALSE.equals(attribute.getValue()))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> a, LinkedHashMap::new));
+        BinaryGVCFCodec.writeVarInt(payloadBuffer, attributes.size());
+        for ( final Map.Entry<String, Object> attribute : attributes.entrySet() ) {
+            BinaryGVCFCodec.writeString(payloadBuffer, attribute.getKey());
+            BinaryGVCFCodec.writeString(payloadBuffer, Boolean.TRUE.equals(attribute.getValue()) ? "" : formatValue(attribute.getValue()));
+        }
+
+        final Genotype genotype = vc.getGenotype(0);
+        payloadBuffer.write((genotype.isPhased() ? BinaryGVCFCodec.PHASED_FLAG : 0)
+                | (genotype.hasGQ() ? BinaryGVCFCodec.HAS_GQ_FLAG : 0)
+                | (genotype.hasDP() ? BinaryGVCFCodec.HAS_DP_FLAG : 0)
+                | (genotype.hasAD() ? BinaryGVCFCodec.HAS_AD_FLAG : 0)
+                | (genotype.hasPL() ? BinaryGVCFCodec.HAS_PL_FLAG : 0)
+                | (genotype.getFilters() != null ? BinaryGVCFCodec.HAS_FILTERS_FLAG : 0));
+        BinaryGVCFCodec.writeVarInt(payloadBuffer, genotype.getPloidy());
+        for ( final Allele allele : genotype.getAlleles() ) {
+            BinaryGVCFCodec.writeVarInt(payloadBuffer, allele.isNoCall() ? 0 : vc.getAlleleIndex(allele) + 1);
+        }
+        if ( genotype.hasGQ() ) {
+            BinaryGVCFCodec.writeVarInt(payloadBuffer, genotype.getGQ());
+        }
+        if ( genotype.hasDP() ) {
+            BinaryGVCFCodec.writeVarInt(payloadBuffer, genotype.getDP());
+        }
+        if ( genotype.hasAD() ) {
+            BinaryGVCFCodec.writeVarInts(payloadBuffer, genotype.getAD());
+        }
+        if ( genotype.hasPL() ) {
+            BinaryGVCFCodec.writeVarInts(payloadBuffer, genotype.getPL());
+        }
+        if ( genotype.getFilters() != null ) {
+            BinaryGVCFCodec.writeString(payloadBuffer, genotype.getFilters());
+        }
+        BinaryGVCFCodec.writeVarInt(payloadBuffer, genotype.getExtendedAttributes().size());
+        for ( final Map.Entry<String, Object> attribute : genotype.getExtendedAttributes().entrySet() ) {
+            BinaryGVCFCodec.writeString(payloadBuffer, attribute.getKey());
+            BinaryGVCFCodec.writeString(payloadBuffer, formatValue(attribute.getValue()));
+        }
+    }
+
+    /**
+     * @return the value as it would appear in a VCF line
+     */
+    private static String formatValue(final Object value) {
+        if ( value == null ) {
+            return VCFConstants.MISSING_VALUE_v4;
+        } else if ( value instanceof Double || value instanceof Float ) {
+            return VCFEncoder.formatVCFDouble(((Number) value).doubleValue());
+        } else if ( value instanceof Collection ) {
+            return ((Collection<?>) value).stream().map(BinaryGVCFWriter::formatValue).collect(Collectors.joining(","));
+        } else if ( value.getClass().isArray() ) {
+            return IntStream.range(0, Array.getLength(value)).mapToObj(i -> formatValue(Array.get(value, i))).collect(Collectors.joining(","));
+        }
+        final String formatted = value.toString();
+        // an empty value would be read back as a flag
+        return formatted.isEmpty() ? VCFConstants.MISSING_VALUE_v4 : formatted;
+    }
+
+    private void writeRefBlockPayload(final Allele ref, final Genotype genotype) throws IOException {
+        final Object minDP = genotype.getExtendedAttribute(GATKVCFConstants.MIN_DP_FORMAT_KEY);
+        recordBuffer.write(ref.getBases()[0]);
+        recordBuffer.write(minDP != null ? BinaryGVCFCodec.HAS_MIN_DP_FLAG : 0);
+        BinaryGVCFCodec.writeVarInt(recordBuffer, genotype.getPloidy());
+        BinaryGVCFCodec.writeVarInt(recordBuffer, genotype.getGQ());
+        BinaryGVCFCodec.writeVarInt(recordBuffer, genotype.getDP());
+        if ( minDP != null ) {
+            BinaryGVCFCodec.writeVarInt(recordBuffer, Integer.parseInt(minDP.toString()));
+        }
+        final int[] pls = genotype.getPL();
+        BinaryGVCFCodec.writeVarInt(recordBuffer, pls.length);
+        for ( final int pl : pls ) {
+            BinaryGVCFCodec.writeVarInt(recordBuffer, pl);
+        }
+    }
+
+    /**
+     * @return true if vc is a reference block that can be written as varints and decoded back to an identical record,
+     *         that is one with only an END attribute and a single unphased, unfiltered hom-ref genotype with only GQ, DP,
+     *         PL and MIN_DP
+     */
+    private boolean isCompactRefBlock(final VariantContext vc) {
+        if ( sampleName == null || vc.getNSamples() != 1 || vc.getNAlleles() != 2
+                || vc.getReference().length() != 1 || !vc.getAlternateAllele(0).equals(Allele.NON_REF_ALLELE)
+                || vc.hasID() || vc.hasLog10PError() || vc.filtersWereApplied()
+                || vc.getAttributes().size() != 1 || !vc.hasAttribute(VCFConstants.END_KEY) ) {
+            return false;
+        }
+
+        final Genotype genotype = vc.getGenotype(0);
+        if ( !genotype.getSampleName().equals(sampleName) || !genotype.isHomRef() || genotype.isPhased()
+                || genotype.isFiltered() || genotype.hasAD() || !genotype.hasGQ() || !genotype.hasDP() || !genotype.hasPL()
+                || genotype.getGQ() < 0 || genotype.getDP() < 0 ) {
+            return false;
+        }
+        for ( final int pl : genotype.getPL() ) {
+            if ( pl < 0 ) {
+                return false;
+            }
+        }
+
+        final int numExtendedAttributes = genotype.getExtendedAttributes().size();
+        if ( numExtendedAttributes == 0 ) {
+            return true;
+        }
+        final Object minDP = genotype.getExtendedAttribute(GATKVCFConstants.MIN_DP_FORMAT_KEY);
+        return numExtendedAttributes == 1 && minDP != null && isNonNegativeInteger(minDP.toString());
+    }
+
+    /**
+     * @return true if vc can be written as a typed variant record, that is if it has the single sample of the header and
+     *         no negative AD or PL values
+     */
+    private boolean isTypedVariant(final VariantContext vc) {
+        if ( sampleName == null || vc.getNSamples() != 1 ) {
+            return false;
+        }
+        final Genotype genotype = vc.getGenotype(0);
+        if ( !genotype.getSampleName().equals(sampleName) ) {
+            return false;
+        }
+        for ( final Allele allele : genotype.getAlleles() ) {
+            if ( !allele.isNoCall() && vc.getAlleleIndex(allele) < 0 ) {
+                return false;
+            }
+        }
+        return (!genotype.hasAD() || Arrays.stream(genotype.getAD()).allMatch(ad -> ad >= 0))
+                && (!genotype.hasPL() || Arrays.stream(genotype.getPL()).allMatch(pl -> pl >= 0));
+    }
+
+    private static boolean isNonNegativeInteger(final String value) {
+        try {
+            return Integer.parseInt(value) >= 0;
+        } catch ( final NumberFormatException e ) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the offset in the file of the BGZF block the next record will start in
+     */
+    private long getPosition() {
+        return headerLength + (out.getFilePointer() >>> 16);
+    }
+
+    @Override
+    public boolean checkError() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if ( out == null ) {
+                rawOut.close();
+                return;
+            }
+            // the index ends where the records end, before the BGZF terminator block that closing the stream writes
+            out.flush();
+            final long endOfRecords = getPosition();
+            out.close();
+            if ( indexCreator != null ) {
+                final Index index = indexCreator.finalizeIndex(endOfRecords);
+                index.write(Tribble.indexFile(outputFile));
+            }
+        } catch ( final IOException e ) {
+            throw new GATKException("Failed to close binary GVCF " + outputFile, e);
+        }
+    }
+}
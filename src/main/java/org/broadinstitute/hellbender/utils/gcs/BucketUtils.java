@@ -278,6 +278,26 @@ public final class BucketUtils {
         }
     }
 
+    /**
+     * Returns the last modification time of a file pointed to by a GCS/HDFS/local path
+     *
+     * @param path The URL to the file whose modification time to return
+     * @return the modification time in milliseconds since the epoch
+     * @throws IOException
+     */
+    public static long fileModificationTime(String path) throws IOException {
+        if (isCloudStorageUrl(path)) {
+            java.nio.file.Path p = getPathOnGcs(path);
+            return Files.getLastModifiedTime(p).toMillis();
+        } else if (isHadoopUrl(path)) {
+            Path hadoopPath = new Path(path);
+            FileSystem fs = hadoopPath.getFileSystem(new Configuration());
+            return fs.getFileStatus(hadoopPath).getModificationTime();
+        } else {
+            return new File(path).lastModified();
+        }
+    }
+
     /**
      * Returns the total file size of all files in a directory, or the file size if the path specifies a file.
      * Note that sub-directories are ignored - they are not recursed into.
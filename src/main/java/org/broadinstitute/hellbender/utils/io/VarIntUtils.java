@@ -0,0 +1,115 @@
+package org.broadinstitute.hellbender.utils.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Reading and writing of variable-length integers (unsigned LEB128): seven bits of the value per byte, least
+ * significant first, with the high bit of every byte but the last one set. Small values take a single byte.
+ *
+ * Negative values are written as their unsigned two's complement, so they take the maximum number of bytes; values
+ * that may be negative should be zig-zag encoded first (see {@link #zigZag(int)}).
+ */
+public final class VarIntUtils {
+
+    private static final int MAX_VAR_INT_BYTES = 5;
+    private static final int MAX_VAR_LONG_BYTES = 10;
+
+    private VarIntUtils() {}
+
+    /**
+     * Write a value as a varint
+     */
+    public static void writeVarInt(final OutputStream out, final int value) throws IOException {
+        int remaining = value;
+        while ( (remaining & ~0x7F) != 0 ) {
+            out.write((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        out.write(remaining);
+    }
+
+    /**
+     * Write a value as a varint of up to 64 bits
+     */
+    public static void writeVarLong(final OutputStream out, final long value) throws IOException {
+        long remaining = value;
+        while ( (remaining & ~0x7FL) != 0 ) {
+            out.write((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        out.write((int) remaining);
+    }
+
+    /**
+     * Read a varint written by {@link #writeVarInt(OutputStream, int)}
+     *
+     * @throws EOFException if the stream ends before the varint does
+     * @throws IOException if the varint is longer than any int
+     */
+    public static int readVarInt(final InputStream in) throws IOException {
+        return readVarInt(in, in.read());
+    }
+
+    /**
+     * Read a varint whose first byte has already been read from the stream, for example to check for the end of the
+     * stream before a record
+     *
+     * @param firstByte the first byte of the varint, as returned by {@link InputStream#read()}
+     * @throws EOFException if the stream ends before the varint does
+     * @throws IOException if the varint is longer than any int
+     */
+    public static int readVarInt(final InputStream in, final int firstByte) throws IOException {
+        int b = firstByte;
+        int value = 0;
+        for ( int n = 0; n < MAX_VAR_INT_BYTES; n++ ) {
+            if ( b < 0 ) {
+                throw new EOFException("unexpected end of stream in a varint");
+            }
+            value |= (b & 0x7F) << (7 * n);
+            if ( (b & 0x80) == 0 ) {
+                return value;
+            }
+            b = in.read();
+        }
+        throw new IOException("malformed varint: more than " + MAX_VAR_INT_BYTES + " bytes");
+    }
+
+    /**
+     * Read a varint written by {@link #writeVarLong(OutputStream, long)}
+     *
+     * @throws EOFException if the stream ends before the varint does
+     * @throws IOException if the varint is longer than any long
+     */
+    public static long readVarLong(final InputStream in) throws IOException {
+        long value = 0;
+        for ( int n = 0; n < MAX_VAR_LONG_BYTES; n++ ) {
+            final int b = in.read();
+            if ( b < 0 ) {
+                throw new EOFException("unexpected end of stream in a varint");
+            }
+            value |= (long) (b & 0x7F) << (7 * n);
+            if ( (b & 0x80) == 0 ) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint: more than " + MAX_VAR_LONG_BYTES + " bytes");
+    }
+
+    /**
+     * Map a signed value to an unsigned one so that values close to zero, whatever their sign, make short varints:
+     * 0, -1, 1, -2, ... become 0, 1, 2, 3, ...
+     */
+    public static int zigZag(final int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Invert {@link #zigZag(int)}
+     */
+    public static int unZigZag(final int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -15,6 +15,8 @@ import org.broadinstitute.hellbender.utils.read.ReadUtils;
 
 import java.io.Closeable;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
@@ -135,7 +137,7 @@ public abstract class PairHMM implements Closeable{
 
     //profiling information
     protected static Boolean doProfiling = true;
-    protected static long pairHMMComputeTime = 0;
+    protected long pairHMMComputeTime = 0;
     protected long threadLocalPairHMMComputeTimeDiff = 0;
     protected long startTime = 0;
 
@@ -253,9 +255,7 @@ public abstract class PairHMM implements Closeable{
         }
         if(doProfiling) {
             threadLocalPairHMMComputeTimeDiff = (System.nanoTime() - startTime);
-            {
-                pairHMMComputeTime += threadLocalPairHMMComputeTimeDiff;
-            }
+            pairHMMComputeTime += threadLocalPairHMMComputeTimeDiff;
         }
     }
 
@@ -375,7 +375,32 @@ public abstract class PairHMM implements Closeable{
      */
     @Override
     public void close() {
+        closeAll(Collections.singletonList(this));
+    }
+
+    /**
+     * Close PairHMMs of the same implementation that worked together, for example on different threads, printing their
+     * combined profiling information once
+     *
+     * @param hmms a non-empty collection of PairHMMs, none of which has been closed yet
+     */
+    public static void closeAll(final Collection<? extends PairHMM> hmms) {
+        Utils.nonEmpty(hmms, "hmms cannot be empty");
         if(doProfiling)
-            logger.info("Total compute time in PairHMM computeLogLikelihoods() : "+(pairHMMComputeTime*1e-9));
+            hmms.iterator().next().logProfiling(hmms);
+        hmms.forEach(PairHMM::release);
+    }
+
+    /**
+     * Print the profiling information summed over the given PairHMMs, which include this one
+     */
+    protected void logProfiling(final Collection<? extends PairHMM> hmms) {
+        logger.info("Total compute time in PairHMM computeLogLikelihoods() : "+(hmms.stream().mapToLong(hmm -> hmm.pairHMMComputeTime).sum()*1e-9));
+    }
+
+    /**
+     * Release any resources held by this PairHMM
+     */
+    protected void release() {
     }
 }
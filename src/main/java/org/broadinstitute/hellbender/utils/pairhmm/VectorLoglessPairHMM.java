@@ -15,6 +15,7 @@ import org.broadinstitute.hellbender.utils.haplotype.Haplotype;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.read.ReadUtils;
 
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -46,6 +47,10 @@ public final class VectorLoglessPairHMM extends LoglessPairHMM {
     private long threadLocalSetupTimeDiff = 0;
     private long pairHMMSetupTime = 0;
 
+    // the native library is shared by all the instances, so it is shut down when the last open one is closed
+    private static int openInstances = 0;
+    private boolean closed = false;
+
     private final PairHMMNativeBinding pairHmm;
 
     //Hold the mapping between haplotype and index in the list of Haplotypes passed to initialize
@@ -91,7 +96,10 @@ public final class VectorLoglessPairHMM extends LoglessPairHMM {
                 throw new UserException.HardwareFeatureException("Unknown PairHMM implementation.");
         }
 
-        pairHmm.initialize(args);
+        synchronized (VectorLoglessPairHMM.class) {
+            pairHmm.initialize(args);
+            openInstances++;
+        }
     }
 
 
@@ -172,10 +180,22 @@ public final class VectorLoglessPairHMM extends LoglessPairHMM {
 
 
     @Override
-    public void close() {
-        pairHmm.done();
-        if (doProfiling)
-            logger.info("Time spent in setup for JNI call : " + (pairHMMSetupTime * 1e-9));
-        super.close();
+    protected void logProfiling(final Collection<? extends PairHMM> hmms) {
+        final long setupTime = hmms.stream().filter(hmm -> hmm instanceof VectorLoglessPairHMM)
+                .mapToLong(hmm -> ((VectorLoglessPairHMM) hmm).pairHMMSetupTime).sum();
+        logger.info("Time spent in setup for JNI call : " + (setupTime * 1e-9));
+        super.logProfiling(hmms);
+    }
+
+    @Override
+    protected void release() {
+        synchronized (VectorLoglessPairHMM.class) {
+            if (!closed) {
+                closed = true;
+                if (--openInstances == 0) {
+                    pairHmm.done();
+                }
+            }
+        }
     }
 }
@@ -19,5 +19,10 @@ public enum ReadsWriteFormat {
     /**
      * Write reads to a sharded set of ADAM-formatted Parquet files
      */
-    ADAM
+    ADAM,
+
+    /**
+     * Write reads to a sharded set of Parquet files, with a column for each field of a read
+     */
+    PARQUET
 }
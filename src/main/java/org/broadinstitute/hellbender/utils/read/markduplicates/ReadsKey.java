@@ -27,7 +27,14 @@ public abstract class ReadsKey {
      * Makes a hash key for the read.
      */
     public static ReadsKey hashKeyForPassthroughRead(final GATKRead read) {
-        return new KeyForFragment(read.getName().hashCode()) ;
+        return hashKeyForPassthroughRead(read.getName());
+    }
+
+    /**
+     * Makes a hash key for a read with the given name.
+     */
+    public static ReadsKey hashKeyForPassthroughRead(final String readName) {
+        return new KeyForFragment(readName.hashCode()) ;
     }
 
     public static ReadsKey getKeyForFragment(int strandedUnclippedStart, boolean reverseStrand, int referenceIndex, byte library) {
@@ -45,6 +52,12 @@ public abstract class ReadsKey {
                 );
     }
 
+    public static ReadsKey getKeyForPair(int firstStrandedUnclippedStart, boolean firstReverseStrand, int firstReferenceIndex, byte library,
+                                         int secondStrandedUnclippedStart, boolean secondReverseStrand, int secondReferenceIndex) {
+        return new KeyForPair(longKeyForFragment(firstStrandedUnclippedStart, firstReverseStrand, firstReferenceIndex, library),
+                longKeyForPair(secondStrandedUnclippedStart, secondReverseStrand, secondReferenceIndex));
+    }
+
     /**
      * Key class for representing relevant duplicate marking identifiers into a single long key for fragment data.
      *
@@ -36,6 +36,15 @@ public final class EmptyFragment extends PairedEnds {
                 headerLibraryMap.get(MarkDuplicatesSparkUtils.getLibraryForRead(read, header, LibraryIdGenerator.UNKNOWN_LIBRARY)));
     }
 
+    public EmptyFragment(final ReadSummary read) {
+        super(0, null);
+        this.R1R = read.isReverseStrand();
+        this.key = ReadsKey.getKeyForFragment(read.getStrandedUnclippedStart(),
+                isRead1ReverseStrand(),
+                read.getReferenceIndex(),
+                read.getLibraryIndex());
+    }
+
     @Override
     public Type getType() {
         return Type.EMPTY_FRAGMENT;
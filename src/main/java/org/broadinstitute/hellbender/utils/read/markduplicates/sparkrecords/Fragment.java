@@ -35,6 +35,17 @@ public class Fragment extends TransientFieldPhysicalLocation {
                 headerLibraryMap.get(MarkDuplicatesSparkUtils.getLibraryForRead(first, header, LibraryIdGenerator.UNKNOWN_LIBRARY)));
     }
 
+    public Fragment(final ReadSummary first) {
+        super(first.getPartitionIndex(), first.getName());
+
+        this.score = first.getScore();
+        this.R1R = first.isReverseStrand();
+        this.key = ReadsKey.getKeyForFragment(first.getStrandedUnclippedStart(),
+                isRead1ReverseStrand(),
+                (short)first.getReferenceIndex(),
+                first.getLibraryIndex());
+    }
+
     @Override
     public Type getType() {
       return Type.FRAGMENT;
@@ -48,6 +48,24 @@ public abstract class MarkDuplicatesSparkRecord {
     }
 
 
+    // The records of a template built from the summaries of its reads rather than the reads themselves
+    public static Fragment newFragment(final ReadSummary first) {
+        return new Fragment(first);
+    }
+
+    public static EmptyFragment newEmptyFragment(final ReadSummary read) {
+        return new EmptyFragment(read);
+    }
+
+    public static Pair newPair(final ReadSummary first, final ReadSummary second) {
+        return new Pair(first, second);
+    }
+
+    public static Passthrough getPassthrough(final ReadSummary read) {
+        return new Passthrough(read);
+    }
+
+
     public int getPartitionIndex(){
       return partitionIndex;
     }
@@ -80,6 +80,47 @@ public final class Pair extends TransientFieldPhysicalLocation {
         this.key = ReadsKey.getKeyForPair(header, first, second, headerLibraryMap);
     }
 
+    /**
+     * A pair built from the summaries of its reads rather than the reads themselves, which takes the partition index of read2
+     */
+    public Pair(final ReadSummary read1, final ReadSummary read2) {
+        super(read2.getPartitionIndex(), read1.getName());
+
+        final String name1 = read1.getName();
+        final String name2 = read2.getName();
+        Utils.validate(name1.equals(name2), () -> "Paired reads have different names\n" + name1 + "\n" + name2);
+
+        this.score = (short)(read1.getScore() + read2.getScore());
+
+        ReadSummary first;
+        ReadSummary second;
+
+        // the same choice of first and second read as in the constructor from reads
+        if( read1.getReferenceIndex() != read2.getReferenceIndex() ? read1.getReferenceIndex() < read2.getReferenceIndex() :
+                read1.getStrandedUnclippedStart() <= read2.getStrandedUnclippedStart() ){
+            first = read1;
+            second = read2;
+        } else {
+            first = read2;
+            second = read1;
+        }
+
+        if (read1.getReferenceIndex() == read2.getReferenceIndex() &&
+                read1.getStrandedUnclippedStart() == read2.getStrandedUnclippedStart() &&
+                first.isReverseStrand() && !second.isReverseStrand()) {
+            ReadSummary tmp = first;
+            first = second;
+            second = tmp;
+        }
+
+        isRead1ReverseStrand = first.isReverseStrand();
+        isRead2ReverseStrand = second.isReverseStrand();
+        wasFlipped = second.isFirstOfPair();
+
+        this.key = ReadsKey.getKeyForPair(first.getStrandedUnclippedStart(), first.isReverseStrand(), first.getReferenceIndex(), first.getLibraryIndex(),
+                second.getStrandedUnclippedStart(), second.isReverseStrand(), second.getReferenceIndex());
+    }
+
     // Constructor for serialization purposes
     private Pair(Kryo kryo, Input input){
         super(input.readInt(true), input.readString());
@@ -17,6 +17,12 @@ public final class Passthrough extends MarkDuplicatesSparkRecord {
         this.key = ReadsKey.hashKeyForPassthroughRead(read);
     }
 
+    Passthrough(ReadSummary read) {
+        super(read.getPartitionIndex(), read.getName());
+
+        this.key = ReadsKey.hashKeyForPassthroughRead(read.getName());
+    }
+
     @Override
     public Type getType() {
         return Type.PASSTHROUGH;
@@ -0,0 +1,133 @@
+package org.broadinstitute.hellbender.utils.read.markduplicates.sparkrecords;
+
+import com.esotericsoftware.kryo.DefaultSerializer;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import htsjdk.samtools.SAMFileHeader;
+import org.broadinstitute.hellbender.tools.spark.transforms.markduplicates.MarkDuplicatesSparkUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.ReadUtils;
+import org.broadinstitute.hellbender.utils.read.markduplicates.LibraryIdGenerator;
+import org.broadinstitute.hellbender.utils.read.markduplicates.MarkDuplicatesScoringStrategy;
+
+import java.util.Map;
+
+/**
+ * The fields of a read that MarkDuplicatesSpark needs to build the {@link MarkDuplicatesSparkRecord}s of its template,
+ * along with the partition the read came from.
+ *
+ * When the reads are not grouped by name, MarkDuplicatesSpark shuffles these summaries, rather than the reads themselves,
+ * to bring the reads of a template together, and joins the duplicate marking back onto the reads in their original partitions.
+ *
+ * The alignment fields, score, library and read group are only filled in for mapped primary reads, which are the only
+ * ones that become fragments and pairs.
+ */
+@DefaultSerializer(ReadSummary.Serializer.class)
+public final class ReadSummary {
+    private static final byte UNMAPPED = 1;
+    private static final byte NON_PRIMARY = 1 << 1;
+    private static final byte HAS_MAPPED_MATE = 1 << 2;
+    private static final byte REVERSE_STRAND = 1 << 3;
+    private static final byte FIRST_OF_PAIR = 1 << 4;
+
+    private final String name;
+    private final int partitionIndex;
+    private final byte flags;
+    private final int referenceIndex;
+    private final int strandedUnclippedStart;
+    private final short score;
+    private final byte libraryIndex;
+    private final short readGroupIndex;
+
+    public ReadSummary(final GATKRead read, final SAMFileHeader header, final int partitionIndex, final MarkDuplicatesScoringStrategy scoringStrategy,
+                       final Map<String, Byte> headerLibraryMap, final Map<String, Short> headerReadGroupIndexMap) {
+        this.name = read.getName();
+        this.partitionIndex = partitionIndex;
+        this.flags = (byte) ((read.isUnmapped() ? UNMAPPED : 0)
+                | (read.isSecondaryAlignment() || read.isSupplementaryAlignment() ? NON_PRIMARY : 0)
+                | (ReadUtils.readHasMappedMate(read) ? HAS_MAPPED_MATE : 0)
+                | (read.isReverseStrand() ? REVERSE_STRAND : 0)
+                | (read.isPaired() && read.isFirstOfPair() ? FIRST_OF_PAIR : 0));
+
+        if (isUnmapped() || !isPrimary()) {
+            referenceIndex = -1;
+            strandedUnclippedStart = 0;
+            score = 0;
+            libraryIndex = -1;
+            readGroupIndex = -1;
+        } else {
+            referenceIndex = ReadUtils.getReferenceIndex(read, header);
+            strandedUnclippedStart = ReadUtils.getStrandedUnclippedStart(read);
+            score = scoringStrategy.score(read);
+            // this throws if the read group is missing from the read or the header
+            libraryIndex = headerLibraryMap.get(MarkDuplicatesSparkUtils.getLibraryForRead(read, header, LibraryIdGenerator.UNKNOWN_LIBRARY));
+            readGroupIndex = headerReadGroupIndexMap.get(read.getReadGroup());
+        }
+    }
+
+    private ReadSummary(final Input input) {
+        name = input.readString();
+        partitionIndex = input.readInt(true);
+        flags = input.readByte();
+        referenceIndex = input.readInt(false);
+        strandedUnclippedStart = input.readInt(false);
+        score = input.readShort();
+        libraryIndex = input.readByte();
+        readGroupIndex = input.readShort();
+    }
+
+    private void serialize(final Output output) {
+        output.writeString(name);
+        output.writeInt(partitionIndex, true);
+        output.writeByte(flags);
+        output.writeInt(referenceIndex, false);
+        output.writeInt(strandedUnclippedStart, false);
+        output.writeShort(score);
+        output.writeByte(libraryIndex);
+        output.writeShort(readGroupIndex);
+    }
+
+    public String getName() { return name; }
+
+    public int getPartitionIndex() { return partitionIndex; }
+
+    public int getFlags() { return flags; }
+
+    public boolean isUnmapped() { return (flags & UNMAPPED) != 0; }
+
+    public boolean isPrimary() { return (flags & NON_PRIMARY) == 0; }
+
+    public boolean hasMappedMate() { return (flags & HAS_MAPPED_MATE) != 0; }
+
+    public boolean isReverseStrand() { return (flags & REVERSE_STRAND) != 0; }
+
+    public boolean isFirstOfPair() { return (flags & FIRST_OF_PAIR) != 0; }
+
+    public int getReferenceIndex() { return referenceIndex; }
+
+    public int getStrandedUnclippedStart() { return strandedUnclippedStart; }
+
+    public short getScore() { return score; }
+
+    public byte getLibraryIndex() { return libraryIndex; }
+
+    public short getReadGroupIndex() { return readGroupIndex; }
+
+    @Override
+    public String toString() {
+        return "summary[" + partitionIndex + "," + name + (isUnmapped() ? ",unmapped" : "," + referenceIndex + ":" + strandedUnclippedStart) + "]";
+    }
+
+    public static final class Serializer extends com.esotericsoftware.kryo.Serializer<ReadSummary> {
+        @Override
+        public void write(final Kryo kryo, final Output output, final ReadSummary summary) {
+            summary.serialize(output);
+        }
+
+        @Override
+        public ReadSummary read(final Kryo kryo, final Input input, final Class<ReadSummary> klass) {
+            return new ReadSummary(input);
+        }
+    }
+}
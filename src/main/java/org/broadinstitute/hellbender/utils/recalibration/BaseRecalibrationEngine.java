@@ -62,6 +62,11 @@ public final class BaseRecalibrationEngine implements Serializable {
 
     private RecalibrationTables recalTables;
 
+    /**
+     * counts accumulated by processRead, transferred into recalTables whenever the tables are needed
+     */
+    private FlatRecalibrationTables accumulatedCounts;
+
     private SAMFileHeader readsHeader;
 
     /**
@@ -96,6 +101,7 @@ public final class BaseRecalibrationEngine implements Serializable {
             throw new UserException("Number of read groups must be >= 1, but is " + numReadGroups);
         }
         recalTables = new RecalibrationTables(covariates, numReadGroups);
+        accumulatedCounts = new FlatRecalibrationTables(covariates, numReadGroups);
         keyCache = new CovariateKeyCache();
         cachedEventTypes = recalArgs.computeIndelBQSRTables ? EventType.values() : new EventType[]{EventType.BASE_SUBSTITUTION};
     }
@@ -110,13 +116,16 @@ public final class BaseRecalibrationEngine implements Serializable {
     /**
      * For each read at this locus get the various covariate values and increment that location in the map based on
      * whether or not the base matches the reference at this particular location
+     *
+     * @return the covariates of the read after it was clipped, which are only valid until the next call, or null if
+     *         none were computed because the read was skipped
      */
-    public void processRead( final GATKRead originalRead, final ReferenceDataSource refDS, final Iterable<? extends Locatable> knownSites ) {
+    public ReadCovariates processRead( final GATKRead originalRead, final ReferenceDataSource refDS, final Iterable<? extends Locatable> knownSites ) {
         final ReadTransformer transform = makeReadTransform();
         final GATKRead read = transform.apply(originalRead);
 
         if( read.isEmpty() ) {
-            return; // the whole read was inside the adaptor so skip it
+            return null; // the whole read was inside the adaptor so skip it
         }
 
         RecalUtils.parsePlatformForRead(read, readsHeader, recalArgs);
@@ -132,8 +141,9 @@ public final class BaseRecalibrationEngine implements Serializable {
         // some error to marginalize over.  For ILMN data ~85% of reads have no error
         final byte[] baqArray = (nErrors == 0 || !recalArgs.enableBAQ) ? flatBAQArray(read) : calculateBAQArray(read, refDS);
 
+        ReadCovariates covariates = null;
         if( baqArray != null ) { // some reads just can't be BAQ'ed
-            final ReadCovariates covariates = RecalUtils.computeCovariates(read, readsHeader, this.covariates, true, keyCache);
+            covariates = RecalUtils.computeCovariates(read, readsHeader, this.covariates, true, keyCache);
             final boolean[] skip = calculateSkipArray(read, knownSites); // skip known sites of variation as well as low quality and non-regular bases
             final double[] snpErrors = calculateFractionalErrorArray(isSNP, baqArray);
             final double[] insertionErrors = calculateFractionalErrorArray(isInsertion, baqArray);
@@ -145,6 +155,7 @@ public final class BaseRecalibrationEngine implements Serializable {
         }
 
         numReadsProcessed++;
+        return covariates;
     }
 
     /**
@@ -157,10 +168,37 @@ public final class BaseRecalibrationEngine implements Serializable {
      */
     public void finalizeData() {
         Utils.validate(!finalized, "FinalizeData() has already been called");
+        flushAccumulatedCounts();
         finalizeRecalibrationTables(recalTables);
         finalized = true;
     }
 
+    /**
+     * Add the counts of the reads processed since the last flush to the recalibration tables.
+     *
+     * Must be called once processing is done and before {@link #getRecalibrationTables()} when the tables are
+     * collected without calling finalizeData(), as in distributed execution.
+     */
+    public void flushAccumulatedCounts() {
+        Utils.validate(!finalized, "Cannot add counts after finalizeData() has been called");
+        accumulatedCounts.addTo(recalTables);
+    }
+
+    /**
+     * Add everything other has accumulated to this engine, so that reads can be processed by several engines, for
+     * example one per thread, and their results combined before finalizing.
+     *
+     * @param other an engine created with the same arguments and header as this one, not yet finalized
+     */
+    public void combine( final BaseRecalibrationEngine other ) {
+        Utils.nonNull(other);
+        Utils.validate(!finalized && !other.finalized, "Cannot combine engines after finalizeData() has been called");
+        flushAccumulatedCounts();
+        other.flushAccumulatedCounts();
+        recalTables.combine(other.recalTables);
+        numReadsProcessed += other.numReadsProcessed;
+    }
+
     /**
      * Finalize, if appropriate, all derived data in recalibrationTables.
      *
@@ -208,8 +246,11 @@ public final class BaseRecalibrationEngine implements Serializable {
 
     /**
      * Get a possibly not-final recalibration table, to deal with distributed execution.
+     *
+     * Only counts already added by {@link #flushAccumulatedCounts()} are included.
      */
     public RecalibrationTables getRecalibrationTables() {
+        Utils.validate(accumulatedCounts.isEmpty(), "Cannot get recalibration tables before flushAccumulatedCounts() has been called");
         return recalTables;
     }
 
@@ -244,31 +285,15 @@ public final class BaseRecalibrationEngine implements Serializable {
 
         final GATKRead read = recalInfo.getRead();
         final ReadCovariates readCovariates = recalInfo.getCovariatesValues();
-        final NestedIntegerArray<RecalDatum> qualityScoreTable = recalTables.getQualityScoreTable();
 
-        final int nCovariates = covariates.size();
-        final int nSpecialCovariates = covariates.numberOfSpecialCovariates();
         final int readLength = read.getLength();
         for( int offset = 0; offset < readLength; offset++ ) {
             if( ! recalInfo.skip(offset) ) {
                 for (int idx = 0; idx < cachedEventTypes.length; idx++) { //Note: we loop explicitly over cached values for speed
                     final EventType eventType = cachedEventTypes[idx];
                     final int[] keys = readCovariates.getKeySet(offset, eventType);
-                    final int eventIndex = eventType.ordinal();
-                    final byte qual = recalInfo.getQual(eventType, offset);
                     final double isError = recalInfo.getErrorFraction(eventType, offset);
-
-                    final int key0 = keys[0];
-                    final int key1 = keys[1];
-
-                    RecalUtils.incrementDatumOrPutIfNecessary3keys(qualityScoreTable, qual, isError, key0, key1, eventIndex);
-
-                    for (int i = nSpecialCovariates; i < nCovariates; i++) {
-                        final int keyi = keys[i];
-                        if (keyi >= 0) {
-                            RecalUtils.incrementDatumOrPutIfNecessary4keys(recalTables.getTable(i), qual, isError, key0, key1, keyi, eventIndex);
-                        }
-                    }
+                    accumulatedCounts.increment(keys, eventType.ordinal(), isError);
                 }
             }
         }
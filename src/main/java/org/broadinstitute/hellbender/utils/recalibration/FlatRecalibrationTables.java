@@ -0,0 +1,176 @@
+package org.broadinstitute.hellbender.utils.recalibration;
+
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.collections.NestedIntegerArray;
+import org.broadinstitute.hellbender.utils.recalibration.covariates.StandardCovariateList;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Accumulates the observations and mismatches of base quality score recalibration in flat primitive arrays instead of
+ * in {@link RecalDatum} objects stored in {@link NestedIntegerArray} trees.
+ *
+ * Incrementing a count is a couple of array indexings instead of a tree traversal, a null check and possibly the
+ * allocation of a new RecalDatum. The counts are transferred into regular {@link RecalibrationTables} with
+ * {@link #addTo(RecalibrationTables)} once accumulation is done, so each thread of a multi-threaded BaseRecalibrator can
+ * accumulate into its own instance without any synchronization.
+ *
+ * The tables of the additional covariates are allocated in slabs, one per read group and reported quality, on first use,
+ * since most of the read group by quality space is never seen.
+ *
+ * The mismatches are summed scaled by {@link RecalDatum#MULTIPLIER}, in the same order a RecalDatum would sum them, so
+ * the resulting tables are identical to the ones built by incrementing RecalDatums directly. This relies on the
+ * quality score covariate key being the reported quality itself, which is what {@link RecalDatum}s are created with.
+ */
+public final class FlatRecalibrationTables implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int numReadGroups;
+    private final int qualDimension;
+    private final int eventDimension = EventType.values().length;
+    private final int numSpecialCovariates;
+
+    // indexed by (readGroup * qualDimension + qual) * eventDimension + event
+    private final long[] qualityScoreObservations;
+    private final double[] qualityScoreMismatches;
+
+    // indexed by [additional table][readGroup * qualDimension + qual][covariateKey * eventDimension + event]
+    private final int[] additionalSlabSizes;
+    private final long[][][] additionalObservations;
+    private final double[][][] additionalMismatches;
+
+    private boolean isEmpty = true;
+
+    public FlatRecalibrationTables(final StandardCovariateList covariates, final int numReadGroups) {
+        Utils.nonNull(covariates);
+        Utils.validateArg(numReadGroups > 0, "numReadGroups must be positive");
+        this.numReadGroups = numReadGroups;
+        this.qualDimension = covariates.getQualityScoreCovariate().maximumKeyValue() + 1;
+        this.numSpecialCovariates = covariates.numberOfSpecialCovariates();
+
+        final int numQualityScoreCells = numReadGroups * qualDimension * eventDimension;
+        this.qualityScoreObservations = new long[numQualityScoreCells];
+        this.qualityScoreMismatches = new double[numQualityScoreCells];
+
+        final int numAdditionalCovariates = covariates.size() - numSpecialCovariates;
+        this.additionalSlabSizes = new int[numAdditionalCovariates];
+        this.additionalObservations = new long[numAdditionalCovariates][][];
+        this.additionalMismatches = new double[numAdditionalCovariates][][];
+        for ( int i = 0; i < numAdditionalCovariates; i++ ) {
+            additionalSlabSizes[i] = (covariates.get(numSpecialCovariates + i).maximumKeyValue() + 1) * eventDimension;
+            additionalObservations[i] = new long[numReadGroups * qualDimension][];
+            additionalMismatches[i] = new double[numReadGroups * qualDimension][];
+        }
+    }
+
+    /**
+     * Record one observation in the read group x quality score table and, for every additional covariate whose key is
+     * not negative, in its table.
+     *
+     * Keys are not bounds-checked beyond what array indexing does, as they come from covariates that guarantee them to be
+     * at most their maximumKeyValue().
+     *
+     * @param keys the covariate keys of the observation, in the order of the {@link StandardCovariateList}
+     * @param eventIndex ordinal of the {@link EventType} of the observation
+     * @param isError the (possibly fractional) error of the observation
+     */
+    public void increment(final int[] keys, final int eventIndex, final double isError) {
+        final int readGroupAndQual = keys[0] * qualDimension + keys[1];
+        final double scaledError = isError * RecalDatum.MULTIPLIER;
+
+        final int qualityScoreIndex = readGroupAndQual * eventDimension + eventIndex;
+        qualityScoreObservations[qualityScoreIndex]++;
+        qualityScoreMismatches[qualityScoreIndex] += scaledError;
+
+        for ( int i = 0; i < additionalSlabSizes.length; i++ ) {
+            final int key = keys[numSpecialCovariates + i];
+            if ( key >= 0 ) {
+                long[] observations = additionalObservations[i][readGroupAndQual];
+                if ( observations == null ) {
+                    observations = additionalObservations[i][readGroupAndQual] = new long[additionalSlabSizes[i]];
+                    additionalMismatches[i][readGroupAndQual] = new double[additionalSlabSizes[i]];
+                }
+                final int index = key * eventDimension + eventIndex;
+                observations[index]++;
+                additionalMismatches[i][readGroupAndQual][index] += scaledError;
+            }
+        }
+        isEmpty = false;
+    }
+
+    /**
+     * @return true if no observation was recorded since construction or the last call to {@link #addTo}
+     */
+    public boolean isEmpty() {
+        return isEmpty;
+    }
+
+    /**
+     * Add all the counts accumulated here to the quality score and additional covariate tables of tables, then reset
+     * the counts here. The read group table is left alone, as it is derived from the quality score table when the
+     * tables are finalized.
+     *
+     * @param tables tables created with the same covariates and number of read groups as this
+     * @return tables
+     */
+    public RecalibrationTables addTo(final RecalibrationTables tables) {
+        Utils.nonNull(tables);
+        Utils.validateArg(tables.numTables() == numSpecialCovariates + additionalSlabSizes.length,
+                "Attempting to add FlatRecalibrationTables to RecalibrationTables with different covariates");
+        if ( isEmpty ) {
+            return tables;
+        }
+
+        final NestedIntegerArray<RecalDatum> qualityScoreTable = tables.getQualityScoreTable();
+        for ( int readGroup = 0; readGroup < numReadGroups; readGroup++ ) {
+            for ( int qual = 0; qual < qualDimension; qual++ ) {
+                final int readGroupAndQual = readGroup * qualDimension + qual;
+                for ( int event = 0; event < eventDimension; event++ ) {
+                    final int index = readGroupAndQual * eventDimension + event;
+                    if ( qualityScoreObservations[index] > 0 ) {
+                        addDatum(qualityScoreTable, RecalDatum.fromScaledCounts(qualityScoreObservations[index], qualityScoreMismatches[index], (byte) qual),
+                                readGroup, qual, event);
+                    }
+                }
+
+                for ( int i = 0; i < additionalSlabSizes.length; i++ ) {
+                    final long[] observations = additionalObservations[i][readGroupAndQual];
+                    if ( observations == null ) {
+                        continue;
+                    }
+                    final double[] mismatches = additionalMismatches[i][readGroupAndQual];
+                    final NestedIntegerArray<RecalDatum> table = tables.getTable(numSpecialCovariates + i);
+                    for ( int index = 0; index < observations.length; index++ ) {
+                        if ( observations[index] > 0 ) {
+                            addDatum(table, RecalDatum.fromScaledCounts(observations[index], mismatches[index], (byte) qual),
+                                    readGroup, qual, index / eventDimension, index % eventDimension);
+                        }
+                    }
+                }
+            }
+        }
+
+        clear();
+        return tables;
+    }
+
+    private static void addDatum(final NestedIntegerArray<RecalDatum> table, final RecalDatum datum, final int... keys) {
+        final RecalDatum existingDatum = table.get(keys);
+        if ( existingDatum == null ) {
+            table.put(datum, keys);
+        } else {
+            existingDatum.combine(datum);
+        }
+    }
+
+    private void clear() {
+        Arrays.fill(qualityScoreObservations, 0L);
+        Arrays.fill(qualityScoreMismatches, 0.0);
+        for ( int i = 0; i < additionalSlabSizes.length; i++ ) {
+            Arrays.fill(additionalObservations[i], null);
+            Arrays.fill(additionalMismatches[i], null);
+        }
+        isEmpty = true;
+    }
+}
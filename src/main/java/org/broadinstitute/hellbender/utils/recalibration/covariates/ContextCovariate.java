@@ -2,8 +2,6 @@ package org.broadinstitute.hellbender.utils.recalibration.covariates;
 
 import com.google.common.annotations.VisibleForTesting;
 import htsjdk.samtools.SAMFileHeader;
-import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.ints.IntList;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.broadinstitute.barclay.argparser.CommandLineException;
@@ -33,6 +31,8 @@ public final class ContextCovariate implements Covariate {
     private static final int MAX_DNA_CONTEXT = 13;
     private final byte lowQualTail;
 
+    private static final ThreadLocal<ContextBuffers> CONTEXT_BUFFERS = ThreadLocal.withInitial(ContextBuffers::new);
+
     public ContextCovariate(final RecalibrationArgumentCollection RAC){
         mismatchesContextSize = RAC.MISMATCHES_CONTEXT_SIZE;
         indelsContextSize = RAC.INDELS_CONTEXT_SIZE;
@@ -59,15 +59,14 @@ public final class ContextCovariate implements Covariate {
     public void recordValues(final GATKRead read, final SAMFileHeader header, final ReadCovariates values, final boolean recordIndelValues) {
 
         final int originalReadLength = read.getLength();
+        final ContextBuffers buffers = CONTEXT_BUFFERS.get();
+        buffers.ensureCapacity(originalReadLength);
 
-        // store the original bases and then write Ns over low quality ones
-        final byte[] strandedClippedBases = getStrandedClippedBytes(read, lowQualTail);  //Note: this makes a copy of the read
-
-        //Note: we're using a non-standard library here because boxing came up on profiling as taking 20% of time in applyBQSR.
-        //IntList avoids boxing
-        final IntList mismatchKeys = contextWith(strandedClippedBases, mismatchesContextSize, mismatchesKeyMask);
+        // get the base indices of the read, on its original strand, with the low quality ones clipped off (set to -1)
+        final int readLengthAfterClipping = getStrandedClippedBaseIndices(read, lowQualTail, buffers.baseIndices);
 
-        final int readLengthAfterClipping = strandedClippedBases.length;
+        contextWith(buffers.baseIndices, readLengthAfterClipping, mismatchesContextSize, mismatchesKeyMask, buffers.mismatchKeys);
+        final int[] mismatchKeys = buffers.mismatchKeys;
 
         // this is necessary to ensure that we don't keep historical data in the ReadCovariates values
         // since the context covariate may not span the entire set of values in read covariates
@@ -84,16 +83,17 @@ public final class ContextCovariate implements Covariate {
 
         //Note: duplicated the loop to avoid checking recordIndelValues on each iteration
         if (recordIndelValues) {
-            final IntList indelKeys = contextWith(strandedClippedBases, indelsContextSize, indelsKeyMask);
+            contextWith(buffers.baseIndices, readLengthAfterClipping, indelsContextSize, indelsKeyMask, buffers.indelKeys);
+            final int[] indelKeys = buffers.indelKeys;
             for (int i = 0; i < readLengthAfterClipping; i++) {
                 final int readOffset = getStrandedOffset(negativeStrand, i, readLengthAfterClipping);
-                final int indelKey = indelKeys.getInt(i);
-                values.addCovariate(mismatchKeys.getInt(i), indelKey, indelKey, readOffset);
+                final int indelKey = indelKeys[i];
+                values.addCovariate(mismatchKeys[i], indelKey, indelKey, readOffset);
             }
         } else {
             for (int i = 0; i < readLengthAfterClipping; i++) {
                 final int readOffset = getStrandedOffset(negativeStrand, i, readLengthAfterClipping);
-                values.addCovariate(mismatchKeys.getInt(i), 0, 0, readOffset);
+                values.addCovariate(mismatchKeys[i], 0, 0, readOffset);
             }
         }
     }
@@ -154,69 +154,98 @@ public final class ContextCovariate implements Covariate {
     }
 
     /**
-     * calculates the context of a base independent of the covariate mode (mismatch, insertion or deletion)
+     * Given a read, computes the base indices of its bases, after reverse-complementing for negative-strand reads, with
+     * the low quality ends clipped off and non-ACGT bases set to -1. This is the same as taking the base indices of
+     * {@link #getStrandedClippedBytes}, but without copying the read.
      *
-     * @param bases       the bases in the read to build the context from
-     * @param contextSize context size to use building the context
-     * @param mask        mask for pulling out just the context bits
+     * @param read the read
+     * @param lowQTail every base quality lower than or equal to this in the tail of the read is clipped off
+     * @param baseIndices array to fill in with the base indices, at least as long as the read
+     * @return the number of base indices, either the read length or 0 if all bases are below lowQTail
      */
-    private static IntList contextWith(final byte[] bases, final int contextSize, final int mask) {
-
+    private static int getStrandedClippedBaseIndices(final GATKRead read, final byte lowQTail, final int[] baseIndices) {
+        final byte[] bases = read.getBasesNoCopy();
         final int readLength = bases.length;
-
-        //Note: we use a specialized collection to avoid the cost of boxing and unboxing that otherwise comes up on the profiler.
-        final IntList keys = new IntArrayList(readLength);
-
-        // the first contextSize-1 bases will not have enough previous context
-        for (int i = 1; i < contextSize && i <= readLength; i++) {
-            keys.add(-1);
+        if (readLength == 0) {
+            return 0;
         }
 
-        if (readLength < contextSize) {
-            return keys;
+        // check how far we can clip both sides, as ReadClipper.clipLowQualEnds does
+        final byte[] quals = read.getBaseQualitiesNoCopy();
+        int rightClipIndex = readLength - 1;
+        while (rightClipIndex >= 0 && quals[rightClipIndex] <= lowQTail) {
+            rightClipIndex--;
+        }
+        int leftClipIndex = 0;
+        while (leftClipIndex < readLength && quals[leftClipIndex] <= lowQTail) {
+            leftClipIndex++;
+        }
+        if (leftClipIndex > rightClipIndex) {
+            return 0;
         }
 
-        final int newBaseOffset = 2 * (contextSize - 1) + LENGTH_BITS;
-
-        // get (and add) the key for the context starting at the first base
-        int currentKey = keyFromContext(bases, 0, contextSize);
-        keys.add(currentKey);
-
-        // if the first key was -1 then there was an N in the context; figure out how many more consecutive contexts it affects
-        int currentNPenalty = 0;
-        if (currentKey == -1) {
-            currentKey = 0;
-            currentNPenalty = contextSize - 1;
-            int offset = newBaseOffset;
-            while (bases[currentNPenalty] != 'N') {
-                final int baseIndex = BaseUtils.simpleBaseToBaseIndex(bases[currentNPenalty]);
-                currentKey |= (baseIndex << offset);
-                offset -= 2;
-                currentNPenalty--;
+        final boolean negativeStrand = read.isReverseStrand();
+        for (int i = 0; i < readLength; i++) {
+            final int strandedIndex = getStrandedOffset(negativeStrand, i, readLength);
+            if (i < leftClipIndex || i > rightClipIndex) {
+                baseIndices[strandedIndex] = -1;
+            } else {
+                baseIndices[strandedIndex] = BaseUtils.simpleBaseToBaseIndex(negativeStrand ? BaseUtils.simpleComplement(bases[i]) : bases[i]);
             }
         }
+        return readLength;
+    }
 
-        for (int currentIndex = contextSize; currentIndex < readLength; currentIndex++) {
-            final int baseIndex = BaseUtils.simpleBaseToBaseIndex(bases[currentIndex]);
+    /**
+     * calculates the context of a base independent of the covariate mode (mismatch, insertion or deletion)
+     *
+     * The key of every context is rolled from the key of the previous one by pushing the new base onto it, so each
+     * base is only looked at once. Contexts that don't have enough previous bases or that contain a non-ACGT base get -1.
+     *
+     * @param baseIndices the base indices of the read to build the context from, -1 for non-ACGT bases
+     * @param readLength  the number of base indices
+     * @param contextSize context size to use building the context
+     * @param mask        mask for pulling out just the context bits
+     * @param keys        array to fill in with the keys of the contexts ending at every base
+     */
+    private static void contextWith(final int[] baseIndices, final int readLength, final int contextSize, final int mask, final int[] keys) {
+        final int newBaseOffset = 2 * (contextSize - 1) + LENGTH_BITS;
+
+        int currentKey = 0;
+        int consecutiveBases = 0; // the number of ACGT bases in a row ending at the current one
+        for (int currentIndex = 0; currentIndex < readLength; currentIndex++) {
+            final int baseIndex = baseIndices[currentIndex];
             if (baseIndex == -1) { // ignore non-ACGT bases
-                currentNPenalty = contextSize;
+                consecutiveBases = 0;
                 currentKey = 0; // reset the key
             } else {
                 // push this base's contribution onto the key: shift everything 2 bits, mask out the non-context bits, and add the new base and the length in
                 currentKey = (currentKey >> 2) & mask;
                 currentKey |= (baseIndex << newBaseOffset);
                 currentKey |= contextSize;
+                consecutiveBases++;
             }
+            keys[currentIndex] = consecutiveBases >= contextSize ? currentKey : -1;
+        }
+    }
 
-            if (currentNPenalty == 0) {
-                keys.add(currentKey);
-            } else {
-                currentNPenalty--;
-                keys.add(-1);
+    /**
+     * Per-thread buffers reused from read to read, grown to the longest read seen. Covariates are shared between
+     * threads (for instance through a broadcast recalibration report) so they can't hold the buffers themselves.
+     */
+    private static final class ContextBuffers {
+        private int[] baseIndices = new int[0];
+        private int[] mismatchKeys = new int[0];
+        private int[] indelKeys = new int[0];
+
+        private void ensureCapacity(final int readLength) {
+            if (baseIndices.length < readLength) {
+                final int capacity = Math.max(readLength, baseIndices.length + baseIndices.length / 2);
+                baseIndices = new int[capacity];
+                mismatchKeys = new int[capacity];
+                indelKeys = new int[capacity];
             }
         }
-
-        return keys;
     }
 
     public static int keyFromContext(final String dna) {
@@ -2,11 +2,18 @@ package org.broadinstitute.hellbender.utils.recalibration.covariates;
 
 import org.broadinstitute.hellbender.utils.LRUCache;
 import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.recalibration.EventType;
 
 /*
- * Use an LRU cache to keep cache of keys (int[][][]) arrays for each read length we've seen.
- * The cache allows us to avoid the expense of recreating these arrays for every read.  The LRU
- * keeps the total number of cached arrays to less than LRU_CACHE_SIZE.
+ * Arena for the keys (int[][][]) arrays of ReadCovariates, reused from read to read.
+ *
+ * The per-offset key arrays are allocated once for the longest read seen and shared by reads of all lengths. Only the
+ * outer arrays, which must have the exact length of the read, depend on the read length: they just point to the
+ * shared per-offset arrays and are kept in an LRU cache, with the last one used checked first since consecutive reads
+ * mostly have the same length. The LRU keeps the total number of cached outer arrays to less than LRU_CACHE_SIZE.
+ *
+ * The arrays are overwritten by the next read, so an arena must not be shared between threads: each recalibration
+ * engine or transformer, which are all used by one thread at a time, owns its own.
  */
 public final class CovariateKeyCache {
 
@@ -15,25 +22,72 @@ public final class CovariateKeyCache {
      */
     private static final int LRU_CACHE_SIZE = 500;
 
+    private static final int NUM_EVENT_TYPES = EventType.values().length;
+
     private final LRUCache<Integer, int[][][]> keysCache = new LRUCache<>(LRU_CACHE_SIZE);
 
+    // per-offset key arrays, indexed by event type x read offset, for all read lengths up to the longest one seen
+    private int[][][] offsetKeys = new int[NUM_EVENT_TYPES][0][];
+    private int numberOfCovariates = -1;
+
+    private int[][][] lastKeys;
+    private int lastReadLength = -1;
+
     /**
-     * Get the cached value for the given readlength or null is no value is cached.
+     * Get the keys arrays, indexed by event type x read offset x covariate, for a read of the given length.
+     * The arrays are reused by the next call.
      */
-    public int[][][] get(final int readLength) {
-        return keysCache.get(readLength);
+    public int[][][] get(final int readLength, final int numberOfCovariates) {
+        Utils.validateArg(readLength >= 0, "read length must be non-negative");
+        if (numberOfCovariates != this.numberOfCovariates) {
+            reset(numberOfCovariates);
+        }
+        if (readLength == lastReadLength) {
+            return lastKeys;
+        }
+
+        int[][][] keys = keysCache.get(readLength);
+        if (keys == null) {
+            ensureCapacity(readLength);
+            keys = new int[NUM_EVENT_TYPES][][];
+            for (int event = 0; event < NUM_EVENT_TYPES; event++) {
+                keys[event] = new int[readLength][];
+                System.arraycopy(offsetKeys[event], 0, keys[event], 0, readLength);
+            }
+            keysCache.put(readLength, keys);
+        }
+        lastKeys = keys;
+        lastReadLength = readLength;
+        return keys;
     }
 
-    /**
-     * Store the given array in the cache.
-     */
-    public void put(final int readLength, final int[][][] keys) {
-        Utils.nonNull(keys);
-        keysCache.put(readLength, keys);
+    private void reset(final int numberOfCovariates) {
+        keysCache.clear();
+        offsetKeys = new int[NUM_EVENT_TYPES][0][];
+        lastKeys = null;
+        lastReadLength = -1;
+        this.numberOfCovariates = numberOfCovariates;
+    }
+
+    // grow the per-offset arrays, keeping the existing ones so the cached outer arrays stay valid
+    private void ensureCapacity(final int readLength) {
+        final int capacity = offsetKeys[0].length;
+        if (readLength <= capacity) {
+            return;
+        }
+        final int newCapacity = Math.max(readLength, capacity + capacity / 2);
+        for (int event = 0; event < NUM_EVENT_TYPES; event++) {
+            final int[][] grown = new int[newCapacity][];
+            System.arraycopy(offsetKeys[event], 0, grown, 0, capacity);
+            for (int offset = capacity; offset < newCapacity; offset++) {
+                grown[offset] = new int[numberOfCovariates];
+            }
+            offsetKeys[event] = grown;
+        }
     }
 
     /**
-     * Returns the size of this cache.
+     * Returns the number of read lengths whose outer arrays are cached.
      */
     public int size() {
         return keysCache.size();
@@ -1,7 +1,5 @@
 package org.broadinstitute.hellbender.utils.recalibration.covariates;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
 import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.recalibration.EventType;
 
@@ -9,8 +7,6 @@ import org.broadinstitute.hellbender.utils.recalibration.EventType;
  * The object temporarily held by a read that describes all of its covariates.
  */
 public final class ReadCovariates {
-    private static final Logger logger = LogManager.getLogger(ReadCovariates.class);
-
     /**
      * Our keys, indexed by event type x read length x covariate
      */
@@ -22,20 +18,12 @@ public final class ReadCovariates {
     private int currentCovariateIndex = 0;
 
     /**
-     * Use an LRU cache to keep cache of keys (int[][][]) arrays for each read length we've seen.
-     * The cache allows us to avoid the expense of recreating these arrays for every read.  The LRU
-     * keeps the total number of cached arrays to less than LRU_CACHE_SIZE.
+     * Use the keys arena to avoid the expense of recreating the keys arrays for every read.
+     * The keys are only valid until the arena is used for the next read.
      */
     public ReadCovariates(final int readLength, final int numberOfCovariates, final CovariateKeyCache keysCache) {
         Utils.nonNull(keysCache);
-        final int[][][] cachedKeys = keysCache.get(readLength);
-        if ( cachedKeys == null ) {
-            if ( logger.isDebugEnabled() ) logger.debug("Keys cache miss for length " + readLength + " cache size " + keysCache.size());
-            keys = new int[EventType.values().length][readLength][numberOfCovariates];
-            keysCache.put(readLength, keys);
-        } else {
-            keys = cachedKeys;
-        }
+        keys = keysCache.get(readLength, numberOfCovariates);
     }
 
     public void setCovariateIndex(final int index) {
@@ -45,9 +33,7 @@ public final class ReadCovariates {
     /**
      * Update the keys for mismatch, insertion, and deletion for the current covariate at read offset
      *
-     * NOTE: no checks are performed on the number of covariates, for performance reasons.  If the count increases
-     * after the keysCache has been accessed, this method will throw an ArrayIndexOutOfBoundsException.  This currently
-     * only occurs in the testing harness, and we don't anticipate that it will become a part of normal runs.
+     * NOTE: no checks are performed on the number of covariates, for performance reasons.
      *
      * @param mismatch the mismatch key value
      * @param insertion the insertion key value
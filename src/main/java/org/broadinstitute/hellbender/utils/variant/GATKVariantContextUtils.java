@@ -19,10 +19,13 @@ import org.apache.commons.lang3.tuple.MutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.tools.walkers.genotyper.*;
 import org.broadinstitute.hellbender.utils.BaseUtils;
 import org.broadinstitute.hellbender.utils.MathUtils;
 import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.codecs.binarygvcf.BinaryGVCFCodec;
+import org.broadinstitute.hellbender.utils.codecs.binarygvcf.BinaryGVCFWriter;
 import org.broadinstitute.hellbender.utils.param.ParamUtils;
 
 import java.io.File;
@@ -76,6 +79,7 @@ public final class GATKVariantContextUtils {
 
     /**
      * Creates a VariantContextWriter whose outputFile type is based on the extension of the output file name.
+     * Files ending in {@link BinaryGVCFCodec#BINARY_GVCF_EXTENSION} are written in the compact binary GVCF format.
      * The default options set by VariantContextWriter are cleared before applying ALLOW_MISSING_FIELDS_IN_HEADER (if
      * <code>lenientProcessing</code> is set), followed by the set of options specified by any <code>options</code> args.
      *
@@ -93,6 +97,10 @@ public final class GATKVariantContextUtils {
     {
         Utils.nonNull(outFile);
 
+        if (outFile.getName().endsWith(BinaryGVCFCodec.BINARY_GVCF_EXTENSION)) {
+            return createBinaryGVCFWriter(outFile, referenceDictionary, createMD5, Arrays.asList(options));
+        }
+
         VariantContextWriterBuilder vcWriterBuilder =
                 new VariantContextWriterBuilder().clearOptions().setOutputFile(outFile);
 
@@ -121,6 +129,25 @@ public final class GATKVariantContextUtils {
         return vcWriterBuilder.build();
     }
 
+    private static VariantContextWriter createBinaryGVCFWriter(
+            final File outFile,
+            final SAMSequenceDictionary referenceDictionary,
+            final boolean createMD5,
+            final List<Options> options)
+    {
+        if (createMD5) {
+            logger.warn("MD5 creation is not supported for binary GVCF output " + outFile + ", no MD5 will be written.");
+        }
+        if (options.contains(Options.DO_NOT_WRITE_GENOTYPES)) {
+            throw new UserException("Sites-only output is not supported for binary GVCF output " + outFile);
+        }
+        return new BinaryGVCFWriter(outFile,
+                referenceDictionary,
+                options.contains(Options.INDEX_ON_THE_FLY),
+                options.contains(Options.ALLOW_MISSING_FIELDS_IN_HEADER),
+                options.contains(Options.WRITE_FULL_FORMAT_FIELD));
+    }
+
     // Determine the variant file type from the file extension. Htsjdk has similar code, when
     // https://github.com/broadinstitute/gatk/issues/2128 is fixed we should eliminate this code
     // and use the htsjdk method.
@@ -17,15 +17,21 @@ import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.variant.GATKVCFConstants;
 import org.broadinstitute.hellbender.utils.variant.GATKVCFHeaderLines;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static htsjdk.variant.vcf.VCFConstants.MAX_GENOTYPE_QUAL;
 
 /**
  * Genome-wide VCF writer
+ *
+ * In addition to single-position hom-ref sites, this writer accepts records that already summarize hom-ref blocks
+ * (records with an END attribute), so that blocks from GVCFs that were written in shards can be merged back together.
  */
 public final class GVCFWriter implements VariantContextWriter {
 
+    private static final String GVCF_BLOCK_HEADER_KEY_PREFIX = "GVCFBlock";
+
     /** Where we'll ultimately write our VCF records */
     private final VariantContextWriter underlyingWriter;
 
@@ -123,10 +129,38 @@ public final class GVCFWriter implements VariantContextWriter {
     static VCFHeaderLine rangeToVCFHeaderLine(Range<Integer> genotypeQualityBand) {
         // Need to uniquify the key for the header line using the min/max GQ, since
         // VCFHeader does not allow lines with duplicate keys.
-        final String key = String.format("GVCFBlock%d-%d", genotypeQualityBand.lowerEndpoint(), genotypeQualityBand.upperEndpoint());
+        final String key = String.format(GVCF_BLOCK_HEADER_KEY_PREFIX + "%d-%d", genotypeQualityBand.lowerEndpoint(), genotypeQualityBand.upperEndpoint());
         return new VCFHeaderLine(key, "minGQ=" + genotypeQualityBand.lowerEndpoint() + "(inclusive),maxGQ=" + genotypeQualityBand.upperEndpoint() + "(exclusive)");
     }
 
+    /**
+     * Recover the GQ partitions a GVCF was written with from the band lines {@link #writeHeader} added to its header
+     *
+     * @param header a non-null header
+     * @return the GQ partitions in increasing order, in the form accepted by the constructor, or an empty list if the
+     *         header has no band lines
+     */
+    public static List<Integer> getGQPartitionsFromHeader(final VCFHeader header) {
+        Utils.nonNull(header, "header cannot be null");
+        final List<Integer> partitions = new ArrayList<>();
+        for (final VCFHeaderLine line : header.getOtherHeaderLines()) {
+            if (line.getKey().startsWith(GVCF_BLOCK_HEADER_KEY_PREFIX)) {
+                final String[] bounds = line.getKey().substring(GVCF_BLOCK_HEADER_KEY_PREFIX.length()).split("-");
+                try {
+                    final int upperBound = Integer.parseInt(bounds[bounds.length - 1]);
+                    // the band ending past MAX_GENOTYPE_QUAL is implicit in the partitions
+                    if (upperBound <= MAX_GENOTYPE_QUAL) {
+                        partitions.add(upperBound);
+                    }
+                } catch (final NumberFormatException e) {
+                    throw new GATKException("Malformed GVCF band header line: " + line, e);
+                }
+            }
+        }
+        partitions.sort(Integer::compare);
+        return partitions;
+    }
+
 
     /**
      * Close this GVCF writer.  Finalizes any pending hom-ref blocks and emits those to the underlyingWriter as well
@@ -155,8 +189,10 @@ public final class GVCFWriter implements VariantContextWriter {
     protected VariantContext addHomRefSite(final VariantContext vc, final Genotype g) {
 
         if (nextAvailableStart != -1) {
-            // don't create blocks while the hom-ref site falls before nextAvailableStart (for deletions)
-            if (vc.getStart() <= nextAvailableStart && vc.getContig().equals(contigOfNextAvailableStart)) {
+            // don't create blocks while the hom-ref site falls before nextAvailableStart (for deletions). Existing blocks
+            // (e.g. from a shard that started inside the deletion) are kept rather than dropping the positions beyond it
+            if (vc.getStart() <= nextAvailableStart && vc.getContig().equals(contigOfNextAvailableStart)
+                    && !vc.hasAttribute(VCFConstants.END_KEY)) {
                 return null;
             }
             // otherwise, reset to non-relevant
@@ -166,7 +202,7 @@ public final class GVCFWriter implements VariantContextWriter {
 
         final VariantContext result;
         if (genotypeCanBeMergedInCurrentBlock(g)) {
-            currentBlock.add(vc.getStart(), g);
+            currentBlock.add(vc.getStart(), getHomRefEnd(vc), g);
             result = null;
         } else {
             result = currentBlock != null ? currentBlock.toVariantContext(sampleName): null;
@@ -211,10 +247,17 @@ public final class GVCFWriter implements VariantContextWriter {
 
         // create the block, add g to it, and return it for use
         final HomRefBlock block = new HomRefBlock(vc, partition.lowerEndpoint(), partition.upperEndpoint(), defaultPloidy);
-        block.add(vc.getStart(), g);
+        block.add(vc.getStart(), getHomRefEnd(vc), g);
         return block;
     }
 
+    /**
+     * @return the last position of a hom-ref block if vc summarizes one, otherwise the position of the hom-ref site
+     */
+    private static int getHomRefEnd(final VariantContext vc) {
+        return vc.hasAttribute(VCFConstants.END_KEY) ? vc.getEnd() : vc.getStart();
+    }
+
     /**
      * Add a VariantContext to this writer for emission
      *
@@ -232,13 +275,21 @@ public final class GVCFWriter implements VariantContextWriter {
             sampleName = vc.getGenotype(0).getSampleName();
         }
 
+        final Genotype g = vc.getGenotype(0);
+        final boolean isHomRefSite = g.isHomRef() && vc.hasAlternateAllele(Allele.NON_REF_ALLELE) && vc.isBiallelic();
+        if (currentBlock != null && !isHomRefSite && currentBlock.getContig().equals(vc.getContig())
+                && currentBlock.getStart() < vc.getStart() && vc.getStart() <= currentBlock.getEnd()) {
+            // a block added whole (e.g. from the end of a shard) can run into a following variant, such as a deletion
+            // starting inside it, so end the block just before the variant to keep the records from overlapping
+            currentBlock.truncate(vc.getStart() - 1);
+        }
+
         if (currentBlock != null && !currentBlock.isContiguous(vc)) {
             // we've made a non-contiguous step (across interval, onto another chr), so finalize
             emitCurrentBlock();
         }
 
-        final Genotype g = vc.getGenotype(0);
-        if (g.isHomRef() && vc.hasAlternateAllele(Allele.NON_REF_ALLELE) && vc.isBiallelic()) {
+        if (isHomRefSite) {
             // create bands
             final VariantContext maybeCompletedBand = addHomRefSite(vc, g);
             if (maybeCompletedBand != null) {
@@ -9,15 +9,13 @@ import htsjdk.variant.variantcontext.VariantContextBuilder;
 import htsjdk.variant.vcf.VCFConstants;
 import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.tools.walkers.variantutils.PosteriorProbabilitiesUtils;
-import org.broadinstitute.hellbender.utils.MathUtils;
 import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.variant.GATKVCFConstants;
 import org.broadinstitute.hellbender.utils.variant.GATKVariantContextUtils;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
-import java.util.List;
 
 /**
  * Helper class for calculating a GQ band in the GVCF writer
@@ -26,14 +24,23 @@ import java.util.List;
  * and provides summary information about the entire block of genotypes.
  *
  * Genotypes within the HomRefBlock are restricted to hom-ref genotypes within a band of GQ scores
+ *
+ * DPs are tracked as runs of identical values packed into a primitive array rather than as one boxed value per
+ * position, since neighbouring hom-ref sites usually share the same depth. This also allows whole hom-ref blocks
+ * (for example those at the boundaries of GVCF shards) to be added, each contributing its DP for every position it spans.
+ * The array is bounded: when it fills up, the runs are sorted and runs of the same DP merged, which keeps the median
+ * exact. If the DPs are too varied for that, they are counted in a fixed-size histogram instead, whose bins widen as
+ * larger DPs arrive, and the median is then the middle of the bin holding it.
  */
 final class HomRefBlock implements Locatable {
 
     private static final int HOM_REF_PL_POSITION = 0;  //the first value in the minPL[] is always the HomRef
+    private static final int INITIAL_DP_RUN_CAPACITY = 8;
+    private static final int MAX_DP_RUN_CAPACITY = 1024;
+    private static final int DP_HISTOGRAM_SIZE = 1024;
 
     private final VariantContext startingVC;
     private final int minGQ, maxGQ;
-    private final List<Integer> DPs = new ArrayList<>();
     private final Allele ref;
     private final int ploidy;
 
@@ -41,6 +48,15 @@ final class HomRefBlock implements Locatable {
     private int[] minPLs = null;
     private int[] minPPs = null;
 
+    // runs of equal DP values, each packed as (DP << 32 | number of positions), in the order they were added
+    private long[] dpRuns = new long[INITIAL_DP_RUN_CAPACITY];
+    private int numDPRuns = 0;
+    // once there are too many distinct DPs to keep as runs, the number of positions with each DP / dpBinWidth
+    private int[] dpHistogram = null;
+    private int dpBinWidth = 1;
+    private long numDPs = 0;
+    private int minDP = Integer.MAX_VALUE;
+
     /**
      * Create a new HomRefBlock
      *
@@ -106,9 +122,26 @@ final class HomRefBlock implements Locatable {
      * @param genotype A non-null Genotype with GQ and DP attributes
      */
     public void add(final int pos, final Genotype genotype) {
+        add(pos, pos, genotype);
+    }
+
+    /**
+     * Add information from this Genotype, which covers every position from start to end, to this band.
+     *
+     * The genotype may itself summarize a hom-ref block, in which case its DP is counted once per position it spans and
+     * its {@link GATKVCFConstants#MIN_DP_FORMAT_KEY} attribute, if present, is used for the min DP.
+     *
+     * Treats GQ values > 99 as 99.
+     *
+     * @param start first genomic position covered by the genotype. Must be 1 base after the previous position
+     * @param end last genomic position covered by the genotype, must be >= start
+     * @param genotype A non-null Genotype with GQ and DP attributes
+     */
+    public void add(final int start, final int end, final Genotype genotype) {
         Utils.nonNull(genotype, "genotype cannot be null");
         if ( ! genotype.hasPL() ) { throw new IllegalArgumentException("genotype must have PL field");}
-        if ( pos != end + 1 ) { throw new IllegalArgumentException("adding genotype at pos " + pos + " isn't contiguous with previous end " + end); }
+        if ( start != this.end + 1 ) { throw new IllegalArgumentException("adding genotype at pos " + start + " isn't contiguous with previous end " + this.end); }
+        if ( end < start ) { throw new IllegalArgumentException("genotype end " + end + " is before its start " + start); }
         if ( genotype.getPloidy() != ploidy) { throw new IllegalArgumentException("cannot add a genotype with a different ploidy: " + genotype.getPloidy() + " != " + ploidy); }
         // Make sure the GQ is within the bounds of this band. Treat GQs > 99 as 99.
         if ( !withinBounds(Math.min(genotype.getGQ(), VCFConstants.MAX_GENOTYPE_QUAL))) {
@@ -117,7 +150,8 @@ final class HomRefBlock implements Locatable {
         }
 
         if( minPLs == null ) {
-            minPLs = genotype.getPL();
+            // copy, since we update these in place and must not modify the genotype
+            minPLs = genotype.getPL().clone();
         }
         else { // otherwise take the min with the provided genotype's PLs
             final int[] pls = genotype.getPL();
@@ -144,8 +178,84 @@ final class HomRefBlock implements Locatable {
             }
         }
 
-        end = pos;
-        DPs.add(Math.max(genotype.getDP(), 0)); // DP must be >= 0
+        this.end = end;
+        final int dp = Math.max(genotype.getDP(), 0); // DP must be >= 0
+        addDP(dp, end - start + 1);
+        final Object genotypeMinDP = genotype.getExtendedAttribute(GATKVCFConstants.MIN_DP_FORMAT_KEY);
+        minDP = Math.min(minDP, genotypeMinDP == null ? dp : Math.max(Integer.parseInt(genotypeMinDP.toString()), 0));
+    }
+
+    private void addDP(final int dp, final int count) {
+        numDPs += count;
+        if ( dpHistogram != null ) {
+            addToDPHistogram(dp, count);
+        } else if ( numDPRuns > 0 && (int) (dpRuns[numDPRuns - 1] >>> 32) == dp
+                && (int) dpRuns[numDPRuns - 1] <= Integer.MAX_VALUE - count ) {
+            dpRuns[numDPRuns - 1] += count;
+        } else {
+            if ( numDPRuns == dpRuns.length ) {
+                if ( dpRuns.length < MAX_DP_RUN_CAPACITY ) {
+                    dpRuns = Arrays.copyOf(dpRuns, 2 * dpRuns.length);
+                } else if ( !mergeDPRuns() ) {
+                    switchToDPHistogram();
+                    addToDPHistogram(dp, count);
+                    return;
+                }
+            }
+            dpRuns[numDPRuns++] = ((long) dp << 32) | count;
+        }
+    }
+
+    /**
+     * Sort the runs and merge the runs of each DP, which loses nothing the median needs.
+     *
+     * @return true if this freed enough space to keep tracking runs, false if more than half of the runs hold distinct DPs
+     */
+    private boolean mergeDPRuns() {
+        // a block spans fewer than 2^31 positions, so the counts of merged runs always fit in an int
+        Arrays.sort(dpRuns, 0, numDPRuns);
+        int merged = 0;
+        for ( int i = 0; i < numDPRuns; i++ ) {
+            if ( merged > 0 && (dpRuns[merged - 1] >>> 32) == (dpRuns[i] >>> 32) ) {
+                dpRuns[merged - 1] += (int) dpRuns[i];
+            } else {
+                dpRuns[merged++] = dpRuns[i];
+            }
+        }
+        numDPRuns = merged;
+        return numDPRuns <= dpRuns.length / 2;
+    }
+
+    private void switchToDPHistogram() {
+        dpHistogram = new int[DP_HISTOGRAM_SIZE];
+        for ( int i = 0; i < numDPRuns; i++ ) {
+            addToDPHistogram((int) (dpRuns[i] >>> 32), (int) dpRuns[i]);
+        }
+        dpRuns = null;
+        numDPRuns = 0;
+    }
+
+    private void addToDPHistogram(final int dp, final int count) {
+        while ( dp / dpBinWidth >= dpHistogram.length ) {
+            // double the width of the bins, so that bins 2i and 2i + 1 become bin i
+            for ( int i = 0; i < dpHistogram.length; i++ ) {
+                dpHistogram[i] = i < dpHistogram.length / 2 ? dpHistogram[2 * i] + dpHistogram[2 * i + 1] : 0;
+            }
+            dpBinWidth *= 2;
+        }
+        dpHistogram[dp / dpBinWidth] += count;
+    }
+
+    /**
+     * Move the end of this band back, so that it does not overlap a record starting after {@code end}.
+     *
+     * The PL and DP summaries still include the positions that are dropped, since they can't be told apart from the rest.
+     *
+     * @param end the new last position of this band, must be within the band
+     */
+    void truncate(final int end) {
+        Utils.validateArg(end >= getStart() && end <= this.end, () -> "cannot truncate band " + getStart() + "-" + this.end + " to end at " + end);
+        this.end = end;
     }
 
     /**
@@ -159,13 +269,41 @@ final class HomRefBlock implements Locatable {
 
     /** Get the min DP observed within this band */
     public int getMinDP() {
-        return Collections.min(DPs);
+        Utils.validate(numDPs > 0, "cannot take the min DP of a band with no DPs");
+        return minDP;
     }
 
     /** Get the median DP observed within this band
      * If there are an even number of DPs recorded in this band the median is the mean of the two middle values */
     public int getMedianDP() {
-        return (int) Math.round(MathUtils.median(DPs));
+        Utils.validate(numDPs > 0, "cannot take the median DP of a band with no DPs");
+        // since DP occupies the high bits, sorting the packed runs orders them by DP; the order of the runs is irrelevant
+        // to everything else, so we can sort in place
+        if ( dpRuns != null ) {
+            Arrays.sort(dpRuns, 0, numDPRuns);
+        }
+        final long middle = numDPs / 2;
+        return numDPs % 2 == 1 ? getSortedDP(middle) : (int) Math.round((getSortedDP(middle - 1) + getSortedDP(middle)) / 2.0);
+    }
+
+    // the DP at the given 0-based index among all DPs in sorted order; dpRuns must be sorted
+    private int getSortedDP(final long index) {
+        long seen = 0;
+        if ( dpHistogram != null ) {
+            for ( int bin = 0; bin < dpHistogram.length; bin++ ) {
+                seen += dpHistogram[bin];
+                if ( index < seen ) {
+                    return bin * dpBinWidth + (dpBinWidth - 1) / 2;
+                }
+            }
+        }
+        for ( int i = 0; i < numDPRuns; i++ ) {
+            seen += (int) dpRuns[i];
+            if ( index < seen ) {
+                return (int) (dpRuns[i] >>> 32);
+            }
+        }
+        throw new GATKException("DP index " + index + " is out of range for a band with " + numDPs + " DPs");
     }
 
     /** Get the min PLs observed within this band, can be null if no PLs have yet been observed */
@@ -186,7 +324,9 @@ final class HomRefBlock implements Locatable {
     }
 
     public boolean isContiguous(final VariantContext vc) {
-        return (vc.getEnd() == getEnd() + 1) && startingVC.getContig().equals(vc.getContig());
+        // a record summarizing a hom-ref block must start right after this band, any other record must end right after it
+        final int position = vc.hasAttribute(VCFConstants.END_KEY) ? vc.getStart() : vc.getEnd();
+        return (position == getEnd() + 1) && startingVC.getContig().equals(vc.getContig());
     }
 
     public VariantContext getStartingVC() {
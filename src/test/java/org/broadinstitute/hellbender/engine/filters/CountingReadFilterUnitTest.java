@@ -11,6 +11,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.IntStream;
 
 public final class CountingReadFilterUnitTest {
 
@@ -258,6 +259,16 @@ public final class CountingReadFilterUnitTest {
         Assert.assertEquals(isEgon.getFilteredCount(), 0);
     }
 
+    @Test
+    public void testCountsFromSeveralThreads() {
+        final CountingReadFilter rf = new CountingReadFilter(startOk).and(new CountingReadFilter(endOk));
+        final int numReads = 100_000;
+        IntStream.range(0, numReads).parallel().forEach(n -> rf.test(n % 2 == 0 ? goodRead : startBad));
+        Assert.assertEquals(rf.getFilteredCount(), numReads / 2);
+        rf.resetFilteredCount();
+        Assert.assertEquals(rf.getFilteredCount(), 0);
+    }
+
     @Test
     public void testFromListNull() {
         CountingReadFilter rf = CountingReadFilter.fromList(null, ArtificialReadUtils.createArtificialSamHeader(1, 1, 10));
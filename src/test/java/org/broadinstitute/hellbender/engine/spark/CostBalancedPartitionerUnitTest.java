@@ -0,0 +1,63 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class CostBalancedPartitionerUnitTest extends GATKBaseTest {
+
+    @DataProvider(name = "costs")
+    public Object[][] costs() {
+        return new Object[][] {
+                // equal costs are divided evenly
+                {new long[] {1, 1, 1, 1, 1, 1}, 3, new int[] {0, 0, 1, 1, 2, 2}},
+                // an expensive item gets a partition of its own
+                {new long[] {1, 1, 100, 1, 1, 1}, 3, new int[] {0, 0, 1, 2, 2, 2}},
+                {new long[] {1, 1, 1, 1, 1, 100}, 3, new int[] {0, 0, 0, 0, 0, 1}},
+                // no costs at all are divided by the number of items
+                {new long[] {0, 0, 0, 0}, 2, new int[] {0, 0, 1, 1}},
+                {new long[] {5}, 4, new int[] {2}},
+        };
+    }
+
+    @Test(dataProvider = "costs")
+    public void testPartitions(final long[] costs, final int numPartitions, final int[] expectedPartitions) {
+        final CostBalancedPartitioner partitioner = new CostBalancedPartitioner(costs, numPartitions);
+        Assert.assertEquals(partitioner.numPartitions(), numPartitions);
+        final int[] partitions = IntStream.range(0, costs.length).map(i -> partitioner.getPartition((long) i)).toArray();
+        Assert.assertEquals(partitions, expectedPartitions);
+    }
+
+    @Test(groups = "spark")
+    public void testRepartitionByCost() {
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        // the items in the first partition are much more expensive than the rest
+        final List<Integer> items = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+        final JavaRDD<Integer> rdd = ctx.parallelize(items, 4);
+
+        final JavaRDD<Integer> balanced = CostBalancedPartitioner.repartitionByCost(rdd, item -> item < 25 ? 100L : 1L);
+        Assert.assertEquals(balanced.getNumPartitions(), 4);
+        Assert.assertEquals(balanced.collect(), items);
+
+        final List<List<Integer>> partitions = balanced.glom().collect();
+        final List<Integer> partitionSizes = new ArrayList<>();
+        partitions.forEach(partition -> partitionSizes.add(partition.size()));
+        // the cheap items all go in the last partition
+        Assert.assertEquals(partitionSizes, Arrays.asList(6, 7, 6, 81));
+    }
+
+    @Test
+    public void testDescribeSkew() {
+        Assert.assertEquals(CostBalancedPartitioner.describeSkew(new long[] {1, 2, 3, 10}),
+                "4 partitions, max cost 10, median cost 3, mean cost 4.0, max/mean 2.50");
+    }
+}
@@ -0,0 +1,68 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.broadinstitute.hellbender.engine.ReferenceDataSource;
+import org.broadinstitute.hellbender.engine.spark.datasources.ReferenceMultiSparkSource;
+import org.broadinstitute.hellbender.testutils.FakeReferenceSource;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.reference.ReferenceBases;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PartitionReferenceCacheUnitTest extends GATKBaseTest {
+
+    private static final SAMSequenceDictionary DICTIONARY = new SAMSequenceDictionary(Arrays.asList(
+            new SAMSequenceRecord("1", 100_000), new SAMSequenceRecord("2", 5_000)));
+
+    // records the intervals that are read from the reference
+    private static class CountingReferenceSource extends ReferenceMultiSparkSource {
+        private static final long serialVersionUID = 1L;
+
+        final List<SimpleInterval> queries = new ArrayList<>();
+
+        @Override
+        public ReferenceBases getReferenceBases(final SimpleInterval interval) {
+            queries.add(interval);
+            return FakeReferenceSource.bases(interval);
+        }
+    }
+
+    @Test
+    public void testShardsAreServedFromSpans() {
+        final CountingReferenceSource referenceSource = new CountingReferenceSource();
+        final PartitionReferenceCache cache = new PartitionReferenceCache(referenceSource, DICTIONARY, 25_000);
+
+        final List<SimpleInterval> shards = Arrays.asList(
+                new SimpleInterval("1", 1, 11_000),
+                new SimpleInterval("1", 9_001, 21_000),
+                new SimpleInterval("1", 19_001, 31_000),
+                new SimpleInterval("1", 29_001, 41_000),
+                new SimpleInterval("2", 1, 5_000));
+        for (final SimpleInterval shard : shards) {
+            final ReferenceDataSource reference = cache.getReference(shard);
+            Assert.assertEquals(reference.queryAndPrefetch(shard).getBases(), FakeReferenceSource.bases(shard).getBases());
+        }
+
+        // the second shard is in the first span, the fourth in the second, and the last span is cut off at the end of its contig
+        Assert.assertEquals(referenceSource.queries, Arrays.asList(
+                new SimpleInterval("1", 1, 25_000),
+                new SimpleInterval("1", 19_001, 44_000),
+                new SimpleInterval("2", 1, 5_000)));
+    }
+
+    @Test
+    public void testShardLongerThanPrefetchSize() {
+        final CountingReferenceSource referenceSource = new CountingReferenceSource();
+        final PartitionReferenceCache cache = new PartitionReferenceCache(referenceSource, DICTIONARY, 1_000);
+
+        final SimpleInterval shard = new SimpleInterval("1", 50_001, 60_000);
+        Assert.assertEquals(cache.getReference(shard).queryAndPrefetch(shard).getBases(), FakeReferenceSource.bases(shard).getBases());
+        Assert.assertEquals(referenceSource.queries, Arrays.asList(shard));
+    }
+}
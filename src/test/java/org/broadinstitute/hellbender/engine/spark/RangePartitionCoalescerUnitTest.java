@@ -4,6 +4,7 @@ import com.google.common.collect.ImmutableList;
 import org.apache.spark.Partition;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.rdd.PartitionCoalescer;
 import org.apache.spark.rdd.PartitionGroup;
 import org.broadinstitute.hellbender.GATKBaseTest;
 import org.testng.annotations.BeforeTest;
@@ -53,4 +54,26 @@ public class RangePartitionCoalescerUnitTest extends GATKBaseTest {
         assertEquals(groups[1].partitions(), JavaConversions.asScalaBuffer(ImmutableList.of(partitions[1], partitions[2])));
         assertEquals(groups[2].partitions(), JavaConversions.asScalaBuffer(ImmutableList.of(partitions[2])));
     }
+
+    @Test
+    public void testContiguous() {
+        RangePartitionCoalescer coalescer = RangePartitionCoalescer.contiguous(rdd.getNumPartitions(), 2);
+        PartitionGroup[] groups = coalescer.coalesce(2, rdd.rdd());
+        assertEquals(groups.length, 2);
+        assertEquals(groups[0].partitions(), JavaConversions.asScalaBuffer(ImmutableList.of(partitions[0])));
+        assertEquals(groups[1].partitions(), JavaConversions.asScalaBuffer(ImmutableList.of(partitions[1], partitions[2])));
+    }
+
+    @Test
+    public void testContiguousKeepsOrder() {
+        JavaRDD<String> coalesced = new JavaRDD<>(rdd.rdd().coalesce(1, false,
+                scala.Option.<PartitionCoalescer>apply(RangePartitionCoalescer.contiguous(rdd.getNumPartitions(), 1)), null), rdd.classTag());
+        assertEquals(coalesced.getNumPartitions(), 1);
+        assertEquals(coalesced.collect(), ImmutableList.of("a", "b", "c"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testContiguousIntoMorePartitions() {
+        RangePartitionCoalescer.contiguous(rdd.getNumPartitions(), rdd.getNumPartitions() + 1);
+    }
 }
@@ -1,6 +1,10 @@
 package org.broadinstitute.hellbender.engine.spark;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Output;
+import htsjdk.samtools.SAMFlag;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordSparkCodec;
 import org.apache.spark.SparkConf;
 import org.apache.spark.serializer.KryoRegistrator;
 import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
@@ -10,6 +14,11 @@ import org.broadinstitute.hellbender.testutils.SparkTestUtils;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 public class SAMRecordToGATKReadAdapterSerializerUnitTest {
 
     public static class TestGATKRegistrator implements KryoRegistrator {
@@ -43,4 +52,122 @@ public class SAMRecordToGATKReadAdapterSerializerUnitTest {
         final GATKRead roundTrippedRead2 = SparkTestUtils.roundTripInKryo(read, GATKRead.class, conf);
         Assert.assertEquals(roundTrippedRead2, read);
     }
+
+    @Test
+    public void testFuzzRoundTrip() {
+        final SparkConf conf = new SparkConf().set("spark.kryo.registrator",
+                "org.broadinstitute.hellbender.engine.spark.SAMRecordToGATKReadAdapterSerializerUnitTest$TestGATKRegistrator");
+        final Random random = new Random(13);
+        final List<GATKRead> reads = new ArrayList<>();
+        for (int n = 0; n < 2000; n++) {
+            reads.add(randomRead(random));
+        }
+
+        for (final GATKRead read : reads) {
+            Assert.assertEquals(SparkTestUtils.roundTripInKryo(read, GATKRead.class, conf), read);
+        }
+
+        // many reads through the same serializer
+        final ArrayList<GATKRead> roundTrippedReads = SparkTestUtils.roundTripInKryo(new ArrayList<>(reads), ArrayList.class, conf);
+        Assert.assertEquals(roundTrippedReads, reads);
+    }
+
+    @Test
+    public void testSmallerThanBamEncoding() {
+        final Random random = new Random(7);
+        final SAMRecordToGATKReadAdapterSerializer serializer = new SAMRecordToGATKReadAdapterSerializer();
+        final SAMRecordSparkCodec bamCodec = new SAMRecordSparkCodec();
+        final Output compact = new Output(1 << 16, -1);
+        final ByteArrayOutputStream bam = new ByteArrayOutputStream();
+        bamCodec.setOutputStream(bam);
+        for (int n = 0; n < 1000; n++) {
+            // a typical read: 151 bases, binned qualities, a mate on the same contig and a read group
+            final SAMRecord record = new SAMRecord(null);
+            record.setReadName("H0164ALXX140820:2:1101:" + random.nextInt(100000) + ":" + random.nextInt(100000));
+            record.setFlags(SAMFlag.READ_PAIRED.intValue() | SAMFlag.FIRST_OF_PAIR.intValue());
+            record.setReferenceName("20");
+            record.setAlignmentStart(1 + random.nextInt(60_000_000));
+            record.setMappingQuality(60);
+            record.setCigarString("151M");
+            record.setMateReferenceName("20");
+            record.setMateAlignmentStart(record.getAlignmentStart() + random.nextInt(500));
+            record.setInferredInsertSize(300);
+            record.setReadBases(randomBases(random, 151, "ACGT"));
+            record.setBaseQualities(randomQualities(random, 151, new byte[] {2, 12, 23, 37}, 0.1));
+            record.setAttribute("RG", "NA12878");
+            record.setAttribute("NM", random.nextInt(5));
+
+            serializer.write(null, compact, SAMRecordToGATKReadAdapter.headerlessReadAdapter(record));
+            bamCodec.encode(record);
+        }
+        Assert.assertTrue(compact.total() < bam.size() * 0.6, "compact encoding took " + compact.total() + " bytes vs " + bam.size());
+    }
+
+    private static GATKRead randomRead(final Random random) {
+        final String[] contigs = {"1", "2", "chrUn_KI270302v1", SAMRecord.NO_ALIGNMENT_REFERENCE_NAME};
+        final String[] alphabets = {"ACGT", "ACGTN", "ACGTNacgtn.RY="};
+        final int length = random.nextInt(5) == 0 ? 0 : 1 + random.nextInt(300);
+
+        final SAMRecord record = new SAMRecord(null);
+        record.setReadName(random.nextInt(10) == 0 ? SAMRecord.NO_ALIGNMENT_REFERENCE_NAME : "read" + random.nextInt());
+        record.setFlags(random.nextInt(1 << 12));
+        record.setReferenceName(contigs[random.nextInt(contigs.length)]);
+        record.setAlignmentStart(random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(Integer.MAX_VALUE - 1));
+        record.setMappingQuality(random.nextInt(256));
+        record.setCigarString(length == 0 || random.nextInt(10) == 0 ? SAMRecord.NO_ALIGNMENT_CIGAR : randomCigar(random, length));
+        record.setMateReferenceName(random.nextBoolean() ? record.getReferenceName() : contigs[random.nextInt(contigs.length)]);
+        record.setMateAlignmentStart(random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(Integer.MAX_VALUE - 1));
+        record.setInferredInsertSize(random.nextInt(2001) - 1000);
+        record.setReadBases(randomBases(random, length, alphabets[random.nextInt(alphabets.length)]));
+        if (length > 0 && random.nextInt(10) != 0) {
+            record.setBaseQualities(random.nextBoolean() ? randomQualities(random, length, new byte[]{2, 12, 23, 37}, random.nextDouble())
+                    : randomQualities(random, length, new byte[]{0, 10, 20, 30, 40, 93}, 1.0));
+        }
+        if (random.nextBoolean()) {
+            record.setAttribute("RG", "group" + random.nextInt(3));
+        }
+        if (random.nextBoolean()) {
+            record.setAttribute("NM", random.nextInt(1000) - 10);
+        }
+        if (random.nextBoolean()) {
+            record.setAttribute("XB", new byte[] {(byte) random.nextInt(), (byte) random.nextInt()});
+        }
+        return SAMRecordToGATKReadAdapter.headerlessReadAdapter(record);
+    }
+
+    private static String randomCigar(final Random random, final int length) {
+        final StringBuilder cigar = new StringBuilder();
+        if (random.nextBoolean()) {
+            cigar.append(1 + random.nextInt(100)).append('H');
+        }
+        int remaining = length;
+        final char[] operators = {'M', 'I', 'S', '=', 'X'};
+        while (remaining > 0) {
+            final int elementLength = 1 + random.nextInt(remaining);
+            cigar.append(elementLength).append(operators[random.nextInt(operators.length)]);
+            if (random.nextInt(5) == 0) {
+                cigar.append(1 + random.nextInt(10000)).append(random.nextBoolean() ? 'D' : 'N');
+            }
+            remaining -= elementLength;
+        }
+        return cigar.toString();
+    }
+
+    private static byte[] randomBases(final Random random, final int length, final String alphabet) {
+        final byte[] bases = new byte[length];
+        for (int n = 0; n < length; n++) {
+            bases[n] = (byte) alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return bases;
+    }
+
+    // qualities change with the given probability from one base to the next
+    private static byte[] randomQualities(final Random random, final int length, final byte[] values, final double changeProbability) {
+        final byte[] qualities = new byte[length];
+        qualities[0] = values[random.nextInt(values.length)];
+        for (int n = 1; n < length; n++) {
+            qualities[n] = random.nextDouble() < changeProbability ? values[random.nextInt(values.length)] : qualities[n - 1];
+        }
+        return qualities;
+    }
 }
@@ -1,19 +1,20 @@
 package org.broadinstitute.hellbender.engine.spark.datasources;
 
 
-import htsjdk.samtools.SAMFileHeader;
-import htsjdk.samtools.SAMRecord;
-import htsjdk.samtools.SAMRecordCoordinateComparator;
+import htsjdk.samtools.*;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
+import org.broadinstitute.hellbender.engine.TraversalParameters;
 import org.broadinstitute.hellbender.engine.spark.SparkContextFactory;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
 import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
 import org.broadinstitute.hellbender.utils.io.IOUtils;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.ReadConstants;
 import org.broadinstitute.hellbender.utils.read.ReadCoordinateComparator;
 import org.broadinstitute.hellbender.utils.read.ReadsWriteFormat;
 import org.broadinstitute.hellbender.GATKBaseTest;
@@ -29,7 +30,9 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.List;
 
 public class ReadsSparkSinkUnitTest extends GATKBaseTest {
@@ -86,6 +89,16 @@ public class ReadsSparkSinkUnitTest extends GATKBaseTest {
         };
     }
 
+    @DataProvider(name = "loadReadsParquet")
+    public Object[][] loadReadsParquet() {
+        return new Object[][]{
+                {testDataDir + "tools/BQSR/HiSeq.1mb.1RG.2k_lines.bam", "ReadsSparkSinkUnitTest1.parquet"},
+                {testDataDir + "tools/BQSR/expected.HiSeq.1mb.1RG.2k_lines.alternate.recalibrated.DIQ.bam", "ReadsSparkSinkUnitTest2.parquet"},
+                // has unmapped reads, both placed and unplaced
+                {testDataDir + "tools/BQSR/CEUTrio.HiSeq.WGS.b37.ch20.1m-1m1k.NA12878.bam", "ReadsSparkSinkUnitTest3.parquet"},
+        };
+    }
+
     @Test(dataProvider = "loadReadsBAM", groups = "spark")
     public void readsSinkTest(String inputBam, String outputFileName, String referenceFile, String outputFileExtension) throws IOException {
         final File outputFile = createTempFile(outputFileName, outputFileExtension);
@@ -141,6 +154,59 @@ public class ReadsSparkSinkUnitTest extends GATKBaseTest {
         assertSingleShardedWritingWorks(inputBam, null, outputUrl, null);
     }
 
+    @Test(groups = "spark")
+    public void testWritingIndexedBAM() throws IOException {
+        final String inputBam = testDataDir + "tools/BQSR/CEUTrio.HiSeq.WGS.b37.ch20.1m-1m1k.NA12878.bam";
+        final File outputFile = createTempFile("ReadsSparkSinkUnitTest7", ".bam");
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+
+        final ReadsSparkSource readSource = new ReadsSparkSource(ctx);
+        final JavaRDD<GATKRead> reads = readSource.getParallelReads(inputBam, null);
+        final SAMFileHeader header = readSource.getHeader(inputBam, null);
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+
+        // several reducers, so that the index is merged from several fragments
+        ReadsSparkSink.writeReads(ctx, outputFile.getAbsolutePath(), null, reads, header, ReadsWriteFormat.SINGLE, 3, null, true);
+        final File indexFile = new File(outputFile.getAbsolutePath().replaceAll("\\.bam$", BAMIndex.BAMIndexSuffix));
+        Assert.assertTrue(indexFile.exists());
+
+        // the merged index is the same, byte for byte, as the one htsjdk builds by reading the whole BAM
+        final File htsjdkIndexFile = createTempFile("ReadsSparkSinkUnitTest7.htsjdk", BAMIndex.BAMIndexSuffix);
+        try (final SamReader reader = SamReaderFactory.makeDefault().enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS).open(outputFile)) {
+            BAMIndexer.createIndex(reader, htsjdkIndexFile);
+        }
+        Assert.assertEquals(Files.readAllBytes(indexFile.toPath()), Files.readAllBytes(htsjdkIndexFile.toPath()));
+
+        // the splitting index is written too, and can be used to read the BAM back
+        Assert.assertTrue(Files.exists(IOUtils.getPath(outputFile.getAbsolutePath() + SplittingBAMIndexer.OUTPUT_FILE_EXTENSION)));
+        final JavaRDD<GATKRead> splitReads = readSource.getParallelReads(outputFile.getAbsolutePath(), null, 16 * 1024);
+        Assert.assertEquals(splitReads.count(), reads.count());
+
+        final List<SAMRecord> writtenReads = new ArrayList<>();
+        try (final SamReader reader = SamReaderFactory.makeDefault().open(outputFile)) {
+            Assert.assertTrue(reader.hasIndex());
+            reader.forEach(writtenReads::add);
+            Assert.assertEquals(writtenReads.size(), reads.count());
+
+            final String contig = writtenReads.get(0).getContig();
+            for (int start = 999_000; start < 1_002_000; start += 250) {
+                final int end = start + 100;
+                final long expected = writtenReads.stream()
+                        .filter(read -> !read.getReadUnmappedFlag() && contig.equals(read.getContig()) && read.getStart() <= end && read.getEnd() >= start)
+                        .count();
+                try (final SAMRecordIterator queried = reader.queryOverlapping(contig, start, end)) {
+                    long actual = 0;
+                    while (queried.hasNext()) {
+                        if (!queried.next().getReadUnmappedFlag()) {
+                            actual++;
+                        }
+                    }
+                    Assert.assertEquals(actual, expected, "reads overlapping " + contig + ":" + start + "-" + end);
+                }
+            }
+        }
+    }
+
     private void assertSingleShardedWritingWorks(String inputBam, String referenceFile, String outputPath, String outputPartsPath) throws IOException {
         JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
 
@@ -236,4 +302,60 @@ public class ReadsSparkSinkUnitTest extends GATKBaseTest {
             Assert.assertEquals(observed.getCigar(), expected.getCigar(), "getCigar");
         }
     }
+
+    @Test(dataProvider = "loadReadsParquet", groups = "spark")
+    public void readsSinkParquetTest(String inputBam, String outputDirectoryName) throws IOException {
+        final File outputDirectory = new File(createTempDir(outputDirectoryName + "_parent"), outputDirectoryName);
+
+        JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+
+        ReadsSparkSource readSource = new ReadsSparkSource(ctx);
+        JavaRDD<GATKRead> rddParallelReads = readSource.getParallelReads(inputBam, null);
+        SAMFileHeader header = readSource.getHeader(inputBam, null);
+
+        ReadsSparkSink.writeReads(ctx, outputDirectory.getAbsolutePath(), null, rddParallelReads, header, ReadsWriteFormat.PARQUET);
+
+        // the reads come back in a different order, so the header is unsorted
+        final SAMFileHeader header2 = readSource.getHeader(outputDirectory.getAbsolutePath(), null);
+        Assert.assertEquals(header2.getSortOrder(), SAMFileHeader.SortOrder.unsorted);
+        Assert.assertEquals(header2.getSequenceDictionary(), header.getSequenceDictionary());
+        Assert.assertEquals(header2.getReadGroups(), header.getReadGroups());
+
+        final JavaRDD<GATKRead> rddParallelReads2 = readSource.getParquetReads(outputDirectory.getAbsolutePath(), null,
+                EnumSet.allOf(ReadsParquetFormat.ReadColumn.class));
+        Assert.assertEquals(getSortedSAMStrings(rddParallelReads2, header), getSortedSAMStrings(rddParallelReads, header));
+
+        // only the reads overlapping the interval are read, and placed unmapped reads by their position
+        final GATKRead firstMappedRead = rddParallelReads.filter(read -> !read.isUnmapped()).first();
+        final SimpleInterval interval = new SimpleInterval(firstMappedRead.getContig(), firstMappedRead.getStart(), firstMappedRead.getStart() + 10_000);
+        final JavaRDD<GATKRead> expectedOverlapping = rddParallelReads.filter(read ->
+                interval.getContig().equals(read.getAssignedContig()) && read.getAssignedStart() <= interval.getEnd() &&
+                        (read.isUnmapped() ? read.getAssignedStart() : read.getEnd()) >= interval.getStart());
+        final JavaRDD<GATKRead> overlapping = readSource.getParquetReads(outputDirectory.getAbsolutePath(),
+                new TraversalParameters(Collections.singletonList(interval), false), EnumSet.allOf(ReadsParquetFormat.ReadColumn.class));
+        Assert.assertEquals(getSortedSAMStrings(overlapping, header), getSortedSAMStrings(expectedOverlapping, header));
+
+        // unplaced unmapped reads are read when asked for
+        final JavaRDD<GATKRead> unplaced = readSource.getParquetReads(outputDirectory.getAbsolutePath(),
+                new TraversalParameters(Collections.emptyList(), true), EnumSet.allOf(ReadsParquetFormat.ReadColumn.class));
+        Assert.assertEquals(unplaced.count(), rddParallelReads.filter(read -> read.isUnmapped() && read.getAssignedStart() == ReadConstants.UNSET_POSITION).count());
+
+        // only the projected fields are read
+        final List<Integer> flags = new ArrayList<>(readSource.getParquetReads(outputDirectory.getAbsolutePath(), null,
+                EnumSet.of(ReadsParquetFormat.ReadColumn.FLAGS)).map(read -> {
+                    Assert.assertNull(read.getName());
+                    Assert.assertEquals(read.getLength(), 0);
+                    return read.convertToSAMRecord(header).getFlags();
+                }).collect());
+        final List<Integer> expectedFlags = new ArrayList<>(rddParallelReads.map(read -> read.convertToSAMRecord(header).getFlags()).collect());
+        Collections.sort(flags);
+        Collections.sort(expectedFlags);
+        Assert.assertEquals(flags, expectedFlags);
+    }
+
+    private static List<String> getSortedSAMStrings(final JavaRDD<GATKRead> reads, final SAMFileHeader header) {
+        final List<String> samStrings = new ArrayList<>(reads.map(read -> read.convertToSAMRecord(header).getSAMString()).collect());
+        Collections.sort(samStrings);
+        return samStrings;
+    }
 }
@@ -18,13 +18,20 @@ import org.broadinstitute.hellbender.utils.read.ReadConstants;
 import org.broadinstitute.hellbender.utils.read.SAMRecordToGATKReadAdapter;
 import org.broadinstitute.hellbender.GATKBaseTest;
 import org.broadinstitute.hellbender.testutils.MiniClusterUtils;
+import org.seqdoop.hadoop_bam.SplittingBAMIndexer;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.List;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
 
 import static org.testng.Assert.assertEquals;
 
@@ -156,6 +163,97 @@ public class ReadsSparkSourceUnitTest extends GATKBaseTest {
         Assert.assertEquals(smallPartitions.partitions().size(), 2);
     }
 
+    @Test(groups = "spark")
+    public void testPartitionSizingForNumberOfPartitions(){
+        String bam = dirBQSR + "HiSeq.1mb.1RG.2k_lines.alternate.bam"; //file is ~220 kB
+        JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+
+        ReadsSparkSource readSource = new ReadsSparkSource(ctx);
+        JavaRDD<GATKRead> allReads = readSource.getParallelReads(bam, null);
+        JavaRDD<GATKRead> threePartitions = readSource.getParallelReads(bam, null, null, 0, 3);
+        Assert.assertEquals(threePartitions.partitions().size(), 3);
+        Assert.assertEquals(threePartitions.count(), allReads.count());
+
+        // only the part of the file overlapping the interval is divided up, and that is smaller than the minimum split size
+        TraversalParameters traversalParameters = new TraversalParameters(ImmutableList.of(new SimpleInterval("chr1", 10_080_000, 10_081_000)), false);
+        JavaRDD<GATKRead> intervalReads = readSource.getParallelReads(bam, null, traversalParameters, 0, 3);
+        Assert.assertTrue(intervalReads.partitions().size() < threePartitions.partitions().size());
+        Assert.assertEquals(intervalReads.count(), allReads.filter(read -> read.overlaps(traversalParameters.getIntervalsForTraversal().get(0))).count());
+    }
+
+    @Test(groups = "spark")
+    public void testPartitionSizingForNumberOfPartitionsWithScatteredIntervals(){
+        String bam = dirBQSR + "HiSeq.1mb.1RG.2k_lines.alternate.bam"; //file is ~220 kB
+        JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+
+        // the chunks overlapping the intervals are small, but they are spread across the whole file, so every split of the
+        // file overlaps some interval
+        final List<SimpleInterval> intervals = new ArrayList<>();
+        for (int start = 10_000_000; start < 11_000_000; start += 5_000) {
+            intervals.add(new SimpleInterval("chr1", start, start + 100));
+        }
+        TraversalParameters traversalParameters = new TraversalParameters(intervals, false);
+
+        ReadsSparkSource readSource = new ReadsSparkSource(ctx);
+        JavaRDD<GATKRead> allReads = readSource.getParallelReads(bam, null);
+        JavaRDD<GATKRead> intervalReads = readSource.getParallelReads(bam, null, traversalParameters, 0, 2);
+        Assert.assertTrue(intervalReads.partitions().size() <= 2);
+        Assert.assertEquals(intervalReads.count(), allReads.filter(read -> intervals.stream().anyMatch(read::overlaps)).count());
+
+        // the partitions are coalesced in order, so the reads are still sorted
+        final List<GATKRead> collected = intervalReads.collect();
+        for (int i = 1; i < collected.size(); i++) {
+            Assert.assertTrue(collected.get(i - 1).getStart() <= collected.get(i).getStart());
+        }
+    }
+
+    @DataProvider
+    public Object[][] withAndWithoutSplittingIndex() {
+        return new Object[][] {{false}, {true}};
+    }
+
+    @Test(groups = "spark", dataProvider = "withAndWithoutSplittingIndex")
+    public void testTemplatesAreNotSplitInQuerynameSortedBam(final boolean createSplittingIndex) throws IOException {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.queryname);
+        final Random random = new Random(13);
+        for (int n = 0; n < 20000; n++) {
+            // some templates have a supplementary alignment, so that they have three reads
+            builder.addPair("template" + n, 0, random.nextInt(100000) + 1, random.nextInt(100000) + 1);
+            if (n % 3 == 0) {
+                builder.addFrag("template" + n, 0, random.nextInt(100000) + 1, false).setSupplementaryAlignmentFlag(true);
+            }
+        }
+        final File bam = createTempFile("queryname", ".bam");
+        try (SAMFileWriter writer = new SAMFileWriterFactory().makeBAMWriter(builder.getHeader(), true, bam)) {
+            builder.getRecords().forEach(writer::addAlignment);
+        }
+        // with a splitting index the splits end at the start of a record, without one they end at the end of a BGZF block
+        if (createSplittingIndex) {
+            final File splittingIndex = new File(bam.getPath() + SplittingBAMIndexer.OUTPUT_FILE_EXTENSION);
+            splittingIndex.deleteOnExit();
+            try (final InputStream in = new BufferedInputStream(new FileInputStream(bam));
+                 final OutputStream out = new BufferedOutputStream(new FileOutputStream(splittingIndex))) {
+                SplittingBAMIndexer.index(in, out, bam.length(), 100);
+            }
+        }
+
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        final JavaRDD<GATKRead> reads = new ReadsSparkSource(ctx).getParallelReads(bam.getAbsolutePath(), null, 64 * 1024);
+        Assert.assertTrue(reads.getNumPartitions() > 1);
+
+        final List<List<String>> namesByPartition = reads.map(GATKRead::getName).glom().collect();
+        final Set<String> names = new HashSet<>();
+        int numReads = 0;
+        for (final List<String> partition : namesByPartition) {
+            for (final String name : new LinkedHashSet<>(partition)) {
+                Assert.assertTrue(names.add(name), name + " is in more than one partition");
+            }
+            numReads += partition.size();
+        }
+        Assert.assertEquals(names.size(), 20000);
+        Assert.assertEquals(numReads, builder.getRecords().size());
+    }
+
     @Test(groups = "spark")
     public void testReadFromFileAndHDFS() throws Exception {
         final File bam = getTestFile("hdfs_file_test.bam");
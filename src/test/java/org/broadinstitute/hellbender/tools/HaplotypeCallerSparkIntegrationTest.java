@@ -60,6 +60,31 @@ public class HaplotypeCallerSparkIntegrationTest extends CommandLineProgramTest
         Assert.assertTrue(concordance >= 0.99, "Concordance with GATK 3.8 in VCF mode is < 99% (" +  concordance + ")");
     }
 
+    /*
+     * Test that balancing the assembly regions between partitions doesn't change the calls
+     */
+    @Test
+    public void testVCFModeWithBalancedAssemblyRegionsIsConcordantWithGATK3_8Results() throws Exception {
+        Utils.resetRandomGenerator();
+
+        final File output = createTempFile("testVCFModeWithBalancedAssemblyRegions", ".vcf");
+        final File gatk3Output = new File(TEST_FILES_DIR + "expected.testVCFMode.gatk3.8-4-g7b0250253.vcf");
+
+        final String[] args = {
+                "-I", NA12878_20_21_WGS_bam,
+                "-R", b37_2bit_reference_20_21,
+                "-L", "20:10000000-10100000",
+                "-O", output.getAbsolutePath(),
+                "-pairHMM", "AVX_LOGLESS_CACHING",
+                "--balance-assembly-regions"
+        };
+
+        runCommandLine(args);
+
+        final double concordance = HaplotypeCallerIntegrationTest.calculateConcordance(output, gatk3Output);
+        Assert.assertTrue(concordance >= 0.99, "Concordance with GATK 3.8 in VCF mode with balanced assembly regions is < 99% (" +  concordance + ")");
+    }
+
     /**
      * Test that in VCF mode we're >= 99% concordant with GATK3.8 results
      * THIS TEST explodes with an exception because Allele-Specific annotations are not supported in vcf mode yet.
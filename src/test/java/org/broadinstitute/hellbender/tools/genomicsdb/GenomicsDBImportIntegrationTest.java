@@ -17,6 +17,7 @@ import org.broadinstitute.barclay.argparser.CommandLineException;
 import org.broadinstitute.hellbender.CommandLineProgramTest;
 import org.broadinstitute.hellbender.Main;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.IntervalUtils;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
 import org.broadinstitute.hellbender.utils.Utils;
@@ -319,6 +320,37 @@ public final class GenomicsDBImportIntegrationTest extends CommandLineProgramTes
         testGenomicsDBImporterWithBatchSize(LOCAL_GVCFS, MULTIPLE_INTERVALS, COMBINED_MULTI_INTERVAL, batchSize);
     }
 
+    @Test(dataProvider = "batchSizes")
+    public void testGenomicsDBImportFileInputsInBatchesWithPrefetch(final int batchSize) throws IOException {
+        for (final int threads : new int[]{1, 2}) {
+            final String workspace = createTempDir("genomicsdb-prefetch-tests-").getAbsolutePath() + "/workspace-" + batchSize;
+            final ArgumentsBuilder args = new ArgumentsBuilder();
+            args.addArgument(GenomicsDBImport.WORKSPACE_ARG_LONG_NAME, workspace);
+            INTERVAL.forEach(interval -> args.addArgument("L", IntervalUtils.locatableToString(interval)));
+            LOCAL_GVCFS.forEach(vcf -> args.addArgument("V", vcf));
+            args.addArgument(GenomicsDBImport.BATCHSIZE_ARG_LONG_NAME, String.valueOf(batchSize));
+            args.addArgument(GenomicsDBImport.VCF_INITIALIZER_THREADS_LONG_NAME, String.valueOf(threads));
+            args.addBooleanArgument(GenomicsDBImport.PREFETCH_NEXT_BATCH_LONG_NAME, true);
+            runCommandLine(args);
+
+            checkJSONFilesAreWritten(workspace);
+            checkGenomicsDBAgainstExpected(workspace, INTERVAL, COMBINED, b38_reference_20_21, true);
+        }
+    }
+
+    @Test(expectedExceptions = CommandLineException.BadArgumentValue.class)
+    public void testCantPrefetchWithParallelIntervals() {
+        final String workspace = createTempDir("genomicsdb-prefetch-tests-").getAbsolutePath() + "/workspace";
+        final ArgumentsBuilder args = new ArgumentsBuilder();
+        args.addArgument(GenomicsDBImport.WORKSPACE_ARG_LONG_NAME, workspace);
+        MULTIPLE_INTERVALS.forEach(interval -> args.addArgument("L", IntervalUtils.locatableToString(interval)));
+        LOCAL_GVCFS.forEach(vcf -> args.addArgument("V", vcf));
+        args.addArgument(GenomicsDBImport.BATCHSIZE_ARG_LONG_NAME, "1");
+        args.addArgument(GenomicsDBImport.MAX_NUM_INTERVALS_TO_IMPORT_IN_PARALLEL, "2");
+        args.addBooleanArgument(GenomicsDBImport.PREFETCH_NEXT_BATCH_LONG_NAME, true);
+        runCommandLine(args);
+    }
+
     @Test(groups = {"bucket"}, dataProvider = "batchSizes")
     public void testGenomicsDBImportGCSInputsInBatches(final int batchSize) throws IOException {
         testGenomicsDBImporterWithBatchSize(resolveLargeFilesAsCloudURIs(LOCAL_GVCFS), INTERVAL, COMBINED, batchSize);
@@ -778,6 +810,48 @@ public final class GenomicsDBImportIntegrationTest extends CommandLineProgramTes
         return getGenomicsDBFeatureReader(workspace, reference, false);
     }
 
+    @Test
+    public void testUpdateExistingWorkspace() throws IOException {
+        final String workspace = createTempDir("genomicsdb-update-tests-").getAbsolutePath() + "/workspace";
+        writeToGenomicsDB(Arrays.asList(HG_00096, HG_00268), INTERVAL, workspace, 0, false, 0, 1);
+
+        final ArgumentsBuilder args = new ArgumentsBuilder();
+        args.addArgument(GenomicsDBImport.WORKSPACE_ARG_LONG_NAME, workspace);
+        INTERVAL.forEach(interval -> args.addArgument("L", IntervalUtils.locatableToString(interval)));
+        args.addArgument("V", NA_19625);
+        args.addBooleanArgument(GenomicsDBImport.UPDATE_WORKSPACE_LONG_NAME, true);
+        runCommandLine(args);
+
+        checkJSONFilesAreWritten(workspace);
+        checkGenomicsDBAgainstExpected(workspace, INTERVAL, COMBINED, b38_reference_20_21, true);
+    }
+
+    @Test(expectedExceptions = UserException.class)
+    public void testUpdateExistingWorkspaceWithSampleAlreadyPresent() {
+        final String workspace = createTempDir("genomicsdb-update-tests-").getAbsolutePath() + "/workspace";
+        writeToGenomicsDB(Arrays.asList(HG_00096, HG_00268), INTERVAL, workspace, 0, false, 0, 1);
+
+        final ArgumentsBuilder args = new ArgumentsBuilder();
+        args.addArgument(GenomicsDBImport.WORKSPACE_ARG_LONG_NAME, workspace);
+        INTERVAL.forEach(interval -> args.addArgument("L", IntervalUtils.locatableToString(interval)));
+        args.addArgument("V", HG_00268);
+        args.addBooleanArgument(GenomicsDBImport.UPDATE_WORKSPACE_LONG_NAME, true);
+        runCommandLine(args);
+    }
+
+    @Test(expectedExceptions = UserException.class)
+    public void testUpdateExistingWorkspaceWithDifferentIntervals() {
+        final String workspace = createTempDir("genomicsdb-update-tests-").getAbsolutePath() + "/workspace";
+        writeToGenomicsDB(Arrays.asList(HG_00096, HG_00268), INTERVAL, workspace, 0, false, 0, 1);
+
+        final ArgumentsBuilder args = new ArgumentsBuilder();
+        args.addArgument(GenomicsDBImport.WORKSPACE_ARG_LONG_NAME, workspace);
+        SMALLER_INTERVAL.forEach(interval -> args.addArgument("L", IntervalUtils.locatableToString(interval)));
+        args.addArgument("V", NA_19625);
+        args.addBooleanArgument(GenomicsDBImport.UPDATE_WORKSPACE_LONG_NAME, true);
+        runCommandLine(args);
+    }
+
     @Test(expectedExceptions = GenomicsDBImport.UnableToCreateGenomicsDBWorkspace.class)
     public void testYouCantWriteIntoAnExistingDirectory(){
         // this actually creates the directory on disk, not just the file name.
@@ -1,6 +1,10 @@
 package org.broadinstitute.hellbender.tools.genomicsdb;
 
 import com.intel.genomicsdb.importer.GenomicsDBImporter;
+import com.intel.genomicsdb.importer.model.ChromosomeInterval;
+import com.intel.genomicsdb.model.GenomicsDBCallsetsMapProto;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.tribble.FeatureReader;
 import htsjdk.variant.variantcontext.VariantContext;
 import org.broadinstitute.hellbender.exceptions.UserException;
@@ -11,6 +15,7 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
@@ -101,4 +106,99 @@ public class GenomicsDBImportUnitTest extends GATKBaseTest {
         Assert.assertEquals(actual, expected);
         Assert.assertEquals(actual.keySet().iterator().next(), "Sample1");
     }
+
+    private static GenomicsDBCallsetsMapProto.CallsetMappingPB makeCallsetMapping(final String... sampleNames) {
+        final GenomicsDBCallsetsMapProto.CallsetMappingPB.Builder builder = GenomicsDBCallsetsMapProto.CallsetMappingPB.newBuilder();
+        for (int i = 0; i < sampleNames.length; i++) {
+            builder.addCallsets(GenomicsDBCallsetsMapProto.SampleIDToTileDBIDMap.newBuilder()
+                    .setSampleName(sampleNames[i])
+                    .setRowIdx(i)
+                    .setIdxInFile(0)
+                    .setStreamName(sampleNames[i] + "_stream"));
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void testMergeCallsetMappings(){
+        final GenomicsDBCallsetsMapProto.CallsetMappingPB merged = GenomicsDBImport.mergeCallsetMappings(
+                makeCallsetMapping("Sample1", "Sample2"), makeCallsetMapping("Sample3", "Sample4"));
+
+        Assert.assertEquals(merged.getCallsetsCount(), 4);
+        for (int i = 0; i < 4; i++) {
+            final GenomicsDBCallsetsMapProto.SampleIDToTileDBIDMap callset = merged.getCallsets(i);
+            Assert.assertEquals(callset.getSampleName(), "Sample" + (i + 1));
+            Assert.assertEquals(callset.getRowIdx(), i);
+            Assert.assertEquals(callset.getStreamName(), "Sample" + (i + 1) + "_stream");
+        }
+    }
+
+    @Test
+    public void testMergeCallsetMappingsIntoEmptyMapping(){
+        final GenomicsDBCallsetsMapProto.CallsetMappingPB added = makeCallsetMapping("Sample1", "Sample2");
+        Assert.assertEquals(GenomicsDBImport.mergeCallsetMappings(makeCallsetMapping(), added), added);
+    }
+
+    @Test
+    public void testCallsetMappingRoundTrip(){
+        final GenomicsDBCallsetsMapProto.CallsetMappingPB callsets = makeCallsetMapping("Sample1", "Sample2", "Sample3");
+        final File callsetFile = createTempFile("callset", ".json");
+        GenomicsDBImport.writeCallsetMappingToFile(callsets, callsetFile);
+        Assert.assertEquals(GenomicsDBImport.readCallsetMappingFromFile(callsetFile), callsets);
+    }
+
+    @Test
+    public void testMergeCallsetMappingsAfterRowGap(){
+        // rows are numbered from the last existing row, not from the number of callsets
+        final GenomicsDBCallsetsMapProto.CallsetMappingPB existing = makeCallsetMapping("Sample1", "Sample2").toBuilder()
+                .setCallsets(1, makeCallsetMapping("Sample1", "Sample2").getCallsets(1).toBuilder().setRowIdx(5))
+                .build();
+        Assert.assertEquals(GenomicsDBImport.getNextRowIdx(existing), 6);
+        final GenomicsDBCallsetsMapProto.CallsetMappingPB merged = GenomicsDBImport.mergeCallsetMappings(existing, makeCallsetMapping("Sample3"));
+        Assert.assertEquals(merged.getCallsets(2).getRowIdx(), 6);
+        Assert.assertEquals(GenomicsDBImport.getNextRowIdx(makeCallsetMapping()), 0);
+    }
+
+    @Test
+    public void testSequenceDictionaryMatchesWorkspace(){
+        final SAMSequenceDictionary dictionary = new SAMSequenceDictionary(Arrays.asList(
+                new SAMSequenceRecord("20", 1000), new SAMSequenceRecord("21", 2000)));
+        GenomicsDBImport.assertSequenceDictionaryMatchesWorkspace(dictionary, new SAMSequenceDictionary(Arrays.asList(
+                new SAMSequenceRecord("20", 1000), new SAMSequenceRecord("21", 2000))));
+    }
+
+    @DataProvider
+    public Object[][] getMismatchedDictionaries(){
+        return new Object[][]{
+                // different order
+                {new SAMSequenceDictionary(Arrays.asList(new SAMSequenceRecord("21", 2000), new SAMSequenceRecord("20", 1000)))},
+                // different length
+                {new SAMSequenceDictionary(Arrays.asList(new SAMSequenceRecord("20", 1000), new SAMSequenceRecord("21", 2001)))},
+                // missing contig
+                {new SAMSequenceDictionary(Collections.singletonList(new SAMSequenceRecord("20", 1000)))},
+        };
+    }
+
+    @Test(dataProvider = "getMismatchedDictionaries", expectedExceptions = UserException.class)
+    public void testSequenceDictionaryDoesNotMatchWorkspace(final SAMSequenceDictionary workspaceDictionary){
+        final SAMSequenceDictionary dictionary = new SAMSequenceDictionary(Arrays.asList(
+                new SAMSequenceRecord("20", 1000), new SAMSequenceRecord("21", 2000)));
+        GenomicsDBImport.assertSequenceDictionaryMatchesWorkspace(dictionary, workspaceDictionary);
+    }
+
+    @Test
+    public void testIntervalsMatchWorkspace() throws IOException {
+        final File workspace = createTempDir("workspace");
+        final List<ChromosomeInterval> intervals = Arrays.asList(new ChromosomeInterval("20", 1, 100), new ChromosomeInterval("21", 50, 60));
+        for (final ChromosomeInterval interval : intervals) {
+            Assert.assertTrue(new File(workspace, GenomicsDBImport.getArrayName(interval)).mkdir());
+        }
+        // files in the workspace aren't arrays
+        Assert.assertTrue(new File(workspace, GenomicsDBConstants.DEFAULT_CALLSETMAP_FILE_NAME).createNewFile());
+        GenomicsDBImport.assertIntervalsMatchWorkspace(intervals, workspace);
+
+        Assert.assertThrows(UserException.class, () -> GenomicsDBImport.assertIntervalsMatchWorkspace(intervals.subList(0, 1), workspace));
+        Assert.assertThrows(UserException.class, () -> GenomicsDBImport.assertIntervalsMatchWorkspace(
+                Arrays.asList(new ChromosomeInterval("20", 1, 101), new ChromosomeInterval("21", 50, 60)), workspace));
+    }
 }
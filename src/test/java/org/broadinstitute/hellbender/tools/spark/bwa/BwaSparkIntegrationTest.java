@@ -1,5 +1,9 @@
 package org.broadinstitute.hellbender.tools.spark.bwa;
 
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.ValidationStringency;
 import org.broadinstitute.hellbender.CommandLineProgramTest;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import org.broadinstitute.hellbender.engine.spark.GATKSparkTool;
@@ -9,6 +13,11 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public final class BwaSparkIntegrationTest extends CommandLineProgramTest {
 
@@ -39,6 +48,57 @@ public final class BwaSparkIntegrationTest extends CommandLineProgramTest {
         SamAssertionUtils.assertSamsEqual(new File(output, "part-r-00000.bam"), expectedSam);
     }
 
+    @Test
+    public void testPairedEndInSmallBatches() throws Exception {
+        // paired alignments depend on the insert size distribution BWA estimates from each batch, so they can differ
+        // from the ones in a single batch, but both reads of each pair are always aligned together
+        final File ref = getTestFile("ref.fa");
+        final File input = getTestFile("R.bam"); // this is a queryname sorted, paired, and unaligned input
+
+        final File output = createTempFile("bwa", ".bam");
+        Assert.assertTrue(output.delete());
+
+        final ArgumentsBuilder args = new ArgumentsBuilder();
+        args.addFileArgument(StandardArgumentDefinitions.REFERENCE_LONG_NAME, ref);
+        args.addFileArgument(StandardArgumentDefinitions.INPUT_LONG_NAME, input);
+        args.addBooleanArgument(GATKSparkTool.SHARDED_OUTPUT_LONG_NAME, true);
+        args.addArgument(GATKSparkTool.NUM_REDUCERS_LONG_NAME,"1");
+        args.addOutput(output);
+        args.addFileArgument(BwaArgumentCollection.BWA_MEM_INDEX_IMAGE_FULL_NAME, getTestFile("ref.fa.img"));
+        // an odd number, so a batch can't end at the end of a pair unless it takes one read more
+        args.addArgument(BwaArgumentCollection.ALIGNMENT_BATCH_SIZE_FULL_NAME, "7");
+        this.runCommandLine(args.getArgsArray());
+
+        final Map<String, List<SAMRecord>> inputPairs = readPrimaryRecordsByName(input);
+        final Map<String, List<SAMRecord>> outputPairs = readPrimaryRecordsByName(new File(output, "part-r-00000.bam"));
+        Assert.assertEquals(outputPairs.keySet(), inputPairs.keySet());
+        for (final List<SAMRecord> pair : outputPairs.values()) {
+            Assert.assertEquals(pair.size(), 2);
+            final SAMRecord first = pair.get(0).getFirstOfPairFlag() ? pair.get(0) : pair.get(1);
+            final SAMRecord second = pair.get(0).getFirstOfPairFlag() ? pair.get(1) : pair.get(0);
+            Assert.assertTrue(first.getFirstOfPairFlag() && second.getSecondOfPairFlag());
+            // each read has its mate's alignment, so they were aligned as a pair
+            Assert.assertEquals(first.getMateUnmappedFlag(), second.getReadUnmappedFlag());
+            Assert.assertEquals(second.getMateUnmappedFlag(), first.getReadUnmappedFlag());
+            Assert.assertEquals(first.getMateReferenceName(), second.getReferenceName());
+            Assert.assertEquals(first.getMateAlignmentStart(), second.getAlignmentStart());
+            Assert.assertEquals(second.getMateReferenceName(), first.getReferenceName());
+            Assert.assertEquals(second.getMateAlignmentStart(), first.getAlignmentStart());
+        }
+    }
+
+    private static Map<String, List<SAMRecord>> readPrimaryRecordsByName(final File bam) throws IOException {
+        final Map<String, List<SAMRecord>> recordsByName = new LinkedHashMap<>();
+        try (final SamReader reader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(bam)) {
+            for (final SAMRecord record : reader) {
+                if (!record.isSecondaryOrSupplementary()) {
+                    recordsByName.computeIfAbsent(record.getReadName(), name -> new ArrayList<>()).add(record);
+                }
+            }
+        }
+        return recordsByName;
+    }
+
     @Test
     public void testSingleEnd() throws Exception {
         final File expectedSam = getTestFile("seBwa.bam");
@@ -59,4 +119,27 @@ public final class BwaSparkIntegrationTest extends CommandLineProgramTest {
 
         SamAssertionUtils.assertSamsEqual(new File(output, "part-r-00000.bam"), expectedSam);
     }
+
+    @Test
+    public void testSingleEndInSmallBatches() throws Exception {
+        // single-end alignments don't depend on the other reads in a batch, so they're the same in any size of batch
+        final File expectedSam = getTestFile("seBwa.bam");
+
+        final File ref = getTestFile("ref.fa");
+        final File input = getTestFile("seR.bam");
+        final File output = createTempFile("bwa", ".bam");
+        Assert.assertTrue(output.delete());
+
+        final ArgumentsBuilder args = new ArgumentsBuilder();
+        args.addFileArgument(StandardArgumentDefinitions.REFERENCE_LONG_NAME, ref);
+        args.addFileArgument(StandardArgumentDefinitions.INPUT_LONG_NAME, input);
+        args.addBooleanArgument(GATKSparkTool.SHARDED_OUTPUT_LONG_NAME, true);
+        args.addArgument(GATKSparkTool.NUM_REDUCERS_LONG_NAME,"1");
+        args.addOutput(output);
+        args.add("--" + BwaArgumentCollection.SINGLE_END_ALIGNMENT_FULL_NAME);
+        args.addArgument(BwaArgumentCollection.ALIGNMENT_BATCH_SIZE_FULL_NAME, "3");
+        this.runCommandLine(args.getArgsArray());
+
+        SamAssertionUtils.assertSamsEqual(new File(output, "part-r-00000.bam"), expectedSam);
+    }
 }
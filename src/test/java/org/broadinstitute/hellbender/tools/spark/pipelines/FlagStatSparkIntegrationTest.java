@@ -1,7 +1,17 @@
 package org.broadinstitute.hellbender.tools.spark.pipelines;
 
 import com.google.common.collect.Lists;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.types.DataTypes;
 import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.broadinstitute.hellbender.engine.filters.WellformedReadFilter;
+import org.broadinstitute.hellbender.engine.spark.SparkContextFactory;
+import org.broadinstitute.hellbender.engine.spark.datasources.ReadsParquetFormat;
+import org.broadinstitute.hellbender.engine.spark.datasources.ReadsParquetFormat.ReadColumn;
+import org.broadinstitute.hellbender.engine.spark.datasources.ReadsSparkSource;
 import org.broadinstitute.hellbender.testutils.ArgumentsBuilder;
 import org.broadinstitute.hellbender.testutils.IntegrationTestSpec;
 import org.testng.Assert;
@@ -9,6 +19,11 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.EnumSet;
+import java.util.Set;
+
+import static org.apache.spark.sql.functions.lit;
 
 public final class FlagStatSparkIntegrationTest extends CommandLineProgramTest {
 
@@ -70,6 +85,43 @@ public final class FlagStatSparkIntegrationTest extends CommandLineProgramTest {
         IntegrationTestSpec.assertMatchingFiles(Lists.newArrayList(outputFile), Lists.newArrayList(getToolTestDataDir() +"/"+ "expectedStats.chr1_1.txt"), false, null);
     }
 
+    @Test(groups = "spark")
+    public void flagStatSparkOnlyReadsProjectedParquetColumns() throws IOException {
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        final String bam = getTestFile("flag_stat.bam").getAbsolutePath();
+        final ReadsSparkSource readSource = new ReadsSparkSource(ctx);
+        final File dir = createTempDir("flagStatTest");
+        final File parquet = new File(dir, "flag_stat.parquet");
+        ReadsParquetFormat.writeReads(ctx, parquet.getAbsolutePath(), readSource.getParallelReads(bam, null), readSource.getHeader(bam, null));
+
+        // replace the columns that neither FlagStatSpark nor its default read filter use with values of another type,
+        // which fail to be read as the type of the field, so the tool only succeeds if it reads just the projected columns
+        final Set<ReadColumn> projected = EnumSet.noneOf(ReadColumn.class);
+        projected.addAll(new FlagStatSpark().getReadColumns());
+        projected.addAll(ReadsParquetFormat.getReadColumns(new WellformedReadFilter()));
+        Assert.assertNotEquals(projected, EnumSet.allOf(ReadColumn.class));
+        Dataset<Row> rows = SparkSession.builder().config(ctx.getConf()).getOrCreate().read().parquet(parquet.getAbsolutePath());
+        for (final ReadColumn column : ReadColumn.values()) {
+            if (!projected.contains(column)) {
+                final boolean isInteger = rows.schema().apply(column.getColumnName()).dataType().equals(DataTypes.IntegerType);
+                rows = rows.withColumn(column.getColumnName(), isInteger ? lit("unreadable") : lit(0));
+            }
+        }
+        final File unreadable = new File(dir, "unreadable.parquet");
+        rows.write().parquet(unreadable.getAbsolutePath());
+        Files.copy(new File(parquet, "_header.sam").toPath(), new File(unreadable, "_header.sam").toPath());
+        Assert.assertThrows(Exception.class, () -> readSource.getParquetReads(unreadable.getAbsolutePath(), null,
+                EnumSet.allOf(ReadColumn.class)).count());
+
+        final File outputFile = createTempFile("flagStatTest.parquet", ".txt");
+        final ArgumentsBuilder args = new ArgumentsBuilder();
+        args.addInput(unreadable);
+        args.addOutput(outputFile);
+        this.runCommandLine(args.getArgsArray());
+
+        IntegrationTestSpec.assertMatchingFiles(Lists.newArrayList(outputFile), Lists.newArrayList(getToolTestDataDir() +"/"+ "expectedStats.txt"), false, null);
+    }
+
     @Test(groups = "spark")
     public void testNoNPRWhenOutputIsUnspecified(){
         ArgumentsBuilder args = new ArgumentsBuilder();
@@ -116,7 +116,7 @@ public class MarkDuplicatesSparkUtilsUnitTest extends GATKBaseTest {
         sortedHeader.addReadGroup(readGroup1);
         sortedHeader.setSortOrder(SAMFileHeader.SortOrder.queryname);
 
-        // Using the header flagged as unsorted will result in the reads being sorted again
+        // Using the header flagged as unsorted will result in the read summaries being grouped by name with a shuffle
         JavaRDD<GATKRead> unsortedReadsMarked = MarkDuplicatesSpark.mark(unsortedReads,unsortedHeader, MarkDuplicatesScoringStrategy.SUM_OF_BASE_QUALITIES,new SerializableOpticalDuplicatesFinder(),100,true);
         JavaRDD<GATKRead> sortedReadsMarked = MarkDuplicatesSpark.mark(pariedEndsQueryGrouped,sortedHeader, MarkDuplicatesScoringStrategy.SUM_OF_BASE_QUALITIES,new SerializableOpticalDuplicatesFinder(),1,true);
 
@@ -132,6 +132,31 @@ public class MarkDuplicatesSparkUtilsUnitTest extends GATKBaseTest {
         }
     }
 
+    @Test
+    // Test that marking reads which are not grouped by name leaves each read in its partition and in its order, and that
+    // the reads of templates split across partitions are marked consistently
+    public void testUnsortedReadsStayInTheirPartitions() {
+        JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        JavaRDD<GATKRead> coordinateSortedReads = generateReadsWithDuplicates(1000,3, ctx, 7, true);
+
+        SAMReadGroupRecord readGroup1 = new SAMReadGroupRecord("1");
+        readGroup1.setAttribute(SAMReadGroupRecord.READ_GROUP_SAMPLE_TAG, "test");
+        SAMFileHeader coordinateHeader = hg19Header.clone();
+        coordinateHeader.addReadGroup(readGroup1);
+        coordinateHeader.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+
+        JavaRDD<GATKRead> marked = MarkDuplicatesSpark.mark(coordinateSortedReads, coordinateHeader, MarkDuplicatesScoringStrategy.SUM_OF_BASE_QUALITIES, new SerializableOpticalDuplicatesFinder(), 3, true);
+
+        Assert.assertEquals(marked.getNumPartitions(), coordinateSortedReads.getNumPartitions());
+        Assert.assertEquals(marked.map(GATKRead::commonToString).glom().collect(), coordinateSortedReads.map(GATKRead::commonToString).glom().collect());
+
+        final Map<String, Set<Boolean>> duplicateFlagsByName = new HashMap<>();
+        marked.collect().forEach(read -> duplicateFlagsByName.computeIfAbsent(read.getName(), name -> new HashSet<>()).add(read.isDuplicate()));
+        duplicateFlagsByName.values().forEach(flags -> Assert.assertEquals(flags.size(), 1));
+        // one template in each group of three duplicates is not marked
+        Assert.assertEquals(duplicateFlagsByName.values().stream().filter(flags -> flags.contains(false)).count(), 1000);
+    }
+
     // This helper method is used to generate groups reads that will be duplicate marked. It does this by generating numDuplicatesPerGroup
     // pairs of reads starting at randomly selected starting locations. The start locations are random so that if the resulting RDD is
     // coordinate sorted that it is more or less guaranteed that a large portion of the reads will reside on separate partitions from
@@ -0,0 +1,102 @@
+package org.broadinstitute.hellbender.tools.walkers;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.vcf.VCFConstants;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLine;
+import org.apache.commons.lang3.tuple.Pair;
+import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.testutils.ArgumentsBuilder;
+import org.broadinstitute.hellbender.testutils.VariantContextTestUtils;
+import org.broadinstitute.hellbender.utils.variant.GATKVariantContextUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class GatherGVCFsIntegrationTest extends CommandLineProgramTest {
+
+    private static final String GVCF = toolsTestDir + "haplotypecaller/expected.testGVCFMode.gatk4.g.vcf";
+
+    @Test
+    public void testGatheringUnshardedGVCFIsANoOp() {
+        final File output = createTempFile("gathered", ".g.vcf");
+        final ArgumentsBuilder args = new ArgumentsBuilder();
+        args.addVCF(new File(GVCF));
+        args.addOutput(output);
+        runCommandLine(args);
+
+        VariantContextTestUtils.assertEqualVariants(
+                VariantContextTestUtils.readEntireVCFIntoMemory(output.getAbsolutePath()).getRight(),
+                VariantContextTestUtils.readEntireVCFIntoMemory(GVCF).getRight());
+    }
+
+    @Test
+    public void testRemergesBlocksSplitAcrossShards() {
+        final Pair<VCFHeader, List<VariantContext>> gvcf = VariantContextTestUtils.readEntireVCFIntoMemory(GVCF);
+        final List<VariantContext> records = gvcf.getRight();
+
+        // split the first multi-base reference block in two, as a shard boundary in the middle of it would
+        int splitIndex = -1;
+        for (int i = 0; i < records.size() && splitIndex < 0; i++) {
+            if (records.get(i).hasAttribute(VCFConstants.END_KEY) && records.get(i).getLengthOnReference() > 1) {
+                splitIndex = i;
+            }
+        }
+        Assert.assertTrue(splitIndex >= 0, "test GVCF should contain a multi-base reference block");
+        final VariantContext block = records.get(splitIndex);
+        final int middle = block.getStart() + block.getLengthOnReference() / 2 - 1;
+
+        final List<VariantContext> shard1 = new ArrayList<>(records.subList(0, splitIndex));
+        shard1.add(new VariantContextBuilder(block).stop(middle).attribute(VCFConstants.END_KEY, middle).make());
+        final List<VariantContext> shard2 = new ArrayList<>();
+        shard2.add(new VariantContextBuilder(block)
+                .start(middle + 1)
+                .alleles(Allele.create("N", true), Allele.NON_REF_ALLELE)
+                .make());
+        shard2.addAll(records.subList(splitIndex + 1, records.size()));
+
+        final File output = createTempFile("gathered", ".g.vcf");
+        final ArgumentsBuilder args = new ArgumentsBuilder();
+        args.addVCF(writeShard(gvcf.getLeft(), shard2));
+        args.addVCF(writeShard(gvcf.getLeft(), shard1));
+        args.addOutput(output);
+        runCommandLine(args);
+
+        VariantContextTestUtils.assertEqualVariants(
+                VariantContextTestUtils.readEntireVCFIntoMemory(output.getAbsolutePath()).getRight(), records);
+    }
+
+    @Test(expectedExceptions = UserException.BadInput.class)
+    public void testRequiresGQBands() {
+        final Pair<VCFHeader, List<VariantContext>> gvcf = VariantContextTestUtils.readEntireVCFIntoMemory(GVCF);
+        final Set<VCFHeaderLine> linesWithoutBands = gvcf.getLeft().getMetaDataInInputOrder().stream()
+                .filter(line -> !line.getKey().startsWith("GVCFBlock"))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        final VCFHeader headerWithoutBands = new VCFHeader(linesWithoutBands, gvcf.getLeft().getGenotypeSamples());
+
+        final ArgumentsBuilder args = new ArgumentsBuilder();
+        args.addVCF(writeShard(headerWithoutBands, gvcf.getRight()));
+        args.addOutput(createTempFile("gathered", ".g.vcf"));
+        runCommandLine(args);
+    }
+
+    private static File writeShard(final VCFHeader header, final List<VariantContext> records) {
+        final File shard = createTempFile("shard", ".g.vcf");
+        try (final VariantContextWriter writer = GATKVariantContextUtils.createVCFWriter(shard, header.getSequenceDictionary(), false, Options.INDEX_ON_THE_FLY)) {
+            writer.writeHeader(header);
+            records.forEach(writer::add);
+        }
+        return shard;
+    }
+}
@@ -0,0 +1,122 @@
+package org.broadinstitute.hellbender.tools.walkers.bqsr;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMReadGroupRecord;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.broadinstitute.hellbender.Main;
+import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.testutils.ArgumentsBuilder;
+import org.broadinstitute.hellbender.testutils.IntegrationTestSpec;
+import org.broadinstitute.hellbender.testutils.SamAssertionUtils;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public final class BQSRPipelineIntegrationTest extends CommandLineProgramTest {
+
+    private static String getResourceDir() {
+        return getTestDataDir() + "/" + "BQSR" + "/";
+    }
+
+    @DataProvider(name = "BQSRPipelineTest")
+    public Object[][] createBQSRPipelineTestData() {
+        final String hg18Reference = publicTestDir + "human_g1k_v37.chr17_1Mb.fasta";
+        final String b36Reference = getResourceDir() + "human_b36_both.chr1_1k.fasta";
+        final String GRCh37Ref_chr2021 = "src/test/resources/large/human_g1k_v37.20.21.fasta";
+        final String hiSeqBam_chr20 = getResourceDir() + WGS_B37_CH20_1M_1M1K_BAM;
+        final String dbSNPb37_chr20 = getResourceDir() + DBSNP_138_B37_CH20_1M_1M1K_VCF;
+        final String HiSeqBam_chr17 = getResourceDir() + "NA12878.chr17_69k_70k.dictFix.bam";
+        final String dbSNPb37_chr17 = getResourceDir() + "dbsnp_132.b37.excluding_sites_after_129.chr17_69k_70k.vcf";
+        final String origQualsBam_chr1 = getResourceDir() + "originalQuals.1kg.chr1.1-1K.1RG.dictFix.bam";
+        final String dbSNPb36_chr1 = getResourceDir() + "dbsnp_132.b36.excluding_sites_after_129.chr1_1k.vcf";
+
+        return new Object[][]{
+                {GRCh37Ref_chr2021, hiSeqBam_chr20, dbSNPb37_chr20, new String[0], new String[0]},
+                {GRCh37Ref_chr2021, hiSeqBam_chr20, dbSNPb37_chr20, new String[]{"--enable-baq", "--low-quality-tail", "5"}, new String[]{"--emit-original-quals"}},
+                {hg18Reference, HiSeqBam_chr17, dbSNPb37_chr17, new String[]{"--enable-baq"}, new String[]{"--static-quantized-quals", "10", "--static-quantized-quals", "30"}},
+                {b36Reference, origQualsBam_chr1, dbSNPb36_chr1, new String[]{"--use-original-qualities"}, new String[0]},
+        };
+    }
+
+    @Test(dataProvider = "BQSRPipelineTest")
+    public void testSameOutputAsBaseRecalibratorThenApplyBQSR(final String reference, final String bam, final String knownSites,
+                                                              final String[] recalibrationArgs, final String[] applyArgs) throws IOException {
+        assertSameOutputAsBaseRecalibratorThenApplyBQSR(reference, bam, knownSites, recalibrationArgs, applyArgs);
+    }
+
+    @Test
+    public void testReadGroupWithoutPlatform() throws IOException {
+        final File bamWithoutPlatform = createTempFile("noPlatform", ".bam");
+        try ( SamReader reader = SamReaderFactory.makeDefault().open(new File(getResourceDir() + WGS_B37_CH20_1M_1M1K_BAM)) ) {
+            final SAMFileHeader header = reader.getFileHeader().clone();
+            for (final SAMReadGroupRecord readGroup : header.getReadGroups()) {
+                readGroup.setPlatform(null);
+            }
+            try ( SAMFileWriter writer = new SAMFileWriterFactory().makeBAMWriter(header, true, bamWithoutPlatform) ) {
+                for (final SAMRecord read : reader) {
+                    read.setHeader(header);
+                    writer.addAlignment(read);
+                }
+            }
+        }
+
+        assertSameOutputAsBaseRecalibratorThenApplyBQSR("src/test/resources/large/human_g1k_v37.20.21.fasta", bamWithoutPlatform.getAbsolutePath(),
+                getResourceDir() + DBSNP_138_B37_CH20_1M_1M1K_VCF, new String[]{"--default-platform", "illumina"}, new String[0]);
+    }
+
+    private void assertSameOutputAsBaseRecalibratorThenApplyBQSR(final String reference, final String bam, final String knownSites,
+                                                                 final String[] recalibrationArgs, final String[] applyArgs) throws IOException {
+        final File expectedTable = createTempFile("baseRecalibrator", ".table");
+        final ArgumentsBuilder baseRecalibratorArgs = new ArgumentsBuilder();
+        baseRecalibratorArgs.addReference(new File(reference));
+        baseRecalibratorArgs.addInput(new File(bam));
+        baseRecalibratorArgs.addFileArgument(BaseRecalibrator.KNOWN_SITES_ARG_FULL_NAME, new File(knownSites));
+        baseRecalibratorArgs.addOutput(expectedTable);
+        for (final String arg : recalibrationArgs) {
+            baseRecalibratorArgs.add(arg);
+        }
+        new Main().instanceMain(makeCommandLineArgs(baseRecalibratorArgs.getArgsList(), BaseRecalibrator.class.getSimpleName()));
+
+        final File expectedBam = createTempFile("applyBQSR", ".bam");
+        final ArgumentsBuilder applyBQSRArgs = new ArgumentsBuilder();
+        applyBQSRArgs.addInput(new File(bam));
+        applyBQSRArgs.addFileArgument(StandardArgumentDefinitions.BQSR_TABLE_LONG_NAME, expectedTable);
+        applyBQSRArgs.addOutput(expectedBam);
+        for (final String arg : recalibrationArgs) {
+            // ApplyBQSR only takes the argument telling it which qualities to recalibrate
+            if (arg.equals("--use-original-qualities")) {
+                applyBQSRArgs.add(arg);
+            }
+        }
+        for (final String arg : applyArgs) {
+            applyBQSRArgs.add(arg);
+        }
+        new Main().instanceMain(makeCommandLineArgs(applyBQSRArgs.getArgsList(), ApplyBQSR.class.getSimpleName()));
+
+        final File actualTable = createTempFile("bqsrPipeline", ".table");
+        final File actualBam = createTempFile("bqsrPipeline", ".bam");
+        final ArgumentsBuilder pipelineArgs = new ArgumentsBuilder();
+        pipelineArgs.addReference(new File(reference));
+        pipelineArgs.addInput(new File(bam));
+        pipelineArgs.addFileArgument(BaseRecalibrator.KNOWN_SITES_ARG_FULL_NAME, new File(knownSites));
+        pipelineArgs.addFileArgument(BQSRPipeline.RECAL_TABLE_OUTPUT_LONG_NAME, actualTable);
+        pipelineArgs.addOutput(actualBam);
+        for (final String arg : recalibrationArgs) {
+            pipelineArgs.add(arg);
+        }
+        for (final String arg : applyArgs) {
+            pipelineArgs.add(arg);
+        }
+        runCommandLine(pipelineArgs);
+
+        IntegrationTestSpec.assertEqualTextFiles(actualTable, expectedTable);
+        SamAssertionUtils.assertSamsEqual(actualBam, expectedBam);
+    }
+}
@@ -2,11 +2,14 @@ package org.broadinstitute.hellbender.tools.walkers.contamination;
 
 import org.broadinstitute.hellbender.CommandLineProgramTest;
 import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Created by David Benjamin on 2/16/17.
@@ -60,6 +63,56 @@ public class GetPileupSummariesIntegrationTest extends CommandLineProgramTest {
 
     }
 
+    @Test
+    public void testSeveralThreads() {
+        final File thousandGenomes = new File(largeFileTestDir, "1000G.phase3.broad.withGenotypes.chr20.10100000.vcf");
+
+        final List<List<PileupSummary>> results = new ArrayList<>();
+        for (final int threads : new int[] {1, 3}) {
+            final File output = createTempFile("output", ".table");
+            final String[] args = {
+                    "-I", NA12878.getAbsolutePath(),
+                    "-V", thousandGenomes.getAbsolutePath(),
+                    "-L", thousandGenomes.getAbsolutePath(),
+                    "-O", output.getAbsolutePath(),
+                    "-" + GetPileupSummaries.MAX_SITE_AF_SHORT_NAME, "0.9",
+                    "--" + GetPileupSummaries.PILEUP_THREADS_LONG_NAME, Integer.toString(threads)
+            };
+            runCommandLine(args);
+            results.add(PileupSummary.readFromFile(output));
+        }
+
+        final List<PileupSummary> oneThread = results.get(0);
+        final List<PileupSummary> threeThreads = results.get(1);
+        Assert.assertFalse(oneThread.isEmpty());
+        Assert.assertEquals(threeThreads.size(), oneThread.size());
+        for (int n = 0; n < oneThread.size(); n++) {
+            Assert.assertEquals(threeThreads.get(n).getContig(), oneThread.get(n).getContig());
+            Assert.assertEquals(threeThreads.get(n).getStart(), oneThread.get(n).getStart());
+            Assert.assertEquals(threeThreads.get(n).getRefCount(), oneThread.get(n).getRefCount());
+            Assert.assertEquals(threeThreads.get(n).getAltCount(), oneThread.get(n).getAltCount());
+            Assert.assertEquals(threeThreads.get(n).getOtherAltCount(), oneThread.get(n).getOtherAltCount());
+            Assert.assertEquals(threeThreads.get(n).getAlleleFrequency(), oneThread.get(n).getAlleleFrequency());
+        }
+    }
+
+    @Test
+    public void testShards() {
+        final List<SimpleInterval> intervals = new ArrayList<>();
+        for (int n = 0; n < 2500; n++) {
+            intervals.add(new SimpleInterval("1", 10 * n + 1, 10 * n + 1));
+        }
+        intervals.add(new SimpleInterval("2", 1, 2_500_000));
+
+        final List<List<SimpleInterval>> shards = GetPileupSummaries.makeShards(intervals);
+
+        // 1000 single-base intervals per shard, then the long interval cut into pieces of at most a million bases
+        Assert.assertEquals(shards.stream().mapToInt(List::size).toArray(), new int[] {1000, 1000, 500, 1, 1, 1});
+        Assert.assertEquals(shards.get(3).get(0), new SimpleInterval("2", 1, 1_000_000));
+        Assert.assertEquals(shards.get(5).get(0), new SimpleInterval("2", 2_000_001, 2_500_000));
+        Assert.assertEquals(shards.stream().flatMap(List::stream).limit(2500).collect(Collectors.toList()), intervals.subList(0, 2500));
+    }
+
     @Test(expectedExceptions = UserException.BadInput.class)
     public void testNoAFFieldInHeader() {
         final File vcfWithoutAF = new File(publicTestDir, "empty.vcf");
@@ -0,0 +1,51 @@
+package org.broadinstitute.hellbender.tools.walkers.contamination;
+
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.broadinstitute.hellbender.utils.IndexRange;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+public class PileupSummaryColumnsUnitTest extends GATKBaseTest {
+
+    @Test
+    public void testSortingAndRanges() {
+        final List<PileupSummary> sites = Arrays.asList(
+                new PileupSummary("2", 50, 10, 5, 0, 0.1),
+                new PileupSummary("1", 300, 20, 0, 1, 0.2),
+                new PileupSummary("2", 10, 30, 15, 0, 0.3),
+                new PileupSummary("1", 100, 0, 40, 0, 0.4),
+                new PileupSummary("1", 200, 0, 0, 0, 0.5));
+        final File file = createTempFile("pileups", ".table");
+        PileupSummary.writeToFile(sites, file);
+
+        final PileupSummaryColumns columns = PileupSummaryColumns.readFromFile(file);
+
+        // contigs in the order they first appear, positions in increasing order
+        Assert.assertEquals(columns.size(), sites.size());
+        Assert.assertEquals(Arrays.asList(columns.getContig(0), columns.getContig(1), columns.getContig(2), columns.getContig(3), columns.getContig(4)),
+                Arrays.asList("2", "2", "1", "1", "1"));
+        Assert.assertEquals(new int[] {columns.getPosition(0), columns.getPosition(1), columns.getPosition(2), columns.getPosition(3), columns.getPosition(4)},
+                new int[] {10, 50, 100, 200, 300});
+        Assert.assertEquals(columns.getRefCount(0), 30);
+        Assert.assertEquals(columns.getAltCount(0), 15);
+        Assert.assertEquals(columns.getTotalCount(4), 21);
+        Assert.assertEquals(columns.getAlleleFrequency(2), 0.4);
+        Assert.assertEquals(columns.getAltFraction(1), 1.0 / 3);
+        Assert.assertEquals(columns.getAltFraction(3), 0.0);
+
+        final List<IndexRange> contigRanges = columns.getContigRanges();
+        Assert.assertEquals(contigRanges, Arrays.asList(new IndexRange(0, 2), new IndexRange(2, 5)));
+        Assert.assertEquals(columns.getSitesBetween(contigRanges.get(1), 150, 300), new IndexRange(3, 5));
+        Assert.assertEquals(columns.getSitesBetween(contigRanges.get(1), 100, 100), new IndexRange(2, 3));
+        Assert.assertEquals(columns.getSitesBetween(contigRanges.get(1), 101, 199).size(), 0);
+
+        final PileupSummaryColumns covered = columns.filter(n -> columns.getTotalCount(n) > 0);
+        Assert.assertEquals(covered.size(), 4);
+        Assert.assertEquals(covered.getPosition(3), 300);
+        Assert.assertEquals(covered.getContigRanges(), Arrays.asList(new IndexRange(0, 2), new IndexRange(2, 4)));
+    }
+}
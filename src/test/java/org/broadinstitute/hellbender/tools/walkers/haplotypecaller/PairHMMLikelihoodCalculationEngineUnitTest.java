@@ -207,4 +207,68 @@ public final class PairHMMLikelihoodCalculationEngineUnitTest extends GATKBaseTe
             new File(PairHMMLikelihoodCalculationEngine.LIKELIHOODS_FILENAME).delete();
         }
     }
+
+    @Test
+    public void testComputeLikelihoodsOnSeveralThreads() {
+        final Random random = new Random(13);
+        final int haplotypeLength = 40;
+        final int readLength = 25;
+        final byte[] refBases = new byte[haplotypeLength];
+        for (int i = 0; i < haplotypeLength; i++) {
+            refBases[i] = "ACGT".getBytes()[random.nextInt(4)];
+        }
+        final byte[] altBases = refBases.clone();
+        altBases[haplotypeLength / 2] = refBases[haplotypeLength / 2] == 'A' ? (byte) 'C' : (byte) 'A';
+
+        final List<String> sampleNames = Arrays.asList("tumor", "normal", "other");
+        final Map<String, List<GATKRead>> perSampleReadList = new LinkedHashMap<>();
+        for (final String sample : sampleNames) {
+            final List<GATKRead> reads = new ArrayList<>();
+            for (int r = 0; r < 8; r++) {
+                final byte[] source = random.nextBoolean() ? refBases : altBases;
+                final int start = random.nextInt(haplotypeLength - readLength);
+                final byte[] bases = Arrays.copyOfRange(source, start, start + readLength);
+                final byte[] quals = new byte[readLength];
+                for (int i = 0; i < readLength; i++) {
+                    quals[i] = (byte) (10 + random.nextInt(30));
+                }
+                final GATKRead read = ArtificialReadUtils.createArtificialRead(bases, quals, readLength + "M");
+                read.setMappingQuality(60);
+                read.setName(sample + r);
+                reads.add(read);
+            }
+            perSampleReadList.put(sample, reads);
+        }
+        final SampleList samples = new IndexedSampleList(sampleNames);
+
+        final List<ReadLikelihoods<Haplotype>> results = new ArrayList<>();
+        for (final int numSampleThreads : new int[] {1, 2, 3, 5}) {
+            final AssemblyResultSet assemblyResultSet = new AssemblyResultSet();
+            for (final byte[] haplotypeBases : Arrays.asList(refBases, altBases)) {
+                final Haplotype haplotype = new Haplotype(haplotypeBases, haplotypeBases == refBases);
+                haplotype.setGenomeLocation(perSampleReadList.get("tumor").get(0));
+                assemblyResultSet.add(haplotype);
+            }
+            final ReadLikelihoodCalculationEngine engine = new PairHMMLikelihoodCalculationEngine((byte) 10, new PairHMMNativeArguments(),
+                    PairHMM.Implementation.LOGLESS_CACHING, -4.5, PairHMMLikelihoodCalculationEngine.PCRErrorModel.CONSERVATIVE,
+                    PairHMM.BASE_QUALITY_SCORE_THRESHOLD, numSampleThreads);
+            results.add(engine.computeReadLikelihoods(assemblyResultSet, samples, perSampleReadList));
+            engine.close();
+        }
+
+        final ReadLikelihoods<Haplotype> expected = results.get(0);
+        for (final ReadLikelihoods<Haplotype> actual : results.subList(1, results.size())) {
+            Assert.assertEquals(actual.samples(), expected.samples());
+            for (int s = 0; s < expected.numberOfSamples(); s++) {
+                final LikelihoodMatrix<Haplotype> expectedMatrix = expected.sampleMatrix(s);
+                final LikelihoodMatrix<Haplotype> actualMatrix = actual.sampleMatrix(s);
+                Assert.assertEquals(actualMatrix.reads(), expectedMatrix.reads());
+                for (int a = 0; a < expectedMatrix.numberOfAlleles(); a++) {
+                    for (int r = 0; r < expectedMatrix.numberOfReads(); r++) {
+                        Assert.assertEquals(actualMatrix.get(a, r), expectedMatrix.get(a, r));
+                    }
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,142 @@
+package org.broadinstitute.hellbender.tools.walkers.mutect;
+
+import com.google.common.collect.Lists;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFConstants;
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.broadinstitute.hellbender.engine.FeatureDataSource;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class BinarySiteIndexUnitTest extends GATKBaseTest {
+    private static final File DREAM_VCF = new File(toolsTestDir, "mutect/dream/vcfs/dream3-chr20.vcf");
+
+    private static final Allele A_REF = Allele.create("A", true);
+    private static final Allele AC_REF = Allele.create("AC", true);
+    private static final Allele ACGT_REF = Allele.create("ACGT", true);
+    private static final Allele A = Allele.create("A");
+    private static final Allele C = Allele.create("C");
+    private static final Allele G = Allele.create("G");
+
+    @Test
+    public void testSameSitesAsVcf() {
+        final File indexFile = createTempFile("dream3", BinarySiteIndex.FILE_EXTENSION);
+        final List<VariantContext> vcfSites;
+        try (final FeatureDataSource<VariantContext> vcf = new FeatureDataSource<>(DREAM_VCF)) {
+            vcfSites = Lists.newArrayList(vcf);
+        }
+        try (final BinarySiteIndex.Writer writer = new BinarySiteIndex.Writer(indexFile)) {
+            vcfSites.forEach(writer::add);
+        }
+
+        final BinarySiteIndex index = BinarySiteIndex.open(indexFile);
+        try (final FeatureDataSource<VariantContext> vcf = new FeatureDataSource<>(DREAM_VCF)) {
+            for (final VariantContext site : vcfSites) {
+                for (final int position : new int[] {site.getStart() - 1, site.getStart(), site.getStart() + 1, site.getEnd(), site.getEnd() + 1}) {
+                    final List<VariantContext> expected = Lists.newArrayList(vcf.query(new SimpleInterval(site.getContig(), position, position)));
+                    assertSameSites(index.getOverlapping(site.getContig(), position, position), expected);
+                    Assert.assertEquals(index.overlaps(site.getContig(), position, position), !expected.isEmpty());
+                    assertSameSites(index.getStartingAt(site.getContig(), position),
+                            expected.stream().filter(vc -> vc.getStart() == position).collect(Collectors.toList()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testOverlappingSitesAndMissingAlleleFrequencies() {
+        final List<VariantContext> sites = Arrays.asList(
+                site("1", 100, Arrays.asList(ACGT_REF, A), Arrays.asList(0.25)),
+                site("1", 101, Arrays.asList(A_REF, C, G), Arrays.asList(0.5, VCFConstants.MISSING_VALUE_v4)),
+                site("1", 101, Arrays.asList(AC_REF, A), null),
+                site("1", 500, Arrays.asList(A_REF, G, Allele.SPAN_DEL), Arrays.asList(1.0e-5, 3.2e-7)),
+                site("2", 100, Arrays.asList(A_REF, C), Arrays.asList(0.125)));
+        final File indexFile = createTempFile("sites", BinarySiteIndex.FILE_EXTENSION);
+        try (final BinarySiteIndex.Writer writer = new BinarySiteIndex.Writer(indexFile)) {
+            sites.forEach(writer::add);
+            Assert.assertEquals(writer.getNumSites(), sites.size());
+        }
+        final BinarySiteIndex index = BinarySiteIndex.open(indexFile);
+
+        // the deletion at 100 spans 103, after the start of the later sites
+        assertSameSites(index.getOverlapping("1", 103, 103), Arrays.asList(sites.get(0)));
+        assertSameSites(index.getOverlapping("1", 102, 102), Arrays.asList(sites.get(0), sites.get(2)));
+        assertSameSites(index.getOverlapping("1", 90, 600), sites.subList(0, 4));
+        assertSameSites(index.getStartingAt("1", 101), sites.subList(1, 3));
+        assertSameSites(index.getStartingAt("1", 102), Arrays.asList());
+        assertSameSites(index.getOverlapping("2", 100, 100), sites.subList(4, 5));
+        Assert.assertFalse(index.overlaps("1", 104, 499));
+        Assert.assertFalse(index.overlaps("3", 100, 100));
+        Assert.assertTrue(index.getOverlapping("3", 1, 1000).isEmpty());
+
+        // missing allele frequencies get the default, as with the VCF
+        Assert.assertEquals(index.getStartingAt("1", 101).get(0).getAttributeAsDoubleList(VCFConstants.ALLELE_FREQUENCY_KEY, 0.001), Arrays.asList(0.5, 0.001));
+        Assert.assertFalse(index.getStartingAt("1", 101).get(1).hasAttribute(VCFConstants.ALLELE_FREQUENCY_KEY));
+    }
+
+    @Test(expectedExceptions = UserException.BadInput.class)
+    public void testUnsortedSites() {
+        try (final BinarySiteIndex.Writer writer = new BinarySiteIndex.Writer(createTempFile("unsorted", BinarySiteIndex.FILE_EXTENSION))) {
+            writer.add(site("1", 200, Arrays.asList(A_REF, C), null));
+            writer.add(site("1", 100, Arrays.asList(A_REF, C), null));
+        }
+    }
+
+    @Test
+    public void testAbortDeletesPartialIndex() {
+        final File indexFile = createTempFile("sites", BinarySiteIndex.FILE_EXTENSION);
+        final BinarySiteIndex.Writer writer = new BinarySiteIndex.Writer(indexFile);
+        writer.add(site("1", 100, Arrays.asList(A_REF, C), null));
+        writer.abort();
+        Assert.assertFalse(indexFile.exists());
+        // closing afterwards doesn't write a footer for the aborted index
+        writer.close();
+        Assert.assertFalse(indexFile.exists());
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testQueryAfterClose() {
+        final File indexFile = createTempFile("sites", BinarySiteIndex.FILE_EXTENSION);
+        try (final BinarySiteIndex.Writer writer = new BinarySiteIndex.Writer(indexFile)) {
+            writer.add(site("1", 100, Arrays.asList(A_REF, C), null));
+        }
+        final BinarySiteIndex index = BinarySiteIndex.open(indexFile);
+        index.close();
+        index.getOverlapping("1", 100, 100);
+    }
+
+    @Test(expectedExceptions = UserException.MalformedFile.class)
+    public void testNotAnIndex() {
+        BinarySiteIndex.open(DREAM_VCF);
+    }
+
+    private static VariantContext site(final String contig, final int start, final List<Allele> alleles, final List<?> alleleFrequencies) {
+        final VariantContextBuilder builder = new VariantContextBuilder("test", contig, start, start + alleles.get(0).length() - 1, alleles);
+        if (alleleFrequencies != null) {
+            builder.attribute(VCFConstants.ALLELE_FREQUENCY_KEY, alleleFrequencies);
+        }
+        return builder.make();
+    }
+
+    private static void assertSameSites(final List<VariantContext> actual, final List<VariantContext> expected) {
+        Assert.assertEquals(actual.size(), expected.size());
+        for (int n = 0; n < actual.size(); n++) {
+            Assert.assertEquals(actual.get(n).getContig(), expected.get(n).getContig());
+            Assert.assertEquals(actual.get(n).getStart(), expected.get(n).getStart());
+            Assert.assertEquals(actual.get(n).getEnd(), expected.get(n).getEnd());
+            Assert.assertEquals(actual.get(n).getAlleles(), expected.get(n).getAlleles());
+            Assert.assertEquals(actual.get(n).hasAttribute(VCFConstants.ALLELE_FREQUENCY_KEY), expected.get(n).hasAttribute(VCFConstants.ALLELE_FREQUENCY_KEY));
+            Assert.assertEquals(actual.get(n).getAttributeAsDoubleList(VCFConstants.ALLELE_FREQUENCY_KEY, -1.0),
+                    expected.get(n).getAttributeAsDoubleList(VCFConstants.ALLELE_FREQUENCY_KEY, -1.0));
+        }
+    }
+}
@@ -3,12 +3,15 @@ package org.broadinstitute.hellbender.tools.walkers.mutect;
 import htsjdk.variant.variantcontext.VariantContext;
 import org.apache.commons.io.FileUtils;
 import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.testutils.VariantContextTestUtils;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -77,4 +80,55 @@ public class CreateSomaticPanelOfNormalsIntegrationTest extends CommandLineProgr
         Assert.assertEquals(vc5.getNAlleles(), 2);
         Assert.assertTrue(vc5.getAlternateAllele(0).basesMatch("C"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testMergeInStages() throws IOException {
+        final File vcf1 = new File(PON_VCFS_DIR, "sample1.vcf");
+        final File vcf2 = new File(PON_VCFS_DIR, "sample2.vcf");
+        final List<String> normalVcfs = new ArrayList<>();
+        for (final File vcf : Arrays.asList(vcf1, vcf2, vcf1, vcf2, vcf1)) {
+            final File copy = createTempFile("normal", ".vcf");
+            FileUtils.copyFile(vcf, copy);
+            normalVcfs.add(copy.getAbsolutePath());
+        }
+        final File vcfInputFile = createTempFile("vcfs", ".args");
+        FileUtils.writeLines(vcfInputFile, normalVcfs);
+
+        final List<List<VariantContext>> outputs = new ArrayList<>();
+        for (final String maxInputsPerMerge : Arrays.asList(null, "2", "3")) {
+            final File outputVcf = createTempFile("pon", ".vcf");
+            final List<String> args = new ArrayList<>(Arrays.asList(
+                    "-" + CreateSomaticPanelOfNormals.INPUT_VCFS_LIST_SHORT_NAME, vcfInputFile.getAbsolutePath(),
+                    "-O", outputVcf.getAbsolutePath(),
+                    "--" + CreateSomaticPanelOfNormals.MIN_SAMPLE_COUNT_LONG_NAME, "3",
+                    "--duplicate-sample-strategy", "ALLOW_ALL"));
+            if (maxInputsPerMerge != null) {
+                args.addAll(Arrays.asList("--" + CreateSomaticPanelOfNormals.MAX_INPUTS_PER_MERGE_LONG_NAME, maxInputsPerMerge));
+            }
+            runCommandLine(args);
+            outputs.add(VariantContextTestUtils.streamVcf(outputVcf).collect(Collectors.toList()));
+        }
+
+        // sites in sample 1 are in three vcfs, and the ones in both samples are in all five
+        Assert.assertEquals(outputs.get(0).size(), 8);
+        VariantContextTestUtils.assertEqualVariants(outputs.get(1), outputs.get(0));
+        VariantContextTestUtils.assertEqualVariants(outputs.get(2), outputs.get(0));
+    }
+
+    @Test(expectedExceptions = UserException.BadInput.class)
+    public void testContigMissingFromDictionary() throws IOException {
+        final File vcf1 = new File(PON_VCFS_DIR, "sample1.vcf");
+        // the same variants on a contig that the first vcf doesn't have
+        final File otherContigVcf = createTempFile("normal", ".vcf");
+        FileUtils.writeLines(otherContigVcf, FileUtils.readLines(new File(PON_VCFS_DIR, "sample2.vcf"), StandardCharsets.UTF_8).stream()
+                .map(line -> line.replaceFirst("^##contig=<ID=20,", "##contig=<ID=21,").replaceFirst("^20\t", "21\t"))
+                .collect(Collectors.toList()));
+        final File vcfInputFile = createTempFile("vcfs", ".args");
+        FileUtils.writeLines(vcfInputFile, Arrays.asList(vcf1.getAbsolutePath(), otherContigVcf.getAbsolutePath()));
+
+        runCommandLine(Arrays.asList(
+                "-" + CreateSomaticPanelOfNormals.INPUT_VCFS_LIST_SHORT_NAME, vcfInputFile.getAbsolutePath(),
+                "-O", createTempFile("pon", ".vcf").getAbsolutePath(),
+                "--duplicate-sample-strategy", "ALLOW_ALL"));
+    }
+}
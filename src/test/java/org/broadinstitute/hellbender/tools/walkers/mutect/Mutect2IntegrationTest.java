@@ -239,6 +239,42 @@ public class Mutect2IntegrationTest extends CommandLineProgramTest {
         Assert.assertTrue(numVariantsPassingFilters < 2);
     }
 
+    // the germline resource and the panel of normals compiled into binary site indices must give the same calls as the vcfs
+    @Test
+    public void testBinarySiteIndices() throws Exception {
+        final File pon = new File(toolsTestDir, "mutect/gga_mode.vcf");
+        final File germlineResourceIndex = createTempFile("gnomad", BinarySiteIndex.FILE_EXTENSION);
+        final File ponIndex = createTempFile("pon", BinarySiteIndex.FILE_EXTENSION);
+        for (final Pair<File, File> vcfAndIndex : Arrays.asList(ImmutablePair.of(GNOMAD, germlineResourceIndex), ImmutablePair.of(pon, ponIndex))) {
+            new Main().instanceMain(makeCommandLineArgs(Arrays.asList("-V", vcfAndIndex.getLeft().getAbsolutePath(),
+                    "-O", vcfAndIndex.getRight().getAbsolutePath()), CreateBinarySiteIndex.class.getSimpleName()));
+        }
+
+        final List<List<VariantContext>> outputs = new ArrayList<>();
+        for (final boolean useIndices : new boolean[] {false, true}) {
+            Utils.resetRandomGenerator();
+            final File unfilteredVcf = createTempFile("unfiltered", ".vcf");
+            final List<String> args = new ArrayList<>(Arrays.asList("-I", NA12878_20_21_WGS_bam,
+                    "-" + M2ArgumentCollection.TUMOR_SAMPLE_SHORT_NAME, "NA12878",
+                    "-R", b37_reference_20_21,
+                    "-L", "20:10000000-10010000",
+                    "-O", unfilteredVcf.getAbsolutePath(),
+                    "--" + M2ArgumentCollection.GENOTYPE_PON_SITES_LONG_NAME));
+            if (useIndices) {
+                args.addAll(Arrays.asList("--" + M2ArgumentCollection.GERMLINE_RESOURCE_SITE_INDEX_LONG_NAME, germlineResourceIndex.getAbsolutePath(),
+                        "--" + M2ArgumentCollection.PANEL_OF_NORMALS_SITE_INDEX_LONG_NAME, ponIndex.getAbsolutePath()));
+            } else {
+                args.addAll(Arrays.asList("--" + M2ArgumentCollection.GERMLINE_RESOURCE_LONG_NAME, GNOMAD.getAbsolutePath(),
+                        "--" + M2ArgumentCollection.PANEL_OF_NORMALS_LONG_NAME, pon.getAbsolutePath()));
+            }
+            runCommandLine(args);
+            outputs.add(VariantContextTestUtils.streamVcf(unfilteredVcf).collect(Collectors.toList()));
+        }
+
+        Assert.assertTrue(outputs.get(0).stream().anyMatch(vc -> vc.hasAttribute(GATKVCFConstants.IN_PON_VCF_ATTRIBUTE)));
+        VariantContextTestUtils.assertEqualVariants(outputs.get(1), outputs.get(0));
+    }
+
     // test on an artificial bam with several contrived MNPs
     @Test
     public void testMnps() throws Exception {
@@ -612,6 +648,24 @@ public class Mutect2IntegrationTest extends CommandLineProgramTest {
         Assert.assertFalse(vc.get().getFilters().contains(GATKVCFConstants.MEDIAN_BASE_QUALITY_FILTER_NAME));
     }
 
+    @Test
+    public void testMultithreadedFilteringMatchesSingleThreaded() {
+        final File unfilteredVcf = new File(toolsTestDir, "validation/mc3/M2.vcf");
+        final List<List<VariantContext>> outputs = new ArrayList<>();
+        for (final int threads : new int[] {1, 3}) {
+            final File filteredVcf = createTempFile("filtered", ".vcf");
+            new Main().instanceMain(makeCommandLineArgs(Arrays.asList(
+                    "-V", unfilteredVcf.getAbsolutePath(),
+                    "-O", filteredVcf.getAbsolutePath(),
+                    "--" + FilterMutectCalls.FILTERING_THREADS_LONG_NAME, String.valueOf(threads)),
+                    FilterMutectCalls.class.getSimpleName()));
+            outputs.add(VariantContextTestUtils.streamVcf(filteredVcf).collect(Collectors.toList()));
+        }
+
+        Assert.assertFalse(outputs.get(0).isEmpty());
+        VariantContextTestUtils.assertEqualVariants(outputs.get(1), outputs.get(0));
+    }
+
     private void doMutect2Test(
             final String inputBam,
             final String tumorSample,
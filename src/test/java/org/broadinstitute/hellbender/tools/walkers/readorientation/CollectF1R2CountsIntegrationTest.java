@@ -23,8 +23,12 @@ import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * Created by tsato on 3/14/18.
@@ -188,6 +192,103 @@ public class CollectF1R2CountsIntegrationTest extends CommandLineProgramTest {
         }
     }
 
+    @Test
+    public void testBinaryCounts() throws IOException {
+        for (final int altDepth : new int[] {30, 1}) {
+            final File refMetrics = createTempFile("ref", ".metrics");
+            final File altMetrics = createTempFile("alt", ".metrics");
+            final File altTable = createTempFile("alt", ".table");
+            final File sam = createSyntheticSam(70, altDepth);
+
+            runCommandLine(Arrays.asList(
+                    "-R", hg19_chr1_1M_Reference,
+                    "-I", sam.getAbsolutePath(),
+                    "--" + CollectF1R2Counts.ALT_DATA_TABLE_LONG_NAME, altTable.getAbsolutePath(),
+                    "--" + CollectF1R2Counts.REF_SITE_METRICS_LONG_NAME, refMetrics.getAbsolutePath(),
+                    "--" + CollectF1R2Counts.ALT_DEPTH1_HISTOGRAM_LONG_NAME, altMetrics.getAbsolutePath()));
+
+            // collect binary counts over two shards that split the reads, then merge them
+            final List<File> shards = new ArrayList<>();
+            for (final String interval : Arrays.asList("1:1-100005", "1:100006-1000000")) {
+                final File shard = createTempFile("shard", F1R2Counts.FILE_EXTENSION);
+                runCommandLine(Arrays.asList(
+                        "-R", hg19_chr1_1M_Reference,
+                        "-I", sam.getAbsolutePath(),
+                        "-L", interval,
+                        "--" + CollectF1R2Counts.F1R2_COUNTS_LONG_NAME, shard.getAbsolutePath()));
+                shards.add(shard);
+            }
+            final File merged = createTempFile("merged", F1R2Counts.FILE_EXTENSION);
+            final List<String> mergeArgs = new ArrayList<>(Arrays.asList("-O", merged.getAbsolutePath()));
+            shards.forEach(shard -> mergeArgs.addAll(Arrays.asList("-I", shard.getAbsolutePath())));
+            runCommandLine(mergeArgs, MergeF1R2Counts.class.getSimpleName());
+
+            final F1R2Counts counts = F1R2Counts.read(Collections.singletonList(merged));
+            assertSameHistograms(counts.getRefHistograms(), readHistograms(refMetrics));
+            assertSameHistograms(counts.getDepthOneAltHistograms(), readHistograms(altMetrics));
+
+            final List<String> binaryAltSites = new ArrayList<>();
+            counts.forEachAltSite((record, count) -> {
+                for (long n = 0; n < count; n++) {
+                    binaryAltSites.add(toString(record));
+                }
+            });
+            final List<String> textAltSites = AltSiteRecord.readAltSiteRecords(altTable).stream()
+                    .map(CollectF1R2CountsIntegrationTest::toString).collect(Collectors.toList());
+            Assert.assertEquals(binaryAltSites.size(), textAltSites.size());
+            Assert.assertEquals(new HashSet<>(binaryAltSites), new HashSet<>(textAltSites));
+
+            // the model learned from the unmerged shards is the same as from the text outputs
+            final File textPriors = createTempFile("text-priors", ".tsv");
+            runCommandLine(Arrays.asList(
+                    "--" + CollectF1R2Counts.ALT_DATA_TABLE_LONG_NAME, altTable.getAbsolutePath(),
+                    "--" + CollectF1R2Counts.REF_SITE_METRICS_LONG_NAME, refMetrics.getAbsolutePath(),
+                    "--" + CollectF1R2Counts.ALT_DEPTH1_HISTOGRAM_LONG_NAME, altMetrics.getAbsolutePath(),
+                    "-O", textPriors.getAbsolutePath()), LearnReadOrientationModel.class.getSimpleName());
+            final File binaryPriors = createTempFile("binary-priors", ".tsv");
+            final List<String> learnArgs = new ArrayList<>(Arrays.asList("-O", binaryPriors.getAbsolutePath()));
+            shards.forEach(shard -> learnArgs.addAll(Arrays.asList("--" + CollectF1R2Counts.F1R2_COUNTS_LONG_NAME, shard.getAbsolutePath())));
+            runCommandLine(learnArgs, LearnReadOrientationModel.class.getSimpleName());
+
+            final ArtifactPriorCollection expectedPriors = ArtifactPriorCollection.readArtifactPriors(textPriors);
+            final ArtifactPriorCollection actualPriors = ArtifactPriorCollection.readArtifactPriors(binaryPriors);
+            Assert.assertEquals(actualPriors.getNumUniqueContexts(), expectedPriors.getNumUniqueContexts());
+            for (final String context : F1R2FilterConstants.CANONICAL_KMERS) {
+                Assert.assertEquals(actualPriors.get(context).isPresent(), expectedPriors.get(context).isPresent());
+                if (expectedPriors.get(context).isPresent()) {
+                    for (final ArtifactState state : ArtifactState.values()) {
+                        Assert.assertEquals(actualPriors.get(context).get().getPi(state), expectedPriors.get(context).get().getPi(state), 1e-6);
+                    }
+                }
+            }
+        }
+    }
+
+    private static List<Histogram<Integer>> readHistograms(final File metrics) {
+        final MetricsFile<?, Integer> metricsFile = new MetricsFile<>();
+        final Reader reader = IOUtil.openFileForBufferedReading(metrics);
+        metricsFile.read(reader);
+        CloserUtil.close(reader);
+        return metricsFile.getAllHistograms();
+    }
+
+    private static void assertSameHistograms(final List<Histogram<Integer>> actual, final List<Histogram<Integer>> expected) {
+        final Map<String, Histogram<Integer>> expectedByLabel = expected.stream().collect(Collectors.toMap(Histogram::getValueLabel, h -> h));
+        Assert.assertEquals(actual.size(), expected.size());
+        for (final Histogram<Integer> histogram : actual) {
+            final Histogram<Integer> expectedHistogram = expectedByLabel.get(histogram.getValueLabel());
+            Assert.assertNotNull(expectedHistogram, histogram.getValueLabel());
+            for (final Integer depth : expectedHistogram.keySet()) {
+                Assert.assertEquals(histogram.get(depth).getValue(), expectedHistogram.get(depth).getValue(), histogram.getValueLabel());
+            }
+        }
+    }
+
+    private static String toString(final AltSiteRecord record) {
+        return String.join(",", record.getReferenceContext(), Integer.toString(record.getRefCount()), Integer.toString(record.getAltCount()),
+                Integer.toString(record.getRefF1R2()), Integer.toString(record.getAltF1R2()), record.getAltAllele().toString());
+    }
+
     private File createSyntheticSam(final int refDepth, final int altDepth) throws IOException {
         final File samFile = File.createTempFile("synthetic", ".bam");
         final SAMFileHeader samHeader = M2TestingUtils.createSamHeader();
@@ -2,6 +2,7 @@ package org.broadinstitute.hellbender.tools.walkers.readorientation;
 
 import htsjdk.samtools.metrics.MetricsFile;
 import htsjdk.samtools.util.Histogram;
+import htsjdk.samtools.util.SequenceUtil;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.ImmutableTriple;
 import org.apache.commons.lang3.tuple.Triple;
@@ -22,7 +23,9 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 public class LearnReadOrientationModelEngineUnitTest extends CommandLineProgramTest {
@@ -128,6 +131,19 @@ public class LearnReadOrientationModelEngineUnitTest extends CommandLineProgramT
     }
 
 
+    // Before the first E-step the responsibilities are evaluated at the initial flat prior
+    @Test
+    public void testAltResponsibilitiesBeforeLearning() {
+        final String refContext = "ACT";
+        final Histogram<Integer> refSiteHistogram = F1R2FilterUtils.createRefHistogram(refContext, F1R2FilterConstants.DEFAULT_MAX_DEPTH);
+        final List<AltSiteRecord> altDesignMatrix = Collections.singletonList(new AltSiteRecord(refContext, 50, 10, 25, 10, Nucleotide.T));
+
+        final LearnReadOrientationModelEngine engine = new LearnReadOrientationModelEngine(refSiteHistogram, Collections.emptyList(), altDesignMatrix,
+                LearnReadOrientationModel.DEFAULT_CONVERGENCE_THRESHOLD, LearnReadOrientationModel.DEFAULT_MAX_ITERATIONS,
+                F1R2FilterConstants.DEFAULT_MAX_DEPTH, logger);
+        Assert.assertEquals(MathUtils.sum(engine.getAltResonsibilities(0)), 1.0, EPSILON);
+    }
+
     /**
      * Now test the case where not all of the transitions have orientation bias. And for transitions that do sometimes exhibit
      * orientation bias filter, sill assumes single context.
@@ -271,6 +287,78 @@ public class LearnReadOrientationModelEngineUnitTest extends CommandLineProgramT
         }
     }
 
+    @Test
+    public void testAltSiteDesignMatrices() throws IOException {
+        final Random random = new Random(31);
+        final List<AltSiteRecord> records = createRandomAltSiteRecords(random, 2000);
+        final File altTable = GATKBaseTest.createTempFile("alt-table", ".tsv");
+        try (final AltSiteRecord.AltSiteRecordTableWriter writer = new AltSiteRecord.AltSiteRecordTableWriter(altTable)) {
+            writer.writeAllRecords(records);
+        }
+
+        final Map<String, AltSiteDesignMatrix> matrices = AltSiteDesignMatrix.readByCanonicalContext(altTable);
+        final Map<String, List<AltSiteRecord>> recordsByContext = records.stream().collect(Collectors.groupingBy(AltSiteRecord::getReferenceContext));
+        for (final String refContext : F1R2FilterConstants.CANONICAL_KMERS) {
+            final List<AltSiteRecord> expected = new ArrayList<>(recordsByContext.getOrDefault(refContext, Collections.emptyList()));
+            LearnReadOrientationModel.mergeDesignMatrices(expected,
+                    recordsByContext.getOrDefault(SequenceUtil.reverseComplement(refContext), Collections.emptyList()));
+
+            final AltSiteDesignMatrix matrix = matrices.get(refContext);
+            Assert.assertEquals(matrix == null ? 0 : matrix.size(), expected.size());
+            for (int n = 0; n < expected.size(); n++) {
+                Assert.assertEquals(matrix.getDepth(n), expected.get(n).getDepth());
+                Assert.assertEquals(matrix.getAltCount(n), expected.get(n).getAltCount());
+                Assert.assertEquals(matrix.getAltF1R2(n), expected.get(n).getAltF1R2());
+                Assert.assertEquals(matrix.getAltAllele(n), expected.get(n).getAltAllele());
+            }
+        }
+    }
+
+    @Test
+    public void testMultipleThreads() throws IOException {
+        final Random random = new Random(17);
+        final File altTable = GATKBaseTest.createTempFile("alt-table", ".tsv");
+        try (final AltSiteRecord.AltSiteRecordTableWriter writer = new AltSiteRecord.AltSiteRecordTableWriter(altTable)) {
+            writer.writeAllRecords(createRandomAltSiteRecords(random, 5000));
+        }
+
+        final File refHistogramTable = GATKBaseTest.createTempFile("ref-histogram", ".metrics");
+        final MetricsFile<?, Integer> refMetricsFile = new MetricsFile<>();
+        for (final String refContext : F1R2FilterConstants.ALL_KMERS) {
+            refMetricsFile.addHistogram(createRefHistograms(refContext, 10 + random.nextInt(100), 1000 + random.nextInt(1000)));
+        }
+        refMetricsFile.write(refHistogramTable);
+
+        final List<List<String>> priorTables = new ArrayList<>();
+        for (final int numThreads : new int[] {1, 4}) {
+            final File priorTable = GATKBaseTest.createTempFile("prior", ".tsv");
+            new Main().instanceMain(makeCommandLineArgs(
+                    Arrays.asList(
+                            "-alt-table", altTable.getAbsolutePath(),
+                            "-ref-hist", refHistogramTable.getAbsolutePath(),
+                            "--" + LearnReadOrientationModel.NUM_EM_THREADS_LONG_NAME, Integer.toString(numThreads),
+                            "-O", priorTable.getAbsolutePath()),
+                    LearnReadOrientationModel.class.getSimpleName()));
+            priorTables.add(Files.readAllLines(priorTable.toPath()));
+        }
+
+        Assert.assertEquals(priorTables.get(1), priorTables.get(0));
+    }
+
+    private static List<AltSiteRecord> createRandomAltSiteRecords(final Random random, final int numRecords) {
+        final List<AltSiteRecord> records = new ArrayList<>(numRecords);
+        for (int n = 0; n < numRecords; n++) {
+            final String refContext = F1R2FilterConstants.ALL_KMERS.get(random.nextInt(F1R2FilterConstants.ALL_KMERS.size()));
+            final Nucleotide refAllele = F1R2FilterUtils.getMiddleBase(refContext);
+            final List<Nucleotide> altAlleles = Nucleotide.STANDARD_BASES.stream().filter(b -> b != refAllele).collect(Collectors.toList());
+            final int refCount = random.nextInt(50);
+            final int altCount = 1 + random.nextInt(20);
+            records.add(new AltSiteRecord(refContext, refCount, altCount, random.nextInt(refCount + 1), random.nextInt(altCount + 1),
+                    altAlleles.get(random.nextInt(altAlleles.size()))));
+        }
+        return records;
+    }
+
     @Test
     public void testMergeHistograms(){
         final int numExamples1 = 10000;
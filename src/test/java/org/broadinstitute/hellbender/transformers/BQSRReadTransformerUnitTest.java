@@ -1,11 +1,18 @@
 package org.broadinstitute.hellbender.transformers;
 
+import org.broadinstitute.hellbender.engine.ReadsDataSource;
+import org.broadinstitute.hellbender.tools.ApplyBQSRArgumentCollection;
 import org.broadinstitute.hellbender.utils.QualityUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.recalibration.RecalDatum;
+import org.broadinstitute.hellbender.utils.recalibration.RecalibrationReport;
 import org.broadinstitute.hellbender.GATKBaseTest;
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
 
@@ -89,4 +96,42 @@ public final class BQSRReadTransformerUnitTest extends GATKBaseTest {
             }
         }
     }
+
+    @DataProvider
+    public Object[][] lookupTableArgs() {
+        final ApplyBQSRArgumentCollection defaultArgs = new ApplyBQSRArgumentCollection();
+
+        final ApplyBQSRArgumentCollection quantized = new ApplyBQSRArgumentCollection();
+        quantized.quantizationLevels = 6;
+
+        final ApplyBQSRArgumentCollection staticQuals = new ApplyBQSRArgumentCollection();
+        staticQuals.staticQuantizationQuals = Arrays.asList(10, 20, 30);
+
+        final ApplyBQSRArgumentCollection globalPrior = new ApplyBQSRArgumentCollection();
+        globalPrior.globalQScorePrior = 25.0;
+
+        return new Object[][] {{defaultArgs}, {quantized}, {staticQuals}, {globalPrior}};
+    }
+
+    @Test(dataProvider = "lookupTableArgs")
+    public void testLookupTablesMatchRecalibrationTables(final ApplyBQSRArgumentCollection args) {
+        final String bqsrDir = toolsTestDir + "BQSR/";
+        final File recalFile = new File(bqsrDir + "HiSeq.20mb.1RG.table.gz");
+
+        try (final ReadsDataSource reads = new ReadsDataSource(Paths.get(bqsrDir + "HiSeq.1mb.1RG.2k_lines.bam"))) {
+            final BQSRReadTransformer withLookup = new BQSRReadTransformer(reads.getHeader(), new RecalibrationReport(recalFile), args);
+            final BQSRReadTransformer withoutLookup = new BQSRReadTransformer(reads.getHeader(), new RecalibrationReport(recalFile), args, 0L);
+            Assert.assertTrue(withLookup.usesLookupTables());
+            Assert.assertFalse(withoutLookup.usesLookupTables());
+
+            int numReads = 0;
+            for (final GATKRead read : reads) {
+                final byte[] expected = withoutLookup.apply(read.deepCopy()).getBaseQualities();
+                final byte[] actual = withLookup.apply(read.deepCopy()).getBaseQualities();
+                Assert.assertEquals(actual, expected, read.getName());
+                numReads++;
+            }
+            Assert.assertTrue(numReads > 0);
+        }
+    }
 }
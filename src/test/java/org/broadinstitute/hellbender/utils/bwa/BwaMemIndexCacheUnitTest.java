@@ -0,0 +1,73 @@
+package org.broadinstitute.hellbender.utils.bwa;
+
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.function.Function;
+
+public class BwaMemIndexCacheUnitTest extends GATKBaseTest {
+
+    @Test
+    public void testShareImage() throws IOException {
+        final File executorDirectory = createTempDir("executor");
+        final File sharedDirectory = new File(createTempDir("host"), "images");
+        final File image = new File(executorDirectory, "reference.fa.img");
+        Files.write(image.toPath(), "image".getBytes(StandardCharsets.UTF_8));
+
+        final File sharedImage = BwaMemIndexCache.shareImage(image, "5-1", sharedDirectory, Function.identity());
+        Assert.assertEquals(sharedImage.getParentFile(), new File(sharedDirectory, "reference.fa.img"));
+        Assert.assertEquals(Files.readAllBytes(sharedImage.toPath()), "image".getBytes(StandardCharsets.UTF_8));
+
+        // another executor's copy of the same image uses the shared copy that's already there
+        final File otherExecutorImage = new File(createTempDir("otherExecutor"), "reference.fa.img");
+        Files.write(otherExecutorImage.toPath(), "other".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(BwaMemIndexCache.shareImage(otherExecutorImage, "5-1", sharedDirectory, Function.identity()), sharedImage);
+        Assert.assertEquals(Files.readAllBytes(sharedImage.toPath()), "image".getBytes(StandardCharsets.UTF_8));
+
+        // a different version of the image gets a copy of its own, which replaces the copy of the old version
+        final File newSharedImage = BwaMemIndexCache.shareImage(otherExecutorImage, "5-2", sharedDirectory, Function.identity());
+        Assert.assertNotEquals(newSharedImage, sharedImage);
+        Assert.assertEquals(Files.readAllBytes(newSharedImage.toPath()), "other".getBytes(StandardCharsets.UTF_8));
+        Assert.assertFalse(sharedImage.exists());
+
+        // copies of other images are kept
+        final File otherImage = new File(executorDirectory, "other.fa.img");
+        Files.write(otherImage.toPath(), "image".getBytes(StandardCharsets.UTF_8));
+        final File otherSharedImage = BwaMemIndexCache.shareImage(otherImage, "5-3", sharedDirectory, Function.identity());
+        Assert.assertTrue(otherSharedImage.exists());
+        Assert.assertTrue(newSharedImage.exists());
+    }
+
+    @Test
+    public void testWarmImage() throws IOException {
+        final File image = createTempFile("reference", ".img");
+        Files.write(image.toPath(), new byte[3 << 20]);
+        BwaMemIndexCache.warmImage(image.getAbsolutePath());
+    }
+
+    @Test(expectedExceptions = UserException.CouldNotReadInputFile.class)
+    public void testWarmEmptyImage() throws IOException {
+        BwaMemIndexCache.warmImage(createTempFile("reference", ".img").getAbsolutePath());
+    }
+
+    @Test(expectedExceptions = UserException.CouldNotReadInputFile.class)
+    public void testWarmMissingImage() {
+        BwaMemIndexCache.warmImage(new File(createTempDir("images"), "missing.img").getAbsolutePath());
+    }
+
+    @Test(expectedExceptions = UserException.CouldNotReadInputFile.class)
+    public void testDistributedInstanceChecksImage() {
+        BwaMemIndexCache.getDistributedInstance(new File(createTempDir("images"), "missing.img").getAbsolutePath());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testSharedInstanceNeedsDirectory() {
+        BwaMemIndexCache.getSharedInstance(new File(createTempDir("images"), "reference.img").getAbsolutePath(), "5-1", null);
+    }
+}
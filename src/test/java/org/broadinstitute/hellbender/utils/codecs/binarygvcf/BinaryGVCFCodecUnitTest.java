@@ -0,0 +1,161 @@
+package org.broadinstitute.hellbender.utils.codecs.binarygvcf;
+
+import htsjdk.tribble.Tribble;
+import htsjdk.tribble.index.IndexFactory;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.vcf.VCFConstants;
+import htsjdk.variant.vcf.VCFHeader;
+import org.apache.commons.lang3.tuple.Pair;
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.broadinstitute.hellbender.engine.FeatureDataSource;
+import org.broadinstitute.hellbender.testutils.VariantContextTestUtils;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.variant.GATKVariantContextUtils;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public final class BinaryGVCFCodecUnitTest extends GATKBaseTest {
+
+    private static final String GVCF = toolsTestDir + "haplotypecaller/expected.testGVCFMode.gatk4.g.vcf";
+
+    @Test
+    public void testCanDecode() {
+        final BinaryGVCFCodec codec = new BinaryGVCFCodec();
+        Assert.assertTrue(codec.canDecode("sample" + BinaryGVCFCodec.BINARY_GVCF_EXTENSION));
+        Assert.assertFalse(codec.canDecode("sample.g.vcf"));
+        Assert.assertFalse(codec.canDecode("sample.bcf"));
+    }
+
+    @DataProvider
+    public Object[][] varInts() {
+        return new Object[][] {{0}, {1}, {127}, {128}, {16383}, {16384}, {1_000_000}, {Integer.MAX_VALUE}};
+    }
+
+    @Test(dataProvider = "varInts")
+    public void testVarIntRoundTrip(final int value) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryGVCFCodec.writeVarInt(out, value);
+        Assert.assertEquals(BinaryGVCFCodec.readVarInt(new ByteArrayInputStream(out.toByteArray())), value);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeVarInt() throws IOException {
+        BinaryGVCFCodec.writeVarInt(new ByteArrayOutputStream(), -1);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final Pair<VCFHeader, List<VariantContext>> expected = VariantContextTestUtils.readEntireVCFIntoMemory(GVCF);
+        final File binaryGVCF = writeBinaryGVCF(expected.getLeft(), expected.getRight());
+        Assert.assertTrue(Tribble.indexFile(binaryGVCF).exists());
+
+        try ( final FeatureDataSource<VariantContext> source = new FeatureDataSource<>(binaryGVCF) ) {
+            final VCFHeader header = (VCFHeader) source.getHeader();
+            Assert.assertEquals(header.getGenotypeSamples(), expected.getLeft().getGenotypeSamples());
+            Assert.assertEquals(header.getSequenceDictionary().size(), expected.getLeft().getSequenceDictionary().size());
+
+            final List<VariantContext> actual = new ArrayList<>();
+            source.forEach(actual::add);
+            assertEqualVariantContexts(actual, expected.getRight());
+        }
+    }
+
+    @Test
+    public void testQueryByInterval() {
+        final Pair<VCFHeader, List<VariantContext>> expected = VariantContextTestUtils.readEntireVCFIntoMemory(GVCF);
+        final File binaryGVCF = writeBinaryGVCF(expected.getLeft(), expected.getRight());
+        final SimpleInterval interval = new SimpleInterval("20", 10_001_000, 10_002_000);
+
+        try ( final FeatureDataSource<VariantContext> source = new FeatureDataSource<>(binaryGVCF) ) {
+            final List<VariantContext> actual = new ArrayList<>();
+            source.query(interval).forEachRemaining(actual::add);
+            Assert.assertFalse(actual.isEmpty());
+            assertEqualVariantContexts(actual, expected.getRight().stream()
+                    .filter(vc -> vc.overlaps(interval))
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testQueryWithIndexCreatedAfterwards() throws IOException {
+        final Pair<VCFHeader, List<VariantContext>> expected = VariantContextTestUtils.readEntireVCFIntoMemory(GVCF);
+        final File binaryGVCF = writeBinaryGVCF(expected.getLeft(), expected.getRight());
+        final File indexFile = Tribble.indexFile(binaryGVCF);
+        Assert.assertTrue(indexFile.delete());
+        IndexFactory.createLinearIndex(binaryGVCF, new BinaryGVCFCodec(), BinaryGVCFCodec.INDEX_BIN_SIZE).write(indexFile);
+
+        final SimpleInterval interval = new SimpleInterval("20", 10_000_000, 10_130_000);
+        try ( final FeatureDataSource<VariantContext> source = new FeatureDataSource<>(binaryGVCF) ) {
+            final List<VariantContext> actual = new ArrayList<>();
+            source.query(interval).forEachRemaining(actual::add);
+            assertEqualVariantContexts(actual, expected.getRight().stream()
+                    .filter(vc -> vc.overlaps(interval))
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testGVCFIsSmallerThanCompressedTextAndBCF() {
+        final Pair<VCFHeader, List<VariantContext>> gvcf = VariantContextTestUtils.readEntireVCFIntoMemory(GVCF);
+
+        final File binaryGVCF = writeBinaryGVCF(gvcf.getLeft(), gvcf.getRight());
+        final File textGVCF = writeWithExtension(gvcf.getLeft(), gvcf.getRight(), ".g.vcf.gz");
+        final File bcf = writeWithExtension(gvcf.getLeft(), gvcf.getRight(), ".bcf");
+
+        Assert.assertTrue(binaryGVCF.length() < textGVCF.length(), "binary GVCF should be smaller than the compressed text GVCF");
+        Assert.assertTrue(binaryGVCF.length() < bcf.length(), "binary GVCF should be smaller than BCF");
+    }
+
+    @Test
+    public void testReferenceBlocksAreSmallerThanTextAndBCF() {
+        final Pair<VCFHeader, List<VariantContext>> gvcf = VariantContextTestUtils.readEntireVCFIntoMemory(GVCF);
+        final List<VariantContext> refBlocks = gvcf.getRight().stream()
+                .filter(vc -> vc.hasAttribute(VCFConstants.END_KEY))
+                .collect(Collectors.toList());
+
+        final File binaryGVCF = writeBinaryGVCF(gvcf.getLeft(), refBlocks);
+        final File textGVCF = writeWithExtension(gvcf.getLeft(), refBlocks, ".g.vcf");
+        final File bcf = writeWithExtension(gvcf.getLeft(), refBlocks, ".bcf");
+
+        Assert.assertTrue(binaryGVCF.length() < textGVCF.length(), "binary GVCF should be smaller than the text GVCF");
+        Assert.assertTrue(binaryGVCF.length() < bcf.length(), "binary GVCF should be smaller than BCF");
+    }
+
+    private static File writeBinaryGVCF(final VCFHeader header, final List<VariantContext> records) {
+        final File output = createTempFile("gvcf", BinaryGVCFCodec.BINARY_GVCF_EXTENSION);
+        try ( final VariantContextWriter writer = GATKVariantContextUtils.createVCFWriter(output, header.getSequenceDictionary(), false, Options.INDEX_ON_THE_FLY) ) {
+            Assert.assertTrue(writer instanceof BinaryGVCFWriter);
+            writer.writeHeader(header);
+            records.forEach(writer::add);
+        }
+        return output;
+    }
+
+    private static File writeWithExtension(final VCFHeader header, final List<VariantContext> records, final String extension) {
+        final File output = createTempFile("gvcf", extension);
+        try ( final VariantContextWriter writer = GATKVariantContextUtils.createVCFWriter(output, header.getSequenceDictionary(), false) ) {
+            writer.writeHeader(header);
+            records.forEach(writer::add);
+        }
+        return output;
+    }
+
+    private static void assertEqualVariantContexts(final List<VariantContext> actual, final List<VariantContext> expected) {
+        Assert.assertEquals(actual.size(), expected.size());
+        for ( int i = 0; i < actual.size(); i++ ) {
+            VariantContextTestUtils.assertVariantContextsAreEqual(actual.get(i), expected.get(i), Collections.emptyList());
+        }
+    }
+}
@@ -145,6 +145,7 @@ public final class BucketUtilsTest extends GATKBaseTest {
 
         long fileSize = BucketUtils.fileSize(file1.getAbsolutePath());
         Assert.assertTrue(fileSize > 0);
+        Assert.assertEquals(BucketUtils.fileModificationTime(file1.getAbsolutePath()), file1.lastModified());
         long dirSize = BucketUtils.dirSize(dir.getAbsolutePath());
         Assert.assertEquals(dirSize, fileSize * 2);
     }
@@ -0,0 +1,96 @@
+package org.broadinstitute.hellbender.utils.io;
+
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+public class VarIntUtilsUnitTest extends GATKBaseTest {
+
+    @DataProvider(name = "ints")
+    public Object[][] ints() {
+        return new Object[][]{
+                {0, 1}, {1, 1}, {127, 1}, {128, 2}, {300, 2}, {16383, 2}, {16384, 3},
+                {Integer.MAX_VALUE, 5}, {-1, 5}, {Integer.MIN_VALUE, 5}
+        };
+    }
+
+    @Test(dataProvider = "ints")
+    public void testVarIntRoundTrip(final int value, final int expectedLength) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        VarIntUtils.writeVarInt(out, value);
+        Assert.assertEquals(out.size(), expectedLength);
+        Assert.assertEquals(VarIntUtils.readVarInt(new ByteArrayInputStream(out.toByteArray())), value);
+    }
+
+    @Test
+    public void testVarIntEncoding() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        VarIntUtils.writeVarInt(out, 300);
+        Assert.assertEquals(out.toByteArray(), new byte[]{(byte) 0xAC, 0x02});
+    }
+
+    @DataProvider(name = "longs")
+    public Object[][] longs() {
+        return new Object[][]{
+                {0L, 1}, {127L, 1}, {128L, 2}, {(long) Integer.MAX_VALUE + 1, 5}, {Long.MAX_VALUE, 9}, {-1L, 10}
+        };
+    }
+
+    @Test(dataProvider = "longs")
+    public void testVarLongRoundTrip(final long value, final int expectedLength) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        VarIntUtils.writeVarLong(out, value);
+        Assert.assertEquals(out.size(), expectedLength);
+        Assert.assertEquals(VarIntUtils.readVarLong(new ByteArrayInputStream(out.toByteArray())), value);
+    }
+
+    @Test
+    public void testReadSeveralValues() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        VarIntUtils.writeVarInt(out, 5);
+        VarIntUtils.writeVarInt(out, 1000);
+        VarIntUtils.writeVarLong(out, 1L << 40);
+        final ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        Assert.assertEquals(VarIntUtils.readVarInt(in, in.read()), 5);
+        Assert.assertEquals(VarIntUtils.readVarInt(in), 1000);
+        Assert.assertEquals(VarIntUtils.readVarLong(in), 1L << 40);
+        Assert.assertEquals(in.read(), -1);
+    }
+
+    @Test(expectedExceptions = EOFException.class)
+    public void testTruncatedVarInt() throws IOException {
+        VarIntUtils.readVarInt(new ByteArrayInputStream(new byte[]{(byte) 0x80}));
+    }
+
+    @Test(expectedExceptions = EOFException.class)
+    public void testEmptyStream() throws IOException {
+        VarIntUtils.readVarInt(new ByteArrayInputStream(new byte[0]));
+    }
+
+    @Test(expectedExceptions = EOFException.class)
+    public void testTruncatedVarLong() throws IOException {
+        VarIntUtils.readVarLong(new ByteArrayInputStream(new byte[]{(byte) 0xFF, (byte) 0xFF}));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testTooLongVarInt() throws IOException {
+        VarIntUtils.readVarInt(new ByteArrayInputStream(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01}));
+    }
+
+    @Test
+    public void testZigZag() {
+        Assert.assertEquals(VarIntUtils.zigZag(0), 0);
+        Assert.assertEquals(VarIntUtils.zigZag(-1), 1);
+        Assert.assertEquals(VarIntUtils.zigZag(1), 2);
+        Assert.assertEquals(VarIntUtils.zigZag(-2), 3);
+        for (final int value : new int[]{0, 1, -1, 1000, -1000, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+            Assert.assertEquals(VarIntUtils.unZigZag(VarIntUtils.zigZag(value)), value);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.broadinstitute.hellbender.utils.recalibration;
 
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMReadGroupRecord;
 import htsjdk.samtools.TextCigarCodec;
 import org.broadinstitute.hellbender.engine.ReferenceDataSource;
 import org.broadinstitute.hellbender.engine.ReferenceMemorySource;
@@ -14,6 +16,7 @@ import org.testng.annotations.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public final class BaseRecalibrationEngineUnitTest {
@@ -145,4 +148,52 @@ public final class BaseRecalibrationEngineUnitTest {
         final int[] actual = (mode == EventType.BASE_INSERTION ? isInsertion : isDeletion);
         Assert.assertEquals(actual, expected, "calculateIsSNPOrIndel() failed with " + mode + " and cigar " + cigar + " Expected " + Arrays.toString(expected) + " but got " + Arrays.toString(actual));
     }
-}
\ No newline at end of file
+
+    private static long countSubstitutionObservations(final RecalibrationTables tables) {
+        return tables.getQualityScoreTable().getAllValues().stream().mapToLong(RecalDatum::getNumObservations).sum();
+    }
+
+    @Test
+    public void testGettingTablesDoesNotAddCountsAgain() {
+        final SAMReadGroupRecord readGroup = new SAMReadGroupRecord("rg1");
+        readGroup.setPlatform("ILLUMINA");
+        final SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeaderWithReadGroup(readGroup);
+        final String contig = header.getSequence(0).getSequenceName();
+        final byte[] bases = "ACGTACGTAC".getBytes();
+        final byte[] quals = Utils.repeatBytes((byte) 30, bases.length);
+        final GATKRead read = ArtificialReadUtils.createArtificialRead(header, "read", contig, 1, bases, quals);
+        read.setReadGroup(readGroup.getId());
+        final byte[] refBases = bases.clone();
+        refBases[4] = 'C';
+        final ReferenceDataSource refSource = new ReferenceMemorySource(new ReferenceBases(refBases, new SimpleInterval(contig, 1, refBases.length)), header.getSequenceDictionary());
+
+        final BaseRecalibrationEngine engine = new BaseRecalibrationEngine(new RecalibrationArgumentCollection(), header);
+        engine.processRead(read, refSource, Collections.emptyList());
+        engine.flushAccumulatedCounts();
+        final long observations = countSubstitutionObservations(engine.getRecalibrationTables());
+        Assert.assertTrue(observations > 0);
+        Assert.assertEquals(countSubstitutionObservations(engine.getRecalibrationTables()), observations);
+        engine.flushAccumulatedCounts();
+        Assert.assertEquals(countSubstitutionObservations(engine.getRecalibrationTables()), observations);
+
+        engine.processRead(read, refSource, Collections.emptyList());
+        engine.flushAccumulatedCounts();
+        Assert.assertEquals(countSubstitutionObservations(engine.getRecalibrationTables()), 2 * observations);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testGettingTablesWithCountsNotFlushed() {
+        final SAMReadGroupRecord readGroup = new SAMReadGroupRecord("rg1");
+        readGroup.setPlatform("ILLUMINA");
+        final SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeaderWithReadGroup(readGroup);
+        final String contig = header.getSequence(0).getSequenceName();
+        final byte[] bases = "ACGTACGTAC".getBytes();
+        final GATKRead read = ArtificialReadUtils.createArtificialRead(header, "read", contig, 1, bases, Utils.repeatBytes((byte) 30, bases.length));
+        read.setReadGroup(readGroup.getId());
+        final ReferenceDataSource refSource = new ReferenceMemorySource(new ReferenceBases(bases, new SimpleInterval(contig, 1, bases.length)), header.getSequenceDictionary());
+
+        final BaseRecalibrationEngine engine = new BaseRecalibrationEngine(new RecalibrationArgumentCollection(), header);
+        engine.processRead(read, refSource, Collections.emptyList());
+        engine.getRecalibrationTables();
+    }
+}
@@ -0,0 +1,92 @@
+package org.broadinstitute.hellbender.utils.recalibration;
+
+import org.broadinstitute.hellbender.GATKBaseTest;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.collections.NestedIntegerArray;
+import org.broadinstitute.hellbender.utils.recalibration.covariates.StandardCovariateList;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public final class FlatRecalibrationTablesUnitTest extends GATKBaseTest {
+    private static final int NUM_READ_GROUPS = 3;
+
+    private static StandardCovariateList makeCovariates() {
+        final List<String> readGroups = IntStream.range(0, NUM_READ_GROUPS).mapToObj(i -> "readgroup" + i).collect(Collectors.toList());
+        return new StandardCovariateList(new RecalibrationArgumentCollection(), readGroups);
+    }
+
+    /**
+     * Record the same random observations with RecalUtils, the way BaseRecalibrationEngine used to, and with
+     * FlatRecalibrationTables, and check that the resulting tables are exactly the same.
+     */
+    @Test
+    public void testSameTablesAsIncrementingRecalDatums() {
+        final StandardCovariateList covariates = makeCovariates();
+        final RecalibrationTables expected = new RecalibrationTables(covariates, NUM_READ_GROUPS);
+        final FlatRecalibrationTables flat = new FlatRecalibrationTables(covariates, NUM_READ_GROUPS);
+        Assert.assertTrue(flat.isEmpty());
+
+        final Random random = Utils.getRandomGenerator();
+        final double[] errors = {0.0, 1.0, 1.0 / 3, 0.25, 0.1};
+        for ( int i = 0; i < 100_000; i++ ) {
+            final byte qual = (byte) (10 + random.nextInt(30));
+            final int[] keys = {random.nextInt(NUM_READ_GROUPS), qual, random.nextInt(16), random.nextInt(10) - 1};
+            final int eventIndex = random.nextInt(EventType.values().length);
+            final double isError = errors[random.nextInt(errors.length)];
+
+            RecalUtils.incrementDatumOrPutIfNecessary3keys(expected.getQualityScoreTable(), qual, isError, keys[0], keys[1], eventIndex);
+            for ( int j = 2; j < keys.length; j++ ) {
+                if ( keys[j] >= 0 ) {
+                    RecalUtils.incrementDatumOrPutIfNecessary4keys(expected.getTable(j), qual, isError, keys[0], keys[1], keys[j], eventIndex);
+                }
+            }
+            flat.increment(keys, eventIndex, isError);
+        }
+        Assert.assertFalse(flat.isEmpty());
+
+        final RecalibrationTables actual = flat.addTo(new RecalibrationTables(covariates, NUM_READ_GROUPS));
+        Assert.assertTrue(flat.isEmpty());
+        for ( int i = 0; i < expected.numTables(); i++ ) {
+            assertTablesEqual(actual.getTable(i), expected.getTable(i));
+        }
+    }
+
+    @Test
+    public void testAddToCombinesWithExistingData() {
+        final StandardCovariateList covariates = makeCovariates();
+        final FlatRecalibrationTables flat = new FlatRecalibrationTables(covariates, NUM_READ_GROUPS);
+        final RecalibrationTables tables = new RecalibrationTables(covariates, NUM_READ_GROUPS);
+        final int[] keys = {1, 30, 5, 7};
+
+        flat.increment(keys, EventType.BASE_SUBSTITUTION.ordinal(), 1.0);
+        flat.addTo(tables);
+        flat.increment(keys, EventType.BASE_SUBSTITUTION.ordinal(), 0.0);
+        flat.increment(keys, EventType.BASE_SUBSTITUTION.ordinal(), 0.0);
+        flat.addTo(tables);
+
+        final RecalDatum datum = tables.getQualityScoreTable().get3Keys(1, 30, EventType.BASE_SUBSTITUTION.ordinal());
+        Assert.assertEquals(datum.getNumObservations(), 3);
+        Assert.assertEquals(datum.getNumMismatches(), 1.0, 1e-10);
+        Assert.assertEquals(datum.getEstimatedQReported(), 30.0, 1e-10);
+        Assert.assertEquals(tables.getTable(2).get4Keys(1, 30, 5, EventType.BASE_SUBSTITUTION.ordinal()).getNumObservations(), 3);
+        Assert.assertEquals(tables.getTable(3).get4Keys(1, 30, 7, EventType.BASE_SUBSTITUTION.ordinal()).getNumObservations(), 3);
+        Assert.assertTrue(tables.getReadGroupTable().getAllValues().isEmpty());
+    }
+
+    private static void assertTablesEqual(final NestedIntegerArray<RecalDatum> actual, final NestedIntegerArray<RecalDatum> expected) {
+        final List<NestedIntegerArray.Leaf<RecalDatum>> expectedLeaves = expected.getAllLeaves();
+        Assert.assertEquals(actual.getAllLeaves().size(), expectedLeaves.size());
+        for ( final NestedIntegerArray.Leaf<RecalDatum> leaf : expectedLeaves ) {
+            final RecalDatum actualDatum = actual.get(leaf.keys);
+            Assert.assertNotNull(actualDatum);
+            Assert.assertEquals(actualDatum.getNumObservations(), leaf.value.getNumObservations());
+            Assert.assertEquals(actualDatum.getNumMismatches(), leaf.value.getNumMismatches());
+            Assert.assertEquals(actualDatum.getEstimatedQReported(), leaf.value.getEstimatedQReported());
+        }
+    }
+}
@@ -46,6 +46,41 @@ public final class ContextCovariateUnitTest extends GATKBaseTest {
         }
     }
 
+    @Test
+    public void testContextsWithNsAndLowQualityTailsWhenReusingKeys() {
+        final Random rnd = Utils.getRandomGenerator();
+        final SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeader();
+        final CovariateKeyCache keyCache = new CovariateKeyCache();
+        final byte[] someBases = {'A', 'C', 'G', 'T', 'N'};
+
+        for(int i = 0; i < 100; i++) {
+            // alternate long and short reads so the shared key arrays hold data from longer reads
+            final GATKRead read = ArtificialReadUtils.createRandomRead(header, i % 2 == 0 ? 150 : 10 + rnd.nextInt(50));
+            final byte[] bases = read.getBases();
+            final byte[] quals = read.getBaseQualities();
+            for (int j = 0; j < bases.length; j++) {
+                if (rnd.nextInt(20) == 0) {
+                    bases[j] = someBases[rnd.nextInt(someBases.length)];
+                }
+                // low quality tails, but never a fully clipped read
+                if (j < 3 || j >= bases.length - 3) {
+                    quals[j] = (byte) rnd.nextInt(2 * RAC.LOW_QUAL_TAIL + 1);
+                } else {
+                    quals[j] = (byte) Math.max(quals[j], RAC.LOW_QUAL_TAIL + 1);
+                }
+            }
+            read.setBases(bases);
+            read.setBaseQualities(quals);
+            read.setIsReverseStrand(rnd.nextBoolean());
+
+            final ReadCovariates readCovariates = new ReadCovariates(read.getLength(), 1, keyCache);
+            covariate.recordValues(read, header, readCovariates, true);
+
+            verifyCovariateArray(readCovariates.getMismatchesKeySet(), RAC.MISMATCHES_CONTEXT_SIZE, read, covariate, RAC.LOW_QUAL_TAIL);
+            verifyCovariateArray(readCovariates.getInsertionsKeySet(), RAC.INDELS_CONTEXT_SIZE, read, covariate, RAC.LOW_QUAL_TAIL);
+        }
+    }
+
     public static void verifyCovariateArray(int[][] values, int contextSize, GATKRead read, Covariate contextCovariate, final byte lowQualTail) {
         for (int i = 0; i < values.length; i++) {
             Assert.assertEquals(contextCovariate.formatKey(values[i][0]), expectedContext(read, i, contextSize, lowQualTail), "offset " + i);
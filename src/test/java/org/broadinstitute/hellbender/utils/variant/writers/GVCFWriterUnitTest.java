@@ -229,6 +229,93 @@ public class GVCFWriterUnitTest extends GATKBaseTest {
         assertGoodVC(mockWriter.emitted.get(2), CHR2, 11, 11, true);
     }
 
+    private static VariantContext makeHomRefBlock(final int start, final int end, final int gq, final int dp, final int minDP) {
+        final GenotypeBuilder gb = new GenotypeBuilder(SAMPLE_NAME, Arrays.asList(REF, REF))
+                .GQ(gq)
+                .DP(dp)
+                .PL(new int[]{0, gq, 20 + gq})
+                .attribute(GATKVCFConstants.MIN_DP_FORMAT_KEY, minDP);
+        return new VariantContextBuilder("test", CHR1, start, end, ALLELES)
+                .attribute(VCFConstants.END_KEY, end)
+                .genotypes(gb.make())
+                .make();
+    }
+
+    @Test
+    public void testMergesContiguousHomRefBlocks() {
+        final MockWriter mockWriter = new MockWriter();
+        final GVCFWriter writer = new GVCFWriter(mockWriter, standardPartition, HomoSapiensConstants.DEFAULT_PLOIDY);
+
+        writer.add(makeHomRefBlock(1, 10, 12, 20, 15));
+        writer.add(makeHomRefBlock(11, 13, 15, 30, 7));
+        writer.add(makeHomRef(14, 13));
+        Assert.assertEquals(mockWriter.emitted.size(), 0);
+
+        writer.close();
+        Assert.assertEquals(mockWriter.emitted.size(), 1);
+        final VariantContext merged = mockWriter.emitted.get(0);
+        assertGoodVC(merged, CHR1, 1, 14, false);
+        final Genotype genotype = merged.getGenotype(0);
+        Assert.assertEquals(genotype.getPL(), new int[]{0, 12, 32});
+        Assert.assertEquals(genotype.getGQ(), 12);
+        // 10 positions with DP 20, 3 with DP 30 and 1 with DP 10
+        Assert.assertEquals(genotype.getDP(), 20);
+        Assert.assertEquals(genotype.getExtendedAttribute(GATKVCFConstants.MIN_DP_FORMAT_KEY), 7);
+    }
+
+    @Test
+    public void testDoesntMergeHomRefBlocksInDifferentBands() {
+        final MockWriter mockWriter = new MockWriter();
+        final GVCFWriter writer = new GVCFWriter(mockWriter, standardPartition, HomoSapiensConstants.DEFAULT_PLOIDY);
+
+        writer.add(makeHomRefBlock(1, 10, 12, 20, 15));
+        writer.add(makeHomRefBlock(11, 13, 25, 30, 7));
+        writer.close();
+
+        Assert.assertEquals(mockWriter.emitted.size(), 2);
+        assertGoodVC(mockWriter.emitted.get(0), CHR1, 1, 10, false);
+        assertGoodVC(mockWriter.emitted.get(1), CHR1, 11, 13, false);
+        Assert.assertEquals(mockWriter.emitted.get(1).getGenotype(0).getDP(), 30);
+    }
+
+    @Test
+    public void testKeepsHomRefBlockStartingInsideDeletion() {
+        final MockWriter mockWriter = new MockWriter();
+        final GVCFWriter writer = new GVCFWriter(mockWriter, standardPartition, HomoSapiensConstants.DEFAULT_PLOIDY);
+
+        writer.add(makeDeletion(5, 4));
+        writer.add(makeHomRef(6));
+        writer.add(makeHomRefBlock(7, 20, 12, 20, 15));
+        writer.close();
+
+        Assert.assertEquals(mockWriter.emitted.size(), 2);
+        assertGoodVC(mockWriter.emitted.get(1), CHR1, 7, 20, false);
+    }
+
+    @Test
+    public void testTruncatesHomRefBlockOverlappingDeletion() {
+        final MockWriter mockWriter = new MockWriter();
+        final GVCFWriter writer = new GVCFWriter(mockWriter, standardPartition, HomoSapiensConstants.DEFAULT_PLOIDY);
+
+        writer.add(makeHomRefBlock(1, 10, 12, 20, 15));
+        writer.add(makeDeletion(8, 4));
+        writer.add(makeHomRef(12));
+        writer.close();
+
+        Assert.assertEquals(mockWriter.emitted.size(), 3);
+        assertGoodVC(mockWriter.emitted.get(0), CHR1, 1, 7, false);
+        assertGoodVC(mockWriter.emitted.get(1), CHR1, 8, 11, true);
+        assertGoodVC(mockWriter.emitted.get(2), CHR1, 12, 12, false);
+    }
+
+    @Test
+    public void testGetGQPartitionsFromHeader() {
+        final VCFHeader header = new VCFHeader();
+        new GVCFWriter(new MockWriter(), standardPartition, HomoSapiensConstants.DEFAULT_PLOIDY).writeHeader(header);
+        Assert.assertEquals(GVCFWriter.getGQPartitionsFromHeader(header), standardPartition);
+        Assert.assertEquals(GVCFWriter.getGQPartitionsFromHeader(new VCFHeader()), Collections.emptyList());
+    }
+
     @Test
     public void testCrossingContigBoundaryNonRef() {
         final MockWriter mockWriter = new MockWriter();
@@ -5,8 +5,11 @@ import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.GenotypeBuilder;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFConstants;
 import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.GATKBaseTest;
+import org.broadinstitute.hellbender.utils.MathUtils;
+import org.broadinstitute.hellbender.utils.variant.GATKVCFConstants;
 import org.broadinstitute.hellbender.utils.variant.HomoSapiensConstants;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
@@ -14,6 +17,7 @@ import org.testng.annotations.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public class HomRefBlockUnitTest extends GATKBaseTest {
@@ -76,6 +80,92 @@ public class HomRefBlockUnitTest extends GATKBaseTest {
         Assert.assertEquals(band.getMinPLs(), new int[]{0, 10, 100});
     }
 
+    @Test
+    public void testAddBlocks() {
+        final VariantContext vc = getVariantContext();
+        final HomRefBlock band = getHomRefBlock(vc);
+        final int[] pls = {0, 15, 100};
+        final GenotypeBuilder gb = new GenotypeBuilder(SAMPLE_NAME, vc.getAlleles());
+
+        band.add(1, 5, gb.DP(20).GQ(15).PL(pls).attribute(GATKVCFConstants.MIN_DP_FORMAT_KEY, 12).make());
+        band.add(6, 6, new GenotypeBuilder(SAMPLE_NAME, vc.getAlleles()).DP(8).GQ(11).PL(new int[]{0, 11, 90}).make());
+        band.add(7, 8, new GenotypeBuilder(SAMPLE_NAME, vc.getAlleles()).DP(30).GQ(17).PL(new int[]{0, 17, 80})
+                .attribute(GATKVCFConstants.MIN_DP_FORMAT_KEY, "25").make());
+
+        Assert.assertEquals(band.getEnd(), 8);
+        Assert.assertEquals(band.getSize(), 8);
+        // DPs are 8, 20 x 5, 30 x 2
+        assertValues(band, 8, 20);
+        Assert.assertEquals(band.getMinPLs(), new int[]{0, 11, 80});
+        Assert.assertEquals(pls, new int[]{0, 15, 100}, "the added genotype's PLs must not be modified");
+    }
+
+    @Test
+    public void testMedianOfManyDPs() {
+        final VariantContext vc = getVariantContext();
+        final HomRefBlock band = getHomRefBlock(vc);
+        final List<Integer> dps = new ArrayList<>();
+        for ( int pos = 1; pos <= 100; pos++ ) {
+            final int dp = (pos * 37) % 23;
+            dps.add(dp);
+            band.add(pos, getValidGenotypeBuilder().DP(dp).make());
+        }
+        assertValues(band, Collections.min(dps), (int) Math.round(MathUtils.median(dps)));
+    }
+
+    @Test
+    public void testMedianOfManyRepeatedDPs() {
+        // many more runs than are kept, but few enough distinct DPs for the median to stay exact
+        final VariantContext vc = getVariantContext();
+        final HomRefBlock band = getHomRefBlock(vc);
+        final List<Integer> dps = new ArrayList<>();
+        for ( int pos = 1; pos <= 20000; pos++ ) {
+            final int dp = (pos * 37) % 101;
+            dps.add(dp);
+            band.add(pos, getValidGenotypeBuilder().DP(dp).make());
+        }
+        assertValues(band, Collections.min(dps), (int) Math.round(MathUtils.median(dps)));
+    }
+
+    @Test
+    public void testMedianOfManyDistinctDPs() {
+        // too many distinct DPs to keep them all, so the median is only known to within a bin of the histogram
+        final VariantContext vc = getVariantContext();
+        final HomRefBlock band = getHomRefBlock(vc);
+        final List<Integer> dps = new ArrayList<>();
+        for ( int pos = 1; pos <= 20000; pos++ ) {
+            final int dp = 20001 - pos;
+            dps.add(dp);
+            band.add(pos, getValidGenotypeBuilder().DP(dp).make());
+        }
+        Assert.assertEquals(band.getMinDP(), 1);
+        Assert.assertEquals(band.getMedianDP(), MathUtils.median(dps), 32);
+    }
+
+    @Test
+    public void testTruncate() {
+        final VariantContext vc = getVariantContext();
+        final HomRefBlock band = getHomRefBlock(vc);
+        band.add(vc.getStart(), vc.getStart() + 9, getValidGenotypeBuilder().DP(10).make());
+        band.truncate(vc.getStart() + 4);
+        Assert.assertEquals(band.getEnd(), vc.getStart() + 4);
+        Assert.assertEquals(band.toVariantContext(SAMPLE_NAME).getAttributeAsInt(VCFConstants.END_KEY, -1), vc.getStart() + 4);
+        Assert.assertTrue(band.isContiguous(new VariantContextBuilder(vc).start(vc.getStart() + 5).stop(vc.getStart() + 5).make()));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testTruncatePastEnd() {
+        final VariantContext vc = getVariantContext();
+        final HomRefBlock band = getHomRefBlock(vc);
+        band.add(vc.getStart(), vc.getStart() + 9, getValidGenotypeBuilder().DP(10).make());
+        band.truncate(vc.getStart() + 10);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testAddBlockEndingBeforeStart() {
+        getHomRefBlock(getVariantContext()).add(1, 0, getValidGenotypeBuilder().make());
+    }
+
     @DataProvider
     public static Object[][] badAdditions() {
         final VariantContext vc = getVariantContext();